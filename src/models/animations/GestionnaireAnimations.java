@@ -24,28 +24,25 @@ import java.util.Enumeration;
 import java.util.NoSuchElementException;
 import java.util.Vector;
 import models.jeu.Jeu;
+import models.jeu.PhaseDeSimulation;
 import models.outils.Outils;
 
 /**
  * Classe d'encapsulation des animations.
  * 
- * Permet de faire vivre toutes les animation sous le meme thread et ainsi 
- * alléger le processeur.
- * 
- * Toutes les animations tournent sous le meme clock.
+ * Les animations sont animees a chaque pas de l'ordonnanceur de simulation
+ * du jeu, sous le meme thread que les creatures et les tours.
  * 
  * @author Aurelien Da Campo
  * @version 1.1 | juin 2010
  * @since jdk1.6.0_16
+ * @see models.jeu.OrdonnanceurDeSimulation
  */
-public class GestionnaireAnimations implements Runnable
+public class GestionnaireAnimations implements PhaseDeSimulation
 {
-    private static final long TEMPS_ATTENTE = 50;
     private Vector<Animation> animations = new Vector<Animation>();
-    private Thread thread;
+    private ArrayList<Animation> animationsASupprimer = new ArrayList<Animation>();
     private boolean gestionEnCours;
-    private boolean enPause = false;
-    private Object pause = new Object();
     private Jeu jeu;
     private long tempsAvantNuages = 0;
     
@@ -62,8 +59,7 @@ public class GestionnaireAnimations implements Runnable
      */
     public void demarrer()
     {
-        thread = new Thread(this);
-        thread.start();
+        gestionEnCours = true;
     }
     
     /**
@@ -108,103 +104,47 @@ public class GestionnaireAnimations implements Runnable
     }
 
     @Override
-    public void run()
+    public void executerPas(long dureePas)
     {
-       gestionEnCours = true;
-        
-       /*
-       // CECI NE MARCHE PAS :
-       // Poutant Iterator doit normalement gérer cela ?!?
-       // Une erreur de concurrence est levée 
-       // j'utilise alors un tableau temporaire de suppression
-       while(gestionEnCours)
-       {
-           Iterator<Animation> iAnimations = animations.iterator();
-           synchronized(animations)
-           {
-               Animation animation;
-              
-               while(iAnimations.hasNext())
-               {
-                   animation = iAnimations.next();
-                   
-                   // detruit l'animation si elle est terminee
-                   if(animation.estTerminee())
-                       iAnimations.remove();
-                   else
-                   {
-                       // anime l'animation
-                       animation.animer(TEMPS_ATTENTE);
-                   }
-               }
-           }
-           
-       */
+       if(!gestionEnCours)
+           return;
        
-
-       ArrayList<Animation> animationsASupprimer = new ArrayList<Animation>();
        Animation animation;
        
-       while(gestionEnCours)
-       {
-           tempsAvantNuages -= TEMPS_ATTENTE;
+       tempsAvantNuages -= dureePas;
+       
+       if(tempsAvantNuages < 0)
+       { 
+           for(int i=0;i<5;i++)
+               jeu.ajouterAnimation(new Nuage(jeu));
            
-           if(tempsAvantNuages < 0)
-           { 
-               for(int i=0;i<5;i++)
-                   jeu.ajouterAnimation(new Nuage(jeu));
-               
-               tempsAvantNuages = Outils.tirerNombrePseudoAleatoire(10000, 20000);
-           }
+           tempsAvantNuages = Outils.tirerNombrePseudoAleatoire(10000, 20000);
+       }
 
-           try
+       try
+       {
+           Enumeration<Animation> eAnimations = animations.elements();
+           while(eAnimations.hasMoreElements())
            {
-               //System.out.println(animations.size());
-               
-               Enumeration<Animation> eAnimations = animations.elements();
-               while(eAnimations.hasMoreElements())
-               {
-                   animation = eAnimations.nextElement();
+               animation = eAnimations.nextElement();
 
-                   // detruit l'animation si elle est terminee
-                   if(animation.estTerminee())
-                       animationsASupprimer.add(animation);
-                   else
-                       // anime l'animation
-                       animation.animer((long)(TEMPS_ATTENTE*jeu.getCoeffVitesse()));
-               }
-           }
-           catch(NoSuchElementException nse)
-           {
-               System.err.println("[ERREUR] Animation introuvable");
-           }
- 
-           // suppression des créatures
-           for(Animation animationASupprimer : animationsASupprimer)
-               animations.remove(animationASupprimer);
-           animationsASupprimer.clear();
-         
-           // gestion de la pause
-           try
-           {
-               synchronized (pause)
-               {
-                   if(enPause)
-                       pause.wait();
-               } 
-           } 
-           catch (InterruptedException e1)
-           {
-               e1.printStackTrace();
-           }
-           
-           try{
-                Thread.sleep(TEMPS_ATTENTE);
-           } 
-           catch (InterruptedException e){
-                e.printStackTrace();
+               // detruit l'animation si elle est terminee
+               if(animation.estTerminee())
+                   animationsASupprimer.add(animation);
+               else
+                   // anime l'animation
+                   animation.animer((long)(dureePas*jeu.getCoeffVitesse()));
            }
        }
+       catch(NoSuchElementException nse)
+       {
+           System.err.println("[ERREUR] Animation introuvable");
+       }
+
+       // suppression des animations
+       for(Animation animationASupprimer : animationsASupprimer)
+           animations.remove(animationASupprimer);
+       animationsASupprimer.clear();
     }
 
     /**
@@ -215,26 +155,6 @@ public class GestionnaireAnimations implements Runnable
         gestionEnCours = false;
     }
 
-    /**
-     * Permet de mettre les animations en pause.
-     */
-    public void mettreEnPause()
-    {
-        enPause = true;
-    }
-    
-    /**
-     * Permet de sortir les animations de la pause.
-     */
-    public void sortirDeLaPause()
-    { 
-        synchronized (pause)
-        {
-            enPause = false;
-            pause.notify();
-        }
-    }
-
     public void detruire()
     {
         arreterAnimations();
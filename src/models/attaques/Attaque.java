@@ -20,7 +20,6 @@ package models.attaques;
 
 import java.awt.Point;
 import java.util.ArrayList;
-import java.util.Enumeration;
 import models.animations.*;
 import models.creatures.Creature;
 import models.jeu.Jeu;
@@ -100,12 +99,8 @@ abstract public class Attaque extends Animation
         long degatsFinal;
         double distanceImpact;
         
-        Enumeration<Creature> eCreatures = jeu.getCreatures().elements();
-        Creature tmpCreature;
-        while(eCreatures.hasMoreElements())
+        for(Creature tmpCreature : jeu.getCreatures())
         {
-            tmpCreature = eCreatures.nextElement();
-            
             if(tmpCreature.peutEtreAttaquee(attaquant))
             {
                 
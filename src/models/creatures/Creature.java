@@ -22,7 +22,10 @@ import i18n.Langue;
 
 import java.awt.*;
 import java.util.*;
+import models.jeu.OrdonnanceurDeSimulation;
 import models.joueurs.*;
+import models.maillage.ChampDeDirection;
+import models.maillage.PathNotFoundException;
 import models.tours.Tour;
 
 /**
@@ -89,7 +92,13 @@ public abstract class Creature extends Rectangle
 	private final int TYPE;
 	
 	/**
-	 * chemin actuel de la creature
+	 * champ de direction suivi par la creature, partage avec toutes les
+	 * creatures qui se rendent a la meme zone d'arrivee
+	 */
+	private ChampDeDirection champDeDirection;
+	
+	/**
+	 * chemin actuel de la creature, si elle ne suit pas de champ de direction
 	 */
 	private ArrayList<Point> chemin;
 	
@@ -98,6 +107,21 @@ public abstract class Creature extends Rectangle
      */
 	private int indiceCourantChemin;
 	
+	/**
+     * prochain noeud a atteindre, lu dans le chemin ou le champ de direction
+     */
+	private Point pSuivant;
+	
+	/**
+     * version du champ de direction lors de la lecture de pSuivant
+     */
+	private int versionChamp;
+	
+	/**
+     * la creature a-t-elle atteint le point d'arrivee ?
+     */
+	private boolean arriveeEnZoneArrivee;
+	
 	/**
 	 * sante de la creature, si la sante est <= 0, la creature est morte. 
 	 * A ce moment la, elle donne au joueur ses pieces d'or
@@ -166,6 +190,57 @@ public abstract class Creature extends Rectangle
      */
     private boolean invincible = false;
 
+    /**
+     * Nombre de pas de simulation de la prédiction gardés pour comparer 
+     * une position du serveur à la position prédite au même pas
+     */
+    private static final int TAILLE_HISTORIQUE = 64;
+    
+    /**
+     * Ecart au-delà duquel la position du serveur est prise sans lissage
+     * (en pixels)
+     */
+    private static final double ECART_MAX_LISSAGE = 48.0;
+    
+    /**
+     * Utiliser pour les clients réseau.
+     * 
+     * La créature avance localement sur son chemin entre deux positions
+     * du serveur, qui corrigent la prédiction en douceur. Seul le serveur 
+     * décide de son arrivée en zone d'arrivée.
+     */
+    private boolean positionPredite = false;
+    
+    /**
+     * Dernière position reçue du serveur, pas encore prise en compte, son
+     * retard sur le pas courant et la durée jusqu'à la suivante (en pas)
+     */
+    private boolean positionServeurRecue = false;
+    private double xServeur, yServeur;
+    private int retardServeur, pasJusquAuSuivant;
+    
+    /**
+     * Positions prédites aux derniers pas et total des corrections 
+     * appliquées à ces pas, indexés par numéro de pas modulo 
+     * TAILLE_HISTORIQUE
+     */
+    private final double[] xPredits = new double[TAILLE_HISTORIQUE];
+    private final double[] yPredits = new double[TAILLE_HISTORIQUE];
+    private final double[] xCorriges = new double[TAILLE_HISTORIQUE];
+    private final double[] yCorriges = new double[TAILLE_HISTORIQUE];
+    private int nbPasPredits = 0;
+    
+    /**
+     * Total des corrections appliquées depuis la création
+     */
+    private double totalCorrectionX, totalCorrectionY;
+    
+    /**
+     * Correction restant à appliquer et temps pour l'appliquer
+     */
+    private double correctionX, correctionY;
+    private long dureeCorrectionRestante;
+
     private final double LARGEUR_MOITIE;
     private final double HAUTEUR_MOITIE;
 
@@ -221,11 +296,25 @@ public abstract class Creature extends Rectangle
 	
 	/**
 	 * Permet de recuperer le chemin actuellement suivi par la creature.
-	 * @return le chemin actuellement suivi par la creature
+	 * <p>
+	 * Si la creature suit un champ de direction, le chemin n'est pas stocke,
+	 * il est lu dans le champ depuis la position de la creature.
+	 * 
+	 * @return le chemin actuellement suivi par la creature ou null
 	 */
 	public ArrayList<Point> getChemin()
 	{
-		return chemin;
+	    if(champDeDirection == null)
+	        return chemin;
+	    
+	    try
+	    {
+	        return champDeDirection.getChemin((int) getCenterX(), (int) getCenterY());
+	    }
+	    catch(PathNotFoundException e)
+	    {
+	        return null;
+	    }
 	}
 
 	/**
@@ -416,6 +505,20 @@ public abstract class Creature extends Rectangle
 		this.yReel = y;
 	}
 
+	/**
+	 * Permet de modifier le champ de direction suivi par la creature
+	 * 
+	 * @param champDeDirection le champ de direction jusqu'a la zone d'arrivee
+	 */
+	public void setChampDeDirection(ChampDeDirection champDeDirection)
+	{
+	    this.champDeDirection = champDeDirection;
+	    chemin = null;
+	    
+	    // relecture depuis la position actuelle
+	    pSuivant = null;
+	}
+	
 	/**
 	 * Permet de modifier le chemin actuel de la creature
 	 * 
@@ -428,6 +531,8 @@ public abstract class Creature extends Rectangle
         indiceCourantChemin = 1; 
 	    
 	    this.chemin = chemin;
+	    champDeDirection = null;
+	    pSuivant = null;
 	}
 	
 	/**
@@ -450,9 +555,15 @@ public abstract class Creature extends Rectangle
 	    // avance la creature
 	    avancerSurChemin(tempsPasse);
 	    
+	    // rapproche la prediction de la position du serveur
+	    if(positionPredite)
+	    {
+	        lisserPosition(tempsPasse);
+	        memoriserPrediction();
+	    }
+	    
 	    // la creature est arrivee a destination !
-        if(chemin != null && indiceCourantChemin == chemin.size() 
-           && !aDetruire && !estMorte())
+        if(arriveeEnZoneArrivee && !aDetruire && !estMorte() && !positionPredite)
         {
             aDetruire = true;
 
@@ -466,16 +577,24 @@ public abstract class Creature extends Rectangle
 	/**
      * Permet de faire avancer la creature sur son chemin.
      * 
-     * Celle-ci avance sur le chemin en fonction du temps écoulé.
+     * Celle-ci avance sur le chemin en fonction du temps écoulé. A chaque
+     * noeud atteint, le noeud suivant est lu dans le chemin ou dans le champ 
+     * de direction.
      * 
      * @param tempsEcoule le temps ecoule depuis le dernier appel
      */
     protected void avancerSurChemin(long tempsEcoule)
     {
-        // si la creature a un chemin et que le chemin n'est pas terminee, 
+        // si la creature a un chemin ou suit un champ et n'est pas arrivee, 
         // elle avance...
-        if(chemin != null && indiceCourantChemin < chemin.size())
+        if((chemin != null || champDeDirection != null) && !arriveeEnZoneArrivee)
         {   
+            // le maillage a change, relecture depuis la position actuelle
+            if(pSuivant == null || (champDeDirection != null 
+                    && versionChamp != champDeDirection.getVersion()))
+                lirePointSuivant((int) Math.round(xReel + LARGEUR_MOITIE), 
+                                 (int) Math.round(yReel + HAUTEUR_MOITIE));
+            
             // calcul de la distance a parcourir sur le chemin
             double distanceAParcourir = getVitesseReelle() * ((double) tempsEcoule / 1000.0);
             
@@ -483,15 +602,12 @@ public abstract class Creature extends Rectangle
             //-- calcul de la position apres deplacement --
             //---------------------------------------------
             // tant que la créature n'a pas parcourue toute la distance
-            // qu'elle doit parcourir et que le chemin n'est pas terminé
-            while(distanceAParcourir > 0 && indiceCourantChemin < chemin.size())
+            // qu'elle doit parcourir et qu'elle a un noeud suivant
+            while(distanceAParcourir > 0 && pSuivant != null)
             {
                 // calcul du centre de la creature
                 double centreX = xReel + LARGEUR_MOITIE;
                 double centreY = yReel + HAUTEUR_MOITIE;
-                
-                // recuperation des noeuds
-                Point pSuivant   = chemin.get(indiceCourantChemin);
             
                 // calcul de l'angle entre la creature et le noeud suivant
                 // /!\ Math.atan2(y,x) /!\
@@ -515,7 +631,7 @@ public abstract class Creature extends Rectangle
                     yReel = pSuivant.y - HAUTEUR_MOITIE;
                     
                     // le prochain noeud devient le noeud suivant
-                    indiceCourantChemin++;
+                    lirePointSuivant(pSuivant.x, pSuivant.y);
                     
                     // diminution de la distance parcouru jusqu'au point
                     distanceAParcourir -= distanceCreatureNoeudSuivant;
@@ -537,6 +653,151 @@ public abstract class Creature extends Rectangle
             y = (int) Math.round(yReel);
         }
     }
+    
+    /**
+     * Permet de corriger la position predite par la derniere position 
+     * recue du serveur.
+     * <p>
+     * La position du serveur date de son pas de simulation : elle est 
+     * comparee a la position predite a ce meme pas, moins les corrections
+     * appliquees depuis. L'ecart est absorbe progressivement jusqu'au 
+     * pas de la position suivante du serveur pendant que la creature 
+     * continue d'avancer, ou d'un coup s'il est trop grand.
+     * 
+     * @param tempsEcoule le temps ecoule depuis le dernier appel
+     */
+    private void lisserPosition(long tempsEcoule)
+    {
+        synchronized(this)
+        {
+            if(positionServeurRecue)
+            {
+                positionServeurRecue = false;
+                
+                // position predite au pas du serveur (l'historique 
+                // commence a la creation de la creature)
+                int retard = Math.min(retardServeur, 
+                        Math.min(nbPasPredits, TAILLE_HISTORIQUE - 1));
+                
+                double xPredit = xReel, yPredit = yReel;
+                double dejaCorrigeX = 0.0, dejaCorrigeY = 0.0;
+                
+                if(retard > 0)
+                {
+                    int i = (nbPasPredits - retard) % TAILLE_HISTORIQUE;
+                    
+                    xPredit = xPredits[i];
+                    yPredit = yPredits[i];
+                    dejaCorrigeX = totalCorrectionX - xCorriges[i];
+                    dejaCorrigeY = totalCorrectionY - yCorriges[i];
+                }
+                
+                double ecartX = xServeur - xPredit;
+                double ecartY = yServeur - yPredit;
+                
+                if(Math.hypot(ecartX, ecartY) > ECART_MAX_LISSAGE)
+                {
+                    deplacer(ecartX - dejaCorrigeX, ecartY - dejaCorrigeY);
+                    correctionX = correctionY = 0.0;
+                    dureeCorrectionRestante = 0;
+                    
+                    // relecture du chemin depuis la nouvelle position
+                    pSuivant = null;
+                    arriveeEnZoneArrivee = false;
+                }
+                else
+                {
+                    // remplace la correction en cours
+                    correctionX = ecartX - dejaCorrigeX;
+                    correctionY = ecartY - dejaCorrigeY;
+                    dureeCorrectionRestante = Math.max(1, pasJusquAuSuivant) 
+                                            * OrdonnanceurDeSimulation.DUREE_PAS;
+                }
+            }
+        }
+        
+        if(dureeCorrectionRestante > 0)
+        {
+            double part = Math.min(1.0, (double) tempsEcoule / dureeCorrectionRestante);
+            
+            deplacer(correctionX * part, correctionY * part);
+            correctionX -= correctionX * part;
+            correctionY -= correctionY * part;
+            dureeCorrectionRestante -= tempsEcoule;
+        }
+        
+        x = (int) Math.round(xReel);
+        y = (int) Math.round(yReel);
+    }
+    
+    /**
+     * Deplace la prediction en tenant le total des corrections
+     */
+    private void deplacer(double dx, double dy)
+    {
+        xReel += dx;
+        yReel += dy;
+        totalCorrectionX += dx;
+        totalCorrectionY += dy;
+    }
+    
+    /**
+     * Garde la position predite du pas qui vient d'etre execute
+     */
+    private synchronized void memoriserPrediction()
+    {
+        nbPasPredits++;
+        
+        int i = nbPasPredits % TAILLE_HISTORIQUE;
+        
+        xPredits[i]  = xReel;
+        yPredits[i]  = yReel;
+        xCorriges[i] = totalCorrectionX;
+        yCorriges[i] = totalCorrectionY;
+    }
+    
+    /**
+     * Permet de lire le noeud suivant dans le chemin ou le champ de direction
+     * 
+     * @param x la position x actuelle
+     * @param y la position y actuelle
+     */
+    private void lirePointSuivant(int x, int y)
+    {
+        if(champDeDirection == null)
+        {
+            // le noeud courant est atteint, on passe au suivant
+            if(pSuivant != null)
+                indiceCourantChemin++;
+            
+            if(indiceCourantChemin < chemin.size())
+                pSuivant = chemin.get(indiceCourantChemin);
+            else
+            {
+                pSuivant = null;
+                arriveeEnZoneArrivee = true;
+            }
+            
+            return;
+        }
+        
+        versionChamp = champDeDirection.getVersion();
+        
+        try
+        {
+            pSuivant = champDeDirection.getPointSuivant(x, y);
+            
+            if(pSuivant == null)
+                arriveeEnZoneArrivee = true;
+        }
+        catch (PathNotFoundException e)
+        {
+            // s'il n'y a pas de chemin, on garde le noeud suivant
+            // tant qu'il n'est pas atteint.
+            if(pSuivant != null && pSuivant.x == x && pSuivant.y == y)
+                pSuivant = null;
+        }
+    }
 	
 	/**
 	 * Permet de faire subir des degats sur la creature
@@ -734,6 +995,48 @@ public abstract class Creature extends Rectangle
         this.vitesseNormale = vitesse;
     }
 
+    /**
+     * Permet d'activer la prediction de la position entre les mises a jour
+     * du serveur (clients réseau).
+     * 
+     * @param positionPredite true pour predire la position
+     */
+    public void setPositionPredite(boolean positionPredite)
+    {
+        this.positionPredite = positionPredite;
+    }
+    
+    /**
+     * Permet de donner la position de la creature connue du serveur.
+     * <p>
+     * Si la position est predite, elle sera rejointe en douceur au 
+     * prochain pas de jeu, sinon elle est prise directement.
+     * 
+     * @param x la position sur l'axe X de la creature
+     * @param y la position sur l'axe Y de la creature
+     * @param retard le nombre de pas de simulation entre le pas du serveur
+     *        de cette position et le pas courant
+     * @param pasJusquAuSuivant le nombre de pas avant la prochaine 
+     *        position du serveur, duree de la correction
+     */
+    synchronized public void corrigerPosition(int x, int y, int retard, 
+            int pasJusquAuSuivant)
+    {
+        if(positionPredite)
+        {
+            xServeur = x;
+            yServeur = y;
+            retardServeur = Math.max(0, retard);
+            this.pasJusquAuSuivant = pasJusquAuSuivant;
+            positionServeurRecue = true;
+        }
+        else
+        {
+            setX(x);
+            setY(y);
+        }
+    }
+
     long tempsDerniereMAJ = 0;
     /**
      * Permet d'indiquer une mise à jour de la créature
@@ -21,36 +21,44 @@ package models.creatures;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Vector;
 
 import models.jeu.Jeu;
+import models.jeu.PhaseDeSimulation;
 import models.joueurs.Equipe;
 import models.joueurs.GestionnaireDeRevenu;
 import models.joueurs.Joueur;
-import models.maillage.PathNotFoundException;
 import models.outils.Outils;
 
 /**
- * Classe d'encapsulation des tours.
+ * Classe d'encapsulation des creatures.
  * 
- * Permet de faire vivre toutes les tours sous le meme thread et ainsi 
- * aleger le processeur.
- * 
- * Toutes les tours tournent sous le meme clock.
+ * Les creatures sont animees a chaque pas de l'ordonnanceur de simulation
+ * du jeu, sous le meme thread que les tours et les animations.
  * 
  * @author Aurélien Da Campo
  * @version 1.1 | juin 2010
  * @since jdk1.6.0_16
  * @see Creature
+ * @see models.jeu.OrdonnanceurDeSimulation
  */
-public class GestionnaireCreatures implements Runnable
+public class GestionnaireCreatures implements PhaseDeSimulation
 {
-    private static final long TEMPS_ATTENTE = 50; // ms
     private static final int MARGES_LANCEMENT_ALEA = 5; // pixel
     
     private Vector<Creature> creatures = new Vector<Creature>();
+    private ArrayList<Creature> creaturesASupprimer = new ArrayList<Creature>();
+    private GrilleDeCreatures grille;
+    
+    /**
+     * Copie en lecture seule des creatures, publiee une fois par pas de 
+     * simulation et a chaque ajout ou suppression.
+     */
+    private volatile List<Creature> instantane = Collections.emptyList();
     private boolean gestionEnCours;
     private boolean enPause = false;
     private Object pause = new Object();
@@ -69,8 +77,7 @@ public class GestionnaireCreatures implements Runnable
      */
     public void demarrer()
     {
-        Thread thread = new Thread(this);
-        thread.start();
+        gestionEnCours = true;
     }
     
     /**
@@ -84,6 +91,10 @@ public class GestionnaireCreatures implements Runnable
             throw new IllegalArgumentException("Creature nulle");
         
         creatures.add(creature);
+        publierInstantane();
+        
+        // visible des tours avant le prochain pas
+        getGrille().ajouter(creature);
     }
     
     /**
@@ -91,64 +102,81 @@ public class GestionnaireCreatures implements Runnable
      */
     public void supprimerCreature(Creature creature)
     {
-        if (creature != null)
-            creatures.remove(creature);  
+        if (creature != null && creatures.remove(creature))
+            publierInstantane();
     }
 
     @Override
-    public void run()
+    public void executerPas(long dureePas)
     {
-        gestionEnCours = true;
+        if(!gestionEnCours)
+            return;
         
-        ArrayList<Creature> creaturesASupprimer = new ArrayList<Creature>();
         Creature creature;
         
-        while(gestionEnCours)
-        { 
-            try
-            {
-               
-                Enumeration<Creature> eCreatures = creatures.elements();
-                while(eCreatures.hasMoreElements())
-                {
-                    creature = eCreatures.nextElement();
-                    
-                    creature.effacerSiPasMisAJour();
-                    
-                    // efface les creatures mortes
-                    if(creature.aDetruire())
-                        // ajout dans la liste des créatures à supprimer
-                        creaturesASupprimer.add(creature);
-                    else
-                        // anime la creature
-                        creature.action((long)(TEMPS_ATTENTE*jeu.getCoeffVitesse()));
-                }
-            }
-            catch(NoSuchElementException nse)
-            {
-                System.err.println("[ERREUR] Créature introuvable");
-            }
-            
-            // suppression des créatures
-            for(Creature creatureASupprimer : creaturesASupprimer)
-                creatures.remove(creatureASupprimer);
-            creaturesASupprimer.clear();
-            
-            // gestion de la pause
-            try
+        try
+        {
+            Enumeration<Creature> eCreatures = creatures.elements();
+            while(eCreatures.hasMoreElements())
             {
-                synchronized (pause)
-                {
-                    if(enPause)
-                        pause.wait();
-                } 
-            
-                Thread.sleep(TEMPS_ATTENTE);
-            } 
-            catch (InterruptedException e){
-                 e.printStackTrace();
+                creature = eCreatures.nextElement();
+                
+                creature.effacerSiPasMisAJour();
+                
+                // efface les creatures mortes
+                if(creature.aDetruire())
+                    // ajout dans la liste des créatures à supprimer
+                    creaturesASupprimer.add(creature);
+                else
+                    // anime la creature
+                    creature.action((long)(dureePas*jeu.getCoeffVitesse()));
             }
         }
+        catch(NoSuchElementException nse)
+        {
+            System.err.println("[ERREUR] Créature introuvable");
+        }
+        
+        // suppression des créatures
+        for(Creature creatureASupprimer : creaturesASupprimer)
+            creatures.remove(creatureASupprimer);
+        creaturesASupprimer.clear();
+        
+        // indexation des nouvelles positions
+        synchronized (creatures)
+        {
+            getGrille().reconstruire(creatures);
+        }
+        
+        publierInstantane();
+    }
+    
+    /**
+     * Permet de publier une nouvelle copie des creatures pour les lecteurs.
+     */
+    private void publierInstantane()
+    {
+        synchronized (creatures)
+        {
+            instantane = Collections.unmodifiableList(new ArrayList<Creature>(creatures));
+        }
+    }
+    
+    /**
+     * Permet de recuperer la grille d'indexation des creatures.
+     * 
+     * La grille est creee a la premiere utilisation car le terrain
+     * n'est pas encore connu a la construction du gestionnaire. Elle peut
+     * etre demandee en meme temps par le lanceur de vagues et la simulation.
+     * 
+     * @return la grille des creatures
+     */
+    synchronized private GrilleDeCreatures getGrille()
+    {
+        if(grille == null)
+            grille = new GrilleDeCreatures(jeu.getTerrain().getLargeur(), 
+                                           jeu.getTerrain().getHauteur());
+        return grille;
     }
     
     /**
@@ -160,12 +188,17 @@ public class GestionnaireCreatures implements Runnable
     }
     
     /**
-     * Permet de recuperer une copie de la collection des creatures
+     * Permet de recuperer les creatures.
+     * 
+     * Il s'agit d'une copie en lecture seule publiee au dernier pas de 
+     * simulation (ou au dernier ajout / suppression). Elle n'est pas 
+     * recopiee a chaque appel et peut etre parcourue sans synchronisation.
+     * 
+     * @return les creatures en lecture seule
      */
-    @SuppressWarnings("unchecked")
-    public Vector<Creature> getCreatures()
+    public List<Creature> getCreatures()
     {
-        return (Vector<Creature>) creatures.clone();
+        return instantane;
     }
     
     /**
@@ -188,6 +221,24 @@ public class GestionnaireCreatures implements Runnable
         }
     }
 
+    /**
+     * Permet de recuperer les créatures proches d'un point.
+     * 
+     * Seules les cellules de la grille qui touchent le cercle sont parcourues.
+     * Le resultat peut contenir des créatures hors du cercle, la distance
+     * exacte doit etre controlee par l'appelant.
+     * 
+     * @param x centre x du cercle
+     * @param y centre y du cercle
+     * @param rayon rayon du cercle
+     * @param resultat la collection a remplir (elle est videe avant)
+     */
+    public void getCreaturesProches(double x, double y, double rayon, 
+                                    ArrayList<Creature> resultat)
+    {
+        getGrille().getCreaturesProches(x, y, rayon, resultat);
+    }
+    
     /**
      * Permet de recupérer le créatures qui intersectent un rectangle
      * 
@@ -286,6 +337,7 @@ public class GestionnaireCreatures implements Runnable
         arreterCreatures();
         
         creatures.clear();
+        publierInstantane();
     }
     
     
@@ -318,7 +370,6 @@ public class GestionnaireCreatures implements Runnable
                     
                     // Actuellement c'est un random sur le nombre de zone
                     final Rectangle ZONE_DEPART = equipeCiblee.getZoneDepartCreatures(Outils.tirerNombrePseudoAleatoire(0, equipeCiblee.getNbZonesDepart()-1));
-                    final Rectangle ZONE_ARRIVEE = equipeCiblee.getZoneArriveeCreatures();
                     
                     int xDepart = (int) ZONE_DEPART.getCenterX();
                     int yDepart = (int) ZONE_DEPART.getCenterY();
@@ -361,17 +412,8 @@ public class GestionnaireCreatures implements Runnable
                         creature.setEquipeCiblee(equipeCiblee);
                         creature.ajouterEcouteurDeCreature(edc);
             
-                        try
-                        {    
-                            creature.setChemin(jeu.getTerrain().getCheminLePlusCourt(xDepart,
-                                    yDepart, (int) ZONE_ARRIVEE.getCenterX(),
-                                    (int) ZONE_ARRIVEE.getCenterY(), creature.getType()));
-                            
-                        }
-                        catch (PathNotFoundException e1) 
-                        {
-                            // le chemin reste nul.
-                        }
+                        // chemin jusqu'a la zone d'arrivee de l'equipe ciblee
+                        jeu.getTerrain().guiderCreature(creature);
             
                         lanceur.ajouterRevenu(creature.getNbPiecesDOr()
                                 *GestionnaireDeRevenu.POURCENTAGE_NB_PIECES_OR_CREATURE);
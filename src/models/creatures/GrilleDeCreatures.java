@@ -0,0 +1,146 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package models.creatures;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Grille uniforme d'indexation spatiale des creatures.
+ * <p>
+ * Le terrain est decoupe en cellules carrees de TAILLE_CELLULE pixels. Chaque
+ * creature est rangee dans la cellule qui contient sa position (x,y). Une
+ * recherche dans un cercle ne parcourt alors que les cellules qui touchent
+ * le carre englobant du cercle.
+ * <p>
+ * La grille est reconstruite a chaque pas de simulation par le gestionnaire
+ * des creatures. Les listes des cellules sont reutilisees d'un pas a l'autre.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @since jdk1.6.0_16
+ * @see GestionnaireCreatures
+ */
+public class GrilleDeCreatures
+{
+    /**
+     * Taille d'une cellule de la grille
+     */
+    public static final int TAILLE_CELLULE = 64; // pixels
+
+    private final int nbColonnes;
+    private final int nbLignes;
+    private final ArrayList<ArrayList<Creature>> cellules;
+
+    /**
+     * Constructeur de la grille
+     *
+     * @param largeur la largeur du terrain en pixels
+     * @param hauteur la hauteur du terrain en pixels
+     */
+    public GrilleDeCreatures(int largeur, int hauteur)
+    {
+        nbColonnes = Math.max(1, (largeur + TAILLE_CELLULE - 1) / TAILLE_CELLULE);
+        nbLignes   = Math.max(1, (hauteur + TAILLE_CELLULE - 1) / TAILLE_CELLULE);
+
+        cellules = new ArrayList<ArrayList<Creature>>(nbColonnes * nbLignes);
+
+        for(int i = 0; i < nbColonnes * nbLignes; i++)
+            cellules.add(new ArrayList<Creature>());
+    }
+
+    /**
+     * Permet de reconstruire la grille a partir d'une collection de creatures
+     *
+     * @param creatures les creatures a indexer
+     */
+    synchronized public void reconstruire(Collection<Creature> creatures)
+    {
+        for(ArrayList<Creature> cellule : cellules)
+            cellule.clear();
+
+        for(Creature creature : creatures)
+            cellules.get(getIndiceCellule(creature.x, creature.y)).add(creature);
+    }
+
+    /**
+     * Permet d'ajouter une creature sans reconstruire la grille
+     *
+     * @param creature la creature a ajouter
+     */
+    synchronized public void ajouter(Creature creature)
+    {
+        cellules.get(getIndiceCellule(creature.x, creature.y)).add(creature);
+    }
+
+    /**
+     * Permet de recuperer les creatures des cellules qui touchent un cercle.
+     * <p>
+     * Le resultat est un sur-ensemble des creatures dans le cercle,
+     * la distance exacte doit etre controlee par l'appelant.
+     *
+     * @param x centre x du cercle
+     * @param y centre y du cercle
+     * @param rayon rayon du cercle
+     * @param resultat la collection a remplir (elle est videe avant)
+     */
+    synchronized public void getCreaturesProches(double x, double y, double rayon,
+                                                 ArrayList<Creature> resultat)
+    {
+        resultat.clear();
+
+        int colMin = getColonne(x - rayon);
+        int colMax = getColonne(x + rayon);
+        int ligMin = getLigne(y - rayon);
+        int ligMax = getLigne(y + rayon);
+
+        for(int ligne = ligMin; ligne <= ligMax; ligne++)
+            for(int colonne = colMin; colonne <= colMax; colonne++)
+                resultat.addAll(cellules.get(ligne * nbColonnes + colonne));
+    }
+
+    private int getIndiceCellule(double x, double y)
+    {
+        return getLigne(y) * nbColonnes + getColonne(x);
+    }
+
+    private int getColonne(double x)
+    {
+        int colonne = (int) Math.floor(x / TAILLE_CELLULE);
+
+        if(colonne < 0)
+            return 0;
+        else if(colonne >= nbColonnes)
+            return nbColonnes - 1;
+
+        return colonne;
+    }
+
+    private int getLigne(double y)
+    {
+        int ligne = (int) Math.floor(y / TAILLE_CELLULE);
+
+        if(ligne < 0)
+            return 0;
+        else if(ligne >= nbLignes)
+            return nbLignes - 1;
+
+        return ligne;
+    }
+}
@@ -22,6 +22,7 @@ import i18n.Langue;
 
 import java.awt.Graphics2D;
 import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
 import outils.myTimer;
 import exceptions.*;
 import models.animations.*;
@@ -44,6 +45,7 @@ import models.tours.*;
  * @see GestionnaireTours
  * @see GestionnaireCreatures
  * @see GestionnaireAnimations
+ * @see OrdonnanceurDeSimulation
  */
 public abstract class Jeu implements EcouteurDeJoueur,
                                      EcouteurDeCreature, 
@@ -118,6 +120,19 @@ public abstract class Jeu implements EcouteurDeJoueur,
      */
 	protected GestionnaireAnimations gestionnaireAnimations;
 
+    /**
+     * Fait vivre les gestionnaires sous un seul thread a pas fixe
+     * 
+     * @see OrdonnanceurDeSimulation
+     */
+    protected OrdonnanceurDeSimulation ordonnanceur;
+    
+    /**
+     * Pool de simulation partage avec d'autres parties, null pour un 
+     * thread de simulation propre a la partie
+     */
+    private ScheduledExecutorService poolDeSimulation;
+
     /**
      * Variable d'etat de la pause
      */
@@ -186,6 +201,7 @@ public abstract class Jeu implements EcouteurDeJoueur,
         gestionnaireTours      = new GestionnaireTours(this);
         gestionnaireCreatures  = new GestionnaireCreatures(this);
         gestionnaireAnimations = new GestionnaireAnimations(this);
+        ordonnanceur           = new OrdonnanceurDeSimulation();
     }
     
     /**
@@ -248,6 +264,7 @@ public abstract class Jeu implements EcouteurDeJoueur,
         
         
         // arret des gestionnaires
+        ordonnanceur.arreter();
         gestionnaireTours.arreterTours();
         gestionnaireCreatures.arreterCreatures();
         gestionnaireAnimations.arreterAnimations();
@@ -255,6 +272,7 @@ public abstract class Jeu implements EcouteurDeJoueur,
         gestionnaireTours = new GestionnaireTours(this);
         gestionnaireCreatures = new GestionnaireCreatures(this);
         gestionnaireAnimations = new GestionnaireAnimations(this);
+        ordonnanceur = new OrdonnanceurDeSimulation();
         
         
         
@@ -294,6 +312,13 @@ public abstract class Jeu implements EcouteurDeJoueur,
         gestionnaireCreatures.demarrer();
         gestionnaireAnimations.demarrer();
         
+        ajouterPhasesDeSimulation(ordonnanceur);
+        
+        if(poolDeSimulation != null)
+            ordonnanceur.demarrer(poolDeSimulation);
+        else
+            ordonnanceur.demarrer();
+        
         timer.start();
         
         estDemarre = true;
@@ -303,6 +328,32 @@ public abstract class Jeu implements EcouteurDeJoueur,
             edj.partieDemarree();
     }
     
+    /**
+     * Permet de faire executer la simulation de la partie par un pool 
+     * partage entre plusieurs parties (avant le demarrage)
+     * 
+     * @param pool le pool ou null pour un thread propre a la partie
+     */
+    public void setPoolDeSimulation(ScheduledExecutorService pool)
+    {
+        poolDeSimulation = pool;
+    }
+    
+    /**
+     * Permet d'enregistrer les phases executees a chaque pas de simulation.
+     * 
+     * L'ordre est fixe : les creatures avancent, les tours tirent puis 
+     * les animations sont animees.
+     * 
+     * @param ordonnanceur l'ordonnanceur de simulation
+     */
+    protected void ajouterPhasesDeSimulation(OrdonnanceurDeSimulation ordonnanceur)
+    {
+        ordonnanceur.ajouterPhase(gestionnaireCreatures);
+        ordonnanceur.ajouterPhase(gestionnaireTours);
+        ordonnanceur.ajouterPhase(gestionnaireAnimations);
+    }
+    
     /**
      * Indique au jeu qu'une vague veut etre lancée
      * 
@@ -334,12 +385,10 @@ public abstract class Jeu implements EcouteurDeJoueur,
         if (!laTourPeutEtrePosee(tour))
             throw new ZoneInaccessibleException(Langue.getTexte(Langue.ID_ERROR_POSE_IMPOSSIBLE_ZONE_INACCESSIBLE));
 
-        // si elle bloque le chemin de A vers B
-        if (terrain.laTourBloqueraLeChemin(tour))
+        // desactive la zone dans le maillage qui correspond a la tour,
+        // sauf si elle bloque le chemin de A vers B
+        if (!terrain.desactiverZoneSiCheminLibre(tour))
             throw new CheminBloqueException(Langue.getTexte(Langue.ID_ERROR_POSE_IMPOSSIBLE_CHEMIN_BLOQUE));
-        
-        // desactive la zone dans le maillage qui correspond a la tour
-        terrain.desactiverZone(tour, true);
 
         // ajout de la tour
         gestionnaireTours.ajouterTour(tour);
@@ -514,20 +563,39 @@ public abstract class Jeu implements EcouteurDeJoueur,
     }
     
     /**
-     * Permet de recuperer le gestionnaire de creatures
+     * Permet de recuperer les creatures en lecture seule
      * 
-     * @return le gestionnaire de creatures
+     * @return les creatures du dernier pas de simulation
+     * @see GestionnaireCreatures#getCreatures()
      */
-    public Vector<Creature> getCreatures()
+    public List<Creature> getCreatures()
     {
         return gestionnaireCreatures.getCreatures();
     }
 
+    /**
+     * Permet de recuperer les creatures proches d'un point
+     * 
+     * @param x centre x du cercle
+     * @param y centre y du cercle
+     * @param rayon rayon du cercle
+     * @param resultat la collection a remplir (elle est videe avant)
+     * @see GestionnaireCreatures#getCreaturesProches(double, double, double, ArrayList)
+     */
+    public void getCreaturesProches(double x, double y, double rayon, 
+                                    ArrayList<Creature> resultat)
+    {
+        gestionnaireCreatures.getCreaturesProches(x, y, rayon, resultat);
+    }
+
     /**
      * Permet de stope tous les threads des elements
      */
     protected void arreterTout()
     {
+        // arret de la simulation
+        ordonnanceur.arreter();
+        
         // arret de toutes les tours
         gestionnaireTours.arreterTours();
 
@@ -550,16 +618,14 @@ public abstract class Jeu implements EcouteurDeJoueur,
     {
         if(enPause)
         {
-            gestionnaireTours.sortirDeLaPause();
+            ordonnanceur.sortirDeLaPause();
             gestionnaireCreatures.sortirDeLaPause();
-            gestionnaireAnimations.sortirDeLaPause();
             timer.play();
         }
         else
         {
-            gestionnaireTours.mettreEnPause();
+            ordonnanceur.mettreEnPause();
             gestionnaireCreatures.mettreEnPause();
-            gestionnaireAnimations.mettreEnPause();
             timer.pause();
         }
         
@@ -1010,6 +1076,8 @@ public abstract class Jeu implements EcouteurDeJoueur,
     {
         estDetruit = true;
         
+        ordonnanceur.arreter();
+        
         gestionnaireCreatures.detruire();
         gestionnaireTours.detruire();
         gestionnaireAnimations.detruire();
@@ -1098,6 +1166,17 @@ public abstract class Jeu implements EcouteurDeJoueur,
         return MODE_DE_POSITIONNEMENT;
     }
     
+    /**
+     * Permet de recuperer le numero du pas de simulation courant
+     * 
+     * @return le nombre de pas executes depuis le demarrage de la partie
+     * @see OrdonnanceurDeSimulation#getNoPas()
+     */
+    public long getNoPasDeSimulation()
+    {
+        return ordonnanceur.getNoPas();
+    }
+    
     /**
      * Permet d'ajouter une equipe (utilisé pour l'éditeur de terrain)
      * 
@@ -17,6 +17,7 @@
 */
 
 package models.jeu;
+import java.awt.Rectangle;
 import java.net.ConnectException;
 import exceptions.*;
 import reseau.CanalException;
@@ -38,6 +39,17 @@ public class Jeu_Client extends Jeu
 {
     private ClientJeu clientJeu;
     
+    /**
+     * Temps minimum entre deux envois de la vue au serveur (en ms)
+     */
+    private static final long TEMPS_ENTRE_ENVOIS_VUE = 250;
+    
+    /**
+     * Dernière vue envoyée au serveur et date de l'envoi
+     */
+    private Rectangle vueEnvoyee;
+    private long tempsEnvoiVue;
+    
     public Jeu_Client(Joueur joueur)
     {
         setJoueurPrincipal(joueur);
@@ -113,6 +125,19 @@ public class Jeu_Client extends Jeu
     {
         clientJeu.etablirConnexion(IP, port);
     }
+    
+    /**
+     * Permet de se connecter à une partie hébergée avec d'autres sur le même
+     * port
+     * 
+     * @param idPartie l'identificateur de la partie chez l'hôte, 0 si elle
+     *        est seule sur le port
+     */
+    public void connexionAvecLeServeur(String IP, int port, int idPartie) 
+        throws ConnectException, CanalException, AucunEmplacementDisponibleException
+    {
+        clientJeu.etablirConnexion(IP, port, idPartie);
+    }
 
     /**
      * Permet de poser une tour directement (sans contrôle)
@@ -126,6 +151,19 @@ public class Jeu_Client extends Jeu
             tour.mettreEnJeu();
             tour.setJeu(this);
             
+            // les créatures prédites suivent le même chemin que sur le serveur
+            try
+            {
+                terrain.desactiverZone(tour, true);
+            }
+            catch(IllegalArgumentException e)
+            {
+                // le serveur a accepté la tour, elle est affichée même si 
+                // le chemin prédit n'en tient pas compte
+                System.err.println("Jeu_Client.poserTourDirect() : tour hors du maillage "
+                        + tour + " (" + e.getMessage() + ")");
+            }
+            
             gestionnaireTours.ajouterTour(tour);
         }
     }
@@ -193,6 +231,35 @@ public class Jeu_Client extends Jeu
         } 
     }
     
+    /**
+     * Permet de signaler la zone du terrain affichée par le joueur.
+     * <p>
+     * La zone n'est envoyée au serveur que si elle a changé, au plus tous 
+     * les TEMPS_ENTRE_ENVOIS_VUE ms.
+     * 
+     * @param vue la zone du terrain affichée
+     */
+    public void signalerVue(Rectangle vue)
+    {
+        long maintenant = System.currentTimeMillis();
+        
+        if(vue.equals(vueEnvoyee) 
+        || maintenant - tempsEnvoiVue < TEMPS_ENTRE_ENVOIS_VUE)
+            return;
+        
+        try
+        {
+            clientJeu.envoyerVue(vue);
+            
+            vueEnvoyee    = vue;
+            tempsEnvoiVue = maintenant;
+        }
+        catch (CanalException e)
+        {
+            erreurCanal(e);
+        } 
+    }
+    
     /**
      * Permet d'annoncer une erreur du canal
      * 
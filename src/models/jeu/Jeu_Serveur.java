@@ -22,6 +22,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
 import java.net.ConnectException;
+import java.util.concurrent.Executor;
 
 import models.creatures.Creature;
 import models.joueurs.GestionnaireDeRevenu;
@@ -30,7 +31,9 @@ import models.joueurs.Joueur;
 import org.json.JSONException;
 import org.json.JSONObject;
 import outils.Configuration;
+import reseau.Canal;
 import reseau.CanalTCP;
+import reseau.CanalTrames;
 import reseau.CanalException;
 import reseau.jeu.serveur.ServeurJeu;
 import serveur.enregistrement.CodeEnregistrement;
@@ -50,17 +53,35 @@ public class Jeu_Serveur extends Jeu
     /**
      * Connexion au serveur d'enregistrement
      */
-    private CanalTCP canalServeurEnregistrement;
+    private Canal canalServeurEnregistrement;
     
     /**
      * Connexions réseaux du serveur
      */
     private ServeurJeu serveurDeJeu;
     
+    /**
+     * Port d'écoute annoncé au SE et identificateur de la partie sur ce port
+     * (0 : seule partie du port, autrement hébergée avec d'autres)
+     */
+    private int portDEcoute = Configuration.getPortSJ();
+    private int idPartie = 0;
+    
     /**
      * Permet de savoir si l'enregistrement au SE a réussi
      */
-    private boolean enregistrementReussie = false;
+    private volatile boolean enregistrementReussie = false;
+    
+    /**
+     * Période de renouvellement du bail de l'enregistrement par défaut (ms),
+     * si le SE n'indique pas la durée de ses baux
+     */
+    private static final long PERIODE_RENOUVELLEMENT = 20000;
+    
+    /**
+     * Verrou des échanges avec le SE (renouvellement et interface)
+     */
+    private final Object verrouSE = new Object();
     
     /**
      * Gestionnaire de revenu.
@@ -78,10 +99,10 @@ public class Jeu_Serveur extends Jeu
     @Override
     public void demarrer()
     {
-        super.demarrer();
-        
         gRevenus.demarrer();
         
+        super.demarrer();
+        
         
         // gestionnaire des niveaux (applé toutes les secondes de jeu)
         timer.addActionListener(new ActionListener()
@@ -105,6 +126,15 @@ public class Jeu_Serveur extends Jeu
         });
     }
     
+    @Override
+    protected void ajouterPhasesDeSimulation(OrdonnanceurDeSimulation ordonnanceur)
+    {
+        super.ajouterPhasesDeSimulation(ordonnanceur);
+        
+        // les revenus sont distribues apres les autres phases
+        ordonnanceur.ajouterPhase(gRevenus);
+    }
+    
     @Override
     synchronized public void creatureTuee(Creature creature, Joueur tueur)
     {
@@ -139,7 +169,50 @@ public class Jeu_Serveur extends Jeu
     {
         serveurDeJeu = new ServeurJeu(this);
     }
+    
+    /**
+     * Permet d'établir le serveur d'une partie hébergée avec d'autres dans le
+     * même processus : il n'écoute aucun port, l'hôte lui transmet les 
+     * connexions qui demandent cette partie.
+     * 
+     * @param idPartie l'identificateur de la partie chez l'hôte (> 0)
+     * @param portDEcoute le port d'écoute de l'hôte
+     * @param poolDActions le pool de l'hôte qui exécute les actions des 
+     *        joueurs de toutes ses parties
+     * @return le serveur de jeu
+     * @throws IOException 
+     */
+    public ServeurJeu etablissementDuServeurHeberge(int idPartie, int portDEcoute, 
+            Executor poolDActions) throws IOException
+    {
+        if(idPartie <= 0)
+            throw new IllegalArgumentException("Identificateur de partie invalide : " + idPartie);
+        
+        this.idPartie    = idPartie;
+        this.portDEcoute = portDEcoute;
+        
+        serveurDeJeu = new ServeurJeu(this, false, poolDActions);
+        
+        return serveurDeJeu;
+    }
+    
+    /**
+     * @return l'identificateur de la partie chez son hôte, 0 si elle est 
+     *         seule sur son port
+     */
+    public int getIdPartie()
+    {
+        return idPartie;
+    }
 
+    /**
+     * @return le serveur de jeu ou null s'il n'est pas établi
+     */
+    public ServeurJeu getServeurDeJeu()
+    {
+        return serveurDeJeu;
+    }
+    
     /**
      * Permet de stopper le serveur de jeu
      */
@@ -165,12 +238,17 @@ public class Jeu_Serveur extends Jeu
     {
         try
         {
-            canalServeurEnregistrement = new CanalTCP(Configuration.getIpSE(), 
-                                                      Configuration.getPortSE());
+            if(Configuration.TRANSPORT_TRAMES.equals(Configuration.getTransportSE()))
+                canalServeurEnregistrement = new CanalTrames(Configuration.getIpSE(), 
+                                                             Configuration.getPortSE());
+            else
+                canalServeurEnregistrement = new CanalTCP(Configuration.getIpSE(), 
+                                                          Configuration.getPortSE());
             
             // Création de la requete d'enregistrement
             String requete = RequeteEnregistrement.getRequeteEnregistrer(
-                    nomServeur, Configuration.getPortSJ(), nbJoueurs, nomTerrain, ModeDeJeu.getNomMode(mode));
+                    nomServeur, portDEcoute, idPartie, nbJoueurs, 
+                    nbJoueurs - getJoueurs().size(), nomTerrain, ModeDeJeu.getNomMode(mode));
 
             // Envoie de la requete
             canalServeurEnregistrement.envoyerString(requete);
@@ -186,6 +264,11 @@ public class Jeu_Serveur extends Jeu
                 if(jsonResultat.getInt("status") == CodeEnregistrement.OK)
                 {
                     enregistrementReussie = true;
+                    
+                    // renouvellement du bail, trois fois par bail
+                    long dureeBail = jsonResultat.optLong("dureeBail", 0);
+                    lancerRenouvellementSE(dureeBail > 0 ? dureeBail / 3 : PERIODE_RENOUVELLEMENT);
+                    
                     return true;
                 }
                 else
@@ -207,50 +290,95 @@ public class Jeu_Serveur extends Jeu
      */
     public void desenregistrerSurSE()
     {
-        // fermeture du canal s'il est ouvert
-        if (canalServeurEnregistrement != null && estEnregisterSurSE())
+        synchronized(verrouSE)
         {
-            try
+            // fermeture du canal s'il est ouvert
+            if (canalServeurEnregistrement != null && estEnregisterSurSE())
             {
-                // désenregistrement du serveur
-                canalServeurEnregistrement.envoyerString(RequeteEnregistrement.DESENREGISTRER);
-                canalServeurEnregistrement.recevoirString();
+                try
+                {
+                    // désenregistrement du serveur
+                    canalServeurEnregistrement.envoyerString(RequeteEnregistrement.DESENREGISTRER);
+                    canalServeurEnregistrement.recevoirString();
 
-                // fermeture propre du canal
-                //canalServeurEnregistrement.envoyerString(RequeteEnregistrement.STOP);
-                //canalServeurEnregistrement.recevoirString();
+                    // fermeture propre du canal
+                    //canalServeurEnregistrement.envoyerString(RequeteEnregistrement.STOP);
+                    //canalServeurEnregistrement.recevoirString();
             
-                canalServeurEnregistrement.fermer();}
-                // il y a eu une erreur... on quitte tout de même
+                    canalServeurEnregistrement.fermer();}
+                    // il y a eu une erreur... on quitte tout de même
             
-            catch (CanalException ce)
-            {
-                ce.printStackTrace();
+                catch (CanalException ce)
+                {
+                    ce.printStackTrace();
+                }
+            
+                // arrêt du renouvellement du bail
+                enregistrementReussie = false;
             }
         }
     }
     
     /**
-     * Permet de mettre à jour les infos du jeu sur le SE
+     * Permet de lancer la tache de renouvellement du bail de l'enregistrement
+     * sur le SE. Sans renouvellement, le SE enlève la partie de sa liste.
+     * 
+     * @param periode la période de renouvellement (ms)
      */
-    public void miseAJourSE()
+    private void lancerRenouvellementSE(final long periode)
     {
-        if(enregistrementReussie)
+        Thread t = new Thread(new Runnable()
         {
-            // Création de la requete d'enregistrement
-            String requete = RequeteEnregistrement.getRequeteMiseAJour(terrain.getNbJoueursMax() - getJoueurs().size());
+            @Override
+            public void run()
+            {
+                while(enregistrementReussie)
+                {
+                    try
+                    {
+                        Thread.sleep(periode);
+                    } 
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                    
+                    miseAJourSE();
+                }
+            }
+        });
+        
+        t.setDaemon(true);
+        t.start();
+    }
     
-            try
+    /**
+     * Permet de mettre à jour les infos du jeu sur le SE.
+     * 
+     * Renouvelle aussi le bail de l'enregistrement, cette méthode est 
+     * appelée périodiquement tant que le jeu est enregistré.
+     */
+    public void miseAJourSE()
+    {
+        synchronized(verrouSE)
+        {
+            if(enregistrementReussie)
             {
-                // Envoie de la requete 
-                canalServeurEnregistrement.envoyerString(requete);
+                // Création de la requete d'enregistrement
+                String requete = RequeteEnregistrement.getRequeteMiseAJour(terrain.getNbJoueursMax() - getJoueurs().size());
+    
+                try
+                {
+                    // Envoie de la requete 
+                    canalServeurEnregistrement.envoyerString(requete);
             
-                // Attente du résultat
-                canalServeurEnregistrement.recevoirString();
-            } 
-            catch (CanalException e)
-            {
-                e.printStackTrace();
+                    // Attente du résultat
+                    canalServeurEnregistrement.recevoirString();
+                } 
+                catch (CanalException e)
+                {
+                    e.printStackTrace();
+                }
             }
         }
     }
@@ -0,0 +1,332 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package models.jeu;
+
+import java.util.ArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ordonnanceur de la simulation du jeu.
+ *
+ * Fait vivre toutes les phases du jeu (creatures, tours, animations, revenus)
+ * sous un seul thread et a pas fixe. Les phases sont toujours executees dans
+ * l'ordre de leur ajout, ce qui rend chaque pas deterministe.
+ *
+ * Si le thread prend du retard (machine chargee), des pas de rattrapage sont
+ * executes, au maximum MAX_PAS_DE_RATTRAPAGE par iteration. Au-dela, le retard
+ * est abandonne pour eviter l'effet boule de neige.
+ *
+ * Plusieurs parties hebergees dans le meme processus peuvent partager un 
+ * pool de threads : les pas sont alors planifies sur le pool au lieu 
+ * d'occuper un thread par partie.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @since jdk1.6.0_16
+ * @see PhaseDeSimulation
+ */
+public class OrdonnanceurDeSimulation implements Runnable
+{
+    /**
+     * Duree d'un pas de simulation
+     */
+    public static final long DUREE_PAS = 50; // ms
+
+    /**
+     * Nombre maximum de pas executes d'affilee pour rattraper un retard
+     */
+    private static final int MAX_PAS_DE_RATTRAPAGE = 5;
+
+    private static final long NANOS_PAR_MILLI = 1000000L;
+
+    /**
+     * Les phases executees a chaque pas, dans l'ordre
+     */
+    private ArrayList<PhaseDeSimulation> phases = new ArrayList<PhaseDeSimulation>();
+
+    private Thread thread;
+    private volatile boolean gestionEnCours;
+    private volatile boolean enPause = false;
+    private Object pause = new Object();
+
+    /**
+     * Prochains pas planifies sur un pool partage, null avec un thread dedie
+     */
+    private volatile ScheduledFuture<?> pasPlanifies;
+
+    /**
+     * Temps de la derniere iteration et temps de simulation en retard
+     * (utilises par une seule tache a la fois)
+     */
+    private long dernierTemps;
+    private long tempsAccumule;
+
+    /**
+     * Numero du pas courant
+     */
+    private volatile long noPas = 0;
+
+    /**
+     * Permet d'ajouter une phase a la fin du pas de simulation
+     *
+     * @param phase la phase a ajouter
+     */
+    public synchronized void ajouterPhase(PhaseDeSimulation phase)
+    {
+        if (phase == null)
+            throw new IllegalArgumentException("Phase nulle");
+
+        if (gestionEnCours)
+            throw new IllegalStateException("Ordonnanceur deja demarre");
+
+        phases.add(phase);
+    }
+
+    /**
+     * Permet de demarrer la simulation
+     */
+    public synchronized void demarrer()
+    {
+        if (gestionEnCours)
+            throw new IllegalStateException("Ordonnanceur deja demarre");
+
+        gestionEnCours = true;
+
+        thread = new Thread(this, "Simulation");
+        thread.start();
+    }
+
+    /**
+     * Permet de demarrer la simulation sur un pool de threads partage entre
+     * plusieurs parties.
+     *
+     * Chaque iteration est une tache du pool qui se replanifie jusqu'au 
+     * prochain pas. Le rattrapage est limite comme avec un thread dedie :
+     * une partie en retard n'accapare pas le pool. Les pas d'une meme partie
+     * ne sont jamais executes en parallele.
+     *
+     * @param pool le pool de simulation
+     */
+    public synchronized void demarrer(ScheduledExecutorService pool)
+    {
+        if (gestionEnCours)
+            throw new IllegalStateException("Ordonnanceur deja demarre");
+
+        gestionEnCours = true;
+
+        dernierTemps = System.nanoTime();
+        tempsAccumule = 0;
+
+        pasPlanifies = pool.schedule(new IterationPlanifiee(pool), DUREE_PAS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Iteration de la simulation executee par un pool partage
+     */
+    private class IterationPlanifiee implements Runnable
+    {
+        private final ScheduledExecutorService pool;
+
+        IterationPlanifiee(ScheduledExecutorService pool)
+        {
+            this.pool = pool;
+        }
+
+        @Override
+        public void run()
+        {
+            if (!gestionEnCours)
+                return;
+
+            long attente = DUREE_PAS;
+
+            // le temps passe en pause n'est pas rattrape
+            if (enPause)
+            {
+                dernierTemps = System.nanoTime();
+                tempsAccumule = 0;
+            }
+            else
+            {
+                // une exception arreterait la simulation de la partie
+                try
+                {
+                    attente = executerPasEnRetard();
+                }
+                catch (RuntimeException e)
+                {
+                    e.printStackTrace();
+                }
+            }
+
+            try
+            {
+                if (gestionEnCours)
+                    pasPlanifies = pool.schedule(this, Math.max(attente, 0), TimeUnit.MILLISECONDS);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // pool arrete
+            }
+        }
+    }
+
+    /**
+     * Permet d'executer directement un pas de simulation.
+     *
+     * Toutes les phases sont executees dans l'ordre de leur ajout.
+     */
+    public void executerPas()
+    {
+        for (PhaseDeSimulation phase : phases)
+            phase.executerPas(DUREE_PAS);
+
+        noPas++;
+    }
+
+    @Override
+    public void run()
+    {
+        dernierTemps = System.nanoTime();
+        tempsAccumule = 0;
+
+        while (gestionEnCours)
+        {
+            // gestion de la pause
+            try
+            {
+                synchronized (pause)
+                {
+                    if (enPause)
+                    {
+                        pause.wait();
+
+                        // le temps passe en pause n'est pas rattrape
+                        dernierTemps = System.nanoTime();
+                        tempsAccumule = 0;
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                e.printStackTrace();
+            }
+
+            long attente = DUREE_PAS;
+
+            // une exception arreterait la simulation de la partie
+            try
+            {
+                attente = executerPasEnRetard();
+            }
+            catch (RuntimeException e)
+            {
+                e.printStackTrace();
+            }
+
+            try
+            {
+                if (attente > 0)
+                    Thread.sleep(attente);
+            }
+            catch (InterruptedException e)
+            {
+                // reveil pour l'arret
+            }
+        }
+    }
+
+    /**
+     * Execute les pas en retard depuis la derniere iteration, au maximum
+     * MAX_PAS_DE_RATTRAPAGE.
+     *
+     * @return l'attente jusqu'au prochain pas (ms)
+     */
+    private long executerPasEnRetard()
+    {
+        long maintenant = System.nanoTime();
+        tempsAccumule += maintenant - dernierTemps;
+        dernierTemps = maintenant;
+
+        // execution des pas en retard
+        int nbPas = 0;
+        while (tempsAccumule >= DUREE_PAS * NANOS_PAR_MILLI
+               && nbPas < MAX_PAS_DE_RATTRAPAGE && gestionEnCours)
+        {
+            executerPas();
+
+            tempsAccumule -= DUREE_PAS * NANOS_PAR_MILLI;
+            nbPas++;
+        }
+
+        // trop de retard, on abandonne le reste
+        if (nbPas == MAX_PAS_DE_RATTRAPAGE)
+            tempsAccumule = 0;
+
+        // attente jusqu'au prochain pas
+        return (DUREE_PAS * NANOS_PAR_MILLI - tempsAccumule) / NANOS_PAR_MILLI;
+    }
+
+    /**
+     * Permet d'arreter la simulation
+     */
+    public void arreter()
+    {
+        gestionEnCours = false;
+
+        if (pasPlanifies != null)
+            pasPlanifies.cancel(false);
+
+        // debloque le thread s'il est en pause
+        sortirDeLaPause();
+    }
+
+    /**
+     * Permet de mettre la simulation en pause.
+     */
+    public void mettreEnPause()
+    {
+        enPause = true;
+    }
+
+    /**
+     * Permet de sortir la simulation de la pause.
+     */
+    public void sortirDeLaPause()
+    {
+        synchronized (pause)
+        {
+            enPause = false;
+            pause.notifyAll();
+        }
+    }
+
+    /**
+     * Permet de recuperer le numero du pas courant
+     *
+     * @return le nombre de pas executes depuis le demarrage
+     */
+    public long getNoPas()
+    {
+        return noPas;
+    }
+}
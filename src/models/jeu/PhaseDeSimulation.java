@@ -0,0 +1,40 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package models.jeu;
+
+/**
+ * Interface d'une phase de la simulation du jeu.
+ *
+ * Chaque gestionnaire (creatures, tours, animations, revenus) est une phase
+ * executee a tour de role par l'ordonnanceur de simulation.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @since jdk1.6.0_16
+ * @see OrdonnanceurDeSimulation
+ */
+public interface PhaseDeSimulation
+{
+    /**
+     * Permet d'executer un pas de simulation.
+     *
+     * @param dureePas la duree (reelle) du pas en millisecondes
+     */
+    public void executerPas(long dureePas);
+}
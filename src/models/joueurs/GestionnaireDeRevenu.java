@@ -19,22 +19,25 @@
 package models.joueurs;
 
 import models.jeu.Jeu;
+import models.jeu.PhaseDeSimulation;
 import models.joueurs.Joueur;
 
 /**
  * Classe de gestion des revenus des joueurs
  * 
+ * Les revenus sont distribues par l'ordonnanceur de simulation du jeu.
+ * 
  * @author Aurelien Da Campo
  * @version 1.0 | mai 2010
  * @since jdk1.6.0_16
+ * @see models.jeu.OrdonnanceurDeSimulation
  */
-public class GestionnaireDeRevenu implements Runnable
+public class GestionnaireDeRevenu implements PhaseDeSimulation
 {
     public static final double POURCENTAGE_NB_PIECES_OR_CREATURE = 0.01;
     private static final long TEMPS_REVENU_CREATURE = 1000; // ms
     private boolean gestionEnCours;
-    private boolean enPause = false;
-    private Object pause = new Object();
+    private long tempsAvantRevenu = TEMPS_REVENU_CREATURE;
     private Jeu jeu;
 
     /**
@@ -50,65 +53,34 @@ public class GestionnaireDeRevenu implements Runnable
      */
     public void demarrer()
     {
-        Thread thread = new Thread(this);
-        thread.start();
+        gestionEnCours = true;
     }
  
     @Override
-    public void run()
+    public void executerPas(long dureePas)
     {
-        gestionEnCours = true;
+        if(!gestionEnCours)
+            return;
+        
+        tempsAvantRevenu -= dureePas;
         
-        while(gestionEnCours)
+        if(tempsAvantRevenu <= 0)
         {
             // donne de l'argent
             // pas de problème de concurrence car c'est une copie.
             for(Joueur joueur : jeu.getJoueurs())
                 if(!joueur.aPerdu() && !joueur.estHorsJeu())
                     joueur.donnerRevenu(TEMPS_REVENU_CREATURE);
-              
-            // gestion de la pause
-            try
-            {
-                synchronized (pause)
-                {
-                    if(enPause)
-                        pause.wait();
-                } 
-                
-                Thread.sleep(TEMPS_REVENU_CREATURE);
-            } 
-            catch (InterruptedException e){
-                 e.printStackTrace();
-            }
+            
+            tempsAvantRevenu += TEMPS_REVENU_CREATURE;
         }
     }
     
     /**
-     * Permet d'arreter toutes les creatures
+     * Permet d'arreter la distribution des revenus
      */
-    public void arreterCreatures()
+    public void arreter()
     {
         gestionEnCours = false;
     }
-    
-    /**
-     * Permet de mettre les créatures en pause.
-     */
-    public void mettreEnPause()
-    {
-        enPause = true;
-    }
-    
-    /**
-     * Permet de sortir les créatures de la pause.
-     */
-    public void sortirDeLaPause()
-    { 
-        synchronized (pause)
-        {
-            enPause = false;
-            pause.notify(); 
-        }
-    }
 }
@@ -0,0 +1,109 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package models.maillage;
+
+import java.awt.Point;
+import java.util.ArrayList;
+
+/**
+ * Champ de direction (flow field) jusqu'a une zone d'arrivee.
+ * <p>
+ * Pour chaque noeud du maillage, le champ donne le noeud suivant sur le plus
+ * court chemin jusqu'au point d'arrivee. Toutes les creatures qui se rendent
+ * a la meme zone d'arrivee partagent le meme champ au lieu d'avoir chacune
+ * son propre chemin (voir Configuration#getDeplacement()).
+ * <p>
+ * Avec le Maillage_v2, le champ est l'arbre des plus courts chemins du point
+ * de sortie, il est repare une seule fois par modification du maillage
+ * quel que soit le nombre de creatures.
+ * <p>
+ * Le numero de version est incremente a chaque modification du maillage, les
+ * creatures relisent alors leur direction depuis leur position.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @since jdk1.6.0_16
+ * @see Maillage#getPointSuivant(int, int, int, int)
+ */
+public class ChampDeDirection
+{
+    private final Maillage maillage;
+    private final int xArrivee, yArrivee;
+    private volatile int version = 0;
+
+    /**
+     * Constructeur
+     *
+     * @param maillage le maillage sous-jacent
+     * @param xArrivee la position x du point d'arrivee
+     * @param yArrivee la position y du point d'arrivee
+     */
+    public ChampDeDirection(Maillage maillage, int xArrivee, int yArrivee)
+    {
+        this.maillage = maillage;
+        this.xArrivee = xArrivee;
+        this.yArrivee = yArrivee;
+    }
+
+    /**
+     * Permet de recuperer le point suivant depuis une position
+     *
+     * @param x la position x
+     * @param y la position y
+     * @return le point suivant ou null si la position est le point d'arrivee
+     * @throws PathNotFoundException s'il n'existe pas de chemin
+     */
+    public Point getPointSuivant(int x, int y) throws PathNotFoundException
+    {
+        return maillage.getPointSuivant(x, y, xArrivee, yArrivee);
+    }
+
+    /**
+     * Permet de recuperer le chemin complet depuis une position.
+     * <p>
+     * Utilise pour l'affichage uniquement.
+     *
+     * @param x la position x
+     * @param y la position y
+     * @return le chemin jusqu'au point d'arrivee
+     * @throws PathNotFoundException s'il n'existe pas de chemin
+     */
+    public ArrayList<Point> getChemin(int x, int y) throws PathNotFoundException
+    {
+        return maillage.plusCourtChemin(x, y, xArrivee, yArrivee);
+    }
+
+    /**
+     * Permet de signaler que le maillage a ete modifie
+     */
+    public void invalider()
+    {
+        version++;
+    }
+
+    /**
+     * Permet de recuperer le numero de version du champ
+     *
+     * @return le numero de version
+     */
+    public int getVersion()
+    {
+        return version;
+    }
+}
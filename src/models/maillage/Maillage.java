@@ -48,6 +48,29 @@ public interface Maillage
             int xArrivee, int yArrivee) throws PathNotFoundException,
             IllegalArgumentException;
 
+    /**
+     * Permet de recuperer le point suivant sur le plus court chemin jusqu'a
+     * un point d'arrivee.
+     * <p>
+     * Le point suivant est le noeud vers lequel se diriger depuis le noeud le
+     * plus proche de (x,y). Si ce noeud est le noeud d'arrivee, il est
+     * retourne tant que (x,y) n'est pas exactement sur son centre.
+     * 
+     * @param x
+     *            La coordonnée x de la position actuelle.
+     * @param y
+     *            La coordonnée y de la position actuelle.
+     * @param xArrivee
+     *            La coordonnée x du point d'arrivée.
+     * @param yArrivee
+     *            La coordonnée y du point d'arrivée.
+     * @return Le point suivant ou null si la position est le point d'arrivée.
+     * @throws PathNotFoundException
+     *             Levé si aucun chemin n'est trouvé.
+     */
+    public abstract Point getPointSuivant(int x, int y, int xArrivee,
+            int yArrivee) throws PathNotFoundException;
+
     /**
      * Active une zone rectangulaire dans le champs.
      * 
@@ -115,6 +138,57 @@ public interface Maillage
      */
     public abstract int getNbNoeuds();
     
+    /**
+     * Permet de savoir si une zone touche le plus court chemin actuel entre
+     * deux points.
+     * <p>
+     * Si ce n'est pas le cas, desactiver la zone ne peut ni bloquer ni
+     * allonger ce chemin. La reponse peut etre vraie par prudence.
+     * 
+     * @param zone
+     *            La zone a tester.
+     * @param xDepart
+     *            La coordonnée x du point de départ.
+     * @param yDepart
+     *            La coordonnée y du point de départ.
+     * @param xArrivee
+     *            La coordonnée x du point d'arrivée.
+     * @param yArrivee
+     *            La coordonnée y du point d'arrivée.
+     * @return false si la zone ne touche assurement pas le chemin
+     */
+    public boolean laZoneToucheLeChemin(Rectangle zone, int xDepart,
+            int yDepart, int xArrivee, int yArrivee);
+    
+    /**
+     * Permet de debuter une transaction sur le maillage.
+     * <p>
+     * Les (des)activations de zones suivantes sont appliquees normalement,
+     * les chemins peuvent etre testes, puis la transaction est soit validee
+     * (les modifications sont conservees), soit annulee (le maillage retrouve
+     * son etat du debut de la transaction).
+     * 
+     * @throws IllegalStateException
+     *             Levé si une transaction est deja en cours.
+     */
+    public void debuterTransaction() throws IllegalStateException;
+    
+    /**
+     * Permet de valider la transaction en cours.
+     * 
+     * @throws IllegalStateException
+     *             Levé si aucune transaction n'est en cours.
+     */
+    public void validerTransaction() throws IllegalStateException;
+    
+    /**
+     * Permet d'annuler la transaction en cours.
+     * 
+     * @throws IllegalStateException
+     *             Levé si aucune transaction n'est en cours.
+     */
+    public void annulerTransaction() throws IllegalStateException;
+    
     /**
      * Permet d'ajouter un point de sortie
      * 
@@ -128,4 +202,4 @@ public interface Maillage
      */
     public void miseAJourTDA();
     
-}
\ No newline at end of file
+}
\ No newline at end of file
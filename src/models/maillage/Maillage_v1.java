@@ -22,12 +22,14 @@ import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.geom.Line2D;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 
 import org.jgrapht.GraphPath;
 import org.jgrapht.Graphs;
 import org.jgrapht.alg.DijkstraShortestPath;
 import org.jgrapht.graph.SimpleWeightedGraph;
+import org.jgrapht.traverse.ClosestFirstIterator;
 
 /**
  * Fichier : Maillage.java
@@ -95,6 +97,20 @@ public class Maillage_v1 implements Maillage
 	 * Le decalage de base.
 	 */
 	private int xOffset, yOffset;
+	
+	/**
+	 * Les noeuds modifies par la transaction en cours (ou null) et leur etat
+	 * avant chaque modification
+	 */
+	private ArrayList<Noeud> noeudsTransaction;
+	private ArrayList<Boolean> etatsAvantTransaction;
+	
+	/**
+	 * Les arbres des plus courts chemins par noeud d'arrivee : pour chaque 
+	 * noeud, le noeud suivant vers l'arrivee. Vides a chaque modification.
+	 */
+	private HashMap<Noeud, HashMap<Noeud, Noeud>> arbres = 
+	    new HashMap<Noeud, HashMap<Noeud, Noeud>>();
 
 	/**
 	 * Un maillage dynamique représentant une aire de jeu.
@@ -181,13 +197,7 @@ public class Maillage_v1 implements Maillage
 		/*
 		 * Test des arguments
 		 */
-		if (xDepart >= LARGEUR_EN_PIXELS-xOffset || xArrivee >= LARGEUR_EN_PIXELS-xOffset
-				|| xDepart-xOffset < 0 || xArrivee-xOffset < 0)
-			throw new IllegalArgumentException("Valeur invalide en x");
-
-		if (yDepart-yOffset >= HAUTEUR_EN_PIXELS || yArrivee-yOffset >= HAUTEUR_EN_PIXELS
-				|| yDepart-yOffset < 0 || yArrivee-yOffset < 0)
-			throw new IllegalArgumentException("Valeur invalide en y");
+		testCoordonnees(xDepart, yDepart, xArrivee, yArrivee);
 
 		/*
 		 * Calcul par Dijkstra du chemin le plus cours d'un point à un autre.
@@ -215,6 +225,77 @@ public class Maillage_v1 implements Maillage
 		return new ArrayList<Point>(Graphs.getPathVertexList(dijkstraChemin));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * L'arbre des plus courts chemins de l'arrivee est entierement recalcule
+	 * (Dijkstra) a la premiere demande qui suit une modification du maillage,
+	 * puis partage par toutes les demandes vers la meme arrivee.
+	 */
+	public synchronized Point getPointSuivant(int x, int y, int xArrivee,
+	        int yArrivee) throws PathNotFoundException
+	{
+	    testCoordonnees(x, y, xArrivee, yArrivee);
+	    
+	    Noeud depart  = noeudContenantLePoint(x - xOffset, y - yOffset);
+	    Noeud arrivee = noeudContenantLePoint(xArrivee - xOffset, yArrivee - yOffset);
+	    
+	    if(depart == arrivee)
+	    {
+	        if(arrivee.x == x && arrivee.y == y)
+	            return null;
+	        
+	        return arrivee;
+	    }
+	    
+	    Noeud suivant = getArbre(arrivee).get(depart);
+	    
+	    if(suivant == null)
+	        throw new PathNotFoundException("Le chemin n'existe pas!");
+	    
+	    return suivant;
+	}
+	
+	/**
+	 * Permet de recuperer l'arbre des plus courts chemins d'un noeud 
+	 * d'arrivee, calcule si necessaire.
+	 * 
+	 * @param arrivee le noeud d'arrivee
+	 * @return pour chaque noeud relie a l'arrivee, le noeud suivant
+	 * @throws PathNotFoundException si l'arrivee est inactive
+	 */
+	private HashMap<Noeud, Noeud> getArbre(Noeud arrivee) 
+	    throws PathNotFoundException
+	{
+	    HashMap<Noeud, Noeud> arbre = arbres.get(arrivee);
+	    
+	    if(arbre != null)
+	        return arbre;
+	    
+	    if(!graphe.containsVertex(arrivee))
+	        throw new PathNotFoundException("Le chemin n'existe pas!");
+	    
+	    arbre = new HashMap<Noeud, Noeud>();
+	    
+	    // le graphe n'est pas oriente, l'arc de l'arbre couvrant de chaque
+	    // noeud mene a son predecesseur depuis l'arrivee, donc vers l'arrivee
+	    ClosestFirstIterator<Noeud, Arc> it = 
+	        new ClosestFirstIterator<Noeud, Arc>(graphe, arrivee);
+	    
+	    while(it.hasNext())
+	    {
+	        Noeud noeud = it.next();
+	        Arc arc = it.getSpanningTreeEdge(noeud);
+	        
+	        if(arc != null)
+	            arbre.put(noeud, Graphs.getOppositeVertex(graphe, arc, noeud));
+	    }
+	    
+	    arbres.put(arrivee, arbre);
+	    
+	    return arbre;
+	}
+
 	/* (non-Javadoc)
      * @see models.maillage.MaillageI#activerZone(java.awt.Rectangle)
      */
@@ -233,6 +314,98 @@ public class Maillage_v1 implements Maillage
 		zoneActive(rectangle, false);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Le chemin est parcouru dans l'arbre des plus courts chemins de 
+	 * l'arrivee, un noeud le touche si sa maille intersecte la zone (comme 
+	 * lors de la desactivation).
+	 */
+	synchronized public boolean laZoneToucheLeChemin(Rectangle zone, 
+	        int xDepart, int yDepart, int xArrivee, int yArrivee)
+	{
+	    Noeud noeud, arrivee;
+	    HashMap<Noeud, Noeud> arbre;
+	    try
+	    {
+	        testCoordonnees(xDepart, yDepart, xArrivee, yArrivee);
+	        
+	        noeud   = noeudContenantLePoint(xDepart - xOffset, yDepart - yOffset);
+	        arrivee = noeudContenantLePoint(xArrivee - xOffset, yArrivee - yOffset);
+	        arbre   = getArbre(arrivee);
+	    }
+	    catch (IllegalArgumentException e)
+	    {
+	        return true;
+	    }
+	    catch (PathNotFoundException e)
+	    {
+	        return true;
+	    }
+	    
+	    // pas de chemin actuellement
+	    if(noeud != arrivee && !arbre.containsKey(noeud))
+	        return true;
+	    
+	    while(noeud != null)
+	    {
+	        if (zone.intersects(new Rectangle(noeud.x - DEMI_NOEUD,
+                    noeud.y - DEMI_NOEUD, LARGEUR_NOEUD, LARGEUR_NOEUD)))
+	            return true;
+	        
+	        noeud = arbre.get(noeud);
+	    }
+	    
+	    return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * L'etat de chaque noeud est memorise avant sa modification, 
+	 * l'annulation restaure ces etats dans l'ordre inverse.
+	 */
+	synchronized public void debuterTransaction()
+	{
+	    if(noeudsTransaction != null)
+	        throw new IllegalStateException("Transaction deja en cours");
+	    
+	    noeudsTransaction     = new ArrayList<Noeud>();
+	    etatsAvantTransaction = new ArrayList<Boolean>();
+	}
+	
+	synchronized public void validerTransaction()
+	{
+	    if(noeudsTransaction == null)
+            throw new IllegalStateException("Aucune transaction en cours");
+	    
+	    noeudsTransaction     = null;
+	    etatsAvantTransaction = null;
+	}
+	
+	synchronized public void annulerTransaction()
+	{
+	    if(noeudsTransaction == null)
+            throw new IllegalStateException("Aucune transaction en cours");
+	    
+	    for(int i = noeudsTransaction.size() - 1; i >= 0; i--)
+	    {
+	        Noeud noeud = noeudsTransaction.get(i);
+	        boolean actif = etatsAvantTransaction.get(i);
+	        
+	        if(actif && !noeud.isActif())
+	            activer(noeud);
+	        else if(!actif && noeud.isActif())
+	            desactiver(noeud);
+	    }
+	    
+	    noeudsTransaction     = null;
+	    etatsAvantTransaction = null;
+	    
+	    // les plus courts chemins ont pu changer
+	    arbres.clear();
+	}
+
 	/**
 	 * @see java.lang.Object#toString()
 	 */
@@ -309,6 +482,9 @@ public class Maillage_v1 implements Maillage
 	{
 		// Vérification de la validité du rectangle
 		rectangleEstDansLeTerrain(rectangle);
+		
+		// les plus courts chemins ont pu changer
+		arbres.clear();
 
 		/*
 		 * Pour chaque noeuds on vérifie s'il intersect avec la zone concernée.
@@ -319,12 +495,34 @@ public class Maillage_v1 implements Maillage
 				if (rectangle.intersects(new Rectangle(noeud.x - DEMI_NOEUD,
 						noeud.y - DEMI_NOEUD, LARGEUR_NOEUD, LARGEUR_NOEUD)))
 					if (active)
+					{
+						journaliser(noeud);
 						activer(noeud);
+					}
 					else if (noeud.isActif())
+					{
+						journaliser(noeud);
 						desactiver(noeud);
+					}
 			}
 	}
 
+	/**
+	 * Memorise l'etat d'un noeud avant sa modification si une transaction 
+	 * est en cours.
+	 * 
+	 * @param noeud
+	 *            Le noeud qui va etre modifie.
+	 */
+	private void journaliser(Noeud noeud)
+	{
+		if (noeudsTransaction != null)
+		{
+			noeudsTransaction.add(noeud);
+			etatsAvantTransaction.add(noeud.isActif());
+		}
+	}
+
 	/**
 	 * Active l'ensemble des arcs d'un noeud, marque le noeud comme actif, puis
 	 * ajoute le noeud dans le graphe.
@@ -482,6 +680,24 @@ public class Maillage_v1 implements Maillage
 			throw new IllegalArgumentException("Hauteur hors cadre");*/
 	}
 
+	/**
+	 * Test si les points de depart et d'arrivee sont dans le maillage.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             Levé si l'un des points est hors champs.
+	 */
+	private void testCoordonnees(int xDepart, int yDepart, int xArrivee, 
+	        int yArrivee) throws IllegalArgumentException
+	{
+		if (xDepart >= LARGEUR_EN_PIXELS-xOffset || xArrivee >= LARGEUR_EN_PIXELS-xOffset
+				|| xDepart-xOffset < 0 || xArrivee-xOffset < 0)
+			throw new IllegalArgumentException("Valeur invalide en x");
+
+		if (yDepart-yOffset >= HAUTEUR_EN_PIXELS || yArrivee-yOffset >= HAUTEUR_EN_PIXELS
+				|| yDepart-yOffset < 0 || yArrivee-yOffset < 0)
+			throw new IllegalArgumentException("Valeur invalide en y");
+	}
+
 	/**
 	 * Test si la valeur est valude.
 	 * 
@@ -22,20 +22,27 @@ import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.geom.Line2D;
 import java.util.ArrayList;
+import java.util.Iterator;
 import models.outils.Outils;
 
 /**
  * Maillage dans sa version 2.
- * 
- * Utilisation d'un arbre de recouvrement.
- * 
- * TODO commenter
- * 
+ *
+ * Utilisation d'arbres de recouvrement.
+ * <p>
+ * Le graphe est stocké dans des tableaux d'entiers. Pour chaque point de
+ * sortie, un arbre des plus courts chemins est maintenu, enraciné sur le
+ * noeud de sortie. Un chemin se lit en remontant les prédécesseurs depuis
+ * le noeud de départ, en O(longueur du chemin).
+ * <p>
+ * Lors de la pose ou de la vente d'une tour, les arbres ne sont pas
+ * reconstruits : seuls les noeuds dont la distance change sont recalcules.
+ *
  * @author Dark
  */
 public class Maillage_v2 implements Maillage
 {
-	
+
     /*
 	 * Constantes
 	 */
@@ -43,7 +50,7 @@ public class Maillage_v2 implements Maillage
 	 * La largeur en pixel de chaque maille, ou noeud
 	 */
 	private final int LARGEUR_NOEUD;
-	
+
 	/**
 	 * Le poid d'un arc diagonal
 	 */
@@ -53,12 +60,12 @@ public class Maillage_v2 implements Maillage
 	 * La largeur en pixel totale du maillage (axe des x)
 	 */
 	private final int LARGEUR_EN_PIXELS;
-	
+
 	/**
 	 * La hauteur en pixel totale du maillage (axe des y)
 	 */
 	private final int HAUTEUR_EN_PIXELS;
-	
+
 	/**
 	 * Les dimensions en maille (ou noeuds) du maillage
 	 */
@@ -67,48 +74,90 @@ public class Maillage_v2 implements Maillage
 	/*
 	 * Attributs
 	 */
-	// 8 voisins + 1 car tous les noeuds peuvent être une sortie
-	private static int NB_VOISINS_MAX_PAR_NOEUD = 9;
-	
-	private int NB_NOEUDS;
-	
+	// 8 voisins
+	private static final int NB_VOISINS_MAX_PAR_NOEUD = 8;
+
+	private final int NB_NOEUDS;
+
 	/**
      * Tableau des noeuds
      * <br>
      * Note : l'indice du tableau spécifie le numéro du noeud
      */
     private Noeud[] noeuds;
-	
+
 	/**
 	 * Tableau du nombre de voisins d'un noeuds
 	 * <br>
 	 * Note : l'indice du tableau spécifie le numéro du noeud
 	 */
 	private int[] nbVoisins;
-	
+
 	/**
 	 * Tableau des indices des voisins d'un noeuds
 	 * <br>
 	 * Note : l'indice 1 du tableau spécifie le numéro du noeud
 	 */
 	private int[][] voisins;
-	
+
 	/**
 	 * Tableau des poinds jusqu'au voisins d'un noeuds
 	 * <br>
      * Note : l'indice 1 du tableau spécifie le numéro du noeud
 	 */
 	private int[][] poids;
-	
+
 	/**
 	 * Le decalage de base.
 	 */
 	private int xOffset, yOffset;
-   
+
+	/**
+	 * Un arbre des plus courts chemins par point de sortie
+	 */
+	private ArrayList<ArbreDesChemins> arbres = new ArrayList<ArbreDesChemins>();
+
+	/**
+     * Les arbres correspondent-ils a l'etat actuel des noeuds ?
+     *
+     * Faux si des zones ont ete modifiees sans mise a jour, les arbres
+     * seront alors entierement reconstruits a la prochaine mise a jour.
+     */
+    private boolean arbresAJour = true;
+
+    /**
+     * Noeuds dont l'etat a change lors de la derniere (des)activation de zone
+     */
+    private int[] noeudsModifies;
+    private int nbNoeudsModifies;
+
+    /**
+     * Noeuds affectes par une reparation d'arbre
+     */
+    private int[] fileAffectes;
+    private boolean[] affecte;
+
+    /**
+     * File de priorite des noeuds a traiter, cle = distance jusqu'a la sortie
+     * <br>
+     * Partagee par tous les arbres.
+     */
+    private TasMinIndexe file;
+
+    /**
+     * Transaction en cours : les noeuds modifies et les arbres sont
+     * journalises pour pouvoir etre restaures sans recalcul.
+     */
+    private boolean transactionEnCours = false;
+    private boolean arbresAJourAvantTransaction;
+    private int[] noeudsTransaction;
+    private boolean[] noeudJournalise;
+    private boolean[] etatsAvantTransaction;
+    private int nbNoeudsTransaction;
 
 	/**
 	 * Un maillage dynamique représentant une aire de jeu.
-	 * 
+	 *
 	 * @param largeurPixels
 	 *            Largeur en pixel de la zone.
 	 * @param hauteurPixels
@@ -119,7 +168,7 @@ public class Maillage_v2 implements Maillage
 	 *            Le décalage en x du maillage, en pixels.
 	 * @param yOffset
 	 *            Le décalage en y du maillage, en pixels.
-	 * @return 
+	 * @return
 	 * @throws IllegalArgumentException
 	 *             Levé si les dimensions ne correspondent pas.
 	 */
@@ -127,13 +176,16 @@ public class Maillage_v2 implements Maillage
 			final int largeurDuNoeud, int xOffset, int yOffset)
 			throws IllegalArgumentException
 	{
+	    if(largeurDuNoeud <= 0 || largeurPixels < largeurDuNoeud
+	    || hauteurPixels < largeurDuNoeud)
+	        throw new IllegalArgumentException("Dimensions invalides");
 
 		// Assignation de la largeur du noeud (ou de la maille).
 		LARGEUR_NOEUD = largeurDuNoeud;
 
 		// Calcule une fois pour toute la distance diagonale
 		POIDS_DIAGO = (int) Math.sqrt(2 * LARGEUR_NOEUD * LARGEUR_NOEUD);
-		
+
 		// Assignation de la dimension en pixel unitaire du maillage
 		LARGEUR_EN_PIXELS = largeurPixels;
 		HAUTEUR_EN_PIXELS = hauteurPixels;
@@ -142,97 +194,100 @@ public class Maillage_v2 implements Maillage
 		NB_NOEUDS_LARGEUR = (largeurPixels / LARGEUR_NOEUD);
 		NB_NOEUDS_HAUTEUR = (hauteurPixels / LARGEUR_NOEUD);
 
-		
-		NB_NOEUDS = NB_NOEUDS_LARGEUR * NB_NOEUDS_HAUTEUR + 1;
-		
-		
+		NB_NOEUDS = NB_NOEUDS_LARGEUR * NB_NOEUDS_HAUTEUR;
+
 		// Les offsets du décalage
 		this.xOffset = xOffset;
 		this.yOffset = yOffset;
 
 		// Construction du graphe
 		construireGraphe();
-		
-        contruireArbreDijkstra();
+
+		// tableaux de travail, alloues une seule fois
+		noeudsModifies = new int[NB_NOEUDS];
+        fileAffectes   = new int[NB_NOEUDS];
+        affecte        = new boolean[NB_NOEUDS];
+        file           = new TasMinIndexe(NB_NOEUDS);
+
+        noeudsTransaction = new int[NB_NOEUDS];
+        noeudJournalise   = new boolean[NB_NOEUDS];
+        etatsAvantTransaction = new boolean[NB_NOEUDS];
 	}
 
     @Override
 	synchronized public void ajouterPointdeSortie(int x, int y)
 	{
-	    int tmp = getIndiceNoeud(x, y);
-	   
-        ajouterArc(tmp,0,0);
-        ajouterArc(0,tmp,0);
-        
-        contruireArbreDijkstra();
+	    ArbreDesChemins arbre = new ArbreDesChemins(getIndiceNoeud(x, y));
+	    arbres.add(arbre);
+
+	    if(arbresAJour)
+	        arbre.construire();
 	}
 
 	/**
 	 * Permet de trouver l'indice d'un noeud le plus proche d'une coordonnée.
-	 * 
+	 * <p>
+	 * Seuls les noeuds autour de la maille qui contient la coordonnée
+	 * sont testes.
+	 *
 	 * @param x
 	 * @param y
 	 * @return
 	 */
-	synchronized private int getIndiceNoeud(int x, int y)
-    { 
-        if(noeuds.length == 0)
-            throw new IllegalArgumentException("Pas de noeud");
-        
-        Noeud n;
+	private int getIndiceNoeud(int x, int y)
+    {
+        int colonne = borner((x - xOffset) / LARGEUR_NOEUD, NB_NOEUDS_LARGEUR);
+        int ligne   = borner((y - yOffset) / LARGEUR_NOEUD, NB_NOEUDS_HAUTEUR);
+
         int iNoeudLePlusProche = -1;
-        double distance;
-        double distMax = Integer.MAX_VALUE;
-        Point cible = new Point(x,y);
-        
-        for(int i=1;i<NB_NOEUDS;i++)
-        {
-            n = noeuds[i];
-            
-            distance = cible.distance(n);
-            
-            if(distance < distMax)
+        long distMin = Long.MAX_VALUE;
+
+        for(int i = Math.max(0, colonne - 1); i <= Math.min(NB_NOEUDS_LARGEUR - 1, colonne + 1); i++)
+            for(int j = Math.max(0, ligne - 1); j <= Math.min(NB_NOEUDS_HAUTEUR - 1, ligne + 1); j++)
             {
-                iNoeudLePlusProche = i;
-                distMax = distance;
+                int iNoeud = i * NB_NOEUDS_HAUTEUR + j;
+                long dx = noeuds[iNoeud].x - x;
+                long dy = noeuds[iNoeud].y - y;
+
+                if(dx * dx + dy * dy < distMin)
+                {
+                    iNoeudLePlusProche = iNoeud;
+                    distMin = dx * dx + dy * dy;
+                }
             }
-        }
-             
+
         return iNoeudLePlusProche;
     }
 
+	private static int borner(int valeur, int taille)
+	{
+	    if(valeur < 0)
+	        return 0;
+	    if(valeur >= taille)
+	        return taille - 1;
+	    return valeur;
+	}
+
     synchronized private void construireGraphe()
     {
 	    // allocation mémoire
-	    noeuds     = new Noeud[NB_NOEUDS];   
+	    noeuds     = new Noeud[NB_NOEUDS];
 	    nbVoisins  = new int[NB_NOEUDS];
         voisins    = new int[NB_NOEUDS][NB_VOISINS_MAX_PAR_NOEUD];
         poids      = new int[NB_NOEUDS][NB_VOISINS_MAX_PAR_NOEUD];
-        
-        // FIXME creer des tableaux plutot que des noeuds
-        //x          = new int[NB_NOEUDS];
-        //y          = new int[NB_NOEUDS];
-        //pred       = new int[NB_NOEUDS];
-        //dist       = new int[NB_NOEUDS];
-        //actif      = new int[NB_NOEUDS];
-        //visite     = new int[NB_NOEUDS];
-        
+
         // par defaut, pas de voisins
         for(int i=0;i<NB_NOEUDS;i++)
         {
             nbVoisins[i] = 0;
-        
+
             for(int j=0;j<NB_VOISINS_MAX_PAR_NOEUD;j++)
                 poids[i][j] = Integer.MAX_VALUE;
         }
- 
-        // noeud de sortie
-        noeuds[0] = new Noeud(0,0,1);
-        noeuds[0].setActif(true);
-        
+
         // construction du graphe
         Noeud n;
-        int iNoeud = 1; // on saute le noeud de sortie
+        int iNoeud = 0;
         for(int i=0;i<NB_NOEUDS_LARGEUR;i++)
         {
             for(int j=0;j<NB_NOEUDS_HAUTEUR;j++)
@@ -243,7 +298,7 @@ public class Maillage_v2 implements Maillage
                 n = new Noeud(i*LARGEUR_NOEUD+xOffset,j*LARGEUR_NOEUD+yOffset,LARGEUR_NOEUD);
                 n.setActif(true);
                 noeuds[iNoeud] = n;
-                
+
                 //--------------------
                 //-- ajout des arcs --
                 //--------------------
@@ -253,44 +308,44 @@ public class Maillage_v2 implements Maillage
                     ajouterArc(iNoeud, iNoeud+NB_NOEUDS_HAUTEUR, LARGEUR_NOEUD);
                     ajouterArc(iNoeud+NB_NOEUDS_HAUTEUR, iNoeud, LARGEUR_NOEUD);
                 }
-                
+
                 // pas la derniere ligne
                 if(j != NB_NOEUDS_HAUTEUR-1 /*&& boolAlea()*/)
                 {
                     ajouterArc(iNoeud, iNoeud+1, LARGEUR_NOEUD);
                     ajouterArc(iNoeud+1, iNoeud, LARGEUR_NOEUD);
                 }
-                    
+
                 // pas la derniere ligne et la derniere colonne
                 if(i != NB_NOEUDS_LARGEUR-1 && j != NB_NOEUDS_HAUTEUR-1 /*&& boolAlea()*/)
                 {
                     ajouterArc(iNoeud, iNoeud+NB_NOEUDS_HAUTEUR+1, POIDS_DIAGO);
                     ajouterArc(iNoeud+NB_NOEUDS_HAUTEUR+1, iNoeud, POIDS_DIAGO);
                 }
-                
+
                 // pas la première ligne et la derniere colonne
-                if(j != 0 && i != NB_NOEUDS_LARGEUR-1 /*&& boolAlea()*/)   
+                if(j != 0 && i != NB_NOEUDS_LARGEUR-1 /*&& boolAlea()*/)
                 {
                     ajouterArc(iNoeud, iNoeud+NB_NOEUDS_HAUTEUR-1, POIDS_DIAGO);
                     ajouterArc(iNoeud+NB_NOEUDS_HAUTEUR-1, iNoeud, POIDS_DIAGO);
                 }
-                
+
                 iNoeud++;
-            } 
+            }
         }
-    }  
-	
+    }
+
 	synchronized private void ajouterArc(int iNoeud, int voisin, int poidsArc)
     {
 	    if(nbVoisins[iNoeud] == NB_VOISINS_MAX_PAR_NOEUD)
 	        throw new IllegalArgumentException("Nombre de voisins max atteint");
-	    
+
 	    if(poidsArc == Integer.MAX_VALUE)
 	        throw new IllegalArgumentException("Poids impossible");
-	    
+
 	    voisins[iNoeud][nbVoisins[iNoeud]] = voisin;
 	    poids[iNoeud][nbVoisins[iNoeud]] = poidsArc;
-	    
+
 	    nbVoisins[iNoeud]++;
     }
 
@@ -300,115 +355,292 @@ public class Maillage_v2 implements Maillage
         return Outils.tirerNombrePseudoAleatoire(0, 2) >= 1;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Le chemin est lu dans l'arbre du point de sortie le plus proche
+     * du point d'arrivee.
+     */
 	@Override
     public synchronized ArrayList<Point> plusCourtChemin(int xDepart,
 			int yDepart, int xArrivee, int yArrivee)
 			throws PathNotFoundException, IllegalArgumentException
 	{
-		
-	    ArrayList<Point> ps = new ArrayList<Point>();
-	    
+	    if(!arbresAJour)
+	        miseAJourTDA();
+
+	    ArbreDesChemins arbre = getArbre(xArrivee, yArrivee);
+
+	    if(arbre == null)
+	        throw new PathNotFoundException("Aucun point de sortie");
+
 	    int in = getIndiceNoeud(xDepart, yDepart);
-	
-	    ps.add(new Point(noeuds[in]));
-	    
+
+	    if(arbre.dist[in] == Integer.MAX_VALUE)
+	        throw new PathNotFoundException("Le chemin n'existe pas!");
+
+	    ArrayList<Point> ps = new ArrayList<Point>();
+
+	    // remontee des predecesseurs jusqu'a la sortie
         while(in != -1)
         {
-            int pred = infoNoeuds[in].pred;
-            
-            if(pred == -1)
-                break;
-            
-            ps.add(new Point(noeuds[pred]));
-
-            in = pred;
-        }  
-        
-        if(ps.size() == 1)
-            throw new PathNotFoundException("Le chemin n'existe pas!");
-        
-        // efface le point de sortie commun
-        ps.remove(ps.size()-1);
-        
+            ps.add(new Point(noeuds[in]));
+            in = arbre.pred[in];
+        }
+
 	    return ps;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Lecture directe du predecesseur dans l'arbre du point de sortie : O(1).
+	 */
 	@Override
-	synchronized public void activerZone(Rectangle rectangle, boolean miseAJour)
-			throws IllegalArgumentException
+	public synchronized Point getPointSuivant(int x, int y, int xArrivee,
+	        int yArrivee) throws PathNotFoundException
 	{
-	    Noeud n;
-        // on touche pas au noeud de sorti
-        for(int i=1;i<NB_NOEUDS;i++)
+	    if(!arbresAJour)
+            miseAJourTDA();
+
+        ArbreDesChemins arbre = getArbre(xArrivee, yArrivee);
+
+        if(arbre == null)
+            throw new PathNotFoundException("Aucun point de sortie");
+
+        int in = getIndiceNoeud(x, y);
+
+        if(arbre.dist[in] == Integer.MAX_VALUE)
+            throw new PathNotFoundException("Le chemin n'existe pas!");
+
+        // deja sur le noeud, on passe au suivant
+        if(noeuds[in].x == x && noeuds[in].y == y)
         {
-            n = noeuds[i];
-            
-            if(rectangle.contains(n))
-            {
-                n.setActif(true);
-                
-                //System.out.println("noeud ["+n.x+","+n.y+"] activé");
-                
-                // pour tous les arcs
-                /*
-                for(int j=0;j<nbVoisins[i];j++)
-                {
-                    poids[i][j] = Integer.MAX_VALUE;
-                    nbArcsActifs-=2; // bidirection
-                }*/           
-            }
+            if(arbre.pred[in] == -1)
+                return null; // arrivee
+
+            return new Point(noeuds[arbre.pred[in]]);
         }
-        
-        if(miseAJour)
-            contruireArbreDijkstra();
+
+        // pas encore sur le noeud de sortie, on s'y rend
+        if(in == arbre.racine)
+            return new Point(noeuds[in]);
+
+        return new Point(noeuds[arbre.pred[in]]);
+	}
+
+	/**
+	 * Permet de recuperer l'arbre dont la sortie est la plus proche d'un point
+	 *
+	 * @param x la position x du point
+	 * @param y la position y du point
+	 * @return l'arbre ou null s'il n'y a aucun point de sortie
+	 */
+	private ArbreDesChemins getArbre(int x, int y)
+	{
+	    ArbreDesChemins arbreLePlusProche = null;
+	    double distMin = Double.MAX_VALUE;
+
+	    for(ArbreDesChemins arbre : arbres)
+	    {
+	        double distance = noeuds[arbre.racine].distance(x, y);
+
+	        if(distance < distMin)
+	        {
+	            arbreLePlusProche = arbre;
+	            distMin = distance;
+	        }
+	    }
+
+	    return arbreLePlusProche;
+	}
+
+	@Override
+	synchronized public void activerZone(Rectangle rectangle, boolean miseAJour)
+			throws IllegalArgumentException
+	{
+	    modifierZone(rectangle, true);
+
+        if(nbNoeudsModifies == 0)
+            return;
+
+        if(!miseAJour)
+            arbresAJour = false;
+        else if(!arbresAJour)
+            miseAJourTDA();
+        else
+            for(ArbreDesChemins arbre : arbres)
+                arbre.reparerApresActivation();
 	}
-	
+
 	synchronized public void miseAJourTDA()
 	{
-	    contruireArbreDijkstra();
+	    for(ArbreDesChemins arbre : arbres)
+	        arbre.construire();
+
+	    arbresAJour = true;
 	}
-	
+
 	@Override
 	synchronized public void desactiverZone(Rectangle rectangle, boolean miseAJour)
 			throws IllegalArgumentException
-	{ 
-	    Noeud n;
-	    int min = Integer.MAX_VALUE;
-	    // on touche pas au noeud de sorti
-	    for(int i=1;i<NB_NOEUDS;i++)
+	{
+	    modifierZone(rectangle, false);
+
+	    if(nbNoeudsModifies == 0)
+            return;
+
+	    if(!miseAJour)
+	        arbresAJour = false;
+	    else if(!arbresAJour)
+	        miseAJourTDA();
+        else
+            for(ArbreDesChemins arbre : arbres)
+                arbre.reparerApresDesactivation();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Les distances et predecesseurs modifies par les reparations des arbres
+	 * sont journalises, l'annulation les restaure sans aucun calcul.
+	 */
+	@Override
+	synchronized public void debuterTransaction()
+	{
+	    if(transactionEnCours)
+	        throw new IllegalStateException("Transaction deja en cours");
+
+	    transactionEnCours = true;
+	    arbresAJourAvantTransaction = arbresAJour;
+	    nbNoeudsTransaction = 0;
+
+	    for(ArbreDesChemins arbre : arbres)
+	        arbre.debuterJournal();
+	}
+
+	@Override
+	synchronized public void validerTransaction()
+	{
+	    if(!transactionEnCours)
+	        throw new IllegalStateException("Aucune transaction en cours");
+
+	    for(int k=0;k<nbNoeudsTransaction;k++)
+	        noeudJournalise[noeudsTransaction[k]] = false;
+
+	    for(ArbreDesChemins arbre : arbres)
+	        arbre.effacerJournal();
+
+	    transactionEnCours = false;
+	}
+
+	@Override
+	synchronized public void annulerTransaction()
+	{
+	    if(!transactionEnCours)
+	        throw new IllegalStateException("Aucune transaction en cours");
+
+	    // les noeuds modifies reprennent leur etat d'origine
+	    for(int k=0;k<nbNoeudsTransaction;k++)
 	    {
-	        n = noeuds[i];
+	        int i = noeudsTransaction[k];
+	        noeuds[i].setActif(etatsAvantTransaction[k]);
+	        noeudJournalise[i] = false;
+	    }
+
+	    for(ArbreDesChemins arbre : arbres)
+	        arbre.restaurerJournal();
+
+	    arbresAJour = arbresAJourAvantTransaction;
+	    transactionEnCours = false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Le chemin actuel contient tous les noeuds de coupure entre le depart et
+	 * l'arrivee : une zone qui ne le touche pas peut etre desactivee sans
+	 * aucune recherche de chemin. Le chemin est marque une seule fois par
+	 * etat de l'arbre, le test est ensuite en O(emprise de la zone).
+	 */
+	@Override
+	synchronized public boolean laZoneToucheLeChemin(Rectangle zone, int xDepart,
+	        int yDepart, int xArrivee, int yArrivee)
+	{
+	    if(!arbresAJour)
+	        miseAJourTDA();
+
+	    ArbreDesChemins arbre = getArbre(xArrivee, yArrivee);
+
+	    if(arbre == null)
+	        return true;
+
+	    int depart = getIndiceNoeud(xDepart, yDepart);
+
+	    // pas de chemin actuellement
+	    if(arbre.dist[depart] == Integer.MAX_VALUE)
+	        return true;
+
+	    int colMin = Math.max(0, (zone.x - xOffset) / LARGEUR_NOEUD - 1);
+        int colMax = Math.min(NB_NOEUDS_LARGEUR - 1,
+                             (zone.x + zone.width - xOffset) / LARGEUR_NOEUD + 1);
+        int ligMin = Math.max(0, (zone.y - yOffset) / LARGEUR_NOEUD - 1);
+        int ligMax = Math.min(NB_NOEUDS_HAUTEUR - 1,
+                             (zone.y + zone.height - yOffset) / LARGEUR_NOEUD + 1);
+
+        for(int i=colMin;i<=colMax;i++)
+            for(int j=ligMin;j<=ligMax;j++)
+            {
+                int iNoeud = i * NB_NOEUDS_HAUTEUR + j;
+
+                if(zone.contains(noeuds[iNoeud])
+                && arbre.estSurLeChemin(depart, iNoeud))
+                    return true;
+            }
+
+	    return false;
+	}
 
-	        if(rectangle.contains(n))
+	/**
+	 * Permet de modifier l'etat des noeuds dont le centre est dans une zone.
+	 * <p>
+	 * Seules les mailles qui recouvrent la zone sont parcourues. Les noeuds
+	 * qui changent d'etat sont stockes dans noeudsModifies.
+	 *
+	 * @param rectangle la zone
+	 * @param actif le nouvel etat des noeuds
+	 */
+	private void modifierZone(Rectangle rectangle, boolean actif)
+	{
+	    nbNoeudsModifies = 0;
+
+	    int colMin = Math.max(0, (rectangle.x - xOffset) / LARGEUR_NOEUD - 1);
+	    int colMax = Math.min(NB_NOEUDS_LARGEUR - 1,
+	                         (rectangle.x + rectangle.width - xOffset) / LARGEUR_NOEUD + 1);
+	    int ligMin = Math.max(0, (rectangle.y - yOffset) / LARGEUR_NOEUD - 1);
+	    int ligMax = Math.min(NB_NOEUDS_HAUTEUR - 1,
+	                         (rectangle.y + rectangle.height - yOffset) / LARGEUR_NOEUD + 1);
+
+	    Noeud n;
+	    for(int i=colMin;i<=colMax;i++)
+	        for(int j=ligMin;j<=ligMax;j++)
 	        {
-	            n.setActif(false);
-	            
-	            
-	            // TODO test optimisation
-	            //if(infoNoeuds[i].distArrivee < min)
-	            //    min = infoNoeuds[i].distArrivee;
-	            
-	            
-	            //System.out.println("noeud ["+n.x+","+n.y+"] désactivé");
-	            
-	            // pour tous les arcs
-	            /*
-	            for(int j=0;j<nbVoisins[i];j++)
+	            int iNoeud = i * NB_NOEUDS_HAUTEUR + j;
+	            n = noeuds[iNoeud];
+
+	            if(n.isActif() != actif && rectangle.contains(n))
 	            {
-	                poids[i][j] = Integer.MAX_VALUE;
-	                //nbArcsActifs-=2; // bidirection
-	            }*/          
+	                if(transactionEnCours && !noeudJournalise[iNoeud])
+	                {
+	                    noeudJournalise[iNoeud] = true;
+	                    etatsAvantTransaction[nbNoeudsTransaction] = n.isActif();
+	                    noeudsTransaction[nbNoeudsTransaction++] = iNoeud;
+	                }
+
+	                n.setActif(actif);
+	                noeudsModifies[nbNoeudsModifies++] = iNoeud;
+	            }
 	        }
-	    }
-	    
-	    if(miseAJour)
-	        contruireArbreDijkstra();
-	        
-	    
-	    // TODO test optimisation
-	    //if(miseAJour)
-	    //    contruireArbreDijkstraOptimise(min);
-	    
 	}
 
 	@Override
@@ -431,242 +663,364 @@ public class Maillage_v2 implements Maillage
 
 	@Override
 	synchronized public Line2D[] getArcs()
-	{    
+	{
 	    ArrayList<Line2D> arcs = new ArrayList<Line2D>();
 
 	    Arc arc;
 	    for(int i=0;i<NB_NOEUDS;i++)
 	        if(noeuds[i].isActif())
     	        for(int j=0;j<nbVoisins[i];j++)
-    	        {      
+    	        {
     	            // les arcs de poids infinis sont inexistants.
-    	            if(poids[i][j] != Integer.MAX_VALUE 
-    	            && noeuds[voisins[i][j]].isActif()
-    	            && voisins[i][j] != 0) // prends pas les arc du point de sorti commun
+    	            if(poids[i][j] != Integer.MAX_VALUE
+    	            && noeuds[voisins[i][j]].isActif())
     	            {
     	                arc = new Arc(noeuds[i], noeuds[voisins[i][j]]);
-    	                arcs.add(arc.toLine2D()); 
+    	                arcs.add(arc.toLine2D());
     	            }
     	        }
-	    
+
 	    Line2D[]tabArcs = new Line2D[arcs.size()];
 	    arcs.toArray(tabArcs);
-	    
+
 	    return tabArcs;
 	}
 
 	/**
 	 * Calcul la distance entre chaque point
-	 * 
+	 *
 	 * @param chemin une collection de point
 	 * @return la longueur du chemin
 	 */
     public double getLongueurChemin(ArrayList<Point> chemin)
     {
-        return 0.0;
+        double longueur = 0.0;
+
+        Point pCourant;
+        Iterator<Point> i = chemin.iterator();
+
+        // premier point
+        if(i.hasNext())
+            pCourant = i.next();
+        else
+            return 0;
+
+        // pour tous les autres...
+        Point pSuivant;
+        while(i.hasNext())
+        {
+            pSuivant = i.next();
+            longueur += pCourant.distance(pSuivant);
+            pCourant = pSuivant;
+        }
+
+        return longueur;
     }
-    
-    
-    /**
-     * Arbre des chemins les plus courts.
-     */
-    private InfoNoeud[] infoNoeuds;
-       
+
+    @Override
+    public int getNbNoeuds()
+    {
+        return NB_NOEUDS;
+    }
+
     /**
-     * Dijkstra's algorithm to find shortest path from iNoeudArrive 
-     * to all other nodes
-     * 
-     * @param iNoeudArrive
+     * Arbre des plus courts chemins jusqu'a un point de sortie.
+     * <p>
+     * dist[i] est la distance du noeud i jusqu'a la sortie, pred[i] le
+     * noeud suivant sur le chemin (-1 pour la sortie ou si inaccessible).
      */
-    synchronized private void contruireArbreDijkstra()
+    private class ArbreDesChemins
     {
-        if(infoNoeuds == null)
+        final int racine;
+        final int[] dist = new int[NB_NOEUDS];
+        final int[] pred = new int[NB_NOEUDS];
+
+        /**
+         * Journal des modifications durant une transaction
+         */
+        private int[] journal, ancienneDist, ancienPred;
+        private boolean[] journalise;
+        private int nbJournal;
+
+        /**
+         * Noeuds du chemin actuel depuis un noeud de depart, marques par
+         * le tampon courant. Invalide des que l'arbre est modifie.
+         */
+        private int[] marques;
+        private int tampon = 0;
+        private int departMarque = -1;
+        private boolean cheminMarqueValide = false;
+
+        ArbreDesChemins(int racine)
         {
-            infoNoeuds = new InfoNoeud[NB_NOEUDS];
-            
-            // creation des noeuds d'information
-            for(int i=0;i<NB_NOEUDS;i++)
-                infoNoeuds[i] = new InfoNoeud(i,noeuds[i]);
+            this.racine = racine;
         }
-        else
+
+        /**
+         * Dijkstra's algorithm to find shortest path from the root
+         * to all other nodes
+         * <p>
+         * Le noeud suivant est extrait d'un tas binaire indexe : O(E log V).
+         */
+        void construire()
+        {
             for(int i=0;i<NB_NOEUDS;i++)
-                infoNoeuds[i].reset();
-                
-        // Sommet de départ à zéro
-        infoNoeuds[0].distArrivee = 0;
-        
-        // Pour chaque noeuds
-        for (int i = 0; i < NB_NOEUDS; i++)
+                invalider(i);
+
+            file.vider();
+
+            // Sommet de départ à zéro
+            if(noeuds[racine].isActif())
+            {
+                modifier(racine, 0, -1);
+                ajouterDansFile(racine);
+            }
+
+            propager();
+        }
+
+        /**
+         * Permet de reparer l'arbre apres la desactivation de noeuds.
+         * <p>
+         * Seules les distances des noeuds desactives et de leurs descendants
+         * dans l'arbre peuvent augmenter, les autres noeuds ne sont pas touches.
+         * Ces noeuds sont invalides, puis recalcules depuis leurs voisins
+         * valides par un Dijkstra partiel.
+         */
+        void reparerApresDesactivation()
         {
-            if(noeuds[i].isActif())
+            // invalidation des noeuds desactives et de leurs sous-arbres
+            int debut = 0, fin = 0;
+            for(int k=0;k<nbNoeudsModifies;k++)
             {
-                // Cherche le noeud suivant à traiter
-                final int next = minVertex(infoNoeuds);
-                
-                if(next != -1)
+                int i = noeudsModifies[k];
+                invalider(i);
+                affecte[i] = true;
+                fileAffectes[fin++] = i;
+            }
+
+            while(debut < fin)
+            {
+                int u = fileAffectes[debut++];
+
+                // les fils de u dans l'arbre sont forcement ses voisins
+                for(int j=0;j<nbVoisins[u];j++)
                 {
-                    // Traitement du noeud
-                    infoNoeuds[next].visite = true;
+                    int v = voisins[u][j];
 
-                    // Pour tous les voisins du noeud
-                    for (int j = 0; j < nbVoisins[next]; j++)
+                    if(!affecte[v] && pred[v] == u)
                     {
-                        if(noeuds[voisins[next][j]].isActif())
-                        {
-                            final int iVoisin = voisins[next][j];
-                            final int distArrivee = infoNoeuds[next].distArrivee + poids[next][j];
-                            if (infoNoeuds[iVoisin].distArrivee > distArrivee)
-                            {
-                                infoNoeuds[iVoisin].distArrivee = distArrivee;
-                                infoNoeuds[iVoisin].pred = next;
-                            }
-                        }
+                        invalider(v);
+                        affecte[v] = true;
+                        fileAffectes[fin++] = v;
                     }
                 }
             }
+
+            // reamorcage depuis la frontiere des noeuds non affectes
+            for(int k=0;k<fin;k++)
+            {
+                int v = fileAffectes[k];
+
+                if(noeuds[v].isActif() && relacherDepuisVoisins(v))
+                    ajouterDansFile(v);
+            }
+
+            propager();
+
+            for(int k=0;k<fin;k++)
+                affecte[fileAffectes[k]] = false;
         }
 
-        //this.infoNoeuds = infoNoeuds; // (ignore pred[s]==0!)
-    }
-    
-    
-    
-    
-    
-    /**
-     * Dijkstra's algorithm to find shortest path from iNoeudArrive 
-     * to all other nodes
-     * 
-     * @param iNoeudArrive
-     */
-    synchronized private void contruireArbreDijkstraOptimise(int poidsMin)
-    {
-        if(infoNoeuds == null)
+        /**
+         * Permet de reparer l'arbre apres l'activation de noeuds.
+         * <p>
+         * Les distances ne peuvent que diminuer. Les noeuds actives sont
+         * rattaches a leur meilleur voisin puis les ameliorations sont propagees.
+         */
+        void reparerApresActivation()
         {
-            infoNoeuds = new InfoNoeud[NB_NOEUDS];
-            
-            // creation des noeuds d'information
-            for(int i=0;i<NB_NOEUDS;i++)
-                infoNoeuds[i] = new InfoNoeud(i,noeuds[i]);
-        }
-        else
-            for(int i=0;i<NB_NOEUDS;i++)
+            for(int k=0;k<nbNoeudsModifies;k++)
             {
-                if(infoNoeuds[i].distArrivee < poidsMin-15)
+                int i = noeudsModifies[k];
+                invalider(i);
+
+                if(i == racine)
                 {
-                    // Les noeuds avant gardent les mêmes prédécésseurs
-                    // et sont déjà traités
-                    infoNoeuds[i].visite = true;
+                    modifier(i, 0, -1);
+                    ajouterDansFile(i);
                 }
-                else
+                else if(relacherDepuisVoisins(i))
+                    ajouterDansFile(i);
+            }
+
+            propager();
+        }
+
+        private void invalider(int i)
+        {
+            modifier(i, Integer.MAX_VALUE, -1);
+        }
+
+        /**
+         * Rattache un noeud a son voisin actif le plus proche de la sortie.
+         *
+         * @param i l'indice du noeud
+         * @return true si la distance du noeud a diminue
+         */
+        private boolean relacherDepuisVoisins(int i)
+        {
+            boolean ameliore = false;
+
+            for(int j=0;j<nbVoisins[i];j++)
+            {
+                int w = voisins[i][j];
+
+                if(noeuds[w].isActif() && dist[w] != Integer.MAX_VALUE)
                 {
-                    if(infoNoeuds[i].distArrivee >= poidsMin)
-                        infoNoeuds[i].distArrivee = Integer.MAX_VALUE;
-                    
-                    //infoNoeuds[i].pred = -1;
-                    infoNoeuds[i].visite = false;
+                    int distArrivee = dist[w] + poids[i][j];
+
+                    if(distArrivee < dist[i])
+                    {
+                        modifier(i, distArrivee, w);
+                        ameliore = true;
+                    }
                 }
             }
-                
-                
-        // Sommet de départ à zéro
-        infoNoeuds[0].distArrivee = 0;
-        
-        // Pour chaque noeuds
-        for (int i = 0; i < NB_NOEUDS; i++)
+
+            return ameliore;
+        }
+
+        /**
+         * Dijkstra (partiel ou complet) : propage les distances des noeuds
+         * de la file a tous les noeuds qu'elles ameliorent.
+         */
+        private void propager()
         {
-            if(noeuds[i].isActif())
+            while(!file.estVide())
             {
-                // Cherche le noeud suivant à traiter
-                final int next = minVertex(infoNoeuds);
-                
-                if(next != -1)
+                int u = file.extraireMin();
+
+                // Pour tous les voisins du noeud
+                for(int j=0;j<nbVoisins[u];j++)
                 {
-                    // Traitement du noeud
-                    infoNoeuds[next].visite = true;
+                    int v = voisins[u][j];
 
-                    // Pour tous les voisins du noeud
-                    for (int j = 0; j < nbVoisins[next]; j++)
+                    if(noeuds[v].isActif())
                     {
-                        if(noeuds[voisins[next][j]].isActif())
+                        int distArrivee = dist[u] + poids[u][j];
+
+                        if(distArrivee < dist[v])
                         {
-                            final int iVoisin = voisins[next][j];
-                            final int distArrivee = infoNoeuds[next].distArrivee + poids[next][j];
-                            if (infoNoeuds[iVoisin].distArrivee > distArrivee)
-                            {
-                                infoNoeuds[iVoisin].distArrivee = distArrivee;
-                                infoNoeuds[iVoisin].pred = next;
-                            }
+                            modifier(v, distArrivee, u);
+                            ajouterDansFile(v);
                         }
                     }
                 }
             }
         }
 
-        //this.infoNoeuds = infoNoeuds; // (ignore pred[s]==0!)
-    }
-    
-    
-    
-   
-    /**
-     * Retour l'indice du noeud non visité dont la distance est la plus faible avec
-     * l'arrivée. 
-     * 
-     * @param dist les distances depuis le noeud de départ
-     * @param visite les noeuds visités
-     * @return l'indice du noeud le dont la distance est la plus faible.
-     *          ou -1 s'il n'y en a pas
-     */
-    private int minVertex(InfoNoeud[] infoNoeuds)
-    {
-        int x = Integer.MAX_VALUE;
-        int y = -1; // graph not connected, or no unvisited vertices
-        
-        // Pour chaque noeuds
-        for (int i = 0; i < NB_NOEUDS; i++)
+        private void ajouterDansFile(int i)
         {
-            if(noeuds[i].isActif())
+            file.ajouterOuDiminuer(i, dist[i]);
+        }
+
+        /**
+         * Permet de modifier la distance et le predecesseur d'un noeud.
+         * <p>
+         * Durant une transaction, les anciennes valeurs sont memorisees a la
+         * premiere modification du noeud.
+         */
+        private void modifier(int i, int d, int p)
+        {
+            if(transactionEnCours && !journalise[i])
             {
-                // Si pas visité et la distance est plus faible 
-                if (!infoNoeuds[i].visite && infoNoeuds[i].distArrivee < x)
-                {
-                    y = i;
-                    x = infoNoeuds[i].distArrivee;
-                }
+                journalise[i]            = true;
+                journal[nbJournal]       = i;
+                ancienneDist[nbJournal]  = dist[i];
+                ancienPred[nbJournal]    = pred[i];
+                nbJournal++;
             }
+
+            dist[i] = d;
+            pred[i] = p;
+
+            cheminMarqueValide = false;
         }
- 
-        return y;
-    }
 
-    @Override
-    public int getNbNoeuds()
-    {
-        return NB_NOEUDS;
-    }
+        /**
+         * Permet de savoir si un noeud est sur le chemin actuel depuis un
+         * noeud de depart.
+         * <p>
+         * Le chemin est marque une seule fois par etat de l'arbre et par
+         * noeud de depart, chaque test suivant est en O(1).
+         *
+         * @param depart le noeud de depart
+         * @param i le noeud a tester
+         * @return true si le noeud est sur le chemin
+         */
+        boolean estSurLeChemin(int depart, int i)
+        {
+            if(!cheminMarqueValide || departMarque != depart)
+            {
+                if(marques == null)
+                    marques = new int[NB_NOEUDS];
 
-    
-    public static class InfoNoeud
-    {
-        int id;
-        Noeud noeud;
-        int distArrivee = Integer.MAX_VALUE;
-        int pred = -1;
-        boolean visite = false;
-        
-        public InfoNoeud(int id,Noeud noeud)
+                tampon++;
+
+                for(int in = depart; in != -1; in = pred[in])
+                    marques[in] = tampon;
+
+                departMarque       = depart;
+                cheminMarqueValide = true;
+            }
+
+            return marques[i] == tampon;
+        }
+
+        /**
+         * Permet de commencer a journaliser les modifications de l'arbre
+         */
+        void debuterJournal()
         {
-            this.id     = id;
-            this.noeud  = noeud;
+            if(journal == null)
+            {
+                journal      = new int[NB_NOEUDS];
+                ancienneDist = new int[NB_NOEUDS];
+                ancienPred   = new int[NB_NOEUDS];
+                journalise   = new boolean[NB_NOEUDS];
+            }
+
+            nbJournal = 0;
         }
-        
-        public void reset()
+
+        /**
+         * Permet d'oublier le journal, les modifications sont conservees
+         */
+        void effacerJournal()
         {
-            distArrivee = Integer.MAX_VALUE;
-            pred = -1;
-            visite = false;
+            for(int k=0;k<nbJournal;k++)
+                journalise[journal[k]] = false;
+
+            nbJournal = 0;
+        }
+
+        /**
+         * Permet de restaurer l'arbre tel qu'au debut du journal
+         */
+        void restaurerJournal()
+        {
+            for(int k=nbJournal-1;k>=0;k--)
+            {
+                int i = journal[k];
+                dist[i] = ancienneDist[k];
+                pred[i] = ancienPred[k];
+                journalise[i] = false;
+            }
+
+            cheminMarqueValide = false;
+
+            nbJournal = 0;
         }
-        
     }
 }
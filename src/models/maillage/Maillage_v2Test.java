@@ -0,0 +1,197 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package models.maillage;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.*;
+
+/**
+ * Compare la reparation incrementale des arbres du Maillage_v2 et le tas
+ * indexe avec un recalcul complet, sur des poses et ventes de tours
+ * aleatoires.
+ *
+ * @author Aurelien Da Campo
+ */
+public class Maillage_v2Test
+{
+	private static final int LARGEUR = 320, HAUTEUR = 240, NOEUD = 10;
+	private static final int X_SORTIE = 315, Y_SORTIE = 115;
+	private static final int NB_OPERATIONS = 300;
+
+	/**
+	 * Les distances reparees doivent etre celles d'un Dijkstra complet
+	 */
+	@Test
+	public void testReparationIncrementale() throws Exception
+	{
+		Random alea = new Random(2010);
+
+		// repare a chaque operation
+		Maillage_v2 incremental = new Maillage_v2(LARGEUR, HAUTEUR, NOEUD, 0, 0);
+		incremental.ajouterPointdeSortie(X_SORTIE, Y_SORTIE);
+
+		// operations validees, rejouees sans mise a jour des arbres
+		ArrayList<Rectangle> zones = new ArrayList<Rectangle>();
+		ArrayList<Boolean> actives = new ArrayList<Boolean>();
+
+		for(int k=0;k<NB_OPERATIONS;k++)
+		{
+			Rectangle zone = new Rectangle(alea.nextInt(LARGEUR / NOEUD) * NOEUD,
+					alea.nextInt(HAUTEUR / NOEUD) * NOEUD, 20, 20);
+			boolean vente = alea.nextInt(3) == 0;
+			boolean transaction = alea.nextBoolean();
+			boolean annulee = transaction && alea.nextBoolean();
+
+			if(transaction)
+				incremental.debuterTransaction();
+
+			if(vente)
+				incremental.activerZone(zone, true);
+			else
+				incremental.desactiverZone(zone, true);
+
+			if(annulee)
+				incremental.annulerTransaction();
+			else
+			{
+				if(transaction)
+					incremental.validerTransaction();
+
+				zones.add(zone);
+				actives.add(vente);
+			}
+
+			// recalcul complet sur le meme etat
+			Maillage_v2 complet = new Maillage_v2(LARGEUR, HAUTEUR, NOEUD, 0, 0);
+			complet.ajouterPointdeSortie(X_SORTIE, Y_SORTIE);
+
+			for(int i=0;i<zones.size();i++)
+				if(actives.get(i))
+					complet.activerZone(zones.get(i), false);
+				else
+					complet.desactiverZone(zones.get(i), false);
+
+			complet.miseAJourTDA();
+
+			comparer(incremental, complet);
+		}
+	}
+
+	/**
+	 * Le tas doit toujours extraire une cle minimale
+	 */
+	@Test
+	public void testTasMinIndexe()
+	{
+		Random alea = new Random(2010);
+		int capacite = 200;
+
+		TasMinIndexe tas = new TasMinIndexe(capacite);
+		Map<Integer, Integer> reference = new HashMap<Integer, Integer>();
+
+		for(int k=0;k<20000;k++)
+		{
+			int operation = alea.nextInt(10);
+
+			if(operation < 6)
+			{
+				int element = alea.nextInt(capacite);
+				int cle     = alea.nextInt(1000);
+
+				tas.ajouterOuDiminuer(element, cle);
+
+				Integer ancienne = reference.get(element);
+				if(ancienne == null || cle < ancienne)
+					reference.put(element, cle);
+			}
+			else if(operation < 9)
+			{
+				assertEquals(reference.isEmpty(), tas.estVide());
+
+				if(!reference.isEmpty())
+				{
+					int min = Integer.MAX_VALUE;
+					for(int cle : reference.values())
+						min = Math.min(min, cle);
+
+					int element = tas.extraireMin();
+
+					assertTrue(reference.containsKey(element));
+					assertEquals(min, (int) reference.remove(element));
+				}
+			}
+			else if(alea.nextInt(20) == 0)
+			{
+				tas.vider();
+				reference.clear();
+			}
+		}
+	}
+
+	/**
+	 * Compare le cout du plus court chemin de chaque noeud jusqu'a la sortie
+	 */
+	private void comparer(Maillage_v2 incremental, Maillage_v2 complet)
+	{
+		for(Noeud noeud : complet.getNoeuds())
+		{
+			long attendu = cout(complet, noeud);
+			long obtenu  = cout(incremental, noeud);
+
+			assertEquals("noeud " + noeud.x + "," + noeud.y, attendu, obtenu);
+		}
+	}
+
+	/**
+	 * Permet de recuperer le cout (poids des arcs) du plus court chemin
+	 *
+	 * @return le cout ou -1 s'il n'y a pas de chemin
+	 */
+	private long cout(Maillage maillage, Point depart)
+	{
+		ArrayList<Point> chemin;
+		try
+		{
+			chemin = maillage.plusCourtChemin(depart.x, depart.y, X_SORTIE, Y_SORTIE);
+		}
+		catch (PathNotFoundException e)
+		{
+			return -1;
+		}
+
+		int poidsDiago = (int) Math.sqrt(2 * NOEUD * NOEUD);
+		long cout = 0;
+
+		for(int i=1;i<chemin.size();i++)
+		{
+			Point p = chemin.get(i - 1), s = chemin.get(i);
+			cout += (p.x != s.x && p.y != s.y) ? poidsDiago : NOEUD;
+		}
+
+		return cout;
+	}
+}
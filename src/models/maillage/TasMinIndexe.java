@@ -0,0 +1,177 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package models.maillage;
+
+/**
+ * Tas binaire minimum indexe sur des entiers.
+ * <p>
+ * Les elements sont les indices des noeuds [0, capacite[. Chaque element est
+ * present au plus une fois, sa position dans le tas est memorisee ce qui
+ * permet de diminuer sa cle en O(log n).
+ * <p>
+ * Tous les tableaux sont alloues a la construction, le tas est reutilise
+ * d'un calcul a l'autre sans allocation.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @since jdk1.6.0_16
+ * @see Maillage_v2
+ */
+class TasMinIndexe
+{
+    private static final int ABSENT = -1;
+
+    private final int[] tas;
+    private final int[] position;
+    private final int[] cles;
+    private int taille;
+
+    /**
+     * Constructeur
+     *
+     * @param capacite le nombre d'elements possibles
+     */
+    TasMinIndexe(int capacite)
+    {
+        tas      = new int[capacite];
+        position = new int[capacite];
+        cles     = new int[capacite];
+
+        for(int i=0;i<capacite;i++)
+            position[i] = ABSENT;
+    }
+
+    /**
+     * Permet de savoir si le tas est vide
+     *
+     * @return true s'il est vide, false sinon
+     */
+    boolean estVide()
+    {
+        return taille == 0;
+    }
+
+    /**
+     * Permet de vider le tas
+     */
+    void vider()
+    {
+        for(int i=0;i<taille;i++)
+            position[tas[i]] = ABSENT;
+
+        taille = 0;
+    }
+
+    /**
+     * Permet d'ajouter un element ou de diminuer sa cle s'il est deja present.
+     *
+     * Une cle plus grande que la cle actuelle est ignoree.
+     *
+     * @param element l'element
+     * @param cle la cle de l'element
+     */
+    void ajouterOuDiminuer(int element, int cle)
+    {
+        int pos = position[element];
+
+        if(pos == ABSENT)
+        {
+            pos = taille++;
+            tas[pos] = element;
+            position[element] = pos;
+        }
+        else if(cle >= cles[element])
+            return;
+
+        cles[element] = cle;
+        monter(pos);
+    }
+
+    /**
+     * Permet d'extraire l'element de plus petite cle
+     *
+     * @return l'element extrait
+     */
+    int extraireMin()
+    {
+        if(taille == 0)
+            throw new IllegalStateException("Tas vide");
+
+        int min = tas[0];
+        position[min] = ABSENT;
+
+        taille--;
+        if(taille > 0)
+        {
+            tas[0] = tas[taille];
+            position[tas[0]] = 0;
+            descendre(0);
+        }
+
+        return min;
+    }
+
+    private void monter(int pos)
+    {
+        int element = tas[pos];
+        int cle     = cles[element];
+
+        while(pos > 0)
+        {
+            int parent = (pos - 1) >> 1;
+
+            if(cles[tas[parent]] <= cle)
+                break;
+
+            tas[pos] = tas[parent];
+            position[tas[pos]] = pos;
+            pos = parent;
+        }
+
+        tas[pos] = element;
+        position[element] = pos;
+    }
+
+    private void descendre(int pos)
+    {
+        int element = tas[pos];
+        int cle     = cles[element];
+
+        while(true)
+        {
+            int fils = 2 * pos + 1;
+
+            if(fils >= taille)
+                break;
+
+            if(fils + 1 < taille && cles[tas[fils + 1]] < cles[tas[fils]])
+                fils++;
+
+            if(cles[tas[fils]] >= cle)
+                break;
+
+            tas[pos] = tas[fils];
+            position[tas[pos]] = pos;
+            pos = fils;
+        }
+
+        tas[pos] = element;
+        position[element] = pos;
+    }
+}
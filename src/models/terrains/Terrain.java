@@ -31,6 +31,7 @@ import models.maillage.*;
 import models.outils.GestionnaireSons;
 import models.outils.Son;
 import models.tours.Tour;
+import outils.Configuration;
 
 /**
  * Classe de gestion d'un terrain de jeu.
@@ -114,6 +115,23 @@ public class Terrain implements Serializable
     transient private Maillage MAILLAGE_TERRESTRE;
     transient private Maillage MAILLAGE_AERIEN;
     
+    /**
+     * Les champs de direction, un par zone d'arrivee des equipes, suivis
+     * par toutes les creatures qui s'y rendent.
+     * 
+     * @see ChampDeDirection
+     */
+    transient private HashMap<Equipe, ChampDeDirection> champsTerrestres;
+    transient private HashMap<Equipe, ChampDeDirection> champsAeriens;
+    
+    /**
+     * Les creatures suivent-elles les champs de direction ou chacune son 
+     * propre chemin ?
+     * 
+     * @see Configuration#getDeplacement()
+     */
+    transient private boolean deplacementParChamps;
+    
     /**
      * Dimention du maillage
      */
@@ -255,12 +273,14 @@ public class Terrain implements Serializable
     public void initialiser()
     {
         // creation des deux maillages
-        // TODO Choix du maillage
-        MAILLAGE_TERRESTRE = new Maillage_v1(largeurMaillage, hauteurMaillage,
-                PRECISION_MAILLAGE, positionMaillageX, positionMaillageY);
+        MAILLAGE_TERRESTRE = creerMaillage();
+        MAILLAGE_AERIEN    = creerMaillage();
+        
+        champsTerrestres = new HashMap<Equipe, ChampDeDirection>();
+        champsAeriens    = new HashMap<Equipe, ChampDeDirection>();
         
-        MAILLAGE_AERIEN = new Maillage_v1(largeurMaillage, hauteurMaillage,
-                PRECISION_MAILLAGE, positionMaillageX, positionMaillageY);  
+        deplacementParChamps = !Configuration.DEPLACEMENT_CHEMINS.equals(
+                Configuration.getDeplacement());
         
         
         // activation des murs for(Rectangle mur : murs)
@@ -286,6 +306,24 @@ public class Terrain implements Serializable
         initialiser();
     }
     
+    /**
+     * Permet de creer un maillage de la version choisie dans la configuration.
+     * 
+     * Le Maillage_v2 (tableaux et arbres des plus courts chemins) est utilise
+     * par defaut, le Maillage_v1 (jgrapht) reste disponible pour comparaison.
+     * 
+     * @return un nouveau maillage aux dimensions du terrain
+     */
+    private Maillage creerMaillage()
+    {
+        if(Configuration.MAILLAGE_V1.equals(Configuration.getMaillage()))
+            return new Maillage_v1(largeurMaillage, hauteurMaillage,
+                    PRECISION_MAILLAGE, positionMaillageX, positionMaillageY);
+        
+        return new Maillage_v2(largeurMaillage, hauteurMaillage,
+                PRECISION_MAILLAGE, positionMaillageX, positionMaillageY);
+    }
+    
     
     // ------------------------------
     // -- GETTER / SETTER BASIQUES --
@@ -495,74 +533,105 @@ public class Terrain implements Serializable
     // -----------------------
 
     /**
-     * Permet de savoir si une tour peut etre posee a un certain endroit sur le
-     * terrain.
+     * Permet de desactiver la zone d'une tour si elle ne bloque pas le chemin.
+     * 
+     * Le test et la pose ne coutent qu'une seule mise a jour du maillage : 
+     * la zone est desactivee dans une transaction, le chemin est teste, 
+     * puis la transaction est validee et les creatures suivent directement 
+     * le nouveau chemin, ou annulee si le chemin est bloque.
      * 
-     * @param tour la tour a posee
-     * @return true si la tour peut etre posee, false sinon
+     * @param tour la tour a poser
+     * @return true si la zone a ete desactivee, false si la tour bloquerait
+     *         le chemin (le maillage n'est alors pas modifie)
      */
-    public boolean laTourPeutEtrePosee(Tour tour)
+    synchronized public boolean desactiverZoneSiCheminLibre(Tour tour)
     {
-        // c'est une tour valide ?
         if (tour == null)
-            return false;
-
-        // elle est bien dans le terrain
-        if (tour.getX() < 0 || tour.getX() > largeur-tour.width
-         || tour.getY() < 0 || tour.getY() > hauteur-tour.height)
-            return false;
-            
-        // il n'y a pas un mur
-        synchronized (murs)
+            throw new IllegalArgumentException("Tour nulle");
+        
+        Equipe equipe = tour.getPrioprietaire().getEquipe();
+        
+        // la tour ne touche pas le chemin actuel : elle ne peut ni le bloquer
+        // ni l'allonger, aucune recherche de chemin n'est necessaire
+        if (!laTourToucheLeChemin(tour, equipe))
         {
-            for (Rectangle mur : murs)
-                if (tour.intersects(mur))
-                    return false;
+            desactiverZone(tour, true);
+            return true;
         }
-
-        // il n'y a pas les zones de depart ou d'arrivee
-        for(Equipe e : jeu.getEquipes())
+        
+        MAILLAGE_TERRESTRE.debuterTransaction();
+        
+        try
         {
-            // zones de départ
-            for(int i=0;i<e.getNbZonesDepart();i++)
-                if(tour.intersects(e.getZoneDepartCreatures(i)))
-                    return false;
+            MAILLAGE_TERRESTRE.desactiverZone(tour, true);
             
-            // zone d'arrivee
-            if (tour.intersects(e.getZoneArriveeCreatures()))
-                return false;
+            // mise a jour du chemin
+            equipe.setLongueurChemin(getLongueurDuChemin(equipe));
         }
-
-        // rien empeche la tour d'etre posee
+        catch (PathNotFoundException e)
+        {
+            // il n'existe pas de chemin, donc elle bloque le chemin.
+            MAILLAGE_TERRESTRE.annulerTransaction();
+            return false;
+        }
+        
+        MAILLAGE_TERRESTRE.validerTransaction();
+        
+        miseAJourDesCheminsDesCreatures();
+        
         return true;
     }
-
+    
     /**
-     * Permet de savoir si apres la pose d'une tour en parametre le chemin
-     * deviendra bloque ?
+     * Permet de savoir si une tour touche le chemin actuel des creatures 
+     * terriennes d'une equipe, depuis l'une de ses zones de depart.
+     * 
+     * Les noeuds d'un chemin contiennent tous les noeuds de coupure entre
+     * la zone de depart et la zone d'arrivee, une tour qui ne touche aucun
+     * des chemins ne peut donc ni les bloquer ni les allonger.
      * 
-     * @param tour la tour a testee si elle bloquera le chemin
-     * @return true si elle le bloquera lors de la pose, false sinon
+     * @param tour la tour
+     * @param equipe l'equipe
+     * @return false si la tour ne touche assurement aucun chemin
      */
-    public boolean laTourBloqueraLeChemin(Tour tour)
+    private boolean laTourToucheLeChemin(Tour tour, Equipe equipe)
     {
-        // c'est une tour valide ?
-        if (tour == null)
-            return false;
-
-        // si l'on construit la tour, il existe toujours un chemin
-        desactiverZone(tour, false);
-
-        try {
-            
-            Equipe equipe = tour.getPrioprietaire().getEquipe();
-
-            // FIXME on part du principe que le joueur ne peu blocker que son chemin
-            // car il construit sur son troncon... A VOIR!
+        Rectangle zoneArrivee = equipe.getZoneArriveeCreatures();
+        
+        for(int i=0;i<equipe.getNbZonesDepart();i++)
+        {
+            Rectangle zoneDepart = equipe.getZoneDepartCreatures(i);
             
-            // TODO gérer plusieurs zone de depart
-            Rectangle zoneDepart = equipe.getZoneDepartCreatures(0);
-            Rectangle zoneArrivee = equipe.getZoneArriveeCreatures();
+            if(MAILLAGE_TERRESTRE.laZoneToucheLeChemin(tour, 
+                    (int) zoneDepart.getCenterX(), (int) zoneDepart.getCenterY(), 
+                    (int) zoneArrivee.getCenterX(), (int) zoneArrivee.getCenterY()))
+                return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Permet de calculer la longueur du chemin des creatures terriennes 
+     * d'une equipe dans l'etat actuel du maillage.
+     * 
+     * Il doit exister un chemin depuis chacune des zones de depart.
+     * 
+     * @param equipe l'equipe
+     * @return la longueur du plus long des chemins
+     * @throws PathNotFoundException si une zone de depart n'a pas de chemin
+     */
+    private double getLongueurDuChemin(Equipe equipe) throws PathNotFoundException
+    {
+        // FIXME on part du principe que le joueur ne peu blocker que son chemin
+        // car il construit sur son troncon... A VOIR!
+        
+        Rectangle zoneArrivee = equipe.getZoneArriveeCreatures();
+        double longueur = 0.0;
+        
+        for(int i=0;i<equipe.getNbZonesDepart();i++)
+        {
+            Rectangle zoneDepart = equipe.getZoneDepartCreatures(i);
             
             // calcul du chemin et attente une exception
             // PathNotFoundException s'il y a un probleme
@@ -570,24 +639,11 @@ public class Terrain implements Serializable
                     (int) zoneDepart.getCenterY(), (int) zoneArrivee
                             .getCenterX(), (int) zoneArrivee.getCenterY(),
                     Creature.TYPE_TERRIENNE);
-
-            double longueur = MAILLAGE_TERRESTRE.getLongueurChemin(chemin);
-            
             
-            // mise a jour du chemin
-            equipe.setLongueurChemin(longueur);
-            
-            
-            // il existe un chemin, donc elle ne bloque pas.
-            activerZone(tour, false); // on reactive la zone
-            return false;
-
-        } 
-        catch (PathNotFoundException e) {
-            // il n'existe pas de chemin, donc elle bloque le chemin.
-            activerZone(tour, false); // on reactive la zone
-            return true;
+            longueur = Math.max(longueur, MAILLAGE_TERRESTRE.getLongueurChemin(chemin));
         }
+
+        return longueur;
     }
     
     // ---------------------------
@@ -678,17 +734,28 @@ public class Terrain implements Serializable
     /**
      * Permet de mettre a jour les chemins des creatures lors de la modification
      * du maillage.
+     * 
+     * Avec les champs de direction, le maillage les tient deja a jour, il 
+     * suffit de signaler la modification aux creatures terriennes qui les 
+     * suivent. Sinon, le chemin de chaque creature terrienne est recalcule.
      */
     synchronized private void miseAJourDesCheminsDesCreatures()
     {
-        // Il ne doit pas y avoir de modifications sur la collection
-        // durant le parcours.
-        Creature creature;
-        Enumeration<Creature> eCreatures = jeu.getCreatures().elements();
-        while(eCreatures.hasMoreElements())
+        if(deplacementParChamps)
         {
-            creature = eCreatures.nextElement();
+            if(champsTerrestres == null)
+                return;
+            
+            // les tours n'affecte que le chemin des creatures terriennes
+            for(ChampDeDirection champ : champsTerrestres.values())
+                champ.invalider();
+            
+            return;
+        }
         
+        // copie en lecture seule, pas de modifications durant le parcours.
+        for(Creature creature : jeu.getCreatures())
+        {
             // les tours n'affecte que le chemin des creatures terriennes
             if (creature.getType() == Creature.TYPE_TERRIENNE)   
             {
@@ -739,6 +806,82 @@ public class Terrain implements Serializable
             }
         }
     }
+    
+    /**
+     * Permet de guider une creature jusqu'a la zone d'arrivee de l'equipe 
+     * qu'elle cible, par un champ de direction ou par son propre chemin
+     * selon le mode de deplacement configure.
+     * 
+     * @param creature la creature, son equipe ciblee doit etre connue
+     */
+    public void guiderCreature(Creature creature)
+    {
+        Equipe equipeCiblee = creature.getEquipeCiblee();
+        
+        if(deplacementParChamps)
+        {
+            creature.setChampDeDirection(getChampDeDirection(equipeCiblee,
+                    creature.getType()));
+            return;
+        }
+        
+        Rectangle zoneArrivee = equipeCiblee.getZoneArriveeCreatures();
+        
+        try
+        {    
+            creature.setChemin(getCheminLePlusCourt((int) creature.getCenterX(),
+                    (int) creature.getCenterY(), (int) zoneArrivee.getCenterX(),
+                    (int) zoneArrivee.getCenterY(), creature.getType()));
+        }
+        catch (PathNotFoundException e) 
+        {
+            // le chemin reste nul.
+        }
+    }
+
+    /**
+     * Permet de recuperer le champ de direction jusqu'a la zone d'arrivee
+     * d'une equipe.
+     * 
+     * Le champ est cree a la premiere demande puis partage par toutes les
+     * creatures du meme type qui ciblent l'equipe.
+     * 
+     * @param equipe l'equipe ciblee
+     * @param typeCreature le type de creature
+     * @return le champ de direction
+     */
+    synchronized public ChampDeDirection getChampDeDirection(Equipe equipe, 
+            int typeCreature)
+    {
+        HashMap<Equipe, ChampDeDirection> champs;
+        Maillage maillage;
+        
+        if (typeCreature == Creature.TYPE_TERRIENNE)
+        {
+            champs   = champsTerrestres;
+            maillage = MAILLAGE_TERRESTRE;
+        }
+        else
+        {
+            champs   = champsAeriens;
+            maillage = MAILLAGE_AERIEN;
+        }
+        
+        ChampDeDirection champ = champs.get(equipe);
+        
+        if(champ == null)
+        {
+            Rectangle zoneArrivee = equipe.getZoneArriveeCreatures();
+            
+            champ = new ChampDeDirection(maillage, 
+                    (int) zoneArrivee.getCenterX(), 
+                    (int) zoneArrivee.getCenterY());
+            
+            champs.put(equipe, champ);
+        }
+        
+        return champ;
+    }
 
     /**
      * Permet de recuperer le chemin le plus court entre deux points sur le
@@ -1000,4 +1143,4 @@ public class Terrain implements Serializable
     public void setFichierMusiqueDAmbiance(File fichierMusiqueDAmbiance) {
         this.fichierMusiqueDAmbiance = fichierMusiqueDAmbiance;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
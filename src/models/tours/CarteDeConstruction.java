@@ -0,0 +1,145 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package models.tours;
+
+import java.awt.Rectangle;
+import java.util.BitSet;
+
+/**
+ * Carte de constructibilite d'une zone de construction.
+ * <p>
+ * Chaque pixel de la zone est represente par un bit. Deux couches sont
+ * maintenues : les obstacles fixes (murs, zones de depart et d'arrivee des
+ * equipes), calcules une seule fois, et l'emprise des tours posees, mise a
+ * jour a chaque pose ou vente.
+ * <p>
+ * Tester un emplacement ne parcourt que les lignes de la tour, chaque ligne
+ * etant testee d'un coup par mots de 64 bits.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @since jdk1.6.0_16
+ * @see GestionnaireTours
+ */
+class CarteDeConstruction
+{
+    private final Rectangle zone;
+    private final BitSet obstacles;
+    private final BitSet tours;
+
+    /**
+     * Constructeur
+     *
+     * @param zone la zone de construction
+     */
+    CarteDeConstruction(Rectangle zone)
+    {
+        this.zone = new Rectangle(zone);
+
+        int taille = Math.max(0, zone.width) * Math.max(0, zone.height);
+        obstacles  = new BitSet(taille);
+        tours      = new BitSet(taille);
+    }
+
+    /**
+     * Permet d'ajouter un obstacle fixe
+     *
+     * @param obstacle la zone inconstructible
+     */
+    synchronized void ajouterObstacle(Rectangle obstacle)
+    {
+        marquer(obstacles, obstacle, true);
+    }
+
+    /**
+     * Permet de marquer l'emprise d'une tour posee
+     *
+     * @param tour la tour
+     */
+    synchronized void ajouterTour(Rectangle tour)
+    {
+        marquer(tours, tour, true);
+    }
+
+    /**
+     * Permet de liberer l'emprise d'une tour vendue.
+     * <p>
+     * Les tours ne se chevauchent jamais, l'emprise peut etre effacee.
+     *
+     * @param tour la tour
+     */
+    synchronized void supprimerTour(Rectangle tour)
+    {
+        marquer(tours, tour, false);
+    }
+
+    /**
+     * Permet de savoir si une zone est entierement constructible
+     *
+     * @param r la zone a tester
+     * @return true si elle est dans la zone de construction et ne touche
+     *         ni obstacle ni tour, false sinon
+     */
+    synchronized boolean estLibre(Rectangle r)
+    {
+        if(!zone.contains(r))
+            return false;
+
+        for(int ligne = r.y - zone.y; ligne < r.y - zone.y + r.height; ligne++)
+        {
+            int debut = ligne * zone.width + r.x - zone.x;
+            int fin   = debut + r.width;
+
+            int bit = obstacles.nextSetBit(debut);
+            if(bit != -1 && bit < fin)
+                return false;
+
+            bit = tours.nextSetBit(debut);
+            if(bit != -1 && bit < fin)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Permet de savoir si une zone touche la zone de construction
+     *
+     * @param r la zone
+     * @return true si elles se chevauchent
+     */
+    boolean touche(Rectangle r)
+    {
+        return zone.intersects(r);
+    }
+
+    private void marquer(BitSet couche, Rectangle r, boolean valeur)
+    {
+        Rectangle inter = zone.intersection(r);
+
+        if(inter.isEmpty())
+            return;
+
+        for(int ligne = inter.y - zone.y; ligne < inter.y - zone.y + inter.height; ligne++)
+        {
+            int debut = ligne * zone.width + inter.x - zone.x;
+            couche.set(debut, debut + inter.width, valeur);
+        }
+    }
+}
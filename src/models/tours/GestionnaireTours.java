@@ -18,32 +18,39 @@
 
 package models.tours;
 
+import java.awt.Rectangle;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Vector;
 import models.creatures.Creature;
 import models.jeu.Jeu;
+import models.jeu.PhaseDeSimulation;
+import models.joueurs.EmplacementJoueur;
+import models.joueurs.Equipe;
 
 /**
  * Classe d'encapsulation des tours.
  * 
- * Permet de faire vivre toutes les tours sous le meme thread et ainsi 
- * aleger le processeur.
- * 
- * Toutes les tours tournent sous le meme clock.
+ * Les tours sont animees a chaque pas de l'ordonnanceur de simulation
+ * du jeu, sous le meme thread que les creatures et les animations.
  * 
  * @author Aurélien Da Campo
  * @version 1.1 | juin 2010
  * @since jdk1.6.0_16
  * @see Tour
+ * @see models.jeu.OrdonnanceurDeSimulation
  */
-public class GestionnaireTours implements Runnable
+public class GestionnaireTours implements PhaseDeSimulation
 {
-    private static final long TEMPS_ATTENTE = 50;
     private Vector<Tour> tours = new Vector<Tour>();
     private boolean gestionEnCours;
     private Jeu jeu;
-    private boolean enPause = false;
-    private Object pause = new Object();
+    
+    /**
+     * Les cartes de constructibilite des emplacements des joueurs
+     */
+    private HashMap<EmplacementJoueur, CarteDeConstruction> cartesDeConstruction 
+        = new HashMap<EmplacementJoueur, CarteDeConstruction>();
     
     /**
      * Constructeur du gestionnaire des animations
@@ -58,8 +65,7 @@ public class GestionnaireTours implements Runnable
      */
     public void demarrer()
     {
-        Thread thread = new Thread(this);
-        thread.start();
+        gestionEnCours = true;
     }
     
     /**
@@ -79,6 +85,14 @@ public class GestionnaireTours implements Runnable
 
         tours.remove(tour);
         
+        // libere l'emprise de la tour
+        synchronized (cartesDeConstruction)
+        {
+            for(CarteDeConstruction carte : cartesDeConstruction.values())
+                if(carte.touche(tour))
+                    carte.supprimerTour(tour);
+        }
+        
         // reactive la zone dans le maillage qui correspond a la tour
         jeu.getTerrain().activerZone(tour, true);
     }
@@ -91,44 +105,31 @@ public class GestionnaireTours implements Runnable
     public void ajouterTour(Tour tour)
     {
         tours.add(tour);
+        
+        // marque l'emprise de la tour
+        synchronized (cartesDeConstruction)
+        {
+            for(CarteDeConstruction carte : cartesDeConstruction.values())
+                if(carte.touche(tour))
+                    carte.ajouterTour(tour);
+        }
     }
     
     @Override
-    public void run()
+    public void executerPas(long dureePas)
     {
-        gestionEnCours = true;
+        if(!gestionEnCours)
+            return;
         
-        while(gestionEnCours)
+        Tour tour;
+        Enumeration<Tour> eTours = tours.elements();
+        while(eTours.hasMoreElements())
         {
-            Tour tour;
-            Enumeration<Tour> eTours = tours.elements();
-            while(eTours.hasMoreElements())
-            {
-                tour = eTours.nextElement();
-  
-                // anime l'animation
-                if(tour.estEnJeu())
-                    tour.action((long)(TEMPS_ATTENTE*jeu.getCoeffVitesse())); 
-            }
-          
-            // gestion de la pause
-            try{
-                synchronized (pause)
-                {
-                    if(enPause)
-                        pause.wait();
-                } 
-            } 
-            catch (InterruptedException e1){
-                e1.printStackTrace();
-            }
-            
-            try{
-                 Thread.sleep(TEMPS_ATTENTE);
-            } 
-            catch (InterruptedException e){
-                 e.printStackTrace();
-            }
+            tour = eTours.nextElement();
+
+            // anime l'animation
+            if(tour.estEnJeu())
+                tour.action((long)(dureePas*jeu.getCoeffVitesse())); 
         }
     }
     
@@ -149,26 +150,6 @@ public class GestionnaireTours implements Runnable
         return (Vector<Tour>) tours.clone();
     }
 
-    /**
-     * Permet de mettre les tours en pause.
-     */
-    public void mettreEnPause()
-    {
-        enPause = true;
-    }
-    
-    /**
-     * Permet de sortir les tours de la pause.
-     */
-    public void sortirDeLaPause()
-    { 
-        synchronized (pause)
-        {
-            enPause = false;
-            pause.notify(); 
-        }
-    }
-
     /**
      * Permet de savoir si une tour peut etre posee.
      * 
@@ -176,6 +157,9 @@ public class GestionnaireTours implements Runnable
      * Controle de l'intersection avec les creatures.
      * Controle de l'intersection avec les zones du terrain. (murs et depart / arrive)
      * 
+     * Les tours et les zones du terrain sont testees dans la carte de 
+     * constructibilite de l'emplacement du joueur, en O(emprise de la tour).
+     * 
      * @param tour la tour a posee
      * @return true si la tour peut etre posee, false sinon
      */
@@ -189,40 +173,75 @@ public class GestionnaireTours implements Runnable
         if(!laTourPeutEtreAchetee(tour))
             return false;
         
-        // il n'y a pas deja une tour
-        Tour tourCourante;
-        Enumeration<Tour> eTours = tours.elements();
-        while(eTours.hasMoreElements())
-        {
-            tourCourante = eTours.nextElement();
-
-            if (tour.intersects(tourCourante))
-                return false;
-        }
-        
-        // elle est dans la zone de construction du joueur
-        if(!tour.getPrioprietaire().getEmplacement().getZoneDeConstruction().contains(tour))
+        // elle est bien dans le terrain
+        if (tour.getX() < 0 || tour.getX() > jeu.getTerrain().getLargeur()-tour.width
+         || tour.getY() < 0 || tour.getY() > jeu.getTerrain().getHauteur()-tour.height)
             return false;
         
-        // il n'y a pas un mur et elle est bien dans le terrain
-        if(!jeu.getTerrain().laTourPeutEtrePosee(tour))
+        // elle est dans la zone de construction du joueur et il n'y a 
+        // ni mur, ni zone de depart ou d'arrivee, ni deja une tour
+        EmplacementJoueur emplacement = tour.getPrioprietaire().getEmplacement();
+        
+        if(emplacement == null || !getCarteDeConstruction(emplacement).estLibre(tour))
             return false;
 
         // il n'y a pas deja une creature
-        Creature creature;
-        Enumeration<Creature> eCreatures = jeu.getCreatures().elements();
-        while(eCreatures.hasMoreElements())
-        {
-            creature = eCreatures.nextElement();
-        
+        for(Creature creature : jeu.getCreatures())
             if (tour.intersects(creature))
                 return false;
-        }
 
         // rien empeche la tour d'etre posee
         return true;
     }
 
+    /**
+     * Permet de recuperer la carte de constructibilite d'un emplacement.
+     * 
+     * La carte est construite a la premiere demande a partir des murs du 
+     * terrain, des zones des equipes et des tours deja posees, puis tenue 
+     * a jour a chaque pose ou vente de tour.
+     * 
+     * @param emplacement l'emplacement du joueur
+     * @return la carte de constructibilite
+     */
+    private CarteDeConstruction getCarteDeConstruction(EmplacementJoueur emplacement)
+    {
+        synchronized (cartesDeConstruction)
+        {
+            CarteDeConstruction carte = cartesDeConstruction.get(emplacement);
+            
+            if(carte == null)
+            {
+                carte = new CarteDeConstruction(emplacement.getZoneDeConstruction());
+                
+                // murs
+                synchronized (jeu.getTerrain().getMurs())
+                {
+                    for(Rectangle mur : jeu.getTerrain().getMurs())
+                        carte.ajouterObstacle(mur);
+                }
+                
+                // zones de depart et d'arrivee
+                for(Equipe e : jeu.getEquipes())
+                {
+                    for(int i=0;i<e.getNbZonesDepart();i++)
+                        carte.ajouterObstacle(e.getZoneDepartCreatures(i));
+                    
+                    carte.ajouterObstacle(e.getZoneArriveeCreatures());
+                }
+                
+                // tours deja posees
+                Enumeration<Tour> eTours = tours.elements();
+                while(eTours.hasMoreElements())
+                    carte.ajouterTour(eTours.nextElement());
+                
+                cartesDeConstruction.put(emplacement, carte);
+            }
+            
+            return carte;
+        }
+    }
+
     /**
      * Permet de savoir si une tour peut etre achetee.
      * 
@@ -21,7 +21,7 @@ package models.tours;
 import i18n.Langue;
 
 import java.awt.*;
-import java.util.Enumeration;
+import java.util.ArrayList;
 import models.creatures.Creature;
 import models.jeu.Jeu;
 import models.joueurs.Joueur;
@@ -165,6 +165,11 @@ public abstract class Tour extends Rectangle
 	// initialisation pour que la tour puisse tirer directement
     private long tempsDepuisDernierTir;
     private long tempsDAttenteEntreTirs;
+    
+    /**
+     * Creatures candidates pour le ciblage (reutilisee a chaque tir)
+     */
+    private final ArrayList<Creature> creaturesProches = new ArrayList<Creature>();
 	
 	/**
 	 * Constructeur de la tour.
@@ -556,41 +561,32 @@ public abstract class Tour extends Rectangle
 		
 		double tmpDistance = 0;
 
-		// bloque la reference vers la collection des creatures
-		Creature creature;
-        Enumeration<Creature> eCreatures = jeu.getCreatures().elements();
-        while(eCreatures.hasMoreElements())
+		// seulement les creatures des cellules voisines
+		jeu.getCreaturesProches(x, y, rayonPortee, creaturesProches);
+		
+        for(Creature creature : creaturesProches)
         {
-            try{
-                
-                creature = eCreatures.nextElement();
-                
-        		// si la creature est accessible
-        	    if (creature.peutEtreAttaquee(this))
-                {
-        		    // calcul de la distance entre la tour et la creature
-        			tmpDistance = getDistance(creature);
-        
-        			// est-elle a portee ?
-        			if (tmpDistance <= rayonPortee)
-        			{
-        				// la creature actuelle est-elle plus proche que la derniere
-        				// creature a portee testee ?
-        				if (creatureLaPlusProche == null 
-        				|| laPlusProche && tmpDistance < distanceMinMax
-        				|| !laPlusProche && tmpDistance > distanceMinMax)
-        				{ 
-        				    // nouvelle creature plus proche trouvee!
-        					creatureLaPlusProche = creature;
-        					distanceMinMax = tmpDistance;
-        				}
-        			}
-                }
-        	}
-    	    catch(java.util.NoSuchElementException nsee)
-    	    {
-    	        nsee.printStackTrace();
-    	    }
+    		// si la creature est accessible
+    	    if (creature.peutEtreAttaquee(this))
+            {
+    		    // calcul de la distance entre la tour et la creature
+    			tmpDistance = getDistance(creature);
+    
+    			// est-elle a portee ?
+    			if (tmpDistance <= rayonPortee)
+    			{
+    				// la creature actuelle est-elle plus proche que la derniere
+    				// creature a portee testee ?
+    				if (creatureLaPlusProche == null 
+    				|| laPlusProche && tmpDistance < distanceMinMax
+    				|| !laPlusProche && tmpDistance > distanceMinMax)
+    				{ 
+    				    // nouvelle creature plus proche trouvee!
+    					creatureLaPlusProche = creature;
+    					distanceMinMax = tmpDistance;
+    				}
+    			}
+            }
         }
 		
 		return creatureLaPlusProche;
@@ -615,37 +611,28 @@ public abstract class Tour extends Rectangle
         if(plusFaible) 
             santeMinMax = Long.MAX_VALUE;
 
-        // bloque la reference vers la collection des creatures
-        Creature creature;
-        Enumeration<Creature> eCreatures = jeu.getCreatures().elements();
-        while(eCreatures.hasMoreElements())
+        // seulement les creatures des cellules voisines
+        jeu.getCreaturesProches(x, y, rayonPortee, creaturesProches);
+        
+        for(Creature creature : creaturesProches)
         {
-            try{
-                
-                creature = eCreatures.nextElement();
-                
-                // si la creature est accessible
-                if (creature.peutEtreAttaquee(this))
+            // si la creature est accessible
+            if (creature.peutEtreAttaquee(this))
+            {
+                // est-elle a portee ?
+                if (getDistance(creature) <= rayonPortee)
                 {
-                    // est-elle a portee ?
-                    if (getDistance(creature) <= rayonPortee)
+                    // la creature actuelle est-elle plus proche que la derniere
+                    // creature a portee testee ?
+                    if (plusFaible && creature.getSante() < santeMinMax
+                    || !plusFaible && creature.getSante() > santeMinMax)
                     {
-                        // la creature actuelle est-elle plus proche que la derniere
-                        // creature a portee testee ?
-                        if (plusFaible && creature.getSante() < santeMinMax
-                        || !plusFaible && creature.getSante() > santeMinMax)
-                        {
-                            // nouvelle creature plus proche trouvee!
-                            creatureLaPlusFaible = creature;
-                            santeMinMax = creature.getSante();
-                        }
+                        // nouvelle creature plus proche trouvee!
+                        creatureLaPlusFaible = creature;
+                        santeMinMax = creature.getSante();
                     }
                 }
             }
-            catch(java.util.NoSuchElementException nsee)
-            {
-                nsee.printStackTrace();
-            }
         }
         
         return creatureLaPlusFaible;
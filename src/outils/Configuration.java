@@ -58,6 +58,35 @@ public class Configuration
   
     // JOUEUR
     private static String PSEUDO_JOUEUR;
+    
+    // MAILLAGE
+    public static final String MAILLAGE_V1          = "v1";
+    public static final String MAILLAGE_V2          = "v2";
+    private static String MAILLAGE;
+    
+    // DEPLACEMENT DES CREATURES
+    public static final String DEPLACEMENT_CHEMINS  = "chemins";
+    public static final String DEPLACEMENT_CHAMPS   = "champs";
+    private static String DEPLACEMENT;
+    
+    // TRANSPORT DU JEU EN RESEAU
+    public static final String TRANSPORT_TCP        = "tcp";
+    public static final String TRANSPORT_NIO        = "nio";
+    public static final String TRANSPORT_TRAMES     = "trames";
+    public static final String TRANSPORT_UDP        = "udp";
+    private static String TRANSPORT_JEU;
+    private static String TRANSPORT_SE;
+    private static String TRANSPORT_INSTANTANES;
+    
+    // ENCODAGE DES MESSAGES DU JEU EN RESEAU
+    public static final String PROTOCOLE_BINAIRE    = "binaire";
+    public static final String PROTOCOLE_JSON       = "json";
+    private static String PROTOCOLE_JEU;
+    
+    // TACHES DE CONNEXION DES SERVEURS (0 = un thread par connexion)
+    private static int MAX_CONNEXIONS_SE;
+    private static int MAX_CONNEXIONS_SJ;
+    private static int TAILLE_PILE_CONNEXIONS;
     //private final static String LANGUE = "FR";
     
     static
@@ -67,6 +96,56 @@ public class Configuration
         PORT_SJ         = Integer.parseInt(config.getProperty("PORT_SJ"));
         PORT_SJ_JD      = Integer.parseInt(config.getProperty("PORT_SJ_JD"));
         PSEUDO_JOUEUR   = config.getProperty("PSEUDO_JOUEUR");
+        
+        // optionnel, pour les anciens fichiers de configuration
+        MAILLAGE               = lireOptionnel("MAILLAGE", MAILLAGE_V2);
+        DEPLACEMENT            = lireOptionnel("DEPLACEMENT", DEPLACEMENT_CHAMPS);
+        TRANSPORT_JEU          = lireOptionnel("TRANSPORT_JEU", TRANSPORT_NIO);
+        TRANSPORT_SE           = lireOptionnel("TRANSPORT_SE", TRANSPORT_TCP);
+        TRANSPORT_INSTANTANES  = lireOptionnel("TRANSPORT_INSTANTANES", TRANSPORT_TCP);
+        PROTOCOLE_JEU          = lireOptionnel("PROTOCOLE_JEU", PROTOCOLE_BINAIRE);
+        MAX_CONNEXIONS_SE      = lireOptionnel("MAX_CONNEXIONS_SE", 0);
+        MAX_CONNEXIONS_SJ      = lireOptionnel("MAX_CONNEXIONS_SJ", 0);
+        TAILLE_PILE_CONNEXIONS = lireOptionnel("TAILLE_PILE_CONNEXIONS", 0);
+    }
+    
+    /**
+     * Permet de lire une cle absente des anciens fichiers de configuration
+     * 
+     * @param cle la cle
+     * @param defaut la valeur si la cle est absente
+     * @return la valeur de la cle ou defaut
+     */
+    private static String lireOptionnel(String cle, String defaut)
+    {
+        try
+        {
+            return config.getProperty(cle);
+        }
+        catch(IllegalArgumentException e)
+        {
+            return defaut;
+        }
+    }
+    
+    /**
+     * Permet de lire une cle entiere absente des anciens fichiers de 
+     * configuration
+     * 
+     * @param cle la cle
+     * @param defaut la valeur si la cle est absente ou n'est pas un entier
+     * @return la valeur de la cle ou defaut
+     */
+    private static int lireOptionnel(String cle, int defaut)
+    {
+        try
+        {
+            return Integer.parseInt(lireOptionnel(cle, String.valueOf(defaut)));
+        }
+        catch(NumberFormatException e)
+        {
+            return defaut;
+        }
     }
 
     public static String getIpSE()
@@ -84,6 +163,108 @@ public class Configuration
         return PORT_SJ;
     }
     
+    /**
+     * Permet de recuperer la version du maillage utilisee par les terrains
+     * 
+     * @return MAILLAGE_V1 ou MAILLAGE_V2
+     */
+    public static String getMaillage()
+    {
+        return MAILLAGE;
+    }
+    
+    /**
+     * Permet de recuperer le mode de deplacement des creatures
+     * 
+     * @return DEPLACEMENT_CHEMINS (un chemin par creature, recalcule a chaque
+     *         modification du maillage) ou DEPLACEMENT_CHAMPS (un champ de 
+     *         direction partage par zone d'arrivee)
+     */
+    public static String getDeplacement()
+    {
+        return DEPLACEMENT;
+    }
+    
+    /**
+     * Permet de recuperer le transport utilise entre le serveur et les
+     * clients de jeu
+     * 
+     * @return TRANSPORT_TCP (deux sockets par client), TRANSPORT_TRAMES 
+     *         (deux sockets par client, canaux CanalTrames) ou TRANSPORT_NIO 
+     *         (une seule socket multiplexee)
+     */
+    public static String getTransportJeu()
+    {
+        return TRANSPORT_JEU;
+    }
+    
+    /**
+     * Permet de recuperer le transport utilise avec le serveur 
+     * d'enregistrement
+     * 
+     * @return TRANSPORT_TCP (CanalTCP) ou TRANSPORT_TRAMES (CanalTrames)
+     */
+    public static String getTransportSE()
+    {
+        return TRANSPORT_SE;
+    }
+    
+    /**
+     * Permet de recuperer le transport des instantanes des creatures 
+     * envoyes par le serveur de jeu
+     * 
+     * @return TRANSPORT_TCP (canal de mise a jour) ou TRANSPORT_UDP 
+     *         (datagrammes, les instantanes perdus ne sont pas renvoyes)
+     */
+    public static String getTransportInstantanes()
+    {
+        return TRANSPORT_INSTANTANES;
+    }
+    
+    /**
+     * Permet de recuperer l'encodage des messages frequents envoyes par le
+     * serveur de jeu
+     * 
+     * @return PROTOCOLE_BINAIRE ou PROTOCOLE_JSON (lisible, pour deboguer)
+     */
+    public static String getProtocoleJeu()
+    {
+        return PROTOCOLE_JEU;
+    }
+    
+    /**
+     * Permet de recuperer le nombre maximum de clients traites en meme temps
+     * par le serveur d'enregistrement
+     * 
+     * @return le nombre maximum ou 0 pour un thread par connexion, sans 
+     *         limite
+     */
+    public static int getMaxConnexionsSE()
+    {
+        return MAX_CONNEXIONS_SE;
+    }
+    
+    /**
+     * Permet de recuperer le nombre maximum de joueurs distants ecoutes en
+     * meme temps par le serveur de jeu (transports tcp et trames)
+     * 
+     * @return le nombre maximum ou 0 pour un thread par joueur, sans limite
+     */
+    public static int getMaxConnexionsSJ()
+    {
+        return MAX_CONNEXIONS_SJ;
+    }
+    
+    /**
+     * Permet de recuperer la taille de la pile des threads de connexion
+     * 
+     * @return la taille en ko ou 0 pour celle par defaut de la JVM
+     */
+    public static int getTaillePileConnexions()
+    {
+        return TAILLE_PILE_CONNEXIONS;
+    }
+    
     public static String getPseudoJoueur()
     {
         return PSEUDO_JOUEUR;
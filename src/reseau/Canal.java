@@ -0,0 +1,135 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau;
+
+/**
+ * Canal de transmission sur lequel on peut envoyer et recevoir des messages.
+ * <p>
+ * Les messages sont recus dans l'ordre d'envoi. Chaque methode de reception
+ * est bloquante tant que le message n'est pas arrive.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see CanalTCP
+ * @see CanalMultiplexe
+ */
+public interface Canal
+{
+   /**
+    * Envoie un String sur le canal.
+    *
+    * @param message
+    *           Le String à envoyer.
+    * @throws CanalException
+    *            Si un problème de transmission survient.
+    */
+   public void envoyerString(String message) throws CanalException;
+
+   /**
+    * Attend de recevoir un String.
+    *
+    * @return le String reçu
+    * @throws CanalException
+    *            Si un problème de transmission survient.
+    */
+   public String recevoirString() throws CanalException;
+
+   /**
+    * Envoie un int sur le canal.
+    *
+    * @param i
+    *           L'int à envoyer.
+    * @throws CanalException
+    *            Si un problème de transmission survient.
+    */
+   public void envoyerInt(int i) throws CanalException;
+
+   /**
+    * Attend de recevoir un int.
+    *
+    * @return l'int reçu
+    * @throws CanalException
+    *            Si un problème de transmission survient.
+    */
+   public int recevoirInt() throws CanalException;
+
+   /**
+    * Envoie un tableau de bytes sur le canal.
+    *
+    * @param b
+    *           Les bytes à envoyer.
+    * @throws CanalException
+    *            Si un problème de transmission survient.
+    */
+   public void envoyerBytes(byte[] b) throws CanalException;
+
+   /**
+    * Attend de recevoir un tableau de bytes de taille connue.
+    *
+    * @param size
+    *           Le nombre de bytes attendus.
+    * @return les bytes reçus
+    * @throws CanalException
+    *            Si un problème de transmission survient.
+    */
+   public byte[] recevoirBytes(int size) throws CanalException;
+
+   /**
+    * Ecrit un String sans forcer son envoi. Les écritures sont envoyées
+    * ensemble par vider().
+    *
+    * @param message
+    *           Le String à écrire.
+    * @throws CanalException
+    *            Si un problème de transmission survient.
+    */
+   public void ecrireString(String message) throws CanalException;
+
+   /**
+    * Ecrit un tableau de bytes sans forcer son envoi. Les écritures sont
+    * envoyées ensemble par vider().
+    *
+    * @param b
+    *           Les bytes à écrire.
+    * @throws CanalException
+    *            Si un problème de transmission survient.
+    */
+   public void ecrireBytes(byte[] b) throws CanalException;
+
+   /**
+    * Envoie toutes les écritures en attente.
+    *
+    * @throws CanalException
+    *            Si un problème de transmission survient.
+    */
+   public void vider() throws CanalException;
+
+   /**
+    * @return l'adresse IP de l'autre extrémité du canal
+    */
+   public String getIpClient();
+
+   /**
+    * Ferme le canal.
+    *
+    * @throws CanalException
+    *            Si un problème de fermeture survient.
+    */
+   public void fermer() throws CanalException;
+}
@@ -0,0 +1,255 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Canal de transmission non fiable sur UDP, pour les donnees perissables.
+ * <p>
+ * Chaque datagramme porte un numero de sequence propre a sa destination.
+ * A la reception, un datagramme plus ancien que le dernier recu de la meme
+ * source est jete : un datagramme perdu ou en retard ne bloque jamais les
+ * suivants, mais aucune livraison n'est garantie.
+ * <p>
+ * Un taux de perte peut etre simule a l'envoi, pour les tests.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see Datagramme
+ */
+public class CanalDatagrammes
+{
+   /**
+    * Taille de l'en-tete d'un datagramme (son numero de sequence)
+    */
+   private static final int TAILLE_ENTETE = 4;
+
+   /**
+    * Taille maximum des donnees d'un datagramme
+    */
+   public static final int TAILLE_MAX = 65507 - TAILLE_ENTETE;
+
+   private final DatagramSocket socket;
+
+   // derniers numeros de sequence envoyes et recus, par adresse
+   private final HashMap<SocketAddress, Integer> sequencesEnvoyees = new HashMap<SocketAddress, Integer>();
+   private final HashMap<SocketAddress, Integer> sequencesRecues = new HashMap<SocketAddress, Integer>();
+
+   private final byte[] tamponReception = new byte[TAILLE_MAX + TAILLE_ENTETE];
+
+   private double tauxDePerte = 0.0;
+   private final Random generateur = new Random();
+
+   private volatile int nbPerimes = 0;
+
+   /**
+    * Ouvre le canal sur le port donne.
+    *
+    * @param numeroPort
+    *           Le numero de port local
+    * @throws CanalException
+    *            Si le port n'est pas disponible
+    */
+   public CanalDatagrammes(int numeroPort) throws CanalException
+   {
+      try
+      {
+         socket = new DatagramSocket(numeroPort);
+      }
+      catch (IOException e)
+      {
+         throw new CanalException(e);
+      }
+   }
+
+   /**
+    * Ouvre le canal sur un port libre quelconque.
+    *
+    * @throws CanalException
+    *            Si aucun port n'est disponible
+    */
+   public CanalDatagrammes() throws CanalException
+   {
+      this(0);
+   }
+
+   /**
+    * Envoie des donnees a une adresse, sans garantie de livraison.
+    *
+    * @param donnees
+    *           Les donnees, au plus TAILLE_MAX octets
+    * @param destination
+    *           L'adresse du destinataire
+    * @throws CanalException
+    *            Si les donnees sont trop grandes ou si l'envoi echoue
+    */
+   public void envoyer(byte[] donnees, SocketAddress destination) throws CanalException
+   {
+      if (donnees.length > TAILLE_MAX)
+         throw new CanalException("Datagramme trop grand : " + donnees.length + " octets");
+
+      int sequence;
+
+      synchronized (sequencesEnvoyees)
+      {
+         Integer derniere = sequencesEnvoyees.get(destination);
+         sequence = derniere == null ? 1 : derniere + 1;
+         sequencesEnvoyees.put(destination, sequence);
+
+         // perte simulee, apres la consommation du numero de sequence
+         if (tauxDePerte > 0.0 && generateur.nextDouble() < tauxDePerte)
+            return;
+      }
+
+      ByteBuffer paquet = ByteBuffer.allocate(TAILLE_ENTETE + donnees.length);
+      paquet.putInt(sequence);
+      paquet.put(donnees);
+
+      try
+      {
+         socket.send(new DatagramPacket(paquet.array(), paquet.capacity(), destination));
+      }
+      catch (IOException e)
+      {
+         throw new CanalException(e);
+      }
+   }
+
+   /**
+    * Attend le prochain datagramme plus recent que le dernier recu de sa
+    * source.
+    *
+    * @return le datagramme recu
+    * @throws CanalException
+    *            Si le canal est ferme
+    */
+   public Datagramme recevoir() throws CanalException
+   {
+      return recevoir(0);
+   }
+
+   /**
+    * Attend le prochain datagramme plus recent que le dernier recu de sa
+    * source, au plus pendant le delai donne.
+    *
+    * @param delai
+    *           Le delai d'attente en millisecondes, 0 pour attendre sans fin
+    * @return le datagramme recu ou null si le delai est ecoule
+    * @throws CanalException
+    *            Si le canal est ferme
+    */
+   public Datagramme recevoir(int delai) throws CanalException
+   {
+      synchronized (tamponReception)
+      {
+         try
+         {
+            socket.setSoTimeout(delai);
+
+            while (true)
+            {
+               DatagramPacket paquet = new DatagramPacket(tamponReception, tamponReception.length);
+               socket.receive(paquet);
+
+               // datagramme etranger au protocole
+               if (paquet.getLength() < TAILLE_ENTETE)
+                  continue;
+
+               ByteBuffer contenu = ByteBuffer.wrap(paquet.getData(), paquet.getOffset(), paquet.getLength());
+               int sequence = contenu.getInt();
+               SocketAddress source = paquet.getSocketAddress();
+
+               Integer derniere = sequencesRecues.get(source);
+
+               // perime : un plus recent est deja arrive (ou un doublon)
+               if (derniere != null && sequence - derniere <= 0)
+               {
+                  nbPerimes++;
+                  continue;
+               }
+
+               sequencesRecues.put(source, sequence);
+
+               byte[] donnees = new byte[contenu.remaining()];
+               contenu.get(donnees);
+
+               return new Datagramme(sequence, donnees, source);
+            }
+         }
+         catch (SocketTimeoutException e)
+         {
+            return null;
+         }
+         catch (IOException e)
+         {
+            throw new CanalException(e);
+         }
+      }
+   }
+
+   /**
+    * Permet de simuler la perte d'une partie des datagrammes envoyes.
+    *
+    * @param tauxDePerte
+    *           La proportion de datagrammes perdus, entre 0 et 1
+    */
+   public void setTauxDePerte(double tauxDePerte)
+   {
+      if (tauxDePerte < 0.0 || tauxDePerte > 1.0)
+         throw new IllegalArgumentException("Taux de perte invalide : " + tauxDePerte);
+
+      synchronized (sequencesEnvoyees)
+      {
+         this.tauxDePerte = tauxDePerte;
+      }
+   }
+
+   /**
+    * @return le nombre de datagrammes jetes car plus anciens que le dernier
+    *         recu de leur source
+    */
+   public int getNbPerimes()
+   {
+      return nbPerimes;
+   }
+
+   /**
+    * @return le numero du port local
+    */
+   public int getNumeroPort()
+   {
+      return socket.getLocalPort();
+   }
+
+   /**
+    * Ferme le canal, les receptions en cours echouent.
+    */
+   public void fermer()
+   {
+      socket.close();
+   }
+}
@@ -0,0 +1,160 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau;
+
+import static org.junit.Assert.*;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import org.junit.*;
+
+/**
+ * Tests du canal de datagrammes sur la boucle locale, avec pertes simulees.
+ *
+ * @author Aurelien Da Campo
+ */
+public class CanalDatagrammesTest
+{
+   private static final int DELAI = 500;
+
+   CanalDatagrammes emetteur;
+   CanalDatagrammes recepteur;
+   InetSocketAddress adresse;
+
+   @Before
+   public void ouvrir() throws CanalException
+   {
+      emetteur = new CanalDatagrammes();
+      recepteur = new CanalDatagrammes();
+      adresse = new InetSocketAddress("127.0.0.1", recepteur.getNumeroPort());
+   }
+
+   @After
+   public void fermer()
+   {
+      emetteur.fermer();
+      recepteur.fermer();
+   }
+
+   /**
+    * Test method for {@link reseau.CanalDatagrammes#envoyer(byte[], java.net.SocketAddress)}.
+    */
+   @Test
+   public void testEnvoyerRecevoir() throws CanalException
+   {
+      emetteur.envoyer(new byte[] { 1, 2, 3 }, adresse);
+
+      Datagramme d = recepteur.recevoir(DELAI);
+
+      assertNotNull(d);
+      assertEquals(1, d.getSequence());
+      assertArrayEquals(new byte[] { 1, 2, 3 }, d.getDonnees());
+      assertEquals(emetteur.getNumeroPort(), ((InetSocketAddress) d.getSource()).getPort());
+   }
+
+   /**
+    * Test method for {@link reseau.CanalDatagrammes#recevoir(int)}.
+    */
+   @Test
+   public void testDelaiEcoule() throws CanalException
+   {
+      assertNull(recepteur.recevoir(50));
+   }
+
+   /**
+    * Un datagramme plus ancien que le dernier recu est jete.
+    */
+   @Test
+   public void testPerimesJetes() throws Exception
+   {
+      DatagramSocket brut = new DatagramSocket();
+
+      try
+      {
+         for (int sequence : new int[] { 5, 3, 5, 6 })
+         {
+            byte[] paquet = ByteBuffer.allocate(5).putInt(sequence).put((byte) sequence).array();
+            brut.send(new DatagramPacket(paquet, paquet.length, adresse));
+         }
+
+         assertEquals(5, recepteur.recevoir(DELAI).getSequence());
+         assertEquals(6, recepteur.recevoir(DELAI).getSequence());
+         assertNull(recepteur.recevoir(50));
+         assertEquals(2, recepteur.getNbPerimes());
+      }
+      finally
+      {
+         brut.close();
+      }
+   }
+
+   /**
+    * Avec des pertes, les datagrammes recus restent dans l'ordre et
+    * aucun ne bloque les suivants.
+    */
+   @Test
+   public void testPertesSimulees() throws Exception
+   {
+      final int NB = 200;
+
+      emetteur.setTauxDePerte(0.3);
+
+      for (int i = 1; i <= NB; i++)
+         emetteur.envoyer(ByteBuffer.allocate(4).putInt(i).array(), adresse);
+
+      int nbRecus = 0;
+      int dernier = 0;
+      Datagramme d;
+
+      while ((d = recepteur.recevoir(DELAI)) != null)
+      {
+         int valeur = ByteBuffer.wrap(d.getDonnees()).getInt();
+
+         assertEquals(valeur, d.getSequence());
+         assertTrue(valeur > dernier);
+
+         dernier = valeur;
+         nbRecus++;
+      }
+
+      assertTrue("recus : " + nbRecus, nbRecus > NB / 2 && nbRecus < NB);
+   }
+
+   /**
+    * Test method for {@link reseau.CanalDatagrammes#envoyer(byte[], java.net.SocketAddress)}.
+    */
+   @Test(expected = CanalException.class)
+   public void testTropGrand() throws CanalException
+   {
+      emetteur.envoyer(new byte[CanalDatagrammes.TAILLE_MAX + 1], adresse);
+   }
+
+   /**
+    * Test method for {@link reseau.CanalDatagrammes#fermer()}.
+    */
+   @Test(expected = CanalException.class)
+   public void testFermer() throws CanalException
+   {
+      recepteur.fermer();
+      recepteur.recevoir(DELAI);
+   }
+}
@@ -0,0 +1,155 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau;
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Canal logique d'une connexion multiplexee.
+ * <p>
+ * Chaque message envoye est une trame de la connexion. Les trames recues
+ * sont deposees dans une file par la connexion, les methodes de reception
+ * attendent la trame suivante.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see ConnexionMultiplexee
+ */
+public class CanalMultiplexe implements Canal
+{
+   // Marqueur de fin de reception (compare par reference)
+   private static final byte[] FIN = new byte[0];
+
+   private final ConnexionMultiplexee connexion;
+   private final int numero;
+   private final LinkedBlockingQueue<byte[]> recues = new LinkedBlockingQueue<byte[]>();
+
+   /**
+    * Constructeur
+    *
+    * @param connexion la connexion sous-jacente
+    * @param numero le numero du canal logique
+    */
+   CanalMultiplexe(ConnexionMultiplexee connexion, int numero)
+   {
+      this.connexion = connexion;
+      this.numero = numero;
+   }
+
+   public void envoyerString(String message) throws CanalException
+   {
+      connexion.envoyerTrame(numero, Trames.encoderString(message));
+   }
+
+   public String recevoirString() throws CanalException
+   {
+      return Trames.decoderString(recevoirTrame());
+   }
+
+   public void envoyerInt(int i) throws CanalException
+   {
+      connexion.envoyerTrame(numero, Trames.encoderInt(i));
+   }
+
+   public int recevoirInt() throws CanalException
+   {
+      return Trames.decoderInt(recevoirTrame());
+   }
+
+   public void envoyerBytes(byte[] b) throws CanalException
+   {
+      connexion.envoyerTrame(numero, b);
+   }
+
+   public byte[] recevoirBytes(int size) throws CanalException
+   {
+      byte[] donnees = recevoirTrame();
+
+      if (donnees.length != size)
+         throw new CanalException(size + " bytes attendus, " + donnees.length + " reçus");
+
+      return donnees;
+   }
+
+   public void ecrireString(String message) throws CanalException
+   {
+      envoyerString(message);
+   }
+
+   public void ecrireBytes(byte[] b) throws CanalException
+   {
+      envoyerBytes(b);
+   }
+
+   public void vider() throws CanalException
+   {
+      // les trames deposees sont deja regroupees par la connexion
+   }
+
+   public String getIpClient()
+   {
+      return connexion.getIp();
+   }
+
+   public void fermer() throws CanalException
+   {
+      connexion.fermer();
+   }
+
+   /**
+    * @return la connexion sous-jacente
+    */
+   public ConnexionMultiplexee getConnexion()
+   {
+      return connexion;
+   }
+
+   void deposer(byte[] donnees)
+   {
+      recues.add(donnees);
+   }
+
+   void terminerReception()
+   {
+      recues.add(FIN);
+   }
+
+   private byte[] recevoirTrame() throws CanalException
+   {
+      byte[] donnees;
+
+      try
+      {
+         donnees = recues.take();
+      }
+      catch (InterruptedException e)
+      {
+         throw new CanalException(e);
+      }
+
+      if (donnees == FIN)
+      {
+         // les autres receptions en attente doivent aussi etre debloquees
+         recues.add(FIN);
+         throw new CanalException("Connexion fermée");
+      }
+
+      return donnees;
+   }
+}
@@ -29,7 +29,7 @@ import java.util.*;
  * @author Lazhar Farjallah
  * 
  */
-public class CanalTCP
+public class CanalTCP implements Canal
 {
    
    // La socket qui est associée à ce côté du canal.
@@ -219,10 +219,15 @@ public class CanalTCP
       
       try
       {
-         canalOut.writeUTF(message);
-         // Ne pas oublier de vider le flux de sortie après avoir écrit
-         // dessus!
-         canalOut.flush();
+         // Plusieurs taches peuvent écrire sur le même canal (requêtes et
+         // acquittements), un message ne doit pas être entrecoupé.
+         synchronized (canalOut)
+         {
+            canalOut.writeUTF(message);
+            // Ne pas oublier de vider le flux de sortie après avoir écrit
+            // dessus!
+            canalOut.flush();
+         }
       } catch (Exception e)
       {
          logErreur("Survenue pendant l'envoi du String");
@@ -474,6 +479,76 @@ public class CanalTCP
       return paquetRecu;
    }
    
+   /**
+    * Cette méthode écrit un String sur le canal sans vider le flux de sortie.
+    * 
+    * @param message
+    *           Le String à écrire.
+    * @throws CanalException
+    *            Si un problème de transmission survient.
+    */
+   public void ecrireString(String message) throws CanalException
+   {
+      log("Canal: écriture du String " + message);
+      try
+      {
+         synchronized (canalOut)
+         {
+            canalOut.writeUTF(message);
+         }
+      } catch (Exception e)
+      {
+         logErreur("Survenue pendant l'écriture du String");
+         throw new CanalException(e);
+      }
+   }
+   
+   /**
+    * Cette méthode écrit des bytes sur le canal sans vider le flux de sortie.
+    * 
+    * @param b
+    *           Les bytes à écrire.
+    * @throws CanalException
+    *            Si un problème de transmission survient.
+    */
+   public void ecrireBytes(byte[] b) throws CanalException
+   {
+      log("Canal: écriture de " + b.length + " bytes");
+      try
+      {
+         synchronized (canalOut)
+         {
+            canalOut.write(b);
+         }
+      } catch (Exception e)
+      {
+         logErreur("Survenue pendant l'écriture des bytes");
+         throw new CanalException(e);
+      }
+   }
+   
+   /**
+    * Cette méthode vide le flux de sortie : tout ce qui a été écrit part en
+    * une seule fois.
+    * 
+    * @throws CanalException
+    *            Si un problème de transmission survient.
+    */
+   public void vider() throws CanalException
+   {
+      try
+      {
+         synchronized (canalOut)
+         {
+            canalOut.flush();
+         }
+      } catch (Exception e)
+      {
+         logErreur("Survenue pendant le vidage du flux");
+         throw new CanalException(e);
+      }
+   }
+   
    public String getIpClient()
    {
       return socket.getInetAddress().toString().substring(1);
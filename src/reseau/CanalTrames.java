@@ -0,0 +1,388 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+
+/**
+ * Canal de transmission leger sur une socket TCP.
+ * <p>
+ * Chaque message est une trame : sa longueur (int) puis ses donnees. Un
+ * String est transmis en UTF-8, un int sur 4 octets (voir Trames). Les
+ * trames sont ecrites dans des tampons directs de la reserve puis envoyees
+ * en une seule ecriture groupee. Nagle est desactive, une trame videe part
+ * immediatement.
+ * <p>
+ * Contrairement a CanalTCP, aucun flux d'objets n'est utilise : pas
+ * d'en-tetes de blocs ni de vidage a chaque ecriture.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see CanalTCP
+ * @see ReserveDeTampons
+ */
+public class CanalTrames implements Canal
+{
+   // Taille de l'en-tete d'une trame (sa longueur)
+   private static final int TAILLE_ENTETE = 4;
+
+   private final SocketChannel socket;
+
+   // Tampons remplis en attente d'envoi, le dernier est en cours de
+   // remplissage (protege par lui-meme)
+   private final ArrayList<ByteBuffer> aEcrire = new ArrayList<ByteBuffer>();
+   private ByteBuffer tamponEcriture;
+
+   // Tampon de lecture, en mode lecture (protege par verrouLecture)
+   private final Object verrouLecture = new Object();
+   private ByteBuffer tamponLecture;
+
+   /**
+    * Attend une connexion entrante sur le port donne.
+    *
+    * @param port
+    *           Le port reserve
+    * @throws CanalException
+    *            Si un problème de connexion survient
+    */
+   public CanalTrames(Port port) throws CanalException
+   {
+      try
+      {
+         Socket connexion = port.getServerSocket().accept();
+
+         // le port est reserve avec un canal NIO (voir Port.reserver)
+         if (connexion.getChannel() == null)
+         {
+            connexion.close();
+            throw new CanalException("Port sans canal NIO");
+         }
+
+         socket = connexion.getChannel();
+         configurer();
+      }
+      catch (IOException e)
+      {
+         throw new CanalException(e);
+      }
+   }
+
+   /**
+    * Se connecte a l'adresse et au port donnes.
+    *
+    * @param adresseIp
+    *           L'adresse IP vers laquelle on veut créer un canal
+    * @param numeroPort
+    *           Le numéro de port de l'adresse IP
+    * @throws ConnectException
+    *            Si la connexion est refusée à cette IP + Port
+    * @throws CanalException
+    *            Si une erreur de connexion survient
+    */
+   public CanalTrames(String adresseIp, int numeroPort)
+         throws ConnectException, CanalException
+   {
+      try
+      {
+         socket = SocketChannel.open(new InetSocketAddress(adresseIp, numeroPort));
+         configurer();
+      }
+      catch (ConnectException e)
+      {
+         throw e;
+      }
+      catch (IOException e)
+      {
+         throw new CanalException(e);
+      }
+   }
+
+   private void configurer() throws IOException
+   {
+      socket.socket().setTcpNoDelay(true);
+
+      tamponLecture = ReserveDeTampons.prendre();
+      tamponLecture.flip();
+   }
+
+   public void envoyerString(String message) throws CanalException
+   {
+      synchronized (aEcrire)
+      {
+         ecrireTrame(Trames.encoderString(message));
+         vider();
+      }
+   }
+
+   public String recevoirString() throws CanalException
+   {
+      return Trames.decoderString(lireTrame());
+   }
+
+   public void envoyerInt(int i) throws CanalException
+   {
+      synchronized (aEcrire)
+      {
+         ecrireTrame(Trames.encoderInt(i));
+         vider();
+      }
+   }
+
+   public int recevoirInt() throws CanalException
+   {
+      return Trames.decoderInt(lireTrame());
+   }
+
+   public void envoyerBytes(byte[] b) throws CanalException
+   {
+      synchronized (aEcrire)
+      {
+         ecrireTrame(b);
+         vider();
+      }
+   }
+
+   public byte[] recevoirBytes(int size) throws CanalException
+   {
+      byte[] donnees = lireTrame();
+
+      if (donnees.length != size)
+         throw new CanalException(size + " bytes attendus, " + donnees.length + " reçus");
+
+      return donnees;
+   }
+
+   public void ecrireString(String message) throws CanalException
+   {
+      ecrireTrame(Trames.encoderString(message));
+   }
+
+   public void ecrireBytes(byte[] b) throws CanalException
+   {
+      ecrireTrame(b);
+   }
+
+   /**
+    * Envoie toutes les trames ecrites en une seule ecriture groupee.
+    */
+   public void vider() throws CanalException
+   {
+      synchronized (aEcrire)
+      {
+         terminerTampon();
+
+         if (aEcrire.isEmpty())
+            return;
+
+         ByteBuffer[] tampons = aEcrire.toArray(new ByteBuffer[aEcrire.size()]);
+         aEcrire.clear();
+
+         try
+         {
+            long reste = 0;
+            for (ByteBuffer tampon : tampons)
+               reste += tampon.remaining();
+
+            while (reste > 0)
+               reste -= socket.write(tampons);
+         }
+         catch (IOException e)
+         {
+            throw new CanalException(e);
+         }
+         finally
+         {
+            for (ByteBuffer tampon : tampons)
+               ReserveDeTampons.rendre(tampon);
+         }
+      }
+   }
+
+   public String getIpClient()
+   {
+      return socket.socket().getInetAddress().getHostAddress();
+   }
+
+   public void fermer() throws CanalException
+   {
+      try
+      {
+         // debloque les lectures et ecritures en cours
+         socket.close();
+      }
+      catch (IOException e)
+      {
+         throw new CanalException(e);
+      }
+      finally
+      {
+         synchronized (aEcrire)
+         {
+            for (ByteBuffer tampon : aEcrire)
+               ReserveDeTampons.rendre(tampon);
+            aEcrire.clear();
+
+            if (tamponEcriture != null)
+               ReserveDeTampons.rendre(tamponEcriture);
+            tamponEcriture = null;
+         }
+
+         synchronized (verrouLecture)
+         {
+            if (tamponLecture != null)
+               ReserveDeTampons.rendre(tamponLecture);
+            tamponLecture = null;
+         }
+      }
+   }
+
+   /**
+    * Ecrit une trame dans les tampons, sans l'envoyer. Les donnees plus
+    * grandes qu'un tampon sont envoyees telles quelles, sans copie.
+    */
+   private void ecrireTrame(byte[] donnees) throws CanalException
+   {
+      if (donnees.length > Trames.TAILLE_MAX)
+         throw new CanalException("Trame trop grande : " + donnees.length + " octets");
+
+      synchronized (aEcrire)
+      {
+         if (!socket.isOpen())
+            throw new CanalException("Canal fermé");
+
+         if (tamponEcriture == null || tamponEcriture.remaining() < TAILLE_ENTETE)
+            nouveauTampon();
+
+         tamponEcriture.putInt(donnees.length);
+
+         if (donnees.length > ReserveDeTampons.TAILLE)
+         {
+            terminerTampon();
+            aEcrire.add(ByteBuffer.wrap(donnees));
+            return;
+         }
+
+         int position = 0;
+         while (position < donnees.length)
+         {
+            if (!tamponEcriture.hasRemaining())
+               nouveauTampon();
+
+            int n = Math.min(tamponEcriture.remaining(), donnees.length - position);
+            tamponEcriture.put(donnees, position, n);
+            position += n;
+         }
+      }
+   }
+
+   private void nouveauTampon()
+   {
+      terminerTampon();
+      tamponEcriture = ReserveDeTampons.prendre();
+   }
+
+   private void terminerTampon()
+   {
+      if (tamponEcriture == null)
+         return;
+
+      tamponEcriture.flip();
+      aEcrire.add(tamponEcriture);
+      tamponEcriture = null;
+   }
+
+   /**
+    * Attend la trame suivante.
+    */
+   private byte[] lireTrame() throws CanalException
+   {
+      synchronized (verrouLecture)
+      {
+         if (tamponLecture == null)
+            throw new CanalException("Canal fermé");
+
+         try
+         {
+            remplir(TAILLE_ENTETE);
+
+            int taille = tamponLecture.getInt();
+
+            if (taille < 0 || taille > Trames.TAILLE_MAX)
+               throw new CanalException("Taille de trame invalide : " + taille);
+
+            byte[] donnees = new byte[taille];
+            int lus = Math.min(taille, tamponLecture.remaining());
+            tamponLecture.get(donnees, 0, lus);
+
+            int reste = taille - lus;
+
+            // grande trame : lue directement dans le tableau
+            if (reste >= tamponLecture.capacity())
+            {
+               ByteBuffer suite = ByteBuffer.wrap(donnees, lus, reste);
+
+               while (suite.hasRemaining())
+                  if (socket.read(suite) < 0)
+                     throw new EOFException("Connexion fermée");
+            }
+            else if (reste > 0)
+            {
+               remplir(reste);
+               tamponLecture.get(donnees, lus, reste);
+            }
+
+            return donnees;
+         }
+         catch (IOException e)
+         {
+            throw new CanalException(e);
+         }
+      }
+   }
+
+   /**
+    * Lit la socket jusqu'a avoir au moins n octets dans le tampon de lecture
+    * (n ne depasse pas sa capacite).
+    */
+   private void remplir(int n) throws IOException
+   {
+      if (tamponLecture.remaining() >= n)
+         return;
+
+      tamponLecture.compact();
+
+      try
+      {
+         while (tamponLecture.position() < n)
+            if (socket.read(tamponLecture) < 0)
+               throw new EOFException("Connexion fermée");
+      }
+      finally
+      {
+         tamponLecture.flip();
+      }
+   }
+}
@@ -0,0 +1,102 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau;
+
+/**
+ * Connexion unique sur laquelle transitent plusieurs canaux logiques.
+ * <p>
+ * Le canal de requetes / reponses et le canal de mise a jour du jeu
+ * partagent ainsi la meme socket. Chaque message est envoye dans une trame
+ * qui porte le numero de son canal logique.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see Trames
+ * @see CanalMultiplexe
+ */
+public abstract class ConnexionMultiplexee
+{
+   /**
+    * Canal logique des requetes / reponses
+    */
+   public static final int CANAL_REQUETES = 0;
+
+   /**
+    * Canal logique des mises a jour asynchrones
+    */
+   public static final int CANAL_MISE_A_JOUR = 1;
+
+   private final CanalMultiplexe[] canaux = new CanalMultiplexe[] {
+         new CanalMultiplexe(this, CANAL_REQUETES),
+         new CanalMultiplexe(this, CANAL_MISE_A_JOUR) };
+
+   /**
+    * Permet de recuperer un canal logique de la connexion
+    *
+    * @param numero CANAL_REQUETES ou CANAL_MISE_A_JOUR
+    * @return le canal
+    */
+   public CanalMultiplexe getCanal(int numero)
+   {
+      return canaux[numero];
+   }
+
+   /**
+    * Envoie une trame sur la connexion.
+    *
+    * @param canal le numero du canal logique
+    * @param donnees les donnees de la trame
+    * @throws CanalException si la connexion est fermee ou erronee
+    */
+   public abstract void envoyerTrame(int canal, byte[] donnees) throws CanalException;
+
+   /**
+    * @return l'adresse IP de l'autre extremite
+    */
+   public abstract String getIp();
+
+   /**
+    * Ferme la connexion et tous ses canaux logiques.
+    */
+   public abstract void fermer();
+
+   /**
+    * Transmet une trame recue a son canal logique.
+    *
+    * @param canal le numero du canal logique
+    * @param donnees les donnees de la trame
+    * @throws CanalException si le numero de canal est inconnu
+    */
+   protected void trameRecue(int canal, byte[] donnees) throws CanalException
+   {
+      if (canal < 0 || canal >= canaux.length)
+         throw new CanalException("Canal logique inconnu : " + canal);
+
+      canaux[canal].deposer(donnees);
+   }
+
+   /**
+    * Debloque les receptions en attente sur les canaux logiques.
+    */
+   protected void receptionTerminee()
+   {
+      for (CanalMultiplexe canal : canaux)
+         canal.terminerReception();
+   }
+}
@@ -0,0 +1,160 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Socket;
+
+/**
+ * Connexion multiplexee cote client.
+ * <p>
+ * La connexion est bloquante : une tache de lecture decoupe les trames et
+ * les depose dans les files des canaux logiques, les envois sont ecrits
+ * directement par la tache appelante.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see ServeurNIO
+ */
+public class ConnexionMultiplexeeCliente extends ConnexionMultiplexee implements Runnable
+{
+   private final Socket socket;
+   private final DataInputStream entree;
+   private final DataOutputStream sortie;
+   private volatile boolean fermee = false;
+
+   /**
+    * Etablit la connexion et lance la tache de lecture.
+    *
+    * @param adresseIp l'adresse IP du serveur
+    * @param numeroPort le port du serveur
+    * @throws ConnectException si la connexion est refusee
+    * @throws CanalException si une erreur de connexion survient
+    */
+   public ConnexionMultiplexeeCliente(String adresseIp, int numeroPort)
+         throws ConnectException, CanalException
+   {
+      try
+      {
+         socket = new Socket(adresseIp, numeroPort);
+         socket.setTcpNoDelay(true);
+
+         entree = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+         sortie = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      }
+      catch (ConnectException e)
+      {
+         throw e;
+      }
+      catch (IOException e)
+      {
+         throw new CanalException(e);
+      }
+
+      Thread lecture = new Thread(this);
+      lecture.setDaemon(true);
+      lecture.start();
+   }
+
+   /**
+    * Tache de lecture des trames
+    */
+   public void run()
+   {
+      try
+      {
+         while (!fermee)
+         {
+            int longueur = entree.readInt();
+
+            if (longueur < 0 || longueur > Trames.TAILLE_MAX)
+               throw new IOException("Trame invalide (longueur : " + longueur + ")");
+
+            int canal = entree.readByte();
+            byte[] donnees = new byte[longueur];
+            entree.readFully(donnees);
+
+            trameRecue(canal, donnees);
+         }
+      }
+      catch (Exception e)
+      {
+         // fermeture ou connexion perdue, les receptions en attente
+         // leveront une CanalException
+      }
+      finally
+      {
+         fermer();
+      }
+   }
+
+   @Override
+   public void envoyerTrame(int canal, byte[] donnees) throws CanalException
+   {
+      if (fermee)
+         throw new CanalException("Connexion fermée");
+
+      try
+      {
+         synchronized (sortie)
+         {
+            sortie.writeInt(donnees.length);
+            sortie.writeByte(canal);
+            sortie.write(donnees);
+            sortie.flush();
+         }
+      }
+      catch (IOException e)
+      {
+         fermer();
+         throw new CanalException(e);
+      }
+   }
+
+   @Override
+   public String getIp()
+   {
+      return socket.getInetAddress().getHostAddress();
+   }
+
+   @Override
+   public synchronized void fermer()
+   {
+      if (fermee)
+         return;
+
+      fermee = true;
+
+      try
+      {
+         socket.close();
+      }
+      catch (IOException e)
+      {
+         // la connexion est perdue de toute facon
+      }
+
+      receptionTerminee();
+   }
+}
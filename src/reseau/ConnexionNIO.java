@@ -0,0 +1,269 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connexion non bloquante geree par un serveur NIO.
+ * <p>
+ * Les envois sont deposes dans la file d'ecriture de la connexion par
+ * n'importe quelle tache puis ecrits par la tache du selecteur quand la
+ * socket est prete. Les lectures sont decoupees en trames et transmises a
+ * l'ecouteur du serveur.
+ * <p>
+ * Le volume des trames en attente d'ecriture est borne : au-dela de
+ * MAX_OCTETS_EN_ATTENTE, l'autre extremite ne lit plus assez vite et les
+ * envois echouent au lieu de faire grossir la file.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see ServeurNIO
+ */
+public class ConnexionNIO extends ConnexionMultiplexee
+{
+   /**
+    * Nombre maximum de trames ecrites par appel systeme
+    */
+   private static final int NB_TRAMES_PAR_ECRITURE = 64;
+
+   /**
+    * Volume maximum des trames deposees et pas encore ecrites
+    */
+   public static final int MAX_OCTETS_EN_ATTENTE = 1024 * 1024;
+
+   private final ServeurNIO serveur;
+   private final SocketChannel socket;
+   private final SelectionKey cle;
+   private final String ip;
+
+   // file d'ecriture alimentee par toutes les taches
+   private final ConcurrentLinkedQueue<ByteBuffer> aEnvoyer = new ConcurrentLinkedQueue<ByteBuffer>();
+
+   // une seule demande d'ecriture au selecteur pour plusieurs trames deposees
+   private final AtomicBoolean ecritureDemandee = new AtomicBoolean(false);
+
+   // octets deposes et pas encore ecrits
+   private final AtomicLong octetsEnAttente = new AtomicLong(0);
+
+   // trames en cours d'ecriture (tache du selecteur uniquement)
+   private final ArrayDeque<ByteBuffer> enCours = new ArrayDeque<ByteBuffer>();
+   private final ByteBuffer[] groupe = new ByteBuffer[NB_TRAMES_PAR_ECRITURE];
+
+   // tampon de lecture (tache du selecteur uniquement)
+   private ByteBuffer lecture = ByteBuffer.allocate(8192);
+
+   private volatile boolean fermee = false;
+   private volatile Object attachement;
+
+   ConnexionNIO(ServeurNIO serveur, SocketChannel socket, SelectionKey cle)
+   {
+      this.serveur = serveur;
+      this.socket = socket;
+      this.cle = cle;
+      this.ip = socket.socket().getInetAddress().getHostAddress();
+   }
+
+   @Override
+   public void envoyerTrame(int canal, byte[] donnees) throws CanalException
+   {
+      if (fermee)
+         throw new CanalException("Connexion fermée");
+
+      ByteBuffer trame = Trames.construire(canal, donnees);
+
+      if (octetsEnAttente.addAndGet(trame.limit()) > MAX_OCTETS_EN_ATTENTE)
+      {
+         octetsEnAttente.addAndGet(-trame.limit());
+         throw new CanalException("File d'écriture pleine (" + ip + ")");
+      }
+
+      aEnvoyer.add(trame);
+
+      if (ecritureDemandee.compareAndSet(false, true))
+         serveur.demanderEcriture(this);
+   }
+
+   @Override
+   public String getIp()
+   {
+      return ip;
+   }
+
+   @Override
+   public void fermer()
+   {
+      serveur.demanderFermeture(this);
+   }
+
+   /**
+    * @return l'objet associe a la connexion par l'ecouteur
+    */
+   public Object getAttachement()
+   {
+      return attachement;
+   }
+
+   /**
+    * Permet d'associer un objet a la connexion
+    *
+    * @param attachement l'objet
+    */
+   public void setAttachement(Object attachement)
+   {
+      this.attachement = attachement;
+   }
+
+   /**
+    * @return true si la connexion est fermee
+    */
+   public boolean estFermee()
+   {
+      return fermee;
+   }
+
+   SelectionKey getCle()
+   {
+      return cle;
+   }
+
+   /**
+    * Lit les donnees disponibles et transmet les trames completes.
+    *
+    * @param ecouteur l'ecouteur des trames
+    * @return false si l'autre extremite a ferme la connexion
+    * @throws IOException si la lecture ou une trame est erronee
+    */
+   boolean lire(EcouteurServeurNIO ecouteur) throws IOException
+   {
+      int lus = socket.read(lecture);
+
+      if (lus < 0)
+         return false;
+
+      lecture.flip();
+
+      while (lecture.remaining() >= Trames.TAILLE_ENTETE)
+      {
+         int longueur = lecture.getInt(lecture.position());
+
+         if (longueur < 0 || longueur > Trames.TAILLE_MAX)
+            throw new IOException("Trame invalide (longueur : " + longueur + ")");
+
+         if (lecture.remaining() < Trames.TAILLE_ENTETE + longueur)
+         {
+            // la trame ne tient pas dans le tampon, on l'agrandit
+            if (lecture.capacity() < Trames.TAILLE_ENTETE + longueur)
+            {
+               ByteBuffer plusGrand = ByteBuffer.allocate(Trames.TAILLE_ENTETE + longueur);
+               plusGrand.put(lecture);
+               lecture = plusGrand;
+               return true;
+            }
+
+            break;
+         }
+
+         lecture.getInt();
+         int canal = lecture.get();
+         byte[] donnees = new byte[longueur];
+         lecture.get(donnees);
+
+         ecouteur.trameRecue(this, canal, donnees);
+      }
+
+      lecture.compact();
+
+      return true;
+   }
+
+   /**
+    * Ecrit autant de trames que possible en une ecriture groupee.
+    *
+    * @return true si toutes les trames ont ete ecrites
+    * @throws IOException si l'ecriture est erronee
+    */
+   boolean ecrire() throws IOException
+   {
+      ecritureDemandee.set(false);
+
+      while (true)
+      {
+         ByteBuffer trame;
+         while (enCours.size() < NB_TRAMES_PAR_ECRITURE && (trame = aEnvoyer.poll()) != null)
+            enCours.add(trame);
+
+         if (enCours.isEmpty())
+            return true;
+
+         int n = 0;
+         for (ByteBuffer b : enCours)
+            groupe[n++] = b;
+
+         socket.write(groupe, 0, n);
+
+         while (!enCours.isEmpty() && !enCours.peekFirst().hasRemaining())
+            octetsEnAttente.addAndGet(-enCours.pollFirst().limit());
+
+         for (int i = 0; i < n; i++)
+            groupe[i] = null;
+
+         // socket pleine, on attendra qu'elle soit de nouveau prete
+         if (!enCours.isEmpty())
+            return false;
+      }
+   }
+
+   /**
+    * Ferme la socket (tache du selecteur uniquement).
+    *
+    * @return true si la connexion etait ouverte
+    */
+   boolean fermerSocket()
+   {
+      if (fermee)
+         return false;
+
+      fermee = true;
+      cle.cancel();
+
+      try
+      {
+         socket.close();
+      }
+      catch (IOException e)
+      {
+         // la connexion est perdue de toute facon
+      }
+
+      aEnvoyer.clear();
+      enCours.clear();
+      octetsEnAttente.set(0);
+      receptionTerminee();
+
+      return true;
+   }
+}
@@ -0,0 +1,76 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau;
+
+import java.net.SocketAddress;
+
+/**
+ * Datagramme recu sur un canal de datagrammes.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see CanalDatagrammes
+ */
+public class Datagramme
+{
+   private final int sequence;
+   private final byte[] donnees;
+   private final SocketAddress source;
+
+   /**
+    * Constructeur
+    *
+    * @param sequence
+    *           Le numero de sequence du datagramme chez sa source
+    * @param donnees
+    *           Les donnees du datagramme
+    * @param source
+    *           L'adresse de la source
+    */
+   Datagramme(int sequence, byte[] donnees, SocketAddress source)
+   {
+      this.sequence = sequence;
+      this.donnees = donnees;
+      this.source = source;
+   }
+
+   /**
+    * @return le numero de sequence du datagramme chez sa source
+    */
+   public int getSequence()
+   {
+      return sequence;
+   }
+
+   /**
+    * @return les donnees du datagramme
+    */
+   public byte[] getDonnees()
+   {
+      return donnees;
+   }
+
+   /**
+    * @return l'adresse de la source
+    */
+   public SocketAddress getSource()
+   {
+      return source;
+   }
+}
@@ -0,0 +1,55 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau;
+
+/**
+ * Interface d'ecoute des evenements d'un serveur NIO.
+ * <p>
+ * Toutes les methodes sont appelees par la tache du selecteur, elles ne
+ * doivent jamais bloquer (les envois sont mis en file et ne bloquent pas).
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see ServeurNIO
+ */
+public interface EcouteurServeurNIO
+{
+   /**
+    * Une nouvelle connexion a ete acceptee
+    *
+    * @param connexion la connexion
+    */
+   public void connexionOuverte(ConnexionNIO connexion);
+
+   /**
+    * Une trame complete a ete recue
+    *
+    * @param connexion la connexion
+    * @param canal le numero du canal logique
+    * @param donnees les donnees de la trame
+    */
+   public void trameRecue(ConnexionNIO connexion, int canal, byte[] donnees);
+
+   /**
+    * La connexion a ete fermee ou est erronee
+    *
+    * @param connexion la connexion
+    */
+   public void connexionFermee(ConnexionNIO connexion);
+}
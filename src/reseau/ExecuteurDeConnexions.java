@@ -0,0 +1,155 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Execute les taches de traitement des connexions (une tache bloquee sur
+ * son canal pendant toute la connexion).
+ * <p>
+ * Sans limite, chaque tache a son propre thread, comme auparavant. Avec une
+ * limite, les taches sont executees par un pool d'au plus nbMax threads
+ * reutilises ; une tache de plus est refusee et l'appelant ferme la
+ * connexion, un afflux de connexions reste donc borne.
+ * <p>
+ * La taille de la pile des threads peut etre reduite : une tache de
+ * connexion ne fait qu'attendre et decoder des messages.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ */
+public class ExecuteurDeConnexions
+{
+   /**
+    * Delai apres lequel un thread inactif du pool se termine (s)
+    */
+   private static final long DELAI_INACTIVITE = 60;
+
+   private final String nom;
+   private final int nbMax;
+   private final long taillePile;
+   private final ThreadPoolExecutor pool;
+   private final AtomicInteger nbThreads = new AtomicInteger();
+
+   /**
+    * Constructeur
+    *
+    * @param nom
+    *           Le nom des threads
+    * @param nbMax
+    *           Le nombre maximum de taches simultanees, 0 pour aucune limite
+    * @param taillePile
+    *           La taille de la pile des threads en octets, 0 pour celle 
+    *           par defaut
+    */
+   public ExecuteurDeConnexions(String nom, int nbMax, long taillePile)
+   {
+      if (nbMax < 0 || taillePile < 0)
+         throw new IllegalArgumentException("Limite ou taille de pile negative");
+
+      this.nom = nom;
+      this.nbMax = nbMax;
+      this.taillePile = taillePile;
+
+      if (nbMax > 0)
+      {
+         // aucune file : une tache sans thread libre est refusee
+         pool = new ThreadPoolExecutor(0, nbMax, DELAI_INACTIVITE, TimeUnit.SECONDS,
+               new SynchronousQueue<Runnable>(), new ThreadFactory()
+               {
+                  @Override
+                  public Thread newThread(Runnable tache)
+                  {
+                     return creerThread(tache);
+                  }
+               });
+      }
+      else
+         pool = null;
+   }
+
+   /**
+    * Lance une tache de connexion
+    *
+    * @param tache
+    *           La tache
+    * @return false si la limite est atteinte, la tache n'est pas lancee
+    */
+   public boolean executer(Runnable tache)
+   {
+      if (pool == null)
+      {
+         creerThread(tache).start();
+         return true;
+      }
+
+      try
+      {
+         pool.execute(tache);
+         return true;
+      }
+      catch (RejectedExecutionException e)
+      {
+         return false;
+      }
+   }
+
+   /**
+    * @return true si une nouvelle tache serait refusee
+    */
+   public boolean estPlein()
+   {
+      return pool != null && pool.getActiveCount() >= nbMax;
+   }
+
+   /**
+    * @return le nombre maximum de taches simultanees, 0 pour aucune limite
+    */
+   public int getNbMax()
+   {
+      return nbMax;
+   }
+
+   /**
+    * N'accepte plus de taches, celles en cours se terminent avec leur 
+    * connexion.
+    */
+   public void arreter()
+   {
+      if (pool != null)
+         pool.shutdown();
+   }
+
+   /**
+    * Cree un thread de connexion
+    */
+   private Thread creerThread(Runnable tache)
+   {
+      Thread thread = new Thread(null, tache, nom + "-" + nbThreads.incrementAndGet(), taillePile);
+      thread.setDaemon(true);
+
+      return thread;
+   }
+}
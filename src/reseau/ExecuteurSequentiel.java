@@ -0,0 +1,136 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Execute des taches une a la fois, dans l'ordre de leur soumission, sur
+ * les threads d'un executeur eventuellement partage.
+ * <p>
+ * Plusieurs executeurs sequentiels peuvent partager le meme pool : les
+ * taches d'un meme executeur ne s'executent jamais en parallele, celles
+ * d'executeurs differents si.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ */
+public class ExecuteurSequentiel implements Executor
+{
+   private final Executor executeur;
+   private final ConcurrentLinkedQueue<Runnable> taches = new ConcurrentLinkedQueue<Runnable>();
+   private final AtomicBoolean enCours = new AtomicBoolean();
+   private volatile boolean arrete = false;
+
+   private final Runnable vidage = new Runnable()
+   {
+      @Override
+      public void run()
+      {
+         vider();
+      }
+   };
+
+   /**
+    * Constructeur
+    *
+    * @param executeur
+    *           L'executeur qui fournit les threads
+    */
+   public ExecuteurSequentiel(Executor executeur)
+   {
+      this.executeur = executeur;
+   }
+
+   /**
+    * Permet de soumettre une tache, executee apres celles deja soumises
+    *
+    * @throws RejectedExecutionException
+    *            si l'executeur est arrete
+    */
+   @Override
+   public void execute(Runnable tache)
+   {
+      if (arrete)
+         throw new RejectedExecutionException("Executeur arrete");
+
+      taches.add(tache);
+      planifier();
+   }
+
+   /**
+    * Permet d'arreter l'executeur, les taches en attente sont abandonnees
+    */
+   public void arreter()
+   {
+      arrete = true;
+      taches.clear();
+   }
+
+   /**
+    * Confie le vidage de la file a l'executeur s'il n'est pas deja en cours
+    */
+   private void planifier()
+   {
+      if (taches.isEmpty() || !enCours.compareAndSet(false, true))
+         return;
+
+      try
+      {
+         executeur.execute(vidage);
+      }
+      catch (RejectedExecutionException e)
+      {
+         // executeur sous-jacent arrete
+         enCours.set(false);
+         taches.clear();
+      }
+   }
+
+   private void vider()
+   {
+      try
+      {
+         Runnable tache;
+
+         while (!arrete && (tache = taches.poll()) != null)
+         {
+            try
+            {
+               tache.run();
+            }
+            catch (RuntimeException e)
+            {
+               // les taches suivantes sont executees malgre tout
+               e.printStackTrace();
+            }
+         }
+      }
+      finally
+      {
+         enCours.set(false);
+      }
+
+      // tache soumise entre le dernier poll et la fin du vidage
+      planifier();
+   }
+}
@@ -0,0 +1,145 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.*;
+
+/**
+ * @author Aurelien Da Campo
+ */
+public class ExecuteurSequentielTest
+{
+   private static final int NB_FILES = 4, NB_TACHES = 2000;
+
+   private ExecutorService pool;
+
+   @Before
+   public void setUp()
+   {
+      pool = Executors.newFixedThreadPool(4);
+   }
+
+   @After
+   public void tearDown()
+   {
+      pool.shutdownNow();
+   }
+
+   /**
+    * Les taches de chaque file s'executent une a la fois et dans l'ordre,
+    * meme si les files partagent le meme pool
+    */
+   @Test
+   public void testOrdreEtExclusion() throws InterruptedException
+   {
+      final CountDownLatch fin = new CountDownLatch(NB_FILES * NB_TACHES);
+      final AtomicInteger chevauchements = new AtomicInteger();
+
+      ArrayList<ArrayList<Integer>> ordres = new ArrayList<ArrayList<Integer>>();
+
+      for (int f = 0; f < NB_FILES; f++)
+      {
+         final ArrayList<Integer> ordre = new ArrayList<Integer>();
+         final AtomicInteger enCours = new AtomicInteger();
+         ExecuteurSequentiel file = new ExecuteurSequentiel(pool);
+         ordres.add(ordre);
+
+         for (int i = 0; i < NB_TACHES; i++)
+         {
+            final int numero = i;
+
+            file.execute(new Runnable()
+            {
+               @Override
+               public void run()
+               {
+                  if (enCours.incrementAndGet() != 1)
+                     chevauchements.incrementAndGet();
+
+                  ordre.add(numero);
+                  enCours.decrementAndGet();
+                  fin.countDown();
+               }
+            });
+         }
+      }
+
+      assertTrue(fin.await(10, TimeUnit.SECONDS));
+      assertEquals(0, chevauchements.get());
+
+      for (ArrayList<Integer> ordre : ordres)
+         for (int i = 0; i < NB_TACHES; i++)
+            assertEquals(i, (int) ordre.get(i));
+   }
+
+   /**
+    * Une tache qui echoue n'empeche pas l'execution des suivantes
+    */
+   @Test
+   public void testTacheEnErreur() throws InterruptedException
+   {
+      final CountDownLatch fin = new CountDownLatch(1);
+      ExecuteurSequentiel file = new ExecuteurSequentiel(pool);
+
+      file.execute(new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            throw new IllegalStateException("tache en erreur");
+         }
+      });
+
+      file.execute(new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            fin.countDown();
+         }
+      });
+
+      assertTrue(fin.await(10, TimeUnit.SECONDS));
+   }
+
+   @Test(expected = RejectedExecutionException.class)
+   public void testArreter()
+   {
+      ExecuteurSequentiel file = new ExecuteurSequentiel(pool);
+      file.arreter();
+
+      file.execute(new Runnable()
+      {
+         @Override
+         public void run()
+         {
+         }
+      });
+   }
+}
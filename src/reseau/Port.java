@@ -18,7 +18,9 @@
 
 package reseau;
 
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
 import java.io.IOException;
 
 /**
@@ -91,8 +93,11 @@ public class Port {
     */
    public void reserver() throws IOException 
    {
-      // Demander le port et l'associer avec un socket.
-      serverSocket = new ServerSocket(numeroPort);
+      // Demander le port et l'associer avec un socket. La socket est ouverte
+      // par un canal NIO pour que les connexions acceptées en aient un
+      // (CanalTrames), CanalTCP n'utilise que leurs flux.
+      serverSocket = ServerSocketChannel.open().socket();
+      serverSocket.bind(new InetSocketAddress(numeroPort));
    }
    
    /**
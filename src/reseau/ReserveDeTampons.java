@@ -0,0 +1,86 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reserve de tampons directs de taille fixe partages par les canaux.
+ * <p>
+ * L'allocation d'un tampon direct est couteuse, les tampons rendus sont
+ * reutilises. Au-dela de NB_MAX tampons libres, les tampons rendus sont
+ * abandonnes au ramasse-miettes.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see CanalTrames
+ */
+final class ReserveDeTampons
+{
+   /**
+    * Taille d'un tampon
+    */
+   static final int TAILLE = 64 * 1024;
+
+   /**
+    * Nombre maximum de tampons libres conserves
+    */
+   private static final int NB_MAX = 64;
+
+   private static final ConcurrentLinkedQueue<ByteBuffer> libres = new ConcurrentLinkedQueue<ByteBuffer>();
+   private static final AtomicInteger nbLibres = new AtomicInteger();
+
+   private ReserveDeTampons()
+   {}
+
+   /**
+    * @return un tampon vide, pret a etre rempli
+    */
+   static ByteBuffer prendre()
+   {
+      ByteBuffer tampon = libres.poll();
+
+      if (tampon == null)
+         return ByteBuffer.allocateDirect(TAILLE);
+
+      nbLibres.decrementAndGet();
+      tampon.clear();
+
+      return tampon;
+   }
+
+   /**
+    * Permet de rendre un tampon, qui ne doit plus etre utilise ensuite.
+    * Les tampons qui ne viennent pas de la reserve sont ignores.
+    *
+    * @param tampon le tampon
+    */
+   static void rendre(ByteBuffer tampon)
+   {
+      if (!tampon.isDirect() || tampon.capacity() != TAILLE)
+         return;
+
+      if (nbLibres.incrementAndGet() <= NB_MAX)
+         libres.add(tampon);
+      else
+         nbLibres.decrementAndGet();
+   }
+}
@@ -0,0 +1,276 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Serveur TCP non bloquant.
+ * <p>
+ * Une seule tache (le selecteur) accepte les connexions, lit les trames et
+ * ecrit les files d'ecriture de toutes les connexions. Les autres taches ne
+ * font que deposer des trames, elles ne bloquent jamais sur une socket.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see ConnexionNIO
+ * @see EcouteurServeurNIO
+ */
+public class ServeurNIO implements Runnable
+{
+   private final int numeroPort;
+   private final EcouteurServeurNIO ecouteur;
+   private final Selector selecteur;
+   private final ServerSocketChannel serveur;
+
+   // connexions qui ont des trames a ecrire ou qui doivent etre fermees
+   private final ConcurrentLinkedQueue<ConnexionNIO> ecrituresDemandees = new ConcurrentLinkedQueue<ConnexionNIO>();
+   private final ConcurrentLinkedQueue<ConnexionNIO> fermeturesDemandees = new ConcurrentLinkedQueue<ConnexionNIO>();
+
+   private volatile boolean enService = true;
+   private boolean verbeux = false;
+
+   /**
+    * Ouvre le port d'ecoute. La tache du selecteur doit ensuite etre lancee.
+    *
+    * @param numeroPort le port d'ecoute
+    * @param ecouteur l'ecouteur des evenements
+    * @throws IOException si le port ne peut etre ouvert
+    */
+   public ServeurNIO(int numeroPort, EcouteurServeurNIO ecouteur) throws IOException
+   {
+      this.numeroPort = numeroPort;
+      this.ecouteur = ecouteur;
+
+      selecteur = Selector.open();
+
+      serveur = ServerSocketChannel.open();
+      serveur.configureBlocking(false);
+      serveur.socket().setReuseAddress(true);
+      serveur.socket().bind(new InetSocketAddress(numeroPort));
+      serveur.register(selecteur, SelectionKey.OP_ACCEPT);
+   }
+
+   /**
+    * Boucle du selecteur
+    */
+   public void run()
+   {
+      log("Ecoute sur le port " + numeroPort);
+
+      try
+      {
+         while (enService)
+         {
+            selecteur.select();
+
+            traiterDemandes();
+
+            Iterator<SelectionKey> it = selecteur.selectedKeys().iterator();
+            while (it.hasNext())
+            {
+               SelectionKey cle = it.next();
+               it.remove();
+
+               if (!cle.isValid())
+                  continue;
+
+               if (cle.isAcceptable())
+                  accepter();
+               else
+                  traiter(cle);
+            }
+         }
+
+         // derniers envois deposes avant l'arret
+         traiterDemandes();
+      }
+      catch (ClosedSelectorException e)
+      {
+         // arret du serveur
+      }
+      catch (IOException e)
+      {
+         logErreur("Erreur du selecteur", e);
+      }
+      finally
+      {
+         fermerTout();
+      }
+   }
+
+   /**
+    * Arrete le serveur. Les trames deja deposees sont envoyees si possible
+    * puis toutes les connexions sont fermees.
+    */
+   public void arreter()
+   {
+      enService = false;
+      selecteur.wakeup();
+   }
+
+   /**
+    * @return le port d'ecoute
+    */
+   public int getNumeroPort()
+   {
+      return numeroPort;
+   }
+
+   void demanderEcriture(ConnexionNIO connexion)
+   {
+      ecrituresDemandees.add(connexion);
+      selecteur.wakeup();
+   }
+
+   void demanderFermeture(ConnexionNIO connexion)
+   {
+      fermeturesDemandees.add(connexion);
+      selecteur.wakeup();
+   }
+
+   private void traiterDemandes()
+   {
+      ConnexionNIO connexion;
+
+      while ((connexion = ecrituresDemandees.poll()) != null)
+      {
+         if (connexion.estFermee())
+            continue;
+
+         // ecriture directe, on n'attend la socket que si elle est pleine
+         try
+         {
+            if (!connexion.ecrire())
+               connexion.getCle().interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+         }
+         catch (IOException e)
+         {
+            fermer(connexion);
+         }
+      }
+
+      while ((connexion = fermeturesDemandees.poll()) != null)
+      {
+         // les trames deja deposees (ex: refus de connexion) partent d'abord
+         try
+         {
+            connexion.ecrire();
+         }
+         catch (IOException e)
+         {
+            // fermee de toute facon
+         }
+
+         fermer(connexion);
+      }
+   }
+
+   private void fermerTout()
+   {
+      try
+      {
+         for (SelectionKey cle : selecteur.keys())
+            if (cle.attachment() instanceof ConnexionNIO)
+               ((ConnexionNIO) cle.attachment()).fermerSocket();
+
+         serveur.close();
+         selecteur.close();
+      }
+      catch (IOException e)
+      {
+         logErreur("Erreur à l'arrêt du serveur", e);
+      }
+   }
+
+   private void accepter() throws IOException
+   {
+      SocketChannel socket = serveur.accept();
+
+      if (socket == null)
+         return;
+
+      socket.configureBlocking(false);
+      socket.socket().setTcpNoDelay(true);
+
+      SelectionKey cle = socket.register(selecteur, SelectionKey.OP_READ);
+      ConnexionNIO connexion = new ConnexionNIO(this, socket, cle);
+      cle.attach(connexion);
+
+      log("Connexion de " + connexion.getIp());
+
+      ecouteur.connexionOuverte(connexion);
+   }
+
+   private void traiter(SelectionKey cle)
+   {
+      ConnexionNIO connexion = (ConnexionNIO) cle.attachment();
+
+      try
+      {
+         if (cle.isReadable() && !connexion.lire(ecouteur))
+         {
+            fermer(connexion);
+            return;
+         }
+
+         if (cle.isValid() && cle.isWritable() && connexion.ecrire())
+            cle.interestOps(SelectionKey.OP_READ);
+      }
+      catch (IOException e)
+      {
+         log("Connexion " + connexion.getIp() + " erronée : " + e.getMessage());
+         fermer(connexion);
+      }
+      catch (RuntimeException e)
+      {
+         // une erreur de l'ecouteur ne doit pas arreter le selecteur
+         logErreur("Erreur de traitement d'une trame", e);
+         fermer(connexion);
+      }
+   }
+
+   private void fermer(ConnexionNIO connexion)
+   {
+      if (connexion.fermerSocket())
+         ecouteur.connexionFermee(connexion);
+   }
+
+   private void log(String msg)
+   {
+      if (verbeux)
+         System.out.println("[SERVEUR NIO] " + msg);
+   }
+
+   private void logErreur(String msg, Exception e)
+   {
+      System.err.println("[SERVEUR NIO][ERREUR] " + msg);
+
+      if (e != null)
+         e.printStackTrace();
+   }
+}
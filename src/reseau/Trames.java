@@ -0,0 +1,125 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * Format des trames d'une connexion multiplexee.
+ * <p>
+ * Une trame est composee de la longueur des donnees (int), du numero du
+ * canal logique (byte) puis des donnees. Un String est transmis en UTF-8,
+ * un int sur 4 octets.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see ConnexionMultiplexee
+ */
+public final class Trames
+{
+   /**
+    * Taille de l'en-tete d'une trame
+    */
+   public static final int TAILLE_ENTETE = 5;
+
+   /**
+    * Taille maximum des donnees d'une trame
+    */
+   public static final int TAILLE_MAX = 16 * 1024 * 1024;
+
+   private static final String CHARSET = "UTF-8";
+
+   private Trames()
+   {}
+
+   /**
+    * Construit une trame prete a etre ecrite.
+    *
+    * @param canal le numero du canal logique
+    * @param donnees les donnees
+    * @return la trame, positionnee au debut
+    */
+   public static ByteBuffer construire(int canal, byte[] donnees)
+   {
+      ByteBuffer trame = ByteBuffer.allocate(TAILLE_ENTETE + donnees.length);
+
+      trame.putInt(donnees.length);
+      trame.put((byte) canal);
+      trame.put(donnees);
+      trame.flip();
+
+      return trame;
+   }
+
+   /**
+    * @param message le String
+    * @return le String encode en UTF-8
+    */
+   public static byte[] encoderString(String message)
+   {
+      try
+      {
+         return message.getBytes(CHARSET);
+      }
+      catch (UnsupportedEncodingException e)
+      {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   /**
+    * @param donnees les donnees d'une trame
+    * @return le String decode
+    */
+   public static String decoderString(byte[] donnees)
+   {
+      try
+      {
+         return new String(donnees, CHARSET);
+      }
+      catch (UnsupportedEncodingException e)
+      {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   /**
+    * @param i l'int
+    * @return l'int encode sur 4 octets (big-endian)
+    */
+   public static byte[] encoderInt(int i)
+   {
+      return new byte[] { (byte) (i >>> 24), (byte) (i >>> 16), (byte) (i >>> 8), (byte) i };
+   }
+
+   /**
+    * @param donnees les donnees d'une trame
+    * @return l'int decode
+    * @throws CanalException si la trame n'a pas la taille d'un int
+    */
+   public static int decoderInt(byte[] donnees) throws CanalException
+   {
+      if (donnees.length != 4)
+         throw new CanalException("Int attendu, " + donnees.length + " octets reçus");
+
+      return ((donnees[0] & 0xFF) << 24) | ((donnees[1] & 0xFF) << 16)
+            | ((donnees[2] & 0xFF) << 8) | (donnees[3] & 0xFF);
+   }
+}
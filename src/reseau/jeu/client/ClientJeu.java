@@ -20,12 +20,29 @@ package reseau.jeu.client;
 
 import i18n.Langue;
 
+import java.awt.Rectangle;
 import java.io.File;
 import java.io.IOException;
 import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import outils.Configuration;
+import reseau.Canal;
+import reseau.CanalDatagrammes;
+import reseau.CanalMultiplexe;
 import reseau.CanalTCP;
+import reseau.CanalTrames;
 import reseau.CanalException;
+import reseau.ConnexionMultiplexee;
+import reseau.ConnexionMultiplexeeCliente;
+import reseau.Datagramme;
 import reseau.jeu.serveur.ConstantesServeurJeu;
+import reseau.jeu.serveur.HistoriqueInstantanes;
+import reseau.jeu.serveur.InstantaneCreatures;
+import reseau.jeu.serveur.LecteurBinaire;
 import reseau.jeu.serveur.Protocole;
 import models.animations.GainDePiecesOr;
 import models.creatures.*;
@@ -50,12 +67,12 @@ public class ClientJeu implements ConstantesServeurJeu, Runnable{
     /**
      * Canal de ping-pong envoie / reception
      */
-	private CanalTCP canalEnvoi;
+	private Canal canalEnvoi;
 	
 	/**
 	 * Canal d'écoute asynchrone du serveur
 	 */
-	private CanalTCP canalEcoute;
+	private Canal canalEcoute;
 	
 	/**
 	 * Le jeu du client
@@ -72,6 +89,62 @@ public class ClientJeu implements ConstantesServeurJeu, Runnable{
      */
     private EcouteurDeClientJeu edcj;
     
+    /**
+     * Instantanés des créatures reçus, bases des différences suivantes
+     */
+    private final HistoriqueInstantanes instantanesRecus = new HistoriqueInstantanes();
+    
+    /**
+     * Nombre d'instantanés pris en compte pour estimer le décalage entre
+     * les pas de simulation du serveur et ceux du client
+     */
+    private static final int NB_DECALAGES = 16;
+    
+    /**
+     * Décalages (pas du serveur - pas du client) des derniers instantanés
+     * reçus. Le plus grand est celui de l'instantané arrivé le plus vite, 
+     * la meilleure estimation du pas courant du serveur.
+     */
+    private final long[] decalages = new long[NB_DECALAGES];
+    private int nbDecalages = 0;
+    
+    /**
+     * Pas de simulation du serveur du dernier instantané reçu
+     */
+    private long pasDernierInstantane = -1;
+    
+    /**
+     * Délai sans instantané UDP après lequel le client se réannonce (ms)
+     */
+    private static final int DELAI_ANNONCE_UDP = 1000;
+    
+    /**
+     * Port UDP des instantanés annoncé par le serveur, 0 s'ils passent par
+     * le canal 2
+     */
+    private int portInstantanes;
+    
+    /**
+     * Canal UDP des instantanés des créatures ou null
+     */
+    private CanalDatagrammes canalInstantanes;
+    
+    /**
+     * Identificateur de la prochaine requête envoyée sur le canal 1
+     */
+    private final AtomicInteger prochainIdRequete = new AtomicInteger(1);
+    
+    /**
+     * Requêtes envoyées dont la réponse n'est pas encore arrivée
+     */
+    private final ConcurrentHashMap<Integer, RequeteEnAttente> requetesEnAttente 
+        = new ConcurrentHashMap<Integer, RequeteEnAttente>();
+    
+    /**
+     * Erreur qui a arrêté la réception des réponses, null tant qu'elle tourne
+     */
+    private volatile CanalException erreurReponses;
+    
     /**
      * Constructeur
      * 
@@ -95,9 +168,39 @@ public class ClientJeu implements ConstantesServeurJeu, Runnable{
 	public void etablirConnexion(String IP, int port) 
 	    throws ConnectException, CanalException, AucunEmplacementDisponibleException 
     {
+	    etablirConnexion(IP, port, 0);
+    }
+	
+	/**
+	 * Permet d'établir une connexion avec une partie hébergée avec d'autres
+	 * sur le même port : l'identificateur de la partie est envoyé avant le
+	 * pseudo pour que l'hôte transmette la connexion à la partie.
+	 * 
+	 * @param IP l'ip de l'hôte
+	 * @param port le port de l'hôte
+	 * @param idPartie l'identificateur de la partie, 0 si elle est seule 
+	 *        sur le port
+	 * 
+	 * @throws ConnectException
+	 * @throws CanalException
+	 * @throws AucunEmplacementDisponibleException
+	 */
+	public void etablirConnexion(String IP, int port, int idPartie) 
+	    throws ConnectException, CanalException, AucunEmplacementDisponibleException 
+    {
        
 	    // création du canal 1 (Requête / réponse)
-        canalEnvoi = new CanalTCP(IP, port);
+        if(Configuration.TRANSPORT_NIO.equals(Configuration.getTransportJeu()))
+            canalEnvoi = new ConnexionMultiplexeeCliente(IP, port)
+                             .getCanal(ConnexionMultiplexee.CANAL_REQUETES);
+        else if(Configuration.TRANSPORT_TRAMES.equals(Configuration.getTransportJeu()))
+            canalEnvoi = new CanalTrames(IP, port);
+        else
+            canalEnvoi = new CanalTCP(IP, port);
+        
+        // choix de la partie chez l'hôte
+        if(idPartie > 0)
+            canalEnvoi.envoyerString(String.valueOf(idPartie));
         
         // demande de connexion au serveur (canal 1)
         canalEnvoi.envoyerString(jeu.getJoueurPrincipal().getPseudo());
@@ -121,10 +224,78 @@ public class ClientJeu implements ConstantesServeurJeu, Runnable{
         int portCanal2 = canalEnvoi.recevoirInt();
         
         // création du canal 2 (Reception asynchrone)
-        canalEcoute = new CanalTCP(IP, portCanal2);
+        // (port 0 : canal logique de la connexion multiplexée)
+        if(portCanal2 == 0 && canalEnvoi instanceof CanalMultiplexe)
+            canalEcoute = ((CanalMultiplexe) canalEnvoi).getConnexion()
+                              .getCanal(ConnexionMultiplexee.CANAL_MISE_A_JOUR);
+        else if(canalEnvoi instanceof CanalTrames)
+            canalEcoute = new CanalTrames(IP, portCanal2);
+        else
+            canalEcoute = new CanalTCP(IP, portCanal2);
 
         // lancement de la tache d'écoute du canal 2
         (new Thread(this)).start();
+        
+        // lancement de la tache de réception des réponses du canal 1
+        Thread reponses = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                attendreReponses();
+            }
+        });
+        reponses.setDaemon(true);
+        reponses.start();
+        
+        // lancement de la tache de réception des instantanés en UDP
+        if(portInstantanes != 0)
+        {
+            canalInstantanes = new CanalDatagrammes();
+            final InetSocketAddress adresse = new InetSocketAddress(IP, portInstantanes);
+            
+            Thread instantanes = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    attendreInstantanes(adresse);
+                }
+            });
+            instantanes.setDaemon(true);
+            instantanes.start();
+        }
+    }
+    
+    /**
+     * Tache de réception des instantanés des créatures en UDP.
+     * 
+     * Le client s'annonce au serveur (son identificateur) et se réannonce 
+     * s'il ne reçoit plus rien. Les instantanés perdus ne sont pas renvoyés,
+     * le suivant est encodé par rapport au dernier acquitté.
+     * 
+     * @param serveur l'adresse UDP du serveur
+     */
+    private void attendreInstantanes(InetSocketAddress serveur)
+    {
+        byte[] annonce = ByteBuffer.allocate(4).putInt(jeu.getJoueurPrincipal().getId()).array();
+        
+        try
+        {
+            canalInstantanes.envoyer(annonce, serveur);
+            
+            while(true)
+            {
+                Datagramme datagramme = canalInstantanes.recevoir(DELAI_ANNONCE_UDP);
+                
+                if(datagramme == null)
+                    canalInstantanes.envoyer(annonce, serveur);
+                else if(datagramme.getSource().equals(serveur))
+                    receptionInstantane(datagramme.getDonnees());
+            }
+        }
+        catch (CanalException e)
+        {
+            // canal fermé, fin de la connexion
+        }
     }
 	
     /**
@@ -149,36 +320,44 @@ public class ClientJeu implements ConstantesServeurJeu, Runnable{
 	/**
 	 * Permet d'envoyer une vague de créatures
 	 * 
-	 * @param nbCreatures le nombre de créatures
-	 * @param typeCreature le type des créatures
+	 * @param vague la vague
 	 * @throws ArgentInsuffisantException 
 	 * @throws CanalException 
 	 */
 	public void envoyerVague(VagueDeCreatures vague) throws ArgentInsuffisantException, CanalException
 	{
+        switch(envoyerVague(vague, null).attendreStatut())
+        {
+            case ARGENT_INSUFFISANT :
+                throw new ArgentInsuffisantException("Pas assez d'argent");
+            case JOUEUR_INCONNU :
+                logErreur("Joueur inconnu");
+        }
+	}
+	
+	/**
+	 * Permet d'envoyer une vague de créatures sans attendre la réponse
+	 * 
+	 * @param vague la vague
+	 * @param ecouteur l'ecouteur de la réponse ou null
+	 * @return la requête en attente de réponse
+	 * @throws CanalException 
+	 */
+	public RequeteEnAttente envoyerVague(VagueDeCreatures vague, EcouteurDeReponse ecouteur) throws CanalException
+	{
+	    JSONObject json = new JSONObject();
+	    
 		try
 		{
-			JSONObject json = new JSONObject();
 			json.put("TYPE", VAGUE);
 			json.put("TYPE_CREATURE", TypeDeCreature.getTypeCreature(vague.getNouvelleCreature()));
 			json.put("NB_CREATURES", vague.getNbCreatures());
-			
-			canalEnvoi.envoyerString(json.toString());
-			
-			// attente de la réponse
-            String resultat = canalEnvoi.recevoirString();
-            JSONObject resultatJSON = new JSONObject(resultat);
-            switch(resultatJSON.getInt("STATUS"))
-            {
-                case ARGENT_INSUFFISANT :
-                    throw new ArgentInsuffisantException("Pas assez d'argent");
-                case JOUEUR_INCONNU :
-                    logErreur("Joueur inconnu");
-            }	
 		} 
 		catch (JSONException e) {
 			e.printStackTrace();
 		}
+		
+		return envoyerRequete(VAGUE, json, ecouteur);
 	}
 	
 	/**
@@ -193,37 +372,46 @@ public class ClientJeu implements ConstantesServeurJeu, Runnable{
 	public void demanderPoseTour(Tour tour) 
 	    throws ArgentInsuffisantException, ZoneInaccessibleException, CanalException
 	{
+		switch(demanderPoseTour(tour, null).attendreStatut())
+		{
+		    case ARGENT_INSUFFISANT : 
+		        throw new ArgentInsuffisantException(Langue.getTexte(Langue.ID_ERROR_POSE_IMPOSSIBLE_PAS_ASSEZ_D_ARGENT));
+		    case ZONE_INACCESSIBLE :
+                throw new ZoneInaccessibleException(Langue.getTexte(Langue.ID_ERROR_POSE_IMPOSSIBLE_ZONE_INACCESSIBLE));
+		    case CHEMIN_BLOQUE :
+                throw new ZoneInaccessibleException(Langue.getTexte(Langue.ID_ERROR_POSE_IMPOSSIBLE_CHEMIN_BLOQUE));
+            // TODO case JOUEUR_HORS_JEU:
+            //   throw new JoueurHorsJeu("Tour inconnue");
+		}
+	}
+	
+	/**
+	 * Permet de demander au serveur de jeu la pose d'une tour sans attendre
+	 * la réponse
+	 * 
+	 * @param tour la tour a poser
+	 * @param ecouteur l'ecouteur de la réponse ou null
+	 * @return la requête en attente de réponse
+	 * @throws CanalException 
+	 */
+	public RequeteEnAttente demanderPoseTour(Tour tour, EcouteurDeReponse ecouteur) throws CanalException
+	{
+	    JSONObject json = new JSONObject();
+	    
 		try 
 		{
-		    // envoye de la requete d'ajout
-		    JSONObject json = new JSONObject();
 			json.put("TYPE", TOUR_AJOUT);
 			json.put("X", tour.x);
 			json.put("Y", tour.y);
 			json.put("TYPE_TOUR", TypeDeTour.getTypeDeTour(tour));
-			
-            log("Envoye d'une demande de pose d'une tour");
-			
-			canalEnvoi.envoyerString(json.toString());
-			
-			// attente de la réponse
-			String resultat = canalEnvoi.recevoirString();
-			JSONObject resultatJSON = new JSONObject(resultat);
-			switch(resultatJSON.getInt("STATUS"))
-			{
-			    case ARGENT_INSUFFISANT : 
-			        throw new ArgentInsuffisantException(Langue.getTexte(Langue.ID_ERROR_POSE_IMPOSSIBLE_PAS_ASSEZ_D_ARGENT));
-			    case ZONE_INACCESSIBLE :
-                    throw new ZoneInaccessibleException(Langue.getTexte(Langue.ID_ERROR_POSE_IMPOSSIBLE_ZONE_INACCESSIBLE));
-			    case CHEMIN_BLOQUE :
-                    throw new ZoneInaccessibleException(Langue.getTexte(Langue.ID_ERROR_POSE_IMPOSSIBLE_CHEMIN_BLOQUE));
-                // TODO case JOUEUR_HORS_JEU:
-                //   throw new JoueurHorsJeu("Tour inconnue");
-			}
 		} 
 		catch (JSONException e) {
 			e.printStackTrace();
-		} 
+		}
+		
+		log("Envoye d'une demande de pose d'une tour");
+		
+		return envoyerRequete(TOUR_AJOUT, json, ecouteur);
 	}
 	
 	/**
@@ -238,38 +426,46 @@ public class ClientJeu implements ConstantesServeurJeu, Runnable{
 	 */
 	public void demanderAmeliorationTour(Tour tour) throws ArgentInsuffisantException, ActionNonAutoriseeException, CanalException, NiveauMaxAtteintException, JoueurHorsJeu
 	{
+        switch(demanderAmeliorationTour(tour, null).attendreStatut())
+        {
+            case TOUR_INCONNUE:
+                throw new NullPointerException("Unknown tower");
+            case ARGENT_INSUFFISANT :
+                throw new ArgentInsuffisantException(Langue.getTexte(Langue.ID_ERROR_AMELIORATON_IMPOSSIBLE_PAS_ASSEZ_D_ARGENT));
+            case   NIVEAU_MAX_ATTEINT:
+                throw new NiveauMaxAtteintException(Langue.getTexte(Langue.ID_ERROR_AMELIORATON_IMPOSSIBLE_NIVEAU_MAX_ATTEINT));
+            case ACTION_NON_AUTORISEE :
+                throw new ActionNonAutoriseeException("Non authorized");
+            case JOUEUR_HORS_JEU:
+                throw new JoueurHorsJeu("Unknown tower");
+        }
+	}
+	
+	/**
+	 * Permet de demander au serveur de jeu d'améliorer une tour sans attendre
+	 * la réponse
+	 * 
+	 * @param tour la tour
+	 * @param ecouteur l'ecouteur de la réponse ou null
+	 * @return la requête en attente de réponse
+	 * @throws CanalException 
+	 */
+	public RequeteEnAttente demanderAmeliorationTour(Tour tour, EcouteurDeReponse ecouteur) throws CanalException
+	{
+	    JSONObject json = new JSONObject();
+	    
 		try 
 		{
-		    // envoye de la requete de vente
-		    JSONObject json = new JSONObject();
 			json.put("TYPE", TOUR_AMELIORATION);
 			json.put("ID_TOWER", tour.getId());
-			
-			log("Envoye d'une demande de vente d'une tour");
-                
-			canalEnvoi.envoyerString(json.toString());
-			
-			String resultat = canalEnvoi.recevoirString(); // pas d'erreur possible...
-
-			JSONObject resultatJSON = new JSONObject(resultat);
-            switch(resultatJSON.getInt("STATUS"))
-            {
-                case TOUR_INCONNUE:
-                    throw new NullPointerException("Unknown tower");
-                case ARGENT_INSUFFISANT :
-                    throw new ArgentInsuffisantException(Langue.getTexte(Langue.ID_ERROR_AMELIORATON_IMPOSSIBLE_PAS_ASSEZ_D_ARGENT));
-                case   NIVEAU_MAX_ATTEINT:
-                    throw new NiveauMaxAtteintException(Langue.getTexte(Langue.ID_ERROR_AMELIORATON_IMPOSSIBLE_NIVEAU_MAX_ATTEINT));
-                case ACTION_NON_AUTORISEE :
-                    throw new ActionNonAutoriseeException("Non authorized");
-                case JOUEUR_HORS_JEU:
-                    throw new JoueurHorsJeu("Unknown tower");
-            }
-			
 		} 
 		catch (JSONException e) {
 			e.printStackTrace();
 		}
+		
+		log("Envoye d'une demande d'amélioration d'une tour");
+		
+		return envoyerRequete(TOUR_AMELIORATION, json, ecouteur);
 	}
 	
 	/**
@@ -281,30 +477,134 @@ public class ClientJeu implements ConstantesServeurJeu, Runnable{
      */
 	public void demanderVenteTour(Tour tour) throws ActionNonAutoriseeException, CanalException
 	{
+        switch(demanderVenteTour(tour, null).attendreStatut())
+        {
+            case ACTION_NON_AUTORISEE :
+                throw new ActionNonAutoriseeException("Non authorized");
+                
+            // TODO case JOUEUR_HORS_JEU:
+            //   throw new JoueurHorsJeu("Tour inconnue");
+        }
+	}
+	
+	/**
+     * Permet de demander au serveur de jeu la vente d'une tour sans attendre
+     * la réponse
+     * 
+     * @param tour la tour a vendre
+     * @param ecouteur l'ecouteur de la réponse ou null
+     * @return la requête en attente de réponse
+	 * @throws CanalException 
+     */
+	public RequeteEnAttente demanderVenteTour(Tour tour, EcouteurDeReponse ecouteur) throws CanalException
+	{
+	    JSONObject json = new JSONObject();
+	    
 		try 
 		{
-			// demande
-		    JSONObject json = new JSONObject();
 			json.put("TYPE", TOUR_SUPRESSION);
 			json.put("ID_TOWER", tour.getId());
-			canalEnvoi.envoyerString(json.toString());
-			
-			// reponse
-			String resultat = canalEnvoi.recevoirString();
-            JSONObject resultatJSON = new JSONObject(resultat);
-            switch(resultatJSON.getInt("STATUS"))
-            {
-                case ACTION_NON_AUTORISEE :
-                    throw new ActionNonAutoriseeException("Non authorized");
-                    
-                // TODO case JOUEUR_HORS_JEU:
-                //   throw new JoueurHorsJeu("Tour inconnue");
-            
-            }
 		} 
 		catch (JSONException e) {
 			e.printStackTrace();
 		}
+		
+		return envoyerRequete(TOUR_SUPRESSION, json, ecouteur);
+	}
+	
+	/**
+	 * Permet d'envoyer une requête sans attendre sa réponse.
+	 * <p>
+	 * La requête reçoit un identificateur que le serveur recopie dans sa
+	 * réponse. Plusieurs requêtes peuvent ainsi être en vol en même temps,
+	 * la tâche de réception des réponses les termine à l'arrivée.
+	 * 
+	 * @param type le type de la requête
+	 * @param json la requête
+	 * @param ecouteur l'ecouteur de la réponse ou null
+	 * @return la requête en attente de réponse
+	 * @throws CanalException si la connexion est perdue
+	 */
+	private RequeteEnAttente envoyerRequete(int type, JSONObject json, EcouteurDeReponse ecouteur) 
+	    throws CanalException
+	{
+	    int id = prochainIdRequete.getAndIncrement();
+	    RequeteEnAttente requete = new RequeteEnAttente(id, type, ecouteur);
+	    
+	    try
+        {
+            json.put("ID_REQUETE", id);
+        } 
+	    catch (JSONException e) {
+            e.printStackTrace();
+        }
+	    
+	    // enregistrée avant l'envoi, la réponse peut arriver très vite
+	    requetesEnAttente.put(id, requete);
+	    
+	    // la tâche de réception s'est arrêtée, personne ne répondra
+	    CanalException erreur = erreurReponses;
+	    if(erreur != null && requetesEnAttente.remove(id) != null)
+	        throw erreur;
+	    
+	    try
+	    {
+	        canalEnvoi.envoyerString(json.toString());
+	    }
+	    catch (CanalException e)
+	    {
+	        requetesEnAttente.remove(id);
+	        throw e;
+	    }
+	    
+	    return requete;
+	}
+	
+	/**
+	 * Tache de réception des réponses aux requêtes (canal 1)
+	 */
+	private void attendreReponses()
+	{
+	    while(true)
+	    {
+	        try 
+	        {
+	            JSONObject reponse = new JSONObject(canalEnvoi.recevoirString());
+	            
+	            if(!reponse.has("ID_REQUETE"))
+	            {
+	                logErreur("Réponse sans identificateur : "+reponse);
+	                continue;
+	            }
+	            
+	            RequeteEnAttente requete = requetesEnAttente.remove(reponse.getInt("ID_REQUETE"));
+	            
+	            if(requete == null)
+	                logErreur("Réponse à une requête inconnue : "+reponse);
+	            else
+	                requete.terminer(reponse.getInt("STATUS"));
+	        } 
+	        catch (CanalException e) 
+	        {
+	            logErreur("Canal de requêtes erroné",e);
+	            
+	            // les requêtes en vol ne recevront jamais de réponse
+	            erreurReponses = e;
+	            
+	            for(Integer id : requetesEnAttente.keySet())
+	            {
+	                RequeteEnAttente requete = requetesEnAttente.remove(id);
+	                
+	                if(requete != null)
+	                    requete.echouer(e);
+	            }
+	            
+	            return;
+	        } 
+	        catch (JSONException e) {
+	            logErreur("Format JSON erroné",e);
+	        }
+	    }
 	}
 
 	/**
@@ -314,6 +614,22 @@ public class ClientJeu implements ConstantesServeurJeu, Runnable{
      * @throws TypeDeTourInvalideException 
      */
 	private void receptionTourAjoutee(JSONObject message) throws JSONException
+	{
+	    receptionTourAjoutee(message.getInt("TYPE_TOUR"), message.getInt("X"), 
+	            message.getInt("Y"), message.getInt("ID_TOUR"), 
+	            message.getInt("ID_PROPRIETAIRE"));
+	}
+	
+	/**
+	 * Ajout d'une tour
+	 * 
+	 * @param typeDeTour le type de la tour
+	 * @param x la position x de la tour
+	 * @param y la position y de la tour
+	 * @param idTour l'id de la tour
+	 * @param idJoueur l'id du propriétaire
+	 */
+	private void receptionTourAjoutee(int typeDeTour, int x, int y, int idTour, int idJoueur)
 	{
 	   
 	    log("Réception d'un objet de type : Tour.");
@@ -323,14 +639,12 @@ public class ClientJeu implements ConstantesServeurJeu, Runnable{
 	    // création de la tour en fonction de son type
         try
         {
-            int typeDeCreature = message.getInt("TYPE_TOUR");
-            tour = TypeDeTour.getTour(typeDeCreature);
+            tour = TypeDeTour.getTour(typeDeTour);
             
             // initialisation des tours
-            tour.x = message.getInt("X");
-            tour.y = message.getInt("Y");
-            tour.setId(message.getInt("ID_TOUR"));
-            int idJoueur = message.getInt("ID_PROPRIETAIRE");
+            tour.x = x;
+            tour.y = y;
+            tour.setId(idTour);
             tour.setProprietaire(jeu.getJoueur(idJoueur));
             
             jeu.poserTourDirect(tour);  
@@ -354,6 +668,9 @@ public class ClientJeu implements ConstantesServeurJeu, Runnable{
             } 
 	        catch (CanalException e) {
 	            logErreur("Canal erroné",e);
+	            
+	            if(canalInstantanes != null)
+	                canalInstantanes.fermer();
                 return;
             } 
 	        catch (JSONException e) {
@@ -418,6 +735,10 @@ public class ClientJeu implements ConstantesServeurJeu, Runnable{
                 receptionCreatureEtatChange(resultat);
                 break;
                 
+            case CREATURES_ETAT :    
+                receptionCreaturesEtatChange(resultat);
+                break;
+                
             case CREATURE_SUPPRESSION :    
                 receptionCreatureTuee(resultat);
                 break;  
@@ -426,6 +747,11 @@ public class ClientJeu implements ConstantesServeurJeu, Runnable{
                 receptionCreatureArrivee(resultat);
                 break;
                 
+            // MESSAGES FREQUENTS ENCODES EN BINAIRE
+            case MESSAGES_BINAIRES :
+                receptionMessagesBinaires(resultat);
+                break;
+                
             default :
                 logErreur("Réception d'un objet de type : Inconnu.");      
         }
@@ -528,6 +854,14 @@ public class ClientJeu implements ConstantesServeurJeu, Runnable{
             case PARTIE_INITIALISEE :
                 
                 log("Partie initialisée");
+                
+                // les maillages ne sont pas sérialisés avec le terrain, 
+                // les créatures prédites suivent leurs champs de direction
+                Terrain terrain = jeu.getTerrain();
+                terrain.setLargeurMaillage(terrain.getLargeur());
+                terrain.setHauteurMaillage(terrain.getHauteur());
+                terrain.initialiser();
+                
                 jeu.initialiser();
                 
                 // envoye de la requete d'ajout
@@ -607,6 +941,7 @@ public class ClientJeu implements ConstantesServeurJeu, Runnable{
                 
                 int idJoueur = message.getInt("ID_JOUEUR");
                 int idEquipe = message.getInt("ID_EQUIPE");
+                portInstantanes = message.optInt("PORT_INSTANTANES", 0);
                 int idEmplacement = message.getInt("ID_EMPLACEMENT");
                 String nomFichierTerrain = message.getString("NOM_FICHIER_TERRAIN");
                  
@@ -667,15 +1002,26 @@ public class ClientJeu implements ConstantesServeurJeu, Runnable{
      */
 	private void receptionJoueurEtatChange(JSONObject message) throws JSONException
     {
-        int idJoueur = message.getInt("ID_JOUEUR");
-        
+        receptionJoueurEtatChange(message.getInt("ID_JOUEUR"), 
+                message.getDouble("NB_PIECES_OR"), 
+                message.getInt("NB_VIES_RESTANTES_EQUIPE"),
+                message.getDouble("REVENU"), message.getInt("SCORE"));
+    }
+	
+	/**
+	 * Mise à jour de l'état d'un joueur
+	 * 
+	 * @param idJoueur l'id du joueur
+	 * @param nbPiecesDOr son nombre de pièces d'or
+	 * @param nbViesRestantes le nombre de vies restantes de son équipe
+	 * @param revenu son revenu
+	 * @param score son score
+	 */
+	private void receptionJoueurEtatChange(int idJoueur, double nbPiecesDOr, 
+	        int nbViesRestantes, double revenu, int score)
+    {
         log("Réception de l'état d'un joueur (id:"+idJoueur+")");
         
-        double nbPiecesDOr = message.getDouble("NB_PIECES_OR");
-        int score = message.getInt("SCORE");
-        double revenu = message.getDouble("REVENU");
-        int nbViesRestantes = message.getInt("NB_VIES_RESTANTES_EQUIPE");
-        
         Joueur joueur = jeu.getJoueur(idJoueur);
         
         if(joueur != null)
@@ -766,6 +1112,13 @@ public class ClientJeu implements ConstantesServeurJeu, Runnable{
             creature.setNbPiecesDOr(nbPiecesDOr);
             creature.setVitesse(vitesse);
             
+            // la créature avance localement entre deux instantanés
+            if(equipeCiblee != null)
+            {
+                jeu.getTerrain().guiderCreature(creature);
+                creature.setPositionPredite(true);
+            }
+            
             jeu.ajouterCreatureDirect(creature);
         }
         else
@@ -790,8 +1143,8 @@ public class ClientJeu implements ConstantesServeurJeu, Runnable{
         // Elle peut avoir été détruite entre-temps.
         if(creature != null)
         {
-            creature.x = x;
-            creature.y = y;
+            // message sans pas du serveur : position prise au prochain pas
+            creature.corrigerPosition(x, y, 0, 1);
             creature.setSante(sante);
             creature.setAngle(angle);
             creature.misAJour();
@@ -800,6 +1153,135 @@ public class ClientJeu implements ConstantesServeurJeu, Runnable{
            logErreur("Etat d'une créature : Créature inconnue (id : "+idCreature+")");
     }
     
+    /**
+     * Analyse d'un bloc de messages binaires (voir MessagesBinaires).
+     * 
+     * Les données suivent l'en-tête sur le canal, les champs de chaque
+     * message sont lus dans l'ordre de son schéma.
+     * 
+     * @param message l'en-tête du message
+     * @throws CanalException 
+     */
+    private void receptionMessagesBinaires(JSONObject message) throws JSONException, CanalException
+    {
+        LecteurBinaire bloc = new LecteurBinaire(canalEcoute.recevoirBytes(message.getInt("TAILLE")));
+        
+        try
+        {
+            while(bloc.resteDesDonnees())
+            {
+                int type = bloc.lireShort();
+                
+                switch(type)
+                {
+                    case JOUEUR_ETAT :
+                        receptionJoueurEtatChange(bloc.lireInt(), bloc.lireDouble(),
+                                bloc.lireInt(), bloc.lireDouble(), bloc.lireInt());
+                        break;
+                        
+                    case TOUR_AJOUT :
+                        int idProprietaire = bloc.lireInt();
+                        int idTour = bloc.lireInt();
+                        int x = bloc.lireInt();
+                        int y = bloc.lireInt();
+                        receptionTourAjoutee(bloc.lireInt(), x, y, idTour, idProprietaire);
+                        break;
+                        
+                    default :
+                        // la taille du message est inconnue, la suite est perdue
+                        logErreur("Message binaire de type inconnu : "+type);
+                        return;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            logErreur("Messages binaires erronés",e);
+        }
+    }
+    
+    /**
+     * Analyse d'un instantané binaire de l'état des créatures.
+     * 
+     * Les données suivent l'en-tête sur le canal. L'instantané est acquitté
+     * pour que le serveur encode le suivant par rapport à celui-ci.
+     * 
+     * @param message l'en-tête du message
+     * @throws CanalException 
+     */
+    private void receptionCreaturesEtatChange(JSONObject message) throws JSONException, CanalException
+    {
+        receptionInstantane(canalEcoute.recevoirBytes(message.getInt("TAILLE")));
+    }
+    
+    /**
+     * Analyse d'un instantané binaire reçu sur le canal 2 ou en UDP.
+     * 
+     * @param donnees l'instantané encodé
+     * @throws CanalException 
+     */
+    private void receptionInstantane(byte[] donnees) throws CanalException
+    {
+        InstantaneCreatures instantane;
+        
+        synchronized(instantanesRecus)
+        {
+            try
+            {
+                instantane = InstantaneCreatures.decoder(donnees, instantanesRecus);
+            } 
+            catch (IOException e)
+            {
+                logErreur("Etat des créatures : instantané erroné",e);
+                
+                // demande d'un instantané complet
+                instantanesRecus.vider();
+                canalEnvoi.envoyerString(Protocole.construireMsgCreaturesEtatAcquittement(0));
+                return;
+            }
+            
+            instantanesRecus.ajouter(instantane);
+        }
+        
+        canalEnvoi.envoyerString(Protocole.construireMsgCreaturesEtatAcquittement(instantane.getTick()));
+        
+        // un instantané plus ancien que le dernier (datagrammes) ne 
+        // corrige pas les positions
+        long pas = instantane.getPasDeSimulation();
+        
+        if(pas <= pasDernierInstantane)
+            return;
+        
+        int pasJusquAuSuivant = pasDernierInstantane < 0 ? 1 
+                : (int) (pas - pasDernierInstantane);
+        pasDernierInstantane = pas;
+        
+        // retard de l'instantané sur le pas courant du serveur estimé
+        long decalage = pas - jeu.getNoPasDeSimulation();
+        decalages[nbDecalages++ % NB_DECALAGES] = decalage;
+        
+        long decalageMax = decalage;
+        for(int i = 0; i < Math.min(nbDecalages, NB_DECALAGES); i++)
+            decalageMax = Math.max(decalageMax, decalages[i]);
+        
+        int retard = (int) (decalageMax - decalage);
+        
+        for(int i = 0; i < instantane.getNbCreatures(); i++)
+        {
+            Creature creature = jeu.getCreature(instantane.getId(i));
+            
+            // Elle peut avoir été détruite entre-temps.
+            if(creature != null)
+            {
+                creature.corrigerPosition(instantane.getX(i), instantane.getY(i),
+                        retard, pasJusquAuSuivant);
+                creature.setSante((int) instantane.getSante(i));
+                creature.setAngle(instantane.getAngle(i));
+                creature.misAJour();
+            }
+        }
+    }
+    
     /**
      * Analyse d'un message de suppression d'une creature
      * 
@@ -859,31 +1341,39 @@ public class ClientJeu implements ConstantesServeurJeu, Runnable{
     
     public void demanderChangementEquipe(Joueur joueur, Equipe equipe) throws AucunEmplacementDisponibleException, CanalException
     {
+        JSONObject json = new JSONObject();
+        
         try 
         {
-            // envoye de la requete de vente
-            JSONObject json = new JSONObject();
             json.put("TYPE", JOUEUR_CHANGER_EQUIPE);
             json.put("ID_JOUEUR", joueur.getId());
             json.put("ID_EQUIPE", equipe.getId());
-            
-            log("Envoye d'une demande de changement d'équipe");
-                
-            canalEnvoi.envoyerString(json.toString());
-            
-            String resultat = canalEnvoi.recevoirString();
-            JSONObject resultatJSON = new JSONObject(resultat);
-            switch(resultatJSON.getInt("STATUS"))
-            {
-                case PAS_DE_PLACE :
-                    throw new AucunEmplacementDisponibleException("Pas de place dans cette équipe");
-            }
         } 
         catch (JSONException e) {
             e.printStackTrace();
         }
+        
+        log("Envoye d'une demande de changement d'équipe");
+        
+        switch(envoyerRequete(JOUEUR_CHANGER_EQUIPE, json, null).attendreStatut())
+        {
+            case PAS_DE_PLACE :
+                throw new AucunEmplacementDisponibleException("Pas de place dans cette équipe");
+        }
     }
      
+    /**
+     * Permet d'informer le serveur de la zone du terrain affichée, il envoie
+     * en priorité l'état des créatures proches de cette zone
+     * 
+     * @param vue la zone du terrain affichée
+     * @throws CanalException
+     */
+    public void envoyerVue(Rectangle vue) throws CanalException
+    {
+        canalEnvoi.envoyerString(Protocole.construireMsgVueJoueur(vue));
+    }
+    
     public void setEcouteurDeClientJeu(EcouteurDeClientJeu edcj)
     {
         this.edcj = edcj;
@@ -0,0 +1,52 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau.jeu.client;
+
+import reseau.CanalException;
+
+/**
+ * Interface d'ecoute de la reponse a une requete asynchrone du client.
+ * <p>
+ * Les methodes sont appelees par la tache de reception des reponses, elles
+ * ne doivent pas bloquer.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see ClientJeu
+ * @see RequeteEnAttente
+ */
+public interface EcouteurDeReponse
+{
+    /**
+     * Permet d'informer l'ecouteur que la reponse est arrivee
+     *
+     * @param type le type de la requete
+     * @param statut le code d'etat de la reponse (OK ou un code d'erreur)
+     */
+    public void reponseRecue(int type, int statut);
+
+    /**
+     * Permet d'informer l'ecouteur que la connexion a ete perdue avant
+     * l'arrivee de la reponse
+     *
+     * @param type le type de la requete
+     * @param e l'erreur du canal
+     */
+    public void reponsePerdue(int type, CanalException e);
+}
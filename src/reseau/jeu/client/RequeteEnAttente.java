@@ -0,0 +1,186 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau.jeu.client;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import reseau.CanalException;
+
+/**
+ * Requete envoyee au serveur de jeu dont la reponse n'est pas encore arrivee.
+ * <p>
+ * La valeur de la requete est le code d'etat de la reponse. Plusieurs
+ * requetes peuvent etre en attente en meme temps, les reponses leur sont
+ * attribuees par leur identificateur, quel que soit leur ordre d'arrivee.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see ClientJeu
+ */
+public class RequeteEnAttente implements Future<Integer>
+{
+    private final int id;
+    private final int type;
+    private final EcouteurDeReponse ecouteur;
+    private final CountDownLatch reponse = new CountDownLatch(1);
+
+    private volatile int statut;
+    private volatile CanalException erreur;
+
+    /**
+     * Constructeur
+     *
+     * @param id l'identificateur de la requete
+     * @param type le type de la requete
+     * @param ecouteur l'ecouteur de la reponse ou null
+     */
+    RequeteEnAttente(int id, int type, EcouteurDeReponse ecouteur)
+    {
+        this.id       = id;
+        this.type     = type;
+        this.ecouteur = ecouteur;
+    }
+
+    /**
+     * @return l'identificateur de la requete
+     */
+    public int getId()
+    {
+        return id;
+    }
+
+    /**
+     * @return le type de la requete
+     */
+    public int getType()
+    {
+        return type;
+    }
+
+    /**
+     * Permet d'attendre le code d'etat de la reponse
+     *
+     * @return le code d'etat
+     * @throws CanalException si la connexion a ete perdue avant la reponse
+     */
+    public int attendreStatut() throws CanalException
+    {
+        boolean interrompue = false;
+
+        while(true)
+        {
+            try
+            {
+                reponse.await();
+                break;
+            }
+            catch (InterruptedException e)
+            {
+                interrompue = true;
+            }
+        }
+
+        if(interrompue)
+            Thread.currentThread().interrupt();
+
+        if(erreur != null)
+            throw erreur;
+
+        return statut;
+    }
+
+    @Override
+    public Integer get() throws InterruptedException, ExecutionException
+    {
+        reponse.await();
+
+        return getStatut();
+    }
+
+    @Override
+    public Integer get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException
+    {
+        if(!reponse.await(timeout, unit))
+            throw new TimeoutException();
+
+        return getStatut();
+    }
+
+    /**
+     * Une requete envoyee ne peut pas etre annulee.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean isDone()
+    {
+        return reponse.getCount() == 0;
+    }
+
+    /**
+     * Permet de terminer la requete a l'arrivee de la reponse
+     *
+     * @param statut le code d'etat de la reponse
+     */
+    void terminer(int statut)
+    {
+        this.statut = statut;
+        reponse.countDown();
+
+        if(ecouteur != null)
+            ecouteur.reponseRecue(type, statut);
+    }
+
+    /**
+     * Permet de terminer la requete en echec
+     *
+     * @param erreur l'erreur du canal
+     */
+    void echouer(CanalException erreur)
+    {
+        this.erreur = erreur;
+        reponse.countDown();
+
+        if(ecouteur != null)
+            ecouteur.reponsePerdue(type, erreur);
+    }
+
+    private Integer getStatut() throws ExecutionException
+    {
+        if(erreur != null)
+            throw new ExecutionException(erreur);
+
+        return statut;
+    }
+}
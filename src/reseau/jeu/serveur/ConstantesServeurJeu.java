@@ -42,6 +42,11 @@ public interface ConstantesServeurJeu
      */
     public final int DU_SERVEUR = 2;
     
+    /**
+     * Type de message : bloc de messages binaires (voir MessagesBinaires)
+     */
+    public final int MESSAGES_BINAIRES = 3;
+    
     
     // PARTIE 100-199
     
@@ -130,6 +135,11 @@ public interface ConstantesServeurJeu
      */
     public final int JOUEUR_DECONNEXION = 306;
     
+    /**
+     * Type de message : zone du terrain affichée par le client
+     */
+    public final int JOUEUR_VUE = 307;
+    
 	/**
      * Type de message : un message texte
      */
@@ -172,6 +182,16 @@ public interface ConstantesServeurJeu
      */
     public final int VAGUE = 314;
     
+    /**
+     * Type de message : instantane binaire de l'etat des créatures
+     */
+    public final int CREATURES_ETAT = 315;
+    
+    /**
+     * Type de message : acquittement d'un instantane des créatures
+     */
+    public final int CREATURES_ETAT_ACQUITTEMENT = 316;
+    
 	
    
 	// TOUR 320-329
@@ -0,0 +1,129 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau.jeu.serveur;
+
+import java.util.Arrays;
+
+/**
+ * Ecriture des champs types d'un message binaire (big-endian).
+ * <p>
+ * Le tableau grandit a la demande, les messages ecrits a la suite forment
+ * un bloc envoye d'un seul tenant.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see LecteurBinaire
+ * @see MessagesBinaires
+ */
+public class EcrivainBinaire
+{
+    private byte[] donnees;
+    private int taille = 0;
+
+    /**
+     * Constructeur
+     *
+     * @param capacite la capacite initiale en octets
+     */
+    public EcrivainBinaire(int capacite)
+    {
+        donnees = new byte[Math.max(capacite, 16)];
+    }
+
+    /**
+     * @param s le short a ecrire
+     */
+    public void ecrireShort(int s)
+    {
+        reserver(2);
+        donnees[taille++] = (byte) (s >>> 8);
+        donnees[taille++] = (byte) s;
+    }
+
+    /**
+     * @param i l'int a ecrire
+     */
+    public void ecrireInt(int i)
+    {
+        reserver(4);
+        donnees[taille++] = (byte) (i >>> 24);
+        donnees[taille++] = (byte) (i >>> 16);
+        donnees[taille++] = (byte) (i >>> 8);
+        donnees[taille++] = (byte) i;
+    }
+
+    /**
+     * @param l le long a ecrire
+     */
+    public void ecrireLong(long l)
+    {
+        ecrireInt((int) (l >>> 32));
+        ecrireInt((int) l);
+    }
+
+    /**
+     * @param d le double a ecrire
+     */
+    public void ecrireDouble(double d)
+    {
+        ecrireLong(Double.doubleToLongBits(d));
+    }
+
+    /**
+     * Permet d'ajouter des donnees deja encodees (un autre message)
+     *
+     * @param b les donnees
+     */
+    public void ecrireBytes(byte[] b)
+    {
+        reserver(b.length);
+        System.arraycopy(b, 0, donnees, taille, b.length);
+        taille += b.length;
+    }
+
+    /**
+     * @return le nombre d'octets ecrits
+     */
+    public int getTaille()
+    {
+        return taille;
+    }
+
+    /**
+     * @return une copie des octets ecrits
+     */
+    public byte[] toByteArray()
+    {
+        return Arrays.copyOf(donnees, taille);
+    }
+
+    /**
+     * Permet d'effacer les octets ecrits en gardant le tableau
+     */
+    public void vider()
+    {
+        taille = 0;
+    }
+
+    private void reserver(int n)
+    {
+        if (taille + n > donnees.length)
+            donnees = Arrays.copyOf(donnees, Math.max(donnees.length * 2, taille + n));
+    }
+}
@@ -0,0 +1,225 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau.jeu.serveur;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+
+import reseau.Canal;
+import reseau.CanalDatagrammes;
+import reseau.CanalException;
+
+/**
+ * File des messages de mise a jour en attente d'envoi a un client.
+ * <p>
+ * Les evenements du jeu y sont ajoutes sans jamais bloquer, la tache
+ * d'envoi du serveur fait vider la file une fois par tick en une seule
+ * ecriture, par une tache d'ecriture propre au client (voir
+ * JoueurDistant.lancerEnvoi).
+ * <p>
+ * Politique pour les clients lents :
+ * <ul>
+ * <li>un instantane des creatures remplace le precedent s'il n'est pas
+ *     encore parti (le plus recent suffit a resynchroniser le client) ;</li>
+ * <li>au-dela de CAPACITE messages en attente, la file est declaree
+ *     debordee et videe, le client doit etre deconnecte.</li>
+ * </ul>
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see ServeurJeu
+ */
+class FileDEnvoi
+{
+    /**
+     * Nombre maximum de messages en attente
+     */
+    static final int CAPACITE = 512;
+
+    // String (message JSON) ou byte[] (message binaire), dans l'ordre d'ajout
+    private ArrayList<Object> messages = new ArrayList<Object>();
+    private InstantaneCreatures instantane;
+    private byte[] donneesInstantane;
+    private boolean debordee = false;
+
+    /**
+     * Permet d'ajouter un message
+     *
+     * @param message le message
+     */
+    void ajouterMessage(String message)
+    {
+        ajouter(message);
+    }
+
+    /**
+     * Permet d'ajouter un message binaire
+     *
+     * @param message le message encode (voir MessagesBinaires)
+     */
+    void ajouterMessage(byte[] message)
+    {
+        ajouter(message);
+    }
+
+    private synchronized void ajouter(Object message)
+    {
+        if(debordee)
+            return;
+
+        if(messages.size() >= CAPACITE)
+        {
+            debordee = true;
+            messages.clear();
+            instantane = null;
+            donneesInstantane = null;
+            return;
+        }
+
+        messages.add(message);
+    }
+
+    /**
+     * Permet de remplacer l'instantane des creatures en attente
+     *
+     * @param instantane l'instantane
+     * @param donnees l'instantane encode
+     */
+    synchronized void remplacerInstantane(InstantaneCreatures instantane, byte[] donnees)
+    {
+        if(debordee)
+            return;
+
+        this.instantane = instantane;
+        this.donneesInstantane = donnees;
+    }
+
+    /**
+     * @return true si le client n'a pas suivi et doit etre deconnecte
+     */
+    synchronized boolean estDebordee()
+    {
+        return debordee;
+    }
+
+    /**
+     * Permet d'envoyer tous les messages en attente en une seule ecriture.
+     * <p>
+     * Les messages binaires qui se suivent partent en un seul bloc, 
+     * l'ordre des messages est conserve.
+     * <p>
+     * La file est liberee avant l'ecriture, les ajouts ne sont pas bloques
+     * par un client lent.
+     *
+     * L'instantane des creatures part en datagramme si le client en recoit,
+     * sinon (ou s'il est trop grand) sur le canal de mise a jour.
+     *
+     * @param canal le canal de mise a jour
+     * @param historique l'historique des instantanes envoyes au client
+     * @param datagrammes le canal des instantanes ou null
+     * @param adresse l'adresse des instantanes du client ou null
+     * @throws CanalException si l'envoi echoue
+     */
+    void envoyer(Canal canal, HistoriqueInstantanes historique,
+            CanalDatagrammes datagrammes, SocketAddress adresse) throws CanalException
+    {
+        ArrayList<Object> aEnvoyer;
+        InstantaneCreatures instantaneAEnvoyer;
+        byte[] donnees;
+
+        synchronized(this)
+        {
+            if(messages.isEmpty() && instantane == null)
+                return;
+
+            aEnvoyer           = messages;
+            instantaneAEnvoyer = instantane;
+            donnees            = donneesInstantane;
+
+            messages           = new ArrayList<Object>();
+            instantane         = null;
+            donneesInstantane  = null;
+        }
+
+        EcrivainBinaire bloc = null;
+        
+        for(Object message : aEnvoyer)
+        {
+            if(message instanceof byte[])
+            {
+                if(bloc == null)
+                    bloc = new EcrivainBinaire(256);
+                
+                bloc.ecrireBytes((byte[]) message);
+            }
+            else
+            {
+                envoyerBloc(canal, bloc);
+                bloc = null;
+                
+                canal.ecrireString((String) message);
+            }
+        }
+        
+        envoyerBloc(canal, bloc);
+
+        if(instantaneAEnvoyer != null)
+        {
+            historique.ajouter(instantaneAEnvoyer);
+
+            if(!envoyerDatagramme(datagrammes, adresse, donnees))
+            {
+                canal.ecrireString(Protocole.construireMsgCreaturesEtat(donnees.length));
+                canal.ecrireBytes(donnees);
+            }
+        }
+
+        canal.vider();
+    }
+    
+    /**
+     * @return true si l'instantane est parti en datagramme
+     */
+    private boolean envoyerDatagramme(CanalDatagrammes datagrammes, 
+            SocketAddress adresse, byte[] donnees)
+    {
+        if(datagrammes == null || adresse == null 
+        || donnees.length > CanalDatagrammes.TAILLE_MAX)
+            return false;
+        
+        try
+        {
+            datagrammes.envoyer(donnees, adresse);
+            return true;
+        }
+        catch (CanalException e)
+        {
+            return false;
+        }
+    }
+    
+    private void envoyerBloc(Canal canal, EcrivainBinaire bloc) throws CanalException
+    {
+        if(bloc == null)
+            return;
+        
+        canal.ecrireString(Protocole.construireMsgMessagesBinaires(bloc.getTaille()));
+        canal.ecrireBytes(bloc.toByteArray());
+    }
+}
@@ -0,0 +1,155 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau.jeu.serveur;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+import models.creatures.Creature;
+import models.joueurs.EmplacementJoueur;
+import models.joueurs.Joueur;
+
+/**
+ * Filtre des creatures qui interessent un client.
+ * <p>
+ * Une creature interesse le client si elle cible son equipe, si elle lui
+ * appartient ou si elle est a moins de DISTANCE_INTERET pixels de sa vue
+ * (la zone du terrain affichee par le client, a defaut la zone de son
+ * emplacement). Ces creatures sont dans chaque instantane envoye au client,
+ * les autres seulement dans un instantane complet sur PERIODE_HORS_INTERET.
+ * <p>
+ * Les instantanes filtres sont encodes par difference avec le dernier
+ * instantane filtre acquitte, les complets avec le dernier complet : une
+ * creature hors interet n'est ni supprimee ni renvoyee en entier a chaque
+ * changement de filtre.
+ * <p>
+ * Entre deux instantanes, le client predit le deplacement des creatures,
+ * une creature absente d'un instantane continue donc d'avancer chez lui.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see ServeurJeu
+ */
+class FiltreDInteret
+{
+    /**
+     * Distance autour de la vue dans laquelle une creature interesse
+     * toujours le client (en pixels)
+     */
+    static final int DISTANCE_INTERET = 64;
+
+    /**
+     * Nombre d'instantanes entre deux envois des creatures hors interet.
+     * Doit rester sous le delai de suppression des creatures sans mise a
+     * jour chez le client.
+     */
+    static final int PERIODE_HORS_INTERET = 4;
+
+    private final Joueur joueur;
+    private volatile Rectangle vue;
+
+    /**
+     * Constructeur
+     *
+     * @param joueur le joueur du client
+     */
+    FiltreDInteret(Joueur joueur)
+    {
+        this.joueur = joueur;
+    }
+
+    /**
+     * Permet de modifier la vue du client
+     *
+     * @param vue la zone du terrain affichee par le client ou null
+     */
+    void setVue(Rectangle vue)
+    {
+        this.vue = vue;
+    }
+
+    /**
+     * Permet de selectionner les creatures a envoyer dans un instantane
+     *
+     * @param creatures toutes les creatures
+     * @param tick le numero de l'instantane
+     * @return les creatures a envoyer
+     */
+    List<Creature> selectionner(List<Creature> creatures, int tick)
+    {
+        if(estComplet(tick))
+            return creatures;
+
+        Rectangle zone = getZoneDInteret();
+        ArrayList<Creature> selection = new ArrayList<Creature>(creatures.size());
+
+        for(Creature creature : creatures)
+            if(estInteressante(creature, zone))
+                selection.add(creature);
+
+        return selection;
+    }
+
+    /**
+     * Permet de savoir si un instantane contient toutes les creatures
+     *
+     * @param tick le numero de l'instantane
+     * @return true si l'instantane n'est pas filtre
+     */
+    boolean estComplet(int tick)
+    {
+        // les envois complets des clients sont decales dans le temps
+        return (tick + joueur.getId()) % PERIODE_HORS_INTERET == 0;
+    }
+
+    private boolean estInteressante(Creature creature, Rectangle zone)
+    {
+        if(joueur.getEquipe() != null && creature.getEquipeCiblee() == joueur.getEquipe())
+            return true;
+
+        if(creature.getProprietaire() == joueur)
+            return true;
+
+        return zone != null && zone.intersects(creature);
+    }
+
+    /**
+     * @return la vue du client agrandie de DISTANCE_INTERET ou null
+     */
+    private Rectangle getZoneDInteret()
+    {
+        Rectangle zone = vue;
+
+        if(zone == null)
+        {
+            EmplacementJoueur emplacement = joueur.getEmplacement();
+
+            if(emplacement == null)
+                return null;
+
+            zone = emplacement.getZoneDeConstruction();
+        }
+
+        zone = new Rectangle(zone);
+        zone.grow(DISTANCE_INTERET, DISTANCE_INTERET);
+
+        return zone;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau.jeu.serveur;
+
+/**
+ * Tampon circulaire des derniers instantanes envoyes ou recus.
+ * <p>
+ * Le serveur y garde les instantanes envoyes a un client pour pouvoir
+ * encoder le suivant par rapport au dernier acquitte, le client y garde
+ * les instantanes decodes pour pouvoir appliquer les differences.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see InstantaneCreatures
+ */
+public class HistoriqueInstantanes
+{
+    /**
+     * Nombre d'instantanes conserves
+     */
+    private static final int TAILLE = 32;
+
+    private final InstantaneCreatures[] instantanes = new InstantaneCreatures[TAILLE];
+
+    /**
+     * Permet d'ajouter un instantane
+     *
+     * @param instantane l'instantane
+     */
+    synchronized public void ajouter(InstantaneCreatures instantane)
+    {
+        instantanes[instantane.getTick() % TAILLE] = instantane;
+    }
+
+    /**
+     * Permet de recuperer un instantane
+     *
+     * @param tick le numero de l'instantane
+     * @return l'instantane ou null s'il n'est plus conserve
+     */
+    synchronized public InstantaneCreatures get(int tick)
+    {
+        if(tick <= 0)
+            return null;
+
+        InstantaneCreatures instantane = instantanes[tick % TAILLE];
+
+        if(instantane != null && instantane.getTick() == tick)
+            return instantane;
+
+        return null;
+    }
+
+    /**
+     * Permet de vider l'historique
+     */
+    synchronized public void vider()
+    {
+        for(int i = 0; i < TAILLE; i++)
+            instantanes[i] = null;
+    }
+}
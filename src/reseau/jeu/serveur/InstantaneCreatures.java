@@ -0,0 +1,510 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau.jeu.serveur;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.WeakHashMap;
+
+import models.creatures.Creature;
+
+/**
+ * Etat de toutes les creatures vivantes a un instant (tick) donne.
+ * <p>
+ * Les valeurs sont quantifiees a la capture : position au pixel, sante
+ * entiere et angle sur 1/1024 de tour. Les creatures sont triees par
+ * identificateur.
+ * <p>
+ * Un instantane est encode en binaire par rapport a un instantane de base
+ * (le dernier acquitte par le client) : seules les creatures supprimees et
+ * les champs modifies sont transmis, sous forme de differences codees en
+ * entiers de longueur variable (varint). Sans base, toutes les creatures
+ * sont transmises. Un instantane partage par plusieurs clients n'est encode
+ * qu'une fois par base.
+ * <p>
+ * Format :
+ * <pre>
+ * tick, tickBase (0 = aucune base), pas de simulation du serveur,
+ * nbSupprimees, [ecart d'id]*,
+ * nbModifiees, [ecart d'id, champs, valeurs des champs]*
+ * </pre>
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see HistoriqueInstantanes
+ */
+public class InstantaneCreatures
+{
+    /**
+     * Nombre de pas de quantification de l'angle pour un tour complet
+     */
+    private static final int PAS_ANGLE = 1024;
+
+    // champs d'une creature modifiee
+    private static final int CHAMP_X      = 1;
+    private static final int CHAMP_Y      = 2;
+    private static final int CHAMP_SANTE  = 4;
+    private static final int CHAMP_ANGLE  = 8;
+    private static final int NOUVELLE     = 16;
+
+    private static final Comparator<Creature> PAR_ID = new Comparator<Creature>()
+    {
+        @Override
+        public int compare(Creature c1, Creature c2)
+        {
+            return c1.getId() < c2.getId() ? -1 : (c1.getId() == c2.getId() ? 0 : 1);
+        }
+    };
+
+    private final int tick;
+    private final long pasDeSimulation;
+    private final int[] ids;
+    private final int[] x;
+    private final int[] y;
+    private final long[] sante;
+    private final int[] angle;
+
+    // encodages deja faits, par base (la base n'est pas retenue)
+    private final WeakHashMap<InstantaneCreatures, byte[]> encodages = 
+        new WeakHashMap<InstantaneCreatures, byte[]>();
+    private byte[] encodageSansBase;
+
+    private InstantaneCreatures(int tick, long pasDeSimulation, int nbCreatures)
+    {
+        this.tick  = tick;
+        this.pasDeSimulation = pasDeSimulation;
+        this.ids   = new int[nbCreatures];
+        this.x     = new int[nbCreatures];
+        this.y     = new int[nbCreatures];
+        this.sante = new long[nbCreatures];
+        this.angle = new int[nbCreatures];
+    }
+
+    /**
+     * Permet de capturer l'etat des creatures vivantes
+     *
+     * @param tick le numero de l'instantane (strictement positif)
+     * @param pasDeSimulation le pas de simulation du jeu a la capture
+     * @param creatures les creatures
+     * @return l'instantane
+     */
+    public static InstantaneCreatures capturer(int tick, long pasDeSimulation, 
+            Collection<Creature> creatures)
+    {
+        ArrayList<Creature> vivantes = new ArrayList<Creature>(creatures.size());
+
+        for(Creature creature : creatures)
+            if(!creature.estMorte())
+                vivantes.add(creature);
+
+        Collections.sort(vivantes, PAR_ID);
+
+        InstantaneCreatures instantane = new InstantaneCreatures(tick, pasDeSimulation, vivantes.size());
+
+        for(int i = 0; i < vivantes.size(); i++)
+        {
+            Creature creature = vivantes.get(i);
+
+            instantane.ids[i]   = creature.getId();
+            instantane.x[i]     = creature.x;
+            instantane.y[i]     = creature.y;
+            instantane.sante[i] = creature.getSante();
+            instantane.angle[i] = quantifierAngle(creature.getAngle());
+        }
+
+        return instantane;
+    }
+
+    /**
+     * Permet d'encoder l'instantane
+     *
+     * @param base l'instantane connu du client ou null pour tout envoyer
+     * @return les donnees encodees
+     */
+    public synchronized byte[] encoder(InstantaneCreatures base)
+    {
+        byte[] donnees = base == null ? encodageSansBase : encodages.get(base);
+
+        if(donnees == null)
+        {
+            donnees = encoderDifferences(base);
+
+            if(base == null)
+                encodageSansBase = donnees;
+            else
+                encodages.put(base, donnees);
+        }
+
+        return donnees;
+    }
+
+    /**
+     * Encode les differences avec la base
+     */
+    private byte[] encoderDifferences(InstantaneCreatures base)
+    {
+        ByteArrayOutputStream sortie = new ByteArrayOutputStream(16 + ids.length * 4);
+
+        ecrireVarint(sortie, tick);
+        ecrireVarint(sortie, base == null ? 0 : base.tick);
+        ecrireVarint(sortie, pasDeSimulation);
+
+        // creatures supprimees depuis la base
+        int nbSupprimees = 0;
+        if(base != null)
+            for(int j = 0, i = 0; j < base.ids.length; j++)
+            {
+                while(i < ids.length && ids[i] < base.ids[j])
+                    i++;
+
+                if(i == ids.length || ids[i] != base.ids[j])
+                    nbSupprimees++;
+            }
+
+        ecrireVarint(sortie, nbSupprimees);
+
+        if(nbSupprimees > 0)
+        {
+            int idPrecedent = 0;
+
+            for(int j = 0, i = 0; j < base.ids.length; j++)
+            {
+                while(i < ids.length && ids[i] < base.ids[j])
+                    i++;
+
+                if(i == ids.length || ids[i] != base.ids[j])
+                {
+                    ecrireVarint(sortie, zigzag(base.ids[j] - idPrecedent));
+                    idPrecedent = base.ids[j];
+                }
+            }
+        }
+
+        // creatures nouvelles ou modifiees
+        ByteArrayOutputStream modifiees = new ByteArrayOutputStream(ids.length * 4);
+        int nbModifiees = 0;
+        int idPrecedent = 0;
+
+        for(int i = 0, j = 0; i < ids.length; i++)
+        {
+            if(base != null)
+                while(j < base.ids.length && base.ids[j] < ids[i])
+                    j++;
+
+            boolean connue = base != null && j < base.ids.length && base.ids[j] == ids[i];
+
+            int champs;
+            if(!connue)
+                champs = NOUVELLE | CHAMP_X | CHAMP_Y | CHAMP_SANTE | CHAMP_ANGLE;
+            else
+            {
+                champs = 0;
+                if(x[i] != base.x[j])         champs |= CHAMP_X;
+                if(y[i] != base.y[j])         champs |= CHAMP_Y;
+                if(sante[i] != base.sante[j]) champs |= CHAMP_SANTE;
+                if(angle[i] != base.angle[j]) champs |= CHAMP_ANGLE;
+
+                if(champs == 0)
+                    continue;
+            }
+
+            ecrireVarint(modifiees, zigzag(ids[i] - idPrecedent));
+            idPrecedent = ids[i];
+            modifiees.write(champs);
+
+            if(connue)
+            {
+                if((champs & CHAMP_X) != 0)     ecrireVarint(modifiees, zigzag(x[i] - base.x[j]));
+                if((champs & CHAMP_Y) != 0)     ecrireVarint(modifiees, zigzag(y[i] - base.y[j]));
+                if((champs & CHAMP_SANTE) != 0) ecrireVarint(modifiees, zigzag(sante[i] - base.sante[j]));
+            }
+            else
+            {
+                ecrireVarint(modifiees, zigzag(x[i]));
+                ecrireVarint(modifiees, zigzag(y[i]));
+                ecrireVarint(modifiees, zigzag(sante[i]));
+            }
+
+            if((champs & CHAMP_ANGLE) != 0)
+                ecrireVarint(modifiees, angle[i]);
+
+            nbModifiees++;
+        }
+
+        ecrireVarint(sortie, nbModifiees);
+
+        byte[] donnees = modifiees.toByteArray();
+        sortie.write(donnees, 0, donnees.length);
+
+        return sortie.toByteArray();
+    }
+
+    /**
+     * Permet de decoder un instantane
+     *
+     * @param donnees les donnees encodees
+     * @param historique les instantanes deja recus, pour retrouver la base
+     * @return l'instantane complet
+     * @throws IOException si les donnees sont erronees ou si la base n'est
+     *         plus dans l'historique
+     */
+    public static InstantaneCreatures decoder(byte[] donnees, HistoriqueInstantanes historique)
+        throws IOException
+    {
+        int[] pos = new int[1];
+
+        int tick     = (int) lireVarint(donnees, pos);
+        int tickBase = (int) lireVarint(donnees, pos);
+        long pasDeSimulation = lireVarint(donnees, pos);
+
+        InstantaneCreatures base = null;
+
+        if(tickBase != 0)
+        {
+            base = historique.get(tickBase);
+
+            if(base == null)
+                throw new IOException("Instantane de base inconnu (tick : "+tickBase+")");
+        }
+
+        // creatures supprimees
+        int nbSupprimees = (int) lireVarint(donnees, pos);
+        int[] supprimees = new int[nbSupprimees];
+
+        for(int k = 0, id = 0; k < nbSupprimees; k++)
+        {
+            id += dezigzag(lireVarint(donnees, pos));
+            supprimees[k] = id;
+        }
+
+        // creatures nouvelles ou modifiees
+        int nbModifiees = (int) lireVarint(donnees, pos);
+        int[] idsModifiees = new int[nbModifiees];
+        int[] champs       = new int[nbModifiees];
+        long[][] valeurs   = new long[nbModifiees][4];
+        int nbNouvelles    = 0;
+
+        for(int k = 0, id = 0; k < nbModifiees; k++)
+        {
+            id += dezigzag(lireVarint(donnees, pos));
+            idsModifiees[k] = id;
+
+            if(pos[0] >= donnees.length)
+                throw new IOException("Instantane tronque");
+
+            champs[k] = donnees[pos[0]++] & 0xFF;
+
+            if((champs[k] & NOUVELLE) != 0)
+                nbNouvelles++;
+
+            if((champs[k] & CHAMP_X) != 0)     valeurs[k][0] = dezigzag(lireVarint(donnees, pos));
+            if((champs[k] & CHAMP_Y) != 0)     valeurs[k][1] = dezigzag(lireVarint(donnees, pos));
+            if((champs[k] & CHAMP_SANTE) != 0) valeurs[k][2] = dezigzag(lireVarint(donnees, pos));
+            if((champs[k] & CHAMP_ANGLE) != 0) valeurs[k][3] = lireVarint(donnees, pos);
+        }
+
+        // reconstruction : fusion de la base et des modifications
+        int nbBase = base == null ? 0 : base.ids.length;
+        InstantaneCreatures instantane = new InstantaneCreatures(tick, pasDeSimulation, 
+                nbBase - nbSupprimees + nbNouvelles);
+
+        int n = 0, s = 0, k = 0;
+        for(int j = 0; j <= nbBase; j++)
+        {
+            int idBase = j < nbBase ? base.ids[j] : Integer.MAX_VALUE;
+
+            // nouvelles creatures qui precedent la creature de la base
+            while(k < nbModifiees && idsModifiees[k] < idBase)
+            {
+                if((champs[k] & NOUVELLE) == 0)
+                    throw new IOException("Creature modifiee absente de la base (id : "+idsModifiees[k]+")");
+
+                if(n == instantane.ids.length)
+                    throw new IOException("Instantane incoherent");
+
+                instantane.ids[n]   = idsModifiees[k];
+                instantane.x[n]     = (int) valeurs[k][0];
+                instantane.y[n]     = (int) valeurs[k][1];
+                instantane.sante[n] = valeurs[k][2];
+                instantane.angle[n] = (int) valeurs[k][3];
+                n++; k++;
+            }
+
+            if(j == nbBase)
+                break;
+
+            while(s < nbSupprimees && supprimees[s] < idBase)
+                s++;
+
+            if(s < nbSupprimees && supprimees[s] == idBase)
+            {
+                if(k < nbModifiees && idsModifiees[k] == idBase)
+                    throw new IOException("Creature supprimee et modifiee (id : "+idBase+")");
+
+                continue;
+            }
+
+            if(n == instantane.ids.length)
+                throw new IOException("Instantane incoherent");
+
+            instantane.ids[n]   = idBase;
+            instantane.x[n]     = base.x[j];
+            instantane.y[n]     = base.y[j];
+            instantane.sante[n] = base.sante[j];
+            instantane.angle[n] = base.angle[j];
+
+            if(k < nbModifiees && idsModifiees[k] == idBase)
+            {
+                if((champs[k] & CHAMP_X) != 0)     instantane.x[n]     += (int) valeurs[k][0];
+                if((champs[k] & CHAMP_Y) != 0)     instantane.y[n]     += (int) valeurs[k][1];
+                if((champs[k] & CHAMP_SANTE) != 0) instantane.sante[n] += valeurs[k][2];
+                if((champs[k] & CHAMP_ANGLE) != 0) instantane.angle[n]  = (int) valeurs[k][3];
+                k++;
+            }
+
+            n++;
+        }
+
+        if(n != instantane.ids.length || k != nbModifiees)
+            throw new IOException("Instantane incoherent");
+
+        return instantane;
+    }
+
+    /**
+     * @return le numero de l'instantane
+     */
+    public int getTick()
+    {
+        return tick;
+    }
+
+    /**
+     * @return le pas de simulation du serveur a la capture, auquel 
+     *         correspondent les positions
+     */
+    public long getPasDeSimulation()
+    {
+        return pasDeSimulation;
+    }
+
+    /**
+     * @return le nombre de creatures
+     */
+    public int getNbCreatures()
+    {
+        return ids.length;
+    }
+
+    /**
+     * @param i l'indice de la creature
+     * @return l'identificateur de la creature
+     */
+    public int getId(int i)
+    {
+        return ids[i];
+    }
+
+    /**
+     * @param i l'indice de la creature
+     * @return la position x de la creature
+     */
+    public int getX(int i)
+    {
+        return x[i];
+    }
+
+    /**
+     * @param i l'indice de la creature
+     * @return la position y de la creature
+     */
+    public int getY(int i)
+    {
+        return y[i];
+    }
+
+    /**
+     * @param i l'indice de la creature
+     * @return la sante de la creature
+     */
+    public long getSante(int i)
+    {
+        return sante[i];
+    }
+
+    /**
+     * @param i l'indice de la creature
+     * @return l'angle de la creature en radians
+     */
+    public double getAngle(int i)
+    {
+        return angle[i] * 2.0 * Math.PI / PAS_ANGLE;
+    }
+
+    private static int quantifierAngle(double angle)
+    {
+        int q = (int) Math.round(angle * PAS_ANGLE / (2.0 * Math.PI)) % PAS_ANGLE;
+
+        return q < 0 ? q + PAS_ANGLE : q;
+    }
+
+    private static long zigzag(long valeur)
+    {
+        return (valeur << 1) ^ (valeur >> 63);
+    }
+
+    private static long dezigzag(long valeur)
+    {
+        return (valeur >>> 1) ^ -(valeur & 1);
+    }
+
+    private static void ecrireVarint(ByteArrayOutputStream sortie, long valeur)
+    {
+        while((valeur & ~0x7FL) != 0)
+        {
+            sortie.write((int) ((valeur & 0x7F) | 0x80));
+            valeur >>>= 7;
+        }
+
+        sortie.write((int) valeur);
+    }
+
+    private static long lireVarint(byte[] donnees, int[] pos) throws IOException
+    {
+        long valeur = 0;
+
+        for(int decalage = 0; decalage < 64; decalage += 7)
+        {
+            if(pos[0] >= donnees.length)
+                throw new IOException("Instantane tronque");
+
+            int octet = donnees[pos[0]++];
+            valeur |= (long) (octet & 0x7F) << decalage;
+
+            if((octet & 0x80) == 0)
+                return valeur;
+        }
+
+        throw new IOException("Varint trop long");
+    }
+}
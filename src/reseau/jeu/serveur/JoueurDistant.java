@@ -18,7 +18,9 @@
 
 package reseau.jeu.serveur;
 
+import java.awt.Rectangle;
 import java.io.IOException;
+import java.net.SocketAddress;
 
 import models.joueurs.Joueur;
 
@@ -26,8 +28,14 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import outils.Configuration;
+import reseau.Canal;
+import reseau.CanalMultiplexe;
 import reseau.CanalTCP;
+import reseau.CanalTrames;
+import reseau.CanalDatagrammes;
 import reseau.CanalException;
+import reseau.ExecuteurDeConnexions;
+import reseau.ConnexionMultiplexee;
 import reseau.Port;
 
 /**
@@ -49,12 +57,12 @@ public class JoueurDistant implements Runnable, ConstantesServeurJeu
 	/** 
 	 * Canal de dialogue commun
 	 */
-	private CanalTCP canal;
+	private Canal canal;
 	
 	/**
 	 * Canal de mise à jour
 	 */
-	private CanalTCP canal_update;
+	private Canal canal_update;
 	
 	/**
 	 * identificateur du jeu
@@ -81,6 +89,73 @@ public class JoueurDistant implements Runnable, ConstantesServeurJeu
 	 */
 	private static int offset_port = Configuration.getPortSJ_JD();
 
+	/**
+	 * Instantanés des créatures envoyés au client
+	 */
+	private final HistoriqueInstantanes instantanesEnvoyes = new HistoriqueInstantanes();
+	
+	/**
+	 * Numéro du dernier instantané acquitté par le client (0 = aucun)
+	 */
+	private volatile int tickAcquitte = 0;
+	
+	/**
+	 * Numéro du dernier instantané complet (non filtré) acquitté par le 
+	 * client (0 = aucun)
+	 */
+	private volatile int tickAcquitteComplet = 0;
+	
+	/**
+	 * Messages de mise à jour en attente du prochain envoi
+	 */
+	private final FileDEnvoi fileDEnvoi = new FileDEnvoi();
+	
+	/**
+	 * Début de l'écriture en cours sur le canal de mise à jour (ms), 
+	 * 0 si aucune écriture n'est en cours
+	 */
+	private volatile long debutEnvoi = 0;
+	
+	/**
+	 * Le dernier envoi a échoué, le canal est corrompu
+	 */
+	private volatile boolean erreurEnvoi = false;
+	
+	/**
+	 * Tache d'écriture des messages en attente, un seul envoi à la fois
+	 */
+	private final Runnable tacheDEnvoi = new Runnable()
+	{
+	    @Override
+	    public void run()
+	    {
+	        try
+	        {
+	            viderFileDEnvoi();
+	        }
+	        catch (CanalException e)
+	        {
+	            erreurEnvoi = true;
+	        }
+	        finally
+	        {
+	            debutEnvoi = 0;
+	        }
+	    }
+	};
+	
+	/**
+	 * Sélection des créatures envoyées au client dans chaque instantané
+	 */
+	private final FiltreDInteret filtreDInteret;
+	
+	/**
+	 * Canal et adresse UDP des instantanés, null tant que le client ne 
+	 * s'est pas annoncé (les instantanés passent par le canal de mise à jour)
+	 */
+	private volatile CanalDatagrammes canalInstantanes;
+	private volatile SocketAddress adresseInstantanes;
+
 	/**
 	 * Niveau d'affichage des messages
 	 */
@@ -92,18 +167,44 @@ public class JoueurDistant implements Runnable, ConstantesServeurJeu
 	 * @param ID
 	 *            L'ID associée au joueur.
 	 * @param canal
-	 *            Le canal de communication.
+	 *            Le canal de communication. Si c'est un canal multiplexé, 
+	 *            les messages du client sont transmis par le serveur via
+	 *            messageRecu et aucune tache d'écoute n'est créée.
 	 * @param serveur
 	 *            Le serveur de jeu associé au joueur.
 	 */
-	public JoueurDistant(Joueur joueur, CanalTCP canal, ServeurJeu serveur)
+	public JoueurDistant(Joueur joueur, Canal canal, ServeurJeu serveur)
 	{
 		this.canal    = canal;
 		this.joueur   = joueur;
 		this.serveur  = serveur;
+		
+		filtreDInteret = new FiltreDInteret(joueur);
 
 		log("Nouveau client +"+joueur.getId());
-		(new Thread(this)).start();
+		
+		if(canal instanceof CanalMultiplexe)
+		{
+		    try
+		    {
+		        actionsEtatValidation();
+		    }
+		    catch (IOException e)
+		    {
+		        logErreur("Validation impossible",e);
+		    }
+		    catch (CanalException e)
+		    {
+		        // la fermeture de la connexion sera signalée au serveur
+		        logErreur("Canal erroné",e);
+		    }
+		}
+		else if(!serveur.getExecuteurDeConnexions().executer(this))
+		{
+		    // limite de connexions atteinte entre-temps
+		    logErreur("Aucune tache d'écoute disponible", null);
+		    deconnecter();
+		}
 	}
 
 	@Override
@@ -183,23 +284,89 @@ public class JoueurDistant implements Runnable, ConstantesServeurJeu
         		break;
     			
         	case EN_ATTENTE:
-        		actionsEtatEnAttente();
-        		break;
-    			
         	case EN_JEU:
-        	    actionsEtatEnJeu();
+        	    traiterMessage(new JSONObject(attendreMessage()));
         	    break;
  
         	default:
         		logErreur("Etat inconnu",null);
 		} 
 	}
+	
+	/**
+	 * Traitement d'un message du client reçu par le serveur sur une 
+	 * connexion multiplexée.
+	 * 
+	 * Appelé par la tache des actions du serveur, jamais par celle du 
+	 * sélecteur : les messages d'une partie sont traités un à un.
+	 * 
+	 * @param message le message
+	 */
+	public void messageRecu(String message)
+	{
+	    str = message;
+	    log("Récéption de " + str);
+	    
+	    try 
+        {
+	        traiterMessage(new JSONObject(message));
+        }
+        catch (JSONException e) 
+        {
+            logErreur("Récéption inconnue \"" + str + "\"",e);
+        }
+        catch (CanalException e) 
+        {
+            serveur.joueurDeconnecte(joueur);
+            
+            logErreur("Canal erroné \"" + str + "\"",e);
+        }
+	}
+	
+	/**
+	 * Traitement d'un message en fonction de l'état du client
+	 * 
+	 * @param json le message
+	 * @throws JSONException
+	 * @throws CanalException
+	 */
+	private void traiterMessage(JSONObject json) throws JSONException, CanalException
+	{
+	    switch (etat)
+	    {
+	        case EN_ATTENTE:
+	            actionsEtatEnAttente(json);
+	            break;
+	            
+	        case EN_JEU:
+	            actionsEtatEnJeu(json);
+	            break;
+	            
+	        default:
+	            logErreur("Message reçu dans l'état : " + getNomEtat(etat),null);
+	    }
+	}
 
 	private void actionsEtatValidation() throws CanalException, IOException
     {
 	    // Envoi de la version du serveur au client
         envoyer(ServeurJeu.VERSION);
         
+        if(canal instanceof CanalMultiplexe)
+        {
+            // Connexion multiplexée : pas de port temporaire, le canal de 
+            // mise à jour est un canal logique de la même connexion
+            envoyer(0);
+            
+            canal_update = ((CanalMultiplexe) canal).getConnexion()
+                               .getCanal(ConnexionMultiplexee.CANAL_MISE_A_JOUR);
+            
+            envoyerSurCanalMAJ(Protocole.construireMsgJoueursEtat(serveur.getJoueurs()));
+            
+            etat = EN_ATTENTE;
+            return;
+        }
+        
         // Réservation du port pour le canal temporaire
         Port port = new Port(offset_port++);
         port.reserver();
@@ -211,7 +378,10 @@ public class JoueurDistant implements Runnable, ConstantesServeurJeu
         log("Création du canal de synchronisation");
         
         // Création du canal
-        canal_update = new CanalTCP(port);
+        if(Configuration.TRANSPORT_TRAMES.equals(Configuration.getTransportJeu()))
+            canal_update = new CanalTrames(port);
+        else
+            canal_update = new CanalTCP(port);
     
         log("Canal crée");
         
@@ -228,11 +398,8 @@ public class JoueurDistant implements Runnable, ConstantesServeurJeu
 	 * @throws JSONException
 	 * @throws CanalException
 	 */
-	private void actionsEtatEnAttente() throws JSONException, CanalException
+	private void actionsEtatEnAttente(JSONObject json) throws JSONException, CanalException
     {
-	    // Attente d'un message
-        JSONObject json = new JSONObject(attendreMessage());
-        
         // Extraction du type du message
         int type = json.getInt("TYPE");
         log("Récéption d'un message de type " + type + " dans l'état : "+ etat);
@@ -249,6 +416,16 @@ public class JoueurDistant implements Runnable, ConstantesServeurJeu
                 receptionMsgChangementEquipe(json);
                 break;
                 
+            // Acquittement d'un instantané des créatures
+            case CREATURES_ETAT_ACQUITTEMENT:
+                receptionMsgAcquittementInstantane(json);
+                break;
+                
+            // Zone du terrain affichée par le client
+            case JOUEUR_VUE:
+                receptionMsgVue(json);
+                break;
+                
              // Changement d'equipe
             case JOUEUR_PRET:
                 
@@ -278,9 +455,9 @@ public class JoueurDistant implements Runnable, ConstantesServeurJeu
         
         // joueur identique ou admin
         if(idJoueur2 == joueur.getId() || joueur.getId() == serveur.getIdCreateur())
-            envoyer(serveur.changerEquipe(idJoueur2,idEquipe));
+            repondre(new JSONObject(serveur.changerEquipe(idJoueur2,idEquipe)), json);
         else
-            repondreEtat(JOUEUR_CHANGER_EQUIPE, ACTION_NON_AUTORISEE);
+            repondreEtat(JOUEUR_CHANGER_EQUIPE, ACTION_NON_AUTORISEE, json);
     }
 
     /**
@@ -305,11 +482,8 @@ public class JoueurDistant implements Runnable, ConstantesServeurJeu
 		}
 	}
 
-	private void actionsEtatEnJeu() throws JSONException, CanalException
+	private void actionsEtatEnJeu(JSONObject json) throws JSONException, CanalException
 	{
-		// Attente d'un message
-		JSONObject json = new JSONObject(attendreMessage());
-		
 		// Extraction du type du message
 		int type = json.getInt("TYPE");
 		
@@ -322,6 +496,16 @@ public class JoueurDistant implements Runnable, ConstantesServeurJeu
     		    receptionMsgDemandeEnvoieMessage(json);
     			break;
     		
+    		// Acquittement d'un instantané des créatures (sans réponse)
+    		case CREATURES_ETAT_ACQUITTEMENT:
+    		    receptionMsgAcquittementInstantane(json);
+    		    break;
+    		
+    		// Zone du terrain affichée par le client (sans réponse)
+    		case JOUEUR_VUE:
+    		    receptionMsgVue(json);
+    		    break;
+    		    
     		// Action sur une vague
     		case VAGUE:
     		    receptionMsgDemandeLancementVague(json);
@@ -358,11 +542,33 @@ public class JoueurDistant implements Runnable, ConstantesServeurJeu
     		default:
     			logErreur("Type de message inconnu : " + type,null);
     			// Signaler au client qu'il envoi quelque chose d'incorecte
-    			repondreEtat(ERREUR, ERREUR);
+    			repondreEtat(ERREUR, ERREUR, json);
     			break;
     		}
 	}
 
+    private void receptionMsgAcquittementInstantane(JSONObject json) throws JSONException
+    {
+        int tick = json.getInt("TICK");
+        
+        // 0 : le client a perdu sa base, le prochain instantané sera complet
+        if(tick == 0)
+            tickAcquitte = tickAcquitteComplet = 0;
+        else if(filtreDInteret.estComplet(tick))
+        {
+            if(tick > tickAcquitteComplet)
+                tickAcquitteComplet = tick;
+        }
+        else if(tick > tickAcquitte)
+            tickAcquitte = tick;
+    }
+
+    private void receptionMsgVue(JSONObject json) throws JSONException
+    {
+        filtreDInteret.setVue(new Rectangle(json.getInt("X"), json.getInt("Y"),
+                json.getInt("LARGEUR"), json.getInt("HAUTEUR")));
+    }
+
     private void receptionMsgDemandeSuppressionTour(JSONObject json) throws JSONException, CanalException
     {
 	    // Récupération de la tour cible
@@ -370,7 +576,7 @@ public class JoueurDistant implements Runnable, ConstantesServeurJeu
         // Demande au serveur de l'opération
         int code = serveur.vendreTour(joueur, tourCibleDel);
         // Retour au client de code
-        repondreEtat(TOUR_SUPRESSION, code);
+        repondreEtat(TOUR_SUPRESSION, code, json);
     }
 
     private void receptionMsgDemandeAmeliorerTour(JSONObject json) throws JSONException, CanalException
@@ -380,7 +586,7 @@ public class JoueurDistant implements Runnable, ConstantesServeurJeu
         // Demande au serveur de l'opération
         int code = serveur.ameliorerTour(joueur, tourCible);
         // Retour au client de code
-        repondreEtat(TOUR_AMELIORATION, code);
+        repondreEtat(TOUR_AMELIORATION, code, json);
     }
 
     private void receptionMsgDemandeAjoutTour(JSONObject json) throws JSONException, CanalException
@@ -394,7 +600,7 @@ public class JoueurDistant implements Runnable, ConstantesServeurJeu
         // Demande d'ajout au serveur
         int code = serveur.poserTour(joueur, typeTour, x, y);
         // Retour au client du code
-        repondreEtat(TOUR_AJOUT, code);
+        repondreEtat(TOUR_AJOUT, code, json);
     }
 
     private void receptionMsgDemandeLancementVague(JSONObject json) throws JSONException, CanalException
@@ -405,7 +611,7 @@ public class JoueurDistant implements Runnable, ConstantesServeurJeu
         // Demande de lancement d'une vague
         int code = serveur.lancerVague(joueur, nbCreatures, typeCreature);  
         // Retour au client de l'information
-        repondreEtat(VAGUE, code);
+        repondreEtat(VAGUE, code, json);
     }
 
     private void receptionMsgDemandeEnvoieMessage(JSONObject json) throws JSONException, CanalException
@@ -434,12 +640,13 @@ public class JoueurDistant implements Runnable, ConstantesServeurJeu
     /**
 	 * Répond au client un code d'état pour une réponse donnée
 	 * 
-	 * @param player
-	 * @param code
+	 * @param type le type de la requête
+	 * @param code le code d'état
+	 * @param requete la requête à laquelle on répond
 	 * @throws JSONException 
 	 * @throws CanalException 
 	 */
-	private void repondreEtat(int type, int code)
+	private void repondreEtat(int type, int code, JSONObject requete)
 	    throws JSONException, CanalException
 	{
 		// Message JSON
@@ -449,9 +656,27 @@ public class JoueurDistant implements Runnable, ConstantesServeurJeu
 		message.put("TYPE", type);
 		message.put("STATUS", code);
 		// Envoi de la structure à travers le réseau
-		envoyer(message.toString());
+		repondre(message, requete);
 	}
 
+    /**
+     * Envoie une réponse au client en y recopiant l'identificateur de la 
+     * requête, le client peut ainsi avoir plusieurs requêtes en vol
+     * 
+     * @param reponse la réponse
+     * @param requete la requête à laquelle on répond
+     * @throws JSONException 
+     * @throws CanalException 
+     */
+    private void repondre(JSONObject reponse, JSONObject requete)
+        throws JSONException, CanalException
+    {
+        if(requete.has("ID_REQUETE"))
+            reponse.put("ID_REQUETE", requete.getInt("ID_REQUETE"));
+        
+        envoyer(reponse.toString());
+    }
+
 	/**
 	 * Termine la liaison avec le client
 	 * @throws CanalException 
@@ -459,6 +684,9 @@ public class JoueurDistant implements Runnable, ConstantesServeurJeu
 	private void fermerCanal() throws CanalException
 	{
 		canal.fermer();
+		
+		if(canal_update != null)
+		    canal_update.fermer();
 	}
 
 	/**
@@ -506,6 +734,175 @@ public class JoueurDistant implements Runnable, ConstantesServeurJeu
 		    logErreur("Canal_update null",null);
 	}
 	
+	/**
+	 * Permet de récupérer le dernier instantané des créatures acquitté par le
+	 * client, base de l'encodage du prochain instantané.
+	 * 
+	 * Un instantané filtré a pour base le dernier filtré, un complet le 
+	 * dernier complet (les mêmes créatures), à défaut le dernier de l'autre
+	 * sorte.
+	 * 
+	 * @param complet true si le prochain instantané est complet
+	 * @return l'instantané ou null s'il faut envoyer toutes les créatures
+	 */
+	public InstantaneCreatures getInstantaneAcquitte(boolean complet)
+	{
+	    InstantaneCreatures base = instantanesEnvoyes.get(
+	            complet ? tickAcquitteComplet : tickAcquitte);
+	    
+	    if(base == null)
+	        base = instantanesEnvoyes.get(complet ? tickAcquitte : tickAcquitteComplet);
+	    
+	    return base;
+	}
+	
+	/**
+	 * @return la sélection des créatures qui intéressent le client
+	 */
+	FiltreDInteret getFiltreDInteret()
+	{
+	    return filtreDInteret;
+	}
+	
+	/**
+	 * Ajoute un message à envoyer sur le canal de mise à jour lors du
+	 * prochain envoi du serveur. Ne bloque jamais.
+	 * 
+	 * @param message le message
+	 */
+	public void ajouterMessageMAJ(String message)
+	{
+	    fileDEnvoi.ajouterMessage(message);
+	}
+	
+	/**
+	 * Ajoute un message binaire à envoyer sur le canal de mise à jour lors 
+	 * du prochain envoi du serveur. Ne bloque jamais.
+	 * 
+	 * @param message le message encodé (voir MessagesBinaires)
+	 */
+	public void ajouterMessageMAJ(byte[] message)
+	{
+	    fileDEnvoi.ajouterMessage(message);
+	}
+	
+	/**
+	 * Remplace l'instantané des créatures à envoyer lors du prochain envoi 
+	 * du serveur. Ne bloque jamais.
+	 * 
+	 * @param instantane l'instantané
+	 * @param donnees l'instantané encodé par rapport à l'instantané acquitté
+	 */
+	public void ajouterInstantaneMAJ(InstantaneCreatures instantane, byte[] donnees)
+	{
+	    fileDEnvoi.remplacerInstantane(instantane, donnees);
+	}
+	
+	/**
+	 * Envoi en une seule écriture des messages en attente
+	 * 
+	 * @throws CanalException 
+	 */
+	public synchronized void viderFileDEnvoi() throws CanalException
+	{
+	    // validation pas encore terminée, les messages attendent
+	    if(canal_update != null)
+	        fileDEnvoi.envoyer(canal_update, instantanesEnvoyes, 
+	                canalInstantanes, adresseInstantanes);
+	}
+	
+	/**
+	 * Lance l'envoi des messages en attente dans une tache de l'exécuteur, 
+	 * l'appelant n'est pas bloqué par l'écriture. Si l'envoi précédent 
+	 * n'est pas terminé, les messages attendent le suivant.
+	 * 
+	 * @param executeur l'exécuteur des taches d'envoi du serveur
+	 * @return false si l'exécuteur a refusé la tache
+	 */
+	boolean lancerEnvoi(ExecuteurDeConnexions executeur)
+	{
+	    if(debutEnvoi != 0)
+	        return true;
+	    
+	    debutEnvoi = System.currentTimeMillis();
+	    
+	    if(executeur.executer(tacheDEnvoi))
+	        return true;
+	    
+	    debutEnvoi = 0;
+	    return false;
+	}
+	
+	/**
+	 * @return true si une écriture est en cours
+	 */
+	boolean estEnvoiEnCours()
+	{
+	    return debutEnvoi != 0;
+	}
+	
+	/**
+	 * @param delaiMax la durée maximum d'une écriture (ms)
+	 * @return true si l'écriture en cours dure depuis plus de delaiMax
+	 */
+	boolean estEnvoiBloque(long delaiMax)
+	{
+	    long debut = debutEnvoi;
+	    
+	    return debut != 0 && System.currentTimeMillis() - debut > delaiMax;
+	}
+	
+	/**
+	 * @return true si un envoi a échoué (canal corrompu)
+	 */
+	boolean aEchoueEnvoi()
+	{
+	    return erreurEnvoi;
+	}
+	
+	/**
+	 * Permet d'envoyer les prochains instantanés en datagrammes
+	 * 
+	 * @param canal le canal UDP du serveur
+	 * @param adresse l'adresse UDP annoncée par le client
+	 */
+	void setAdresseInstantanes(CanalDatagrammes canal, SocketAddress adresse)
+	{
+	    canalInstantanes   = canal;
+	    adresseInstantanes = adresse;
+	}
+	
+	/**
+	 * @return l'adresse IP du client
+	 */
+	String getIpClient()
+	{
+	    return canal.getIpClient();
+	}
+	
+	/**
+	 * @return true si le client n'a pas suivi le rythme des mises à jour
+	 */
+	public boolean estTropLent()
+	{
+	    return fileDEnvoi.estDebordee();
+	}
+	
+	/**
+	 * Coupe la liaison avec le client
+	 */
+	public void deconnecter()
+	{
+	    try
+	    {
+	        fermerCanal();
+	    }
+	    catch (CanalException e)
+	    {
+	        logErreur("Fermeture du canal",e);
+	    }
+	}
+	
 	/**
 	 * Permet d'afficher une message log
 	 * 
@@ -0,0 +1,116 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau.jeu.serveur;
+
+import java.io.EOFException;
+
+/**
+ * Lecture des champs types d'un bloc de messages binaires.
+ * <p>
+ * Les champs sont lus directement dans le tableau recu, sans copie ni
+ * objet intermediaire.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see EcrivainBinaire
+ * @see MessagesBinaires
+ */
+public class LecteurBinaire
+{
+    private final byte[] donnees;
+    private final int fin;
+    private int position;
+
+    /**
+     * Constructeur
+     *
+     * @param donnees le bloc recu
+     */
+    public LecteurBinaire(byte[] donnees)
+    {
+        this.donnees  = donnees;
+        this.fin      = donnees.length;
+        this.position = 0;
+    }
+
+    /**
+     * @return true s'il reste des octets a lire
+     */
+    public boolean resteDesDonnees()
+    {
+        return position < fin;
+    }
+
+    /**
+     * @return le short lu
+     * @throws EOFException si le bloc est tronque
+     */
+    public int lireShort() throws EOFException
+    {
+        verifier(2);
+
+        int s = (short) (((donnees[position] & 0xFF) << 8) | (donnees[position + 1] & 0xFF));
+        position += 2;
+
+        return s;
+    }
+
+    /**
+     * @return l'int lu
+     * @throws EOFException si le bloc est tronque
+     */
+    public int lireInt() throws EOFException
+    {
+        verifier(4);
+
+        int i = ((donnees[position] & 0xFF) << 24)
+              | ((donnees[position + 1] & 0xFF) << 16)
+              | ((donnees[position + 2] & 0xFF) << 8)
+              |  (donnees[position + 3] & 0xFF);
+        position += 4;
+
+        return i;
+    }
+
+    /**
+     * @return le long lu
+     * @throws EOFException si le bloc est tronque
+     */
+    public long lireLong() throws EOFException
+    {
+        long poidsFort = lireInt();
+
+        return (poidsFort << 32) | (lireInt() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return le double lu
+     * @throws EOFException si le bloc est tronque
+     */
+    public double lireDouble() throws EOFException
+    {
+        return Double.longBitsToDouble(lireLong());
+    }
+
+    private void verifier(int n) throws EOFException
+    {
+        if (position + n > fin)
+            throw new EOFException("Message binaire tronqué");
+    }
+}
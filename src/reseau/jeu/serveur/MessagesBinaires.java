@@ -0,0 +1,90 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package reseau.jeu.serveur;
+
+import models.joueurs.Joueur;
+import models.tours.Tour;
+import models.tours.TypeDeTour;
+
+/**
+ * Encodage binaire des messages frequents du serveur de jeu.
+ * <p>
+ * Un message commence par son type (short, constante de
+ * ConstantesServeurJeu) suivi de ses champs dans l'ordre du schema :
+ * <ul>
+ * <li>JOUEUR_ETAT : ID_JOUEUR (int), NB_PIECES_OR (double),
+ *     NB_VIES_RESTANTES_EQUIPE (int), REVENU (double), SCORE (int)</li>
+ * <li>TOUR_AJOUT : ID_PROPRIETAIRE (int), ID_TOUR (int), X (int),
+ *     Y (int), TYPE_TOUR (int)</li>
+ * </ul>
+ * Les messages binaires d'un envoi sont regroupes en un bloc annonce par
+ * un en-tete MESSAGES_BINAIRES (voir Protocole). Les memes messages
+ * existent en JSON dans Protocole pour le debogage. L'etat des creatures
+ * passe par les instantanes (voir InstantaneCreatures).
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see LecteurBinaire
+ * @see Protocole
+ */
+public final class MessagesBinaires implements ConstantesServeurJeu
+{
+    private MessagesBinaires()
+    {}
+
+    /**
+     * Permet d'encoder l'etat d'un joueur
+     *
+     * @param joueur le joueur
+     * @return le message encode
+     */
+    public static byte[] encoderJoueurEtat(Joueur joueur)
+    {
+        EcrivainBinaire msg = new EcrivainBinaire(30);
+
+        msg.ecrireShort(JOUEUR_ETAT);
+        msg.ecrireInt(joueur.getId());
+        msg.ecrireDouble(joueur.getNbPiecesDOr());
+        msg.ecrireInt(joueur.getEquipe().getNbViesRestantes());
+        msg.ecrireDouble(joueur.getRevenu());
+        msg.ecrireInt(joueur.getScore());
+
+        return msg.toByteArray();
+    }
+
+    /**
+     * Permet d'encoder l'ajout d'une tour
+     *
+     * @param tour la tour
+     * @return le message encode
+     */
+    public static byte[] encoderTourAjout(Tour tour)
+    {
+        EcrivainBinaire msg = new EcrivainBinaire(22);
+
+        msg.ecrireShort(TOUR_AJOUT);
+        msg.ecrireInt(tour.getPrioprietaire().getId());
+        msg.ecrireInt(tour.getId());
+        msg.ecrireInt(tour.x);
+        msg.ecrireInt(tour.y);
+        msg.ecrireInt(TypeDeTour.getTypeDeTour(tour));
+
+        return msg.toByteArray();
+    }
+}
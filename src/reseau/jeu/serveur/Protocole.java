@@ -18,6 +18,7 @@
 
 package reseau.jeu.serveur;
 
+import java.awt.Rectangle;
 import java.util.ArrayList;
 import models.creatures.*;
 import models.jeu.Jeu;
@@ -42,7 +43,16 @@ public class Protocole implements ConstantesServeurJeu
     //-- CONSTRUCTION DE MESSAGES --
     //------------------------------
     
-    public static String construireMsgJoueurInitialisation(Joueur joueur, Terrain terrain)
+    /**
+     * Permet de construire le message d'initialisation d'un joueur
+     * 
+     * @param joueur le joueur
+     * @param terrain le terrain de la partie
+     * @param portInstantanes le port UDP des instantanés des créatures,
+     *        0 s'ils passent par le canal de mise à jour
+     * @return Une structure JSONObject
+     */
+    public static String construireMsgJoueurInitialisation(Joueur joueur, Terrain terrain, int portInstantanes)
     {
         JSONObject msg = new JSONObject();
         
@@ -54,6 +64,9 @@ public class Protocole implements ConstantesServeurJeu
             msg.put("ID_EMPLACEMENT", joueur.getEmplacement().getId());
             msg.put("ID_EQUIPE", joueur.getEquipe().getId());
             msg.put("NOM_FICHIER_TERRAIN", terrain.getNomFichier());
+            
+            if(portInstantanes != 0)
+                msg.put("PORT_INSTANTANES", portInstantanes);
         }
         catch (JSONException e)
         {
@@ -297,6 +310,108 @@ public class Protocole implements ConstantesServeurJeu
         return msg.toString();
     }
     
+    /**
+     * Permet de construire l'en-tête d'un instantané binaire des créatures.
+     * 
+     * Les données encodées suivent l'en-tête sur le canal.
+     * 
+     * @param taille la taille des données en octets
+     * @return Une structure JSONObject
+     */
+    public static String construireMsgCreaturesEtat(int taille)
+    {
+        JSONObject msg = new JSONObject();
+        
+        try
+        {
+            msg.put("TYPE", CREATURES_ETAT);
+            msg.put("TAILLE", taille);
+        } 
+        catch (JSONException e)
+        {
+            e.printStackTrace();
+        }
+        
+        return msg.toString();
+    }
+    
+    /**
+     * Permet de construire l'en-tête d'un bloc de messages binaires.
+     * 
+     * Les messages encodés (voir MessagesBinaires) suivent l'en-tête sur 
+     * le canal.
+     * 
+     * @param taille la taille du bloc en octets
+     * @return Une structure JSONObject
+     */
+    public static String construireMsgMessagesBinaires(int taille)
+    {
+        JSONObject msg = new JSONObject();
+        
+        try
+        {
+            msg.put("TYPE", MESSAGES_BINAIRES);
+            msg.put("TAILLE", taille);
+        } 
+        catch (JSONException e)
+        {
+            e.printStackTrace();
+        }
+        
+        return msg.toString();
+    }
+    
+    /**
+     * Permet de construire l'acquittement d'un instantané des créatures
+     * 
+     * @param tick le numéro de l'instantané reçu ou 0 pour demander
+     *             un instantané complet
+     * @return Une structure JSONObject
+     */
+    public static String construireMsgCreaturesEtatAcquittement(int tick)
+    {
+        JSONObject msg = new JSONObject();
+        
+        try
+        {
+            msg.put("TYPE", CREATURES_ETAT_ACQUITTEMENT);
+            msg.put("TICK", tick);
+        } 
+        catch (JSONException e)
+        {
+            e.printStackTrace();
+        }
+        
+        return msg.toString();
+    }
+    
+    /**
+     * Permet de construire le message de la zone du terrain affichée par
+     * le client, le serveur lui envoie en priorité les créatures proches.
+     * 
+     * @param vue la zone affichée
+     * @return Une structure JSONObject
+     */
+    public static String construireMsgVueJoueur(Rectangle vue)
+    {
+        JSONObject msg = new JSONObject();
+        
+        try
+        {
+            msg.put("TYPE", JOUEUR_VUE);
+            msg.put("X", vue.x);
+            msg.put("Y", vue.y);
+            msg.put("LARGEUR", vue.width);
+            msg.put("HAUTEUR", vue.height);
+        } 
+        catch (JSONException e)
+        {
+            e.printStackTrace();
+        }
+        
+        return msg.toString();
+    }
+    
     /**
      * Permet de construire le message de suppression d'une créature
      * 
@@ -19,8 +19,14 @@
 package reseau.jeu.serveur;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.Map.Entry;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import org.json.JSONException;
 import outils.Configuration;
 import exceptions.*;
@@ -40,7 +46,7 @@ import reseau.*;
  * @author Aurelien Da Campo
  * @version 1.0 | mai 2010
  */
-public class ServeurJeu implements ConstantesServeurJeu, EcouteurDeJeu, Runnable
+public class ServeurJeu implements ConstantesServeurJeu, EcouteurDeJeu, EcouteurServeurNIO, Runnable
 {
 	/**
 	 * La version courante du serveur
@@ -52,13 +58,65 @@ public class ServeurJeu implements ConstantesServeurJeu, EcouteurDeJeu, Runnable
      */
 	private long TEMPS_DE_RAFFRAICHISSEMENT = 80;
 	
+	/**
+	 * Nombre de ticks entre deux instantanés des créatures.
+	 * Les clients prédisent le déplacement des créatures entre deux 
+	 * instantanés, il n'est pas nécessaire d'en envoyer à chaque tick.
+	 */
+	private static final int TICKS_PAR_INSTANTANE = 3;
+	
+	/**
+	 * Durée maximum d'une écriture vers un client (ms). Un client qui ne 
+	 * lit plus ses mises à jour est déconnecté après ce délai.
+	 */
+	private static final long DELAI_MAX_ENVOI = 5000;
+	
+	/**
+	 * Fanion d'activité de la tache d'envoi
+	 */
+	private volatile boolean enService = true;
+	
+	/**
+	 * Tache d'envoi des mises à jour (un tick à la fois)
+	 */
+	private Thread tacheDEnvoi;
+	
+	/**
+	 * Taches d'écriture vers les clients, au plus une par client : un 
+	 * client lent ne retarde pas les autres
+	 */
+	private final ExecuteurDeConnexions executeurDEnvoi = new ExecuteurDeConnexions(
+	        "ServeurJeu-envoi", Integer.MAX_VALUE, 0);
+	
+	/**
+	 * Actions des joueurs (transport NIO) : le sélecteur ne fait que 
+	 * décoder les trames, les actions de la partie sont exécutées ici,
+	 * une à la fois et dans l'ordre de réception
+	 */
+	private final ExecuteurSequentiel executeurDActions;
+	
+	/**
+	 * Tache propre des actions, null si elles sont exécutées par le pool
+	 * de l'hôte de la partie
+	 */
+	private final ExecutorService tacheDActions;
+	
 	/**
 	 * Fanion pour le mode debug
 	 */
 	private static final boolean verbeux = false;
+	
+	/**
+	 * Encodage binaire des messages fréquents (JSON pour déboguer)
+	 */
+	private static final boolean messagesBinaires = 
+	    !Configuration.PROTOCOLE_JSON.equals(Configuration.getProtocoleJeu());
 
 	/**
-	 * Liste des clients enregistrés sur le serveur
+	 * Liste des clients enregistrés sur le serveur.
+	 * 
+	 * Elle est lue et modifiée par la simulation, les connexions et la
+	 * tache d'envoi : tous les accès se font sous synchronized(clients).
 	 */
 	private HashMap<Integer, JoueurDistant> clients = new HashMap<Integer, JoueurDistant>();
 
@@ -71,13 +129,32 @@ public class ServeurJeu implements ConstantesServeurJeu, EcouteurDeJeu, Runnable
 	/**
 	 * Canal d'attente de connexion de joueur
 	 */
-	private CanalTCP canalAttenteConnexion = null;
+	private Canal canalAttenteConnexion = null;
 	
 	/**
 	 * Port du canal
 	 */
 	private Port port;
 	
+	/**
+	 * Serveur non bloquant (transport NIO), null en transport TCP
+	 */
+	private ServeurNIO serveurNIO;
+	
+	/**
+	 * Canal UDP des instantanés des créatures, null s'ils passent par les
+	 * canaux de mise à jour
+	 */
+	private CanalDatagrammes canalInstantanes;
+	
+	/**
+	 * Taches d'écoute des joueurs distants (transports tcp et trames), 
+	 * en nombre limité par la configuration
+	 */
+	private final ExecuteurDeConnexions executeurDeConnexions = new ExecuteurDeConnexions(
+	        "JoueurDistant", Configuration.getMaxConnexionsSJ(), 
+	        Configuration.getTaillePileConnexions() * 1024L);
+	
 	/**
 	 * Référence vers le créateur du jeu
 	 */
@@ -89,13 +166,91 @@ public class ServeurJeu implements ConstantesServeurJeu, EcouteurDeJeu, Runnable
 	 * @throws IOException
 	 */
 	public ServeurJeu(final Jeu jeuServeur) throws IOException
+	{
+	    this(jeuServeur, true);
+	}
+	
+	/**
+	 * 
+	 * @param jeuServeur
+	 * @param ecoute false pour un serveur hébergé avec d'autres dans le même
+	 *        processus : il n'écoute aucun port, l'hôte lui transmet ses
+	 *        connexions (accueillir et EcouteurServeurNIO)
+	 * @throws IOException
+	 * @see serveur.jeu.HoteDeParties
+	 */
+	public ServeurJeu(final Jeu jeuServeur, boolean ecoute) throws IOException
+	{
+	    this(jeuServeur, ecoute, null);
+	}
+	
+	/**
+	 * 
+	 * @param jeuServeur
+	 * @param ecoute false pour un serveur hébergé (voir ci-dessus)
+	 * @param poolDActions pool partagé avec les autres parties de l'hôte 
+	 *        qui exécute les actions des joueurs, null pour une tache 
+	 *        propre au serveur
+	 * @throws IOException
+	 */
+	public ServeurJeu(final Jeu jeuServeur, boolean ecoute, Executor poolDActions) throws IOException
 	{
 		// Assignation du serveur
 		this.jeuServeur = jeuServeur;
 		
+		// actions des joueurs hors de la tache du sélecteur
+		if(poolDActions != null)
+		    tacheDActions = null;
+		else
+		{
+		    tacheDActions = Executors.newSingleThreadExecutor(new ThreadFactory()
+		    {
+		        @Override
+		        public Thread newThread(Runnable tache)
+		        {
+		            Thread thread = new Thread(tache, "ServeurJeu-actions");
+		            thread.setDaemon(true);
+		            return thread;
+		        }
+		    });
+		    poolDActions = tacheDActions;
+		}
+		
+		executeurDActions = new ExecuteurSequentiel(poolDActions);
+		
 		// le serveur ecoute le jeu
 		jeuServeur.setEcouteurDeJeu(this);
 		
+		// les messages aux clients partent une fois par tick
+		creerTacheDEnvoi();
+		
+		if(!ecoute)
+		    return;
+		
+		// Instantanés en UDP : même numéro de port que le serveur
+		if(Configuration.TRANSPORT_UDP.equals(Configuration.getTransportInstantanes()))
+		{
+		    try
+		    {
+		        canalInstantanes = new CanalDatagrammes(Configuration.getPortSJ());
+		        creerTacheDInscriptionUDP();
+		    }
+		    catch (CanalException e)
+		    {
+		        // les instantanés passeront par les canaux de mise à jour
+		        logErreur("Canal UDP des instantanés indisponible");
+		        canalInstantanes = null;
+		    }
+		}
+		
+		// Transport NIO : une seule tache pour toutes les connexions
+		if(Configuration.TRANSPORT_NIO.equals(Configuration.getTransportJeu()))
+		{
+		    serveurNIO = new ServeurNIO(Configuration.getPortSJ(), this);
+		    (new Thread(serveurNIO)).start();
+		    return;
+		}
+		
         // Réservation du port d'écoute
         port = new Port(Configuration.getPortSJ());
         
@@ -114,41 +269,16 @@ public class ServeurJeu implements ConstantesServeurJeu, EcouteurDeJeu, Runnable
     	    // Boucle d'attente de connections
             while (true)
             {
-                try
-                {
-                    // On attend qu'un joueur se présente
-                    log("Ecoute sur le port " + Configuration.getPortSJ());
-                    
-                    // Bloquant en attente d'une connexion
+                // On attend qu'un joueur se présente
+                log("Ecoute sur le port " + Configuration.getPortSJ());
+                
+                // Bloquant en attente d'une connexion
+                if(Configuration.TRANSPORT_TRAMES.equals(Configuration.getTransportJeu()))
+                    canalAttenteConnexion = new CanalTrames(port);
+                else
                     canalAttenteConnexion = new CanalTCP(port);
-                    
-                    String ip = canalAttenteConnexion.getIpClient();
-                    
-                    // Log
-                    log("Récéption de " + ip); 
-                    
-                    // Récéption du pseudo du joueur
-                    String pseudo = canalAttenteConnexion.recevoirString();
-                    
-                    // Création du joueur
-                    Joueur joueur = new Joueur(pseudo);
-                    
-                    enregistrerClient(joueur, canalAttenteConnexion);
-                } 
-                catch (JeuEnCoursException e){
-    
-                    log("Joueur refusé - jeu est en cours");
-                    
-                    // Envoye de la réponse
-                    canalAttenteConnexion.envoyerString(Protocole.construireMsgJoueurInitialisation(JEU_EN_COURS));   
-                }
-                catch (AucunePlaceDisponibleException e){
-                    
-                    log("Joueur refusé - aucune place disponible");
-    
-                    // Envoye de la réponse
-                    canalAttenteConnexion.envoyerString(Protocole.construireMsgJoueurInitialisation(PAS_DE_PLACE));
-                }
+                
+                accueillir(canalAttenteConnexion);
             }
         }  
         catch (CanalException e)
@@ -156,10 +286,60 @@ public class ServeurJeu implements ConstantesServeurJeu, EcouteurDeJeu, Runnable
             canalErreur(e);
         }       
 	}
+	
+	/**
+	 * Permet d'accueillir un joueur sur une nouvelle connexion (transports
+	 * tcp et trames) : réception de son pseudo puis inscription à la partie
+	 * ou refus.
+	 * 
+	 * Bloquant jusqu'à la réception du pseudo.
+	 * 
+	 * @param canal le canal de la connexion
+	 * @throws CanalException si la connexion est perdue
+	 */
+	public void accueillir(Canal canal) throws CanalException
+	{
+        try
+        {
+            String ip = canal.getIpClient();
+            
+            // Log
+            log("Récéption de " + ip); 
+            
+            // Récéption du pseudo du joueur
+            String pseudo = canal.recevoirString();
+            
+            // plus de tache d'écoute disponible
+            if(executeurDeConnexions.estPlein())
+                throw new AucunePlaceDisponibleException("Limite de connexions atteinte");
+            
+            // Création du joueur
+            Joueur joueur = new Joueur(pseudo);
+            
+            enregistrerClient(joueur, canal);
+        } 
+        catch (JeuEnCoursException e){
 
-    private synchronized void enregistrerClient(Joueur joueur, CanalTCP canal) 
+            log("Joueur refusé - jeu est en cours");
+            
+            // Envoye de la réponse
+            canal.envoyerString(Protocole.construireMsgJoueurInitialisation(JEU_EN_COURS));   
+        }
+        catch (AucunePlaceDisponibleException e){
+            
+            log("Joueur refusé - aucune place disponible");
+
+            // Envoye de la réponse
+            canal.envoyerString(Protocole.construireMsgJoueurInitialisation(PAS_DE_PLACE));
+        }
+	}
+
+    private synchronized JoueurDistant enregistrerClient(Joueur joueur, Canal canal) 
         throws JeuEnCoursException, AucunePlaceDisponibleException
 	{
+        JoueurDistant jd = null;
+        
+
         try
         {
             // Ajout du joueur à l'ensemble des joueurs
@@ -169,7 +349,13 @@ public class ServeurJeu implements ConstantesServeurJeu, EcouteurDeJeu, Runnable
             log("Nouveau joueur ! ID : " + joueur.getId());
             
             // On vérifie que l'ID passé en paramêtre soit bien unique
-    		if (clients.containsKey(joueur.getId()))
+            boolean dejaInscrit;
+            synchronized(clients)
+            {
+                dejaInscrit = clients.containsKey(joueur.getId());
+            }
+            
+    		if (dejaInscrit)
     		{
     			log("ERROR : Le client " + joueur.getId() + " est déjà dans la partie");
     			
@@ -183,11 +369,15 @@ public class ServeurJeu implements ConstantesServeurJeu, EcouteurDeJeu, Runnable
                     createur = joueur;
     		    
     		    // Envoye de la réponse
-                canal.envoyerString(Protocole.construireMsgJoueurInitialisation(joueur, jeuServeur.getTerrain()));
+                canal.envoyerString(Protocole.construireMsgJoueurInitialisation(joueur, jeuServeur.getTerrain(),
+                        canalInstantanes != null ? canalInstantanes.getNumeroPort() : 0));
     
     		    // On inscrit le joueur à la partie
-                JoueurDistant jd = new JoueurDistant(joueur, canal, this);
-    			clients.put(joueur.getId(), jd);
+                jd = new JoueurDistant(joueur, canal, this);
+                synchronized(clients)
+                {
+                    clients.put(joueur.getId(), jd);
+                }
     			
     			// Notification des clients 
     	        envoyerATous(Protocole.construireMsgJoueursEtat(jeuServeur.getJoueurs()));
@@ -198,7 +388,131 @@ public class ServeurJeu implements ConstantesServeurJeu, EcouteurDeJeu, Runnable
         {
             canalErreur(e);
         }
+        
+        return jd;
 	}
+    
+    /**************** TRANSPORT NIO **************/
+    
+    @Override
+    public void connexionOuverte(ConnexionNIO connexion)
+    {
+        log("Récéption de " + connexion.getIp()); 
+    }
+
+    @Override
+    public void trameRecue(final ConnexionNIO connexion, int numeroCanal, byte[] donnees)
+    {
+        final String message = Trames.decoderString(donnees);
+        
+        executerAction(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                traiterMessage(connexion, message);
+            }
+        });
+    }
+    
+    /**
+     * Traitement d'un message d'une connexion NIO, sur la tache des actions
+     * 
+     * @param connexion la connexion
+     * @param message le message décodé
+     */
+    private void traiterMessage(ConnexionNIO connexion, String message)
+    {
+        JoueurDistant jd = (JoueurDistant) connexion.getAttachement();
+        
+        if(jd != null)
+        {
+            jd.messageRecu(message);
+            return;
+        }
+        
+        // Premier message de la connexion : pseudo du joueur
+        Canal canal = connexion.getCanal(ConnexionMultiplexee.CANAL_REQUETES);
+        
+        try
+        {
+            connexion.setAttachement(enregistrerClient(new Joueur(message), canal));
+        }
+        catch (JeuEnCoursException e)
+        {
+            log("Joueur refusé - jeu est en cours");
+            refuserConnexion(connexion, JEU_EN_COURS);
+        }
+        catch (AucunePlaceDisponibleException e)
+        {
+            log("Joueur refusé - aucune place disponible");
+            refuserConnexion(connexion, PAS_DE_PLACE);
+        }
+    }
+
+    @Override
+    public void connexionFermee(final ConnexionNIO connexion)
+    {
+        // après les actions déjà reçues de cette connexion
+        executerAction(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                deconnecter(connexion);
+            }
+        });
+    }
+    
+    /**
+     * Déconnexion du joueur d'une connexion NIO fermée
+     * 
+     * @param connexion la connexion
+     */
+    private void deconnecter(ConnexionNIO connexion)
+    {
+        JoueurDistant jd = (JoueurDistant) connexion.getAttachement();
+        
+        if(jd != null)
+        {
+            Joueur joueur = jeuServeur.getJoueur(jd.getId());
+            
+            if(joueur != null)
+                joueurDeconnecte(joueur);
+        }
+    }
+    
+    private void refuserConnexion(ConnexionNIO connexion, int etat)
+    {
+        try
+        {
+            connexion.getCanal(ConnexionMultiplexee.CANAL_REQUETES)
+                .envoyerString(Protocole.construireMsgJoueurInitialisation(etat));
+        }
+        catch (CanalException e)
+        {
+            // déjà fermée
+        }
+        
+        connexion.fermer();
+    }
+    
+    /**
+     * Permet de confier une action à la tache des actions
+     * 
+     * @param action l'action
+     */
+    private void executerAction(Runnable action)
+    {
+        try
+        {
+            executeurDActions.execute(action);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // serveur stoppé
+        }
+    }
 
     /**************** NOTIFICATIONS **************/
 
@@ -258,30 +572,44 @@ public class ServeurJeu implements ConstantesServeurJeu, EcouteurDeJeu, Runnable
         
         //envoyerATous(Protocole.construireMsgPartieChangementEtat(PARTIE_LANCEE));
         envoyerATous(Protocole.construireMsgJoueursEtat(getJoueurs()));
-      
-        creerTacheDeMiseAJour();
 	}
 
-	private void creerTacheDeMiseAJour()
+	private void creerTacheDEnvoi()
     {
 	    //--------------------------------------
         //-- tache de mise a jour des clients --
         //--------------------------------------
-        Thread t = new Thread(new Runnable()
+	    // Les événements du jeu sont mis en file par client (sans bloquer le 
+	    // jeu), cette tache lance à chaque tick leur envoi en une seule 
+	    // écriture par client, avec l'instantané des créatures.
+        tacheDEnvoi = new Thread(new Runnable()
         {
             @Override
             public void run()
             {
-                while(!jeuServeur.estTermine())
+                int tick = 0;
+                int pas = 0;
+                
+                while(enService)
                 {
-                    for(Creature creature : jeuServeur.getCreatures())
+                    long debut = System.currentTimeMillis();
+                    
+                    if(jeuServeur.estDemarre() && !jeuServeur.estTermine())
                     {
-                        if(!creature.estMorte())
-                            envoyerATous(Protocole.construireMsgCreatureEtat(creature));
+                        pas++;
+                        
+                        // un seul instantané binaire pour toutes les créatures
+                        if(pas % TICKS_PAR_INSTANTANE == 0)
+                            envoyerInstantaneATous(++tick, jeuServeur.getCreatures());
                     }
                     
+                    viderFilesDEnvoi();
+                    
                     try{
-                        Thread.sleep(TEMPS_DE_RAFFRAICHISSEMENT);
+                        long attente = TEMPS_DE_RAFFRAICHISSEMENT - (System.currentTimeMillis() - debut);
+                        
+                        if(attente > 0)
+                            Thread.sleep(attente);
                     } 
                     catch (InterruptedException e){
                         e.printStackTrace();
@@ -290,6 +618,56 @@ public class ServeurJeu implements ConstantesServeurJeu, EcouteurDeJeu, Runnable
             }
         });
         
+        tacheDEnvoi.start();
+    }
+
+    /**
+     * Tache d'inscription des clients au canal UDP des instantanés.
+     * 
+     * Un client s'annonce en envoyant son identificateur, depuis l'adresse
+     * IP de sa connexion. Il répète l'annonce tant qu'il ne reçoit rien, 
+     * ce qui traverse aussi les NAT.
+     */
+    private void creerTacheDInscriptionUDP()
+    {
+        Thread t = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    while(true)
+                    {
+                        Datagramme annonce = canalInstantanes.recevoir();
+                        
+                        if(annonce.getDonnees().length != 4)
+                            continue;
+                        
+                        int idJoueur = ByteBuffer.wrap(annonce.getDonnees()).getInt();
+                        JoueurDistant client;
+                        
+                        synchronized(clients)
+                        {
+                            client = clients.get(idJoueur);
+                        }
+                        
+                        InetSocketAddress source = (InetSocketAddress) annonce.getSource();
+                        
+                        if(client != null && source.getAddress().getHostAddress().equals(client.getIpClient()))
+                            client.setAdresseInstantanes(canalInstantanes, source);
+                        else
+                            log("Annonce UDP refusée de " + source);
+                    }
+                }
+                catch (CanalException e)
+                {
+                    // canal fermé, arrêt du serveur
+                }
+            }
+        });
+        
+        t.setDaemon(true);
         t.start();
     }
 
@@ -304,7 +682,10 @@ public class ServeurJeu implements ConstantesServeurJeu, EcouteurDeJeu, Runnable
 	public void tourPosee(Tour tour)
 	{
 	    // Multicast aux clients
-        envoyerATous(Protocole.construireMsgTourAjout(tour).toString());
+	    if(messagesBinaires)
+	        envoyerATous(MessagesBinaires.encoderTourAjout(tour));
+	    else
+	        envoyerATous(Protocole.construireMsgTourAjout(tour).toString());
 	}
 
 	@Override
@@ -318,7 +699,10 @@ public class ServeurJeu implements ConstantesServeurJeu, EcouteurDeJeu, Runnable
     public void joueurMisAJour(Joueur joueur)
     {
 	    // Multicast aux clients
-        envoyerATous(Protocole.construireMsgJoueurEtat(joueur));
+	    if(messagesBinaires)
+	        envoyerATous(MessagesBinaires.encoderJoueurEtat(joueur));
+	    else
+	        envoyerATous(Protocole.construireMsgJoueurEtat(joueur));
     }
 	
 	/**
@@ -547,8 +931,7 @@ public class ServeurJeu implements ConstantesServeurJeu, EcouteurDeJeu, Runnable
 	{
 		log("Le joueur " + idJoueur + " dit : " + message);
 		
-		for (Entry<Integer, JoueurDistant> joueur : clients.entrySet())
-			joueur.getValue().envoyerSurCanalMAJ(Protocole.construireMsgMessage(idJoueur, message));
+		envoyerATous(Protocole.construireMsgMessage(idJoueur, message));
 	}
 
 	/**
@@ -567,51 +950,186 @@ public class ServeurJeu implements ConstantesServeurJeu, EcouteurDeJeu, Runnable
 	{
 		log("Le joueur " + idJoueur + " désire envoyer un message à " + IDTo
 				+ "(" + message + ")");
-		clients.get(IDTo).envoyerSurCanalMAJ(Protocole.construireMsgMessage(idJoueur, message));
+		JoueurDistant destinataire;
+		synchronized(clients)
+		{
+		    destinataire = clients.get(IDTo);
+		}
+		
+		if(destinataire != null)
+		    destinataire.ajouterMessageMAJ(Protocole.construireMsgMessage(idJoueur, message));
 	}
 
 	/**
-	 * Permet de Mutli-caster a tous les clients
+	 * Permet d'envoyer un instantané des créatures à tous les clients.
+	 * 
+	 * Chaque client ne reçoit que les créatures qui l'intéressent (les 
+	 * autres de temps en temps, voir FiltreDInteret), encodées par 
+	 * différence avec le dernier instantané de même sorte qu'il a 
+	 * acquitté. L'instantané part au prochain envoi et remplace celui qui 
+	 * attendait.
+	 * 
+	 * Les clients qui reçoivent toutes les créatures partagent le même 
+	 * instantané, et son encodage s'ils ont la même base.
+	 * 
+	 * @param tick le numéro de l'instantané
+	 * @param creatures les créatures du jeu
+	 */
+	private void envoyerInstantaneATous(int tick, List<Creature> creatures)
+	{
+	    // les clients situent les positions dans le temps du serveur
+	    long pas = jeuServeur.getNoPasDeSimulation();
+	    
+	    synchronized(clients)
+	    {
+	        InstantaneCreatures toutes = null;
+	        
+	        for (JoueurDistant joueur : clients.values())
+	        {
+	            FiltreDInteret filtre = joueur.getFiltreDInteret();
+	            List<Creature> selection = filtre.selectionner(creatures, tick);
+	            InstantaneCreatures instantane;
+	            
+	            if(selection.size() == creatures.size())
+	            {
+	                if(toutes == null)
+	                    toutes = InstantaneCreatures.capturer(tick, pas, creatures);
+	                
+	                instantane = toutes;
+	            }
+	            else
+	                instantane = InstantaneCreatures.capturer(tick, pas, selection);
+	            
+	            joueur.ajouterInstantaneMAJ(instantane, instantane.encoder(
+	                    joueur.getInstantaneAcquitte(filtre.estComplet(tick))));
+	        }
+	    }
+	}
+	
+	/**
+	 * Permet de Mutli-caster a tous les clients.
+	 * 
+	 * Le message est mis en file pour chaque client et part au prochain 
+	 * envoi, l'appelant (le jeu) n'est jamais bloqué par un client lent.
 	 * 
 	 * @param message le message à diffuser
-	 * @throws CanalException 
 	 */
-	private synchronized void envoyerATous(String message)
+	private void envoyerATous(String message)
 	{   
-	    ArrayList<Integer> joueurSupprimes = new ArrayList<Integer>();
-	    
 	    synchronized(clients)
 	    {
-	        for (Entry<Integer, JoueurDistant> joueur : clients.entrySet())
-                try
-                {
-                    joueur.getValue().envoyerSurCanalMAJ(message);
-                }
-                catch (CanalException e)
-                {
-                    // le joueur à un canal corrompu
-                    joueurSupprimes.add(joueur.getValue().getId());
-                }
-                
-
-            // pour chaque suppression on indique aux autres joueurs 
-            // la deconnexion du joueur
-            for (Integer integer : joueurSupprimes) 
-            {
-                Joueur joueur = jeuServeur.getJoueur(integer);
-                
-                joueurDeconnecte(joueur);
-            }
+	        for (JoueurDistant joueur : clients.values())
+	            joueur.ajouterMessageMAJ(message);
         }
 	}
 	
+	/**
+	 * Permet de Mutli-caster un message binaire a tous les clients.
+	 * 
+	 * @param message le message encodé (voir MessagesBinaires)
+	 */
+	private void envoyerATous(byte[] message)
+	{   
+	    synchronized(clients)
+	    {
+	        for (JoueurDistant joueur : clients.values())
+	            joueur.ajouterMessageMAJ(message);
+        }
+	}
+	
+	/**
+	 * Permet de lancer l'envoi à chaque client de ses messages en attente,
+	 * chacun dans sa tache d'écriture.
+	 * 
+	 * Les clients dont la file a débordé, dont le canal est corrompu ou 
+	 * dont l'écriture dure depuis plus de DELAI_MAX_ENVOI sont déconnectés.
+	 */
+	private void viderFilesDEnvoi()
+	{
+	    ArrayList<JoueurDistant> destinataires;
+	    
+	    synchronized(clients)
+	    {
+	        destinataires = new ArrayList<JoueurDistant>(clients.values());
+	    }
+	    
+	    ArrayList<JoueurDistant> joueurSupprimes = new ArrayList<JoueurDistant>();
+	    
+	    for (JoueurDistant joueur : destinataires)
+	    {
+	        if(joueur.estTropLent())
+	        {
+	            logErreur("Le joueur " + joueur.getId() + " ne suit pas les mises à jour");
+	            joueurSupprimes.add(joueur);
+	        }
+	        else if(joueur.aEchoueEnvoi())
+	        {
+	            // le joueur à un canal corrompu
+	            joueurSupprimes.add(joueur);
+	        }
+	        else if(joueur.estEnvoiBloque(DELAI_MAX_ENVOI))
+	        {
+	            logErreur("Le joueur " + joueur.getId() + " ne lit plus les mises à jour");
+	            joueurSupprimes.add(joueur);
+	        }
+	        else
+	            joueur.lancerEnvoi(executeurDEnvoi);
+	    }
+	    
+	    // pour chaque suppression on indique aux autres joueurs 
+	    // la deconnexion du joueur
+	    for (JoueurDistant joueur : joueurSupprimes) 
+	    {
+	        Joueur j = jeuServeur.getJoueur(joueur.getId());
+	        
+	        if(j != null)
+	            joueurDeconnecte(j);
+	        
+	        // débloque aussi une écriture en cours
+	        joueur.deconnecter();
+	    }
+	}
+	
+	/**
+	 * Attend la fin des écritures en cours, au plus delaiMax
+	 * 
+	 * @param delaiMax l'attente maximum (ms)
+	 */
+	private void attendreEnvois(long delaiMax)
+	{
+	    ArrayList<JoueurDistant> destinataires;
+	    
+	    synchronized(clients)
+	    {
+	        destinataires = new ArrayList<JoueurDistant>(clients.values());
+	    }
+	    
+	    long fin = System.currentTimeMillis() + delaiMax;
+	    
+	    try
+	    {
+	        for (JoueurDistant joueur : destinataires)
+	            while(joueur.estEnvoiEnCours() && System.currentTimeMillis() < fin)
+	                Thread.sleep(5);
+	    }
+	    catch (InterruptedException e)
+	    {
+	        Thread.currentThread().interrupt();
+	    }
+	}
+	
 	
     public void joueurDeconnecte(Joueur joueur)
     { 
         // si il est pas déjà deconnecte ?
-        if(clients.containsKey(joueur.getId()))
+        JoueurDistant jd;
+        synchronized(clients)
+        {
+            jd = clients.remove(joueur.getId());
+        }
+        
+        if(jd != null)
         {
-            clients.remove(joueur.getId());
             
             // l'hote met fin à la partie
             //if(joueur.getId() == createur.getId())
@@ -664,9 +1182,56 @@ public class ServeurJeu implements ConstantesServeurJeu, EcouteurDeJeu, Runnable
 
     public void stopper()
     {
-        port.liberer();
+        if(port != null)
+            port.liberer();
         
         envoyerATous(Protocole.construireMsgPartieChangementEtat(PARTIE_STOPPEE_BRUTALEMENT));
+        
+        // la tache d'envoi s'arrête avant le dernier envoi
+        enService = false;
+        
+        if(tacheDEnvoi != null && tacheDEnvoi != Thread.currentThread())
+        {
+            try
+            {
+                tacheDEnvoi.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        // les derniers messages partent avant la fermeture des connexions
+        attendreEnvois(DELAI_MAX_ENVOI);
+        viderFilesDEnvoi();
+        attendreEnvois(DELAI_MAX_ENVOI);
+        executeurDEnvoi.arreter();
+        
+        if(serveurNIO != null)
+            serveurNIO.arreter();
+        
+        // les actions en attente sont abandonnées
+        executeurDActions.arreter();
+        
+        if(tacheDActions != null)
+            tacheDActions.shutdown();
+        
+        if(canalInstantanes != null)
+            canalInstantanes.fermer();
+        
+        executeurDeConnexions.arreter();
+    }
+    
+    /**
+     * Permet de recuperer l'exécuteur des taches d'écoute des joueurs 
+     * distants
+     * 
+     * @return l'exécuteur
+     */
+    ExecuteurDeConnexions getExecuteurDeConnexions()
+    {
+        return executeurDeConnexions;
     }
     
     private void canalErreur(Exception e)
@@ -675,9 +1240,21 @@ public class ServeurJeu implements ConstantesServeurJeu, EcouteurDeJeu, Runnable
         e.printStackTrace();
         
         // libération du port
-        port.liberer(); 
+        if(port != null)
+            port.liberer(); 
     }
 
+    /**
+     * @return le nombre de joueurs distants connectés
+     */
+    public int getNbClients()
+    {
+        synchronized(clients)
+        {
+            return clients.size();
+        }
+    }
+    
     public ArrayList<Joueur> getJoueurs()
     { 
         return jeuServeur.getJoueurs();
@@ -18,6 +18,9 @@
 
 package serveur.enregistrement;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import reseau.*;
 
 /**
@@ -30,10 +33,15 @@ public class Enregistrement {
    private String nomPartie;
    private String adresseIp;
    private Port port;
+   private int idPartie;
    private int capacite;
-   private int placesRestantes;
+   private volatile int placesRestantes;
    private String nomTerrain;
    private String mode;
+   private volatile long finDuBail;
+   
+   // encodage JSON, refait a la premiere lecture apres une modification
+   private volatile String json;
    
    /**
     * 
@@ -43,10 +51,25 @@ public class Enregistrement {
     */
    public Enregistrement(String nom, String adresseIp, Port port, int capacite,
                          String nomTerrain, String mode)
+   {
+      this(nom, adresseIp, port, 0, capacite, nomTerrain, mode);
+   }
+   
+   /**
+    * 
+    * @param nom
+    * @param adresseIp
+    * @param port
+    * @param idPartie l'identificateur de la partie chez un hote de 
+    *        plusieurs parties sur le meme port, 0 si elle y est seule
+    */
+   public Enregistrement(String nom, String adresseIp, Port port, int idPartie,
+                         int capacite, String nomTerrain, String mode)
    {
       this.nomPartie = nom;
       this.adresseIp = adresseIp;
       this.port = port;
+      this.idPartie = idPartie;
       this.capacite = capacite;
       this.placesRestantes = this.capacite - 1;
       this.nomTerrain = nomTerrain;
@@ -65,6 +88,7 @@ public class Enregistrement {
     */
    public void setNomTerrain(String nomTerrain) {
       this.nomTerrain = nomTerrain;
+      json = null;
    }
 
    /**
@@ -79,6 +103,7 @@ public class Enregistrement {
     */
    public void setMode(String mode) {
       this.mode = mode;
+      json = null;
    }
 
    /**
@@ -93,6 +118,7 @@ public class Enregistrement {
     */
    public void setPlacesRestantes(int placesRestantes) {
       this.placesRestantes = placesRestantes;
+      json = null;
    }
 
    /**
@@ -107,6 +133,7 @@ public class Enregistrement {
     */
    public void setNomPartie(String nomPartie) {
       this.nomPartie = nomPartie;
+      json = null;
    }
 
    /**
@@ -128,6 +155,7 @@ public class Enregistrement {
     */
    public void setAdresseIp(String adresseIp) {
       this.adresseIp = adresseIp;
+      json = null;
    }
 
    /**
@@ -142,6 +170,108 @@ public class Enregistrement {
     */
    public void setPort(Port port) {
       this.port = port;
+      json = null;
+   }
+
+   /**
+    * @return l'identificateur de la partie sur son port, 0 si elle y est
+    *         seule
+    */
+   public int getIdPartie() {
+      return idPartie;
+   }
+
+   /**
+    * Permet de prolonger le bail de l'enregistrement
+    * 
+    * @param duree la duree du bail a partir de maintenant (ms)
+    */
+   public void renouvelerBail(long duree) {
+      finDuBail = System.currentTimeMillis() + duree;
+   }
+
+   /**
+    * @return la fin du bail (ms depuis l'epoque)
+    */
+   public long getFinDuBail() {
+      return finDuBail;
+   }
+
+   /**
+    * @param maintenant le temps courant (ms depuis l'epoque)
+    * @return true si le bail a expire
+    */
+   public boolean estExpire(long maintenant) {
+      return maintenant >= finDuBail;
+   }
+
+   /**
+    * Permet de recuperer la partie encodee en JSON. L'encodage est garde 
+    * jusqu'a la prochaine modification, une partie inchangee n'est donc 
+    * encodee qu'une fois pour tous les instantanes du registre.
+    * 
+    * @return la partie en JSON
+    */
+   public String getJson() {
+      String j = json;
+      
+      if (j == null) {
+         j = encoder();
+         json = j;
+      }
+      
+      return j;
+   }
+   
+   private String encoder() {
+      JSONObject partie = new JSONObject();
+
+      try {
+         partie.put("nomPartie", nomPartie);
+         partie.put("adresseIp", adresseIp);
+         partie.put("numeroPort", port.getNumeroPort());
+         partie.put("idPartie", idPartie);
+         partie.put("capacite", capacite);
+         partie.put("placesRestantes", placesRestantes);
+         partie.put("nomTerrain", nomTerrain);
+         partie.put("mode", mode);
+      }
+      catch (JSONException e) {
+         e.printStackTrace();
+      }
+
+      return partie.toString();
+   }
+
+   /**
+    * @return la cle de l'enregistrement dans le registre : son adresse (et
+    *         l'identificateur de la partie chez un hote)
+    */
+   public String getCle() {
+      return getCle(adresseIp, port.getNumeroPort(), idPartie);
+   }
+
+   /**
+    * @param adresseIp l'adresse ip du serveur de jeu
+    * @param numeroPort le port du serveur de jeu
+    * @return la cle d'un enregistrement a cette adresse
+    */
+   public static String getCle(String adresseIp, int numeroPort) {
+      return getCle(adresseIp, numeroPort, 0);
+   }
+
+   /**
+    * @param adresseIp l'adresse ip de l'hote
+    * @param numeroPort le port de l'hote
+    * @param idPartie l'identificateur de la partie chez l'hote, 0 si elle
+    *        est seule sur le port
+    * @return la cle d'un enregistrement a cette adresse
+    */
+   public static String getCle(String adresseIp, int numeroPort, int idPartie) {
+      if (idPartie == 0)
+         return adresseIp + ":" + numeroPort;
+      
+      return adresseIp + ":" + numeroPort + "/" + idPartie;
    }
 
    /* (non-Javadoc)
@@ -150,7 +280,7 @@ public class Enregistrement {
    @Override
    public String toString() {
       return "Enregistrement [adresseIp=" + adresseIp + ", nom=" + nomPartie
-            + ", port=" + port + "]";
+            + ", port=" + port + ", idPartie=" + idPartie + "]";
    }
    
 }
@@ -0,0 +1,170 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package serveur.enregistrement;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import reseau.Canal;
+import reseau.CanalException;
+
+/**
+ * Copie locale, chez le client, de la liste des parties du serveur
+ * d'enregistrement.
+ * <p>
+ * La liste est versionnee : apres la premiere reponse complete, le client
+ * ne demande que la difference depuis sa version. Si le serveur ne connait 
+ * plus cette version, il renvoie la liste complete.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see RegistreDesParties
+ */
+public class ListeDesParties
+{
+   private long version = -1;
+
+   // parties par cle "ip:port", dans l'ordre de reception
+   private final LinkedHashMap<String, JSONObject> parties = new LinkedHashMap<String, JSONObject>();
+
+   /**
+    * Demande au serveur d'enregistrement la difference depuis la version
+    * connue et l'applique.
+    *
+    * @param canal le canal avec le serveur d'enregistrement
+    * @throws CanalException si la communication echoue
+    * @throws JSONException si la reponse est mal formee
+    */
+   public synchronized void mettreAJour(Canal canal) throws CanalException, JSONException
+   {
+      canal.envoyerString(RequeteEnregistrement.getRequeteInfosParties(version, true));
+
+      JSONObject reponse = new JSONObject(canal.recevoirString());
+
+      // reponse compressee : les octets suivent l'en-tete
+      if ("gzip".equals(reponse.optString("compression")))
+         reponse = new JSONObject(decompresser(canal.recevoirBytes(reponse.getInt("taille"))));
+
+      try
+      {
+         appliquer(reponse);
+      }
+      catch (JSONException e)
+      {
+         // la prochaine mise a jour repartira d'une liste complete
+         vider();
+         throw e;
+      }
+   }
+
+   /**
+    * Applique une reponse versionnee a INFOS_PARTIES
+    *
+    * @param reponse la reponse complete ou la difference
+    * @throws JSONException si la reponse est mal formee
+    */
+   synchronized void appliquer(JSONObject reponse) throws JSONException
+   {
+      if (reponse.getInt("status") != CodeEnregistrement.OK)
+         throw new JSONException("Statut inattendu : " + reponse.getInt("status"));
+
+      // difference depuis une version qui n'est pas la notre
+      if (reponse.has("depuisVersion") && reponse.getLong("depuisVersion") != version)
+         throw new JSONException("Difference depuis une version inconnue");
+
+      // liste complete
+      if (!reponse.has("depuisVersion"))
+         parties.clear();
+      else
+      {
+         JSONArray supprimees = reponse.getJSONArray("supprimees");
+
+         for (int i = 0; i < supprimees.length(); i++)
+            parties.remove(supprimees.getString(i));
+      }
+
+      JSONArray modifiees = reponse.getJSONArray("parties");
+
+      for (int i = 0; i < modifiees.length(); i++)
+      {
+         JSONObject partie = modifiees.getJSONObject(i);
+
+         parties.put(Enregistrement.getCle(partie.getString("adresseIp"), 
+               partie.getInt("numeroPort"), partie.optInt("idPartie", 0)), partie);
+      }
+
+      version = reponse.getLong("version");
+   }
+
+   /**
+    * Oublie la version connue, la prochaine mise a jour sera complete
+    */
+   public synchronized void vider()
+   {
+      version = -1;
+      parties.clear();
+   }
+
+   /**
+    * @return la version connue ou -1
+    */
+   public synchronized long getVersion()
+   {
+      return version;
+   }
+
+   /**
+    * @return une copie des parties connues
+    */
+   public synchronized List<JSONObject> getParties()
+   {
+      return new ArrayList<JSONObject>(parties.values());
+   }
+
+   /**
+    * Decompresse une reponse (gzip, UTF-8)
+    */
+   private static String decompresser(byte[] compressee) throws CanalException
+   {
+      try
+      {
+         GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressee));
+         ByteArrayOutputStream octets = new ByteArrayOutputStream();
+         byte[] tampon = new byte[4096];
+
+         for (int n; (n = gzip.read(tampon)) > 0;)
+            octets.write(tampon, 0, n);
+
+         return octets.toString("UTF-8");
+      }
+      catch (IOException e)
+      {
+         throw new CanalException(e);
+      }
+   }
+}
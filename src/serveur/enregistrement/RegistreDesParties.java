@@ -0,0 +1,451 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package serveur.enregistrement;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import org.json.JSONArray;
+
+/**
+ * Registre des parties enregistrees, indexe par adresse (ip, port).
+ * <p>
+ * Les modifications (rares) sont serialisees et publient a chaque fois un
+ * nouvel instantane immuable de toutes les parties, avec ses index par
+ * terrain, par mode et des parties qui ont encore des places. Les lectures
+ * (frequentes) ne prennent aucun verrou : elles lisent le dernier instantane
+ * publie.
+ * <p>
+ * Chaque instantane a un numero de version et encode sa reponse a
+ * INFOS_PARTIES une seule fois, a la premiere demande, a partir des parties
+ * deja encodees : seule une partie modifiee depuis l'instantane precedent
+ * est reencodee (voir Enregistrement.getJson()). Les NB_VERSIONS
+ * derniers instantanes sont conserves pour repondre par difference aux
+ * clients qui connaissent deja une version.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see SEInscription
+ */
+public class RegistreDesParties
+{
+   private final ConcurrentHashMap<String, Enregistrement> parties = new ConcurrentHashMap<String, Enregistrement>();
+
+   /**
+    * Nombre d'anciens instantanes conserves pour les differences
+    */
+   static final int NB_VERSIONS = 32;
+
+   private volatile Instantane instantane = new Instantane(0, new ArrayList<Enregistrement>());
+
+   // anciens instantanes par version (modifies sous le verrou)
+   private final ConcurrentHashMap<Long, Instantane> anciens = new ConcurrentHashMap<Long, Instantane>();
+
+   /**
+    * Permet d'ajouter une partie
+    *
+    * @param e l'enregistrement de la partie
+    * @return false si une partie est deja enregistree a la meme adresse
+    */
+   public synchronized boolean ajouter(Enregistrement e)
+   {
+      if (parties.putIfAbsent(e.getCle(), e) != null)
+         return false;
+
+      publier();
+      return true;
+   }
+
+   /**
+    * Permet d'enlever une partie. Une autre partie enregistree depuis a la
+    * meme adresse n'est pas enlevee.
+    *
+    * @param e l'enregistrement de la partie
+    * @return true si la partie a ete enlevee
+    */
+   public synchronized boolean enlever(Enregistrement e)
+   {
+      if (!parties.remove(e.getCle(), e))
+         return false;
+
+      publier();
+      return true;
+   }
+
+   /**
+    * Permet de modifier le nombre de places restantes d'une partie
+    *
+    * @param e l'enregistrement de la partie
+    * @param placesRestantes le nombre de places restantes
+    */
+   public synchronized void setPlacesRestantes(Enregistrement e, int placesRestantes)
+   {
+      if (e.getPlacesRestantes() == placesRestantes)
+         return;
+
+      e.setPlacesRestantes(placesRestantes);
+
+      if (parties.get(e.getCle()) == e)
+         publier();
+   }
+
+   /**
+    * Permet de savoir si une partie est enregistree
+    *
+    * @param e l'enregistrement de la partie
+    * @return true si c'est l'enregistrement courant a son adresse
+    */
+   public boolean contient(Enregistrement e)
+   {
+      return parties.get(e.getCle()) == e;
+   }
+
+   /**
+    * Permet de recuperer une partie par son adresse
+    *
+    * @param adresseIp l'adresse ip du serveur de jeu
+    * @param numeroPort le port du serveur de jeu
+    * @return l'enregistrement ou null
+    */
+   public Enregistrement get(String adresseIp, int numeroPort)
+   {
+      return parties.get(Enregistrement.getCle(adresseIp, numeroPort));
+   }
+
+   /**
+    * Permet de recuperer l'instantane courant, sans verrou
+    *
+    * @return l'instantane des parties
+    */
+   public Instantane getInstantane()
+   {
+      return instantane;
+   }
+
+   /**
+    * Permet de recuperer un instantane par sa version, sans verrou
+    *
+    * @param version la version
+    * @return l'instantane ou null s'il n'est plus conserve
+    */
+   public Instantane getInstantane(long version)
+   {
+      Instantane courant = instantane;
+
+      if (courant.getVersion() == version)
+         return courant;
+
+      return anciens.get(version);
+   }
+
+   /**
+    * Construit et publie l'instantane des parties (sous le verrou)
+    */
+   private void publier()
+   {
+      Instantane precedent = instantane;
+
+      anciens.put(precedent.getVersion(), precedent);
+      anciens.remove(precedent.getVersion() - NB_VERSIONS);
+
+      instantane = new Instantane(precedent.getVersion() + 1,
+            new ArrayList<Enregistrement>(parties.values()));
+   }
+
+   /**
+    * Etat immuable du registre a un instant donne.
+    */
+   public static class Instantane
+   {
+      private final long version;
+      private final List<Enregistrement> parties;
+      private final Map<String, List<Enregistrement>> parTerrain;
+      private final Map<String, List<Enregistrement>> parMode;
+      private final List<Enregistrement> avecPlacesLibres;
+
+      // parties encodees en JSON, par cle
+      private final LinkedHashMap<String, String> encodees = new LinkedHashMap<String, String>();
+
+      // reponses encodees a la premiere demande
+      private volatile String reponse;
+      private volatile byte[] reponseCompressee;
+      private final ConcurrentHashMap<Long, String> differences = new ConcurrentHashMap<Long, String>();
+
+      private Instantane(long version, ArrayList<Enregistrement> parties)
+      {
+         this.version = version;
+
+         HashMap<String, List<Enregistrement>> terrains = new HashMap<String, List<Enregistrement>>();
+         HashMap<String, List<Enregistrement>> modes = new HashMap<String, List<Enregistrement>>();
+         ArrayList<Enregistrement> libres = new ArrayList<Enregistrement>();
+
+         for (Enregistrement e : parties)
+         {
+            indexer(terrains, e.getNomTerrain(), e);
+            indexer(modes, e.getMode(), e);
+
+            if (e.getPlacesRestantes() > 0)
+               libres.add(e);
+
+            encodees.put(e.getCle(), e.getJson());
+         }
+
+         this.parties = Collections.unmodifiableList(parties);
+         this.parTerrain = figer(terrains);
+         this.parMode = figer(modes);
+         this.avecPlacesLibres = Collections.unmodifiableList(libres);
+      }
+
+      private static void indexer(HashMap<String, List<Enregistrement>> index, String cle, Enregistrement e)
+      {
+         List<Enregistrement> liste = index.get(cle);
+
+         if (liste == null)
+         {
+            liste = new ArrayList<Enregistrement>();
+            index.put(cle, liste);
+         }
+
+         liste.add(e);
+      }
+
+      private static Map<String, List<Enregistrement>> figer(HashMap<String, List<Enregistrement>> index)
+      {
+         for (Map.Entry<String, List<Enregistrement>> entree : index.entrySet())
+            entree.setValue(Collections.unmodifiableList(entree.getValue()));
+
+         return Collections.unmodifiableMap(index);
+      }
+
+      /**
+       * @return la version de l'instantane
+       */
+      public long getVersion()
+      {
+         return version;
+      }
+
+      /**
+       * Permet de recuperer la reponse complete a INFOS_PARTIES, encodee
+       * une seule fois
+       *
+       * @return la reponse JSON
+       */
+      public String getReponse()
+      {
+         if (reponse == null)
+            reponse = construireReponse(encodees.values(), null, -1);
+
+         return reponse;
+      }
+
+      /**
+       * Permet de recuperer la reponse complete compressee (gzip), 
+       * compressee une seule fois
+       *
+       * @return la reponse compressee
+       */
+      public byte[] getReponseCompressee()
+      {
+         if (reponseCompressee == null)
+            reponseCompressee = compresser(getReponse());
+
+         return reponseCompressee;
+      }
+
+      /**
+       * Permet de recuperer la difference avec un ancien instantane : les
+       * parties ajoutees ou modifiees et les cles des parties supprimees.
+       *
+       * @param ancien l'instantane connu du client
+       * @return la reponse JSON
+       */
+      public String getDifference(Instantane ancien)
+      {
+         String difference = differences.get(ancien.version);
+
+         if (difference == null)
+         {
+            ArrayList<String> modifiees = new ArrayList<String>();
+            ArrayList<String> supprimees = new ArrayList<String>();
+
+            for (Map.Entry<String, String> entree : encodees.entrySet())
+               // meme chaine si la partie n'a pas ete reencodee
+               if (!entree.getValue().equals(ancien.encodees.get(entree.getKey())))
+                  modifiees.add(entree.getValue());
+
+            for (String cle : ancien.encodees.keySet())
+               if (!encodees.containsKey(cle))
+                  supprimees.add(cle);
+
+            difference = construireReponse(modifiees, supprimees, ancien.version);
+            differences.put(ancien.version, difference);
+         }
+
+         return difference;
+      }
+
+      /**
+       * Construit une reponse a partir des parties deja encodees
+       */
+      private String construireReponse(Iterable<String> parties, List<String> supprimees, long depuisVersion)
+      {
+         StringBuilder sb = new StringBuilder();
+
+         sb.append("{\"status\":").append(CodeEnregistrement.OK);
+         sb.append(",\"version\":").append(version);
+
+         if (supprimees != null)
+         {
+            sb.append(",\"depuisVersion\":").append(depuisVersion);
+            sb.append(",\"supprimees\":").append(new JSONArray(supprimees));
+         }
+
+         sb.append(",\"parties\":[");
+
+         boolean premiere = true;
+         for (String partie : parties)
+         {
+            if (!premiere)
+               sb.append(',');
+
+            sb.append(partie);
+            premiere = false;
+         }
+
+         return sb.append("]}").toString();
+      }
+
+      /**
+       * Permet de compresser une reponse (gzip, UTF-8)
+       *
+       * @param reponse la reponse
+       * @return la reponse compressee
+       */
+      public static byte[] compresser(String reponse)
+      {
+         try
+         {
+            ByteArrayOutputStream octets = new ByteArrayOutputStream();
+            GZIPOutputStream gzip = new GZIPOutputStream(octets);
+
+            gzip.write(reponse.getBytes("UTF-8"));
+            gzip.close();
+
+            return octets.toByteArray();
+         }
+         catch (IOException e)
+         {
+            // en memoire, n'arrive pas
+            throw new IllegalStateException(e);
+         }
+      }
+
+      /**
+       * @return toutes les parties
+       */
+      public List<Enregistrement> getParties()
+      {
+         return parties;
+      }
+
+      /**
+       * @return le nombre de parties
+       */
+      public int getNombreParties()
+      {
+         return parties.size();
+      }
+
+      /**
+       * @param nomTerrain le nom du terrain
+       * @return les parties sur ce terrain
+       */
+      public List<Enregistrement> getParTerrain(String nomTerrain)
+      {
+         return nonNulle(parTerrain.get(nomTerrain));
+      }
+
+      /**
+       * @param mode le mode de jeu
+       * @return les parties de ce mode
+       */
+      public List<Enregistrement> getParMode(String mode)
+      {
+         return nonNulle(parMode.get(mode));
+      }
+
+      /**
+       * @return les parties qui ont encore des places
+       */
+      public List<Enregistrement> getAvecPlacesLibres()
+      {
+         return avecPlacesLibres;
+      }
+
+      /**
+       * Permet de selectionner des parties, en partant de l'index le plus
+       * petit.
+       *
+       * @param nomTerrain le nom du terrain ou null pour tous
+       * @param mode le mode de jeu ou null pour tous
+       * @param placesLibres true pour les parties qui ont encore des places
+       * @return les parties selectionnees
+       */
+      public List<Enregistrement> selectionner(String nomTerrain, String mode, boolean placesLibres)
+      {
+         List<Enregistrement> base = parties;
+
+         if (nomTerrain != null && getParTerrain(nomTerrain).size() < base.size())
+            base = getParTerrain(nomTerrain);
+
+         if (mode != null && getParMode(mode).size() < base.size())
+            base = getParMode(mode);
+
+         if (placesLibres && avecPlacesLibres.size() < base.size())
+            base = avecPlacesLibres;
+
+         ArrayList<Enregistrement> selection = new ArrayList<Enregistrement>(base.size());
+
+         for (Enregistrement e : base)
+            if ((nomTerrain == null || nomTerrain.equals(e.getNomTerrain()))
+             && (mode == null || mode.equals(e.getMode()))
+             && (!placesLibres || e.getPlacesRestantes() > 0))
+               selection.add(e);
+
+         return selection;
+      }
+
+      private static List<Enregistrement> nonNulle(List<Enregistrement> liste)
+      {
+         if (liste == null)
+            return Collections.emptyList();
+
+         return liste;
+      }
+   }
+}
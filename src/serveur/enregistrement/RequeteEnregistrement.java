@@ -42,15 +42,72 @@ public class RequeteEnregistrement
      */
     public static String getRequeteEnregistrer(String nomServeur,
             int numeroPort, int nbJoueurs, String nomTerrain, String mode)
+    {
+        return getRequeteEnregistrer(nomServeur, numeroPort, 0, nbJoueurs, 
+                nbJoueurs - 1, nomTerrain, mode);
+    }
+
+    /**
+     * Permet de generer la requete d'enregistrement d'une partie hebergee
+     * avec d'autres sur le meme port
+     * 
+     * @param idPartie l'identificateur de la partie sur le port, 0 si elle
+     *        y est seule
+     * @param placesRestantes les places encore libres (une partie hebergee 
+     *        n'a pas de createur)
+     * @return la requete
+     */
+    public static String getRequeteEnregistrer(String nomServeur,
+            int numeroPort, int idPartie, int nbJoueurs, int placesRestantes,
+            String nomTerrain, String mode)
     {
         // Création de la requete d'enregistrement
         return "{\"donnees\" :{\"code\" : " + CodeEnregistrement.ENREGISTRER
                 + ",\"contenu\" : " + "{" + "\"nomPartie\" :\"" + nomServeur
                 + "\"," + "\"numeroPort\" :" + numeroPort + ","
-                + "\"capacite\" :" + nbJoueurs + "," + "\"nomTerrain\" :\""
+                + "\"idPartie\" :" + idPartie + ","
+                + "\"capacite\" :" + nbJoueurs + ","
+                + "\"placesRestantes\" :" + placesRestantes + ","
+                + "\"nomTerrain\" :\""
                 + nomTerrain + "\"," + "\"mode\" :\"" + mode + "\"" + "}}}";
     }
 
+    /**
+     * Permet de generer la requete d'informations sur une selection de 
+     * parties
+     * 
+     * @param nomTerrain le nom du terrain ou null pour tous
+     * @param mode le mode de jeu ou null pour tous
+     * @param placesLibres true pour les parties qui ont encore des places
+     * @return la requete
+     */
+    public static String getRequeteInfosParties(String nomTerrain, 
+            String mode, boolean placesLibres)
+    {
+        return "{\"donnees\" :{\"code\" : " + CodeEnregistrement.INFOS_PARTIES
+                + ",\"contenu\" : {"
+                + (nomTerrain != null ? "\"nomTerrain\" :\"" + nomTerrain + "\"," : "")
+                + (mode != null ? "\"mode\" :\"" + mode + "\"," : "")
+                + "\"placesLibres\" :" + placesLibres + "}}}";
+    }
+
+    /**
+     * Permet de generer la requete d'informations sur les parties pour un
+     * client qui connait deja une version de la liste : le serveur ne 
+     * renvoie que la difference avec cette version s'il la connait encore
+     * 
+     * @param depuisVersion la version connue ou -1 pour aucune
+     * @param gzip true si le client accepte une reponse compressee
+     * @return la requete
+     */
+    public static String getRequeteInfosParties(long depuisVersion, 
+            boolean gzip)
+    {
+        return "{\"donnees\" :{\"code\" : " + CodeEnregistrement.INFOS_PARTIES
+                + ",\"contenu\" : {\"depuisVersion\" :" + depuisVersion
+                + ",\"gzip\" :" + gzip + "}}}";
+    }
+
     /**
      * Permet de generer la requete d'enregistrement
      * 
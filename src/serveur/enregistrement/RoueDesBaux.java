@@ -0,0 +1,137 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package serveur.enregistrement;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Roue temporelle qui enleve du registre les parties dont le bail a expire.
+ * <p>
+ * Une partie est placee dans la fente de la fin de son bail. A chaque tour
+ * de PERIODE, la fente courante est parcourue : les parties expirees sont
+ * enlevees, les autres (bail renouvele depuis) sont replacees dans la fente
+ * de leur nouvelle fin de bail. Un renouvellement ne touche donc pas a la
+ * roue, et une partie desenregistree en sort au passage de sa fente.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see SEInscription
+ */
+class RoueDesBaux implements Runnable
+{
+   /**
+    * Duree d'une fente (ms)
+    */
+   static final long PERIODE = 1000;
+
+   /**
+    * Nombre de fentes, une partie dont le bail depasse un tour de roue y
+    * reste plusieurs tours
+    */
+   private static final int NB_FENTES = 64;
+
+   private static final boolean debug = true;
+
+   private final RegistreDesParties registre;
+   private final ArrayList<ConcurrentLinkedQueue<Enregistrement>> fentes = new ArrayList<ConcurrentLinkedQueue<Enregistrement>>(NB_FENTES);
+
+   // dernier tour traite (temps / PERIODE)
+   private volatile long dernierTour = System.currentTimeMillis() / PERIODE;
+
+   /**
+    * Constructeur
+    *
+    * @param registre le registre des parties
+    */
+   RoueDesBaux(RegistreDesParties registre)
+   {
+      this.registre = registre;
+
+      for (int i = 0; i < NB_FENTES; i++)
+         fentes.add(new ConcurrentLinkedQueue<Enregistrement>());
+   }
+
+   /**
+    * Permet de placer une partie dans la fente de la fin de son bail
+    *
+    * @param e l'enregistrement de la partie
+    */
+   void planifier(Enregistrement e)
+   {
+      // une fin deja passee est traitee au prochain tour
+      long tour = Math.max(e.getFinDuBail() / PERIODE, dernierTour + 1);
+
+      fentes.get((int) (tour % NB_FENTES)).add(e);
+   }
+
+   /**
+    * Tache de parcours des fentes, une par PERIODE
+    */
+   @Override
+   public void run()
+   {
+      while (true)
+      {
+         try
+         {
+            Thread.sleep(PERIODE);
+         }
+         catch (InterruptedException e)
+         {
+            return;
+         }
+
+         // rattrape les tours manques (machine chargee)
+         long maintenant = System.currentTimeMillis();
+
+         while (dernierTour < maintenant / PERIODE)
+            parcourir(++dernierTour, maintenant);
+      }
+   }
+
+   /**
+    * Parcourt la fente d'un tour
+    */
+   private void parcourir(long tour, long maintenant)
+   {
+      ConcurrentLinkedQueue<Enregistrement> fente = fentes.get((int) (tour % NB_FENTES));
+
+      // les parties replacees dans cette meme fente attendent le tour suivant
+      for (int n = fente.size(); n > 0; n--)
+      {
+         Enregistrement e = fente.poll();
+
+         if (e == null)
+            break;
+
+         // desenregistree ou remplacee entre-temps
+         if (!registre.contient(e))
+            continue;
+
+         if (e.estExpire(maintenant))
+         {
+            if (registre.enlever(e) && debug)
+               System.out.println("- Bail expire : " + e);
+         }
+         else
+            planifier(e);
+      }
+   }
+}
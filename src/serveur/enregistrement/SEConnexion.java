@@ -18,6 +18,8 @@
 
 package serveur.enregistrement;
 
+import java.util.List;
+
 import org.json.*;
 
 import reseau.*;
@@ -30,7 +32,12 @@ import reseau.*;
  */
 public class SEConnexion implements Runnable, CodeEnregistrement {
    
-   private CanalTCP canal;
+   /**
+    * Taille en dessous de laquelle une reponse n'est pas compressee
+    */
+   private static final int TAILLE_MIN_COMPRESSION = 1024;
+   
+   private Canal canal;
    private Enregistrement enregisrementCourant;
    private JSONObject messageJsonRecu;
    private JSONObject contenu;
@@ -43,7 +50,7 @@ public class SEConnexion implements Runnable, CodeEnregistrement {
     * @param canal
     * @param SEInscription
     */
-   public SEConnexion(CanalTCP canal)
+   public SEConnexion(Canal canal)
    {
       this.canal = canal;
    }
@@ -84,13 +91,20 @@ public class SEConnexion implements Runnable, CodeEnregistrement {
                               contenu.getString("nomPartie"),
                               canal.getIpClient(),
                               new Port(contenu.getInt("numeroPort")),
+                              contenu.optInt("idPartie", 0),
                               contenu.getInt("capacite"),
                               contenu.getString("nomTerrain"),
                               contenu.getString("mode"));
                   
+                  // par defaut le createur occupe deja une place
+                  if (contenu.has("placesRestantes"))
+                     enregisrementCourant.setPlacesRestantes(
+                           contenu.getInt("placesRestantes"));
+                  
                   if (SEInscription.ajouterEnregistrement(enregisrementCourant))
                   {
-                      canal.envoyerString("{\"status\" :" + OK + "}");
+                      canal.envoyerString("{\"status\" :" + OK + "," +
+                                          "\"dureeBail\" : " + SEInscription.DUREE_BAIL + "}");
                   }
                   else
                   {
@@ -118,40 +132,59 @@ public class SEConnexion implements Runnable, CodeEnregistrement {
                   
                case INFOS_PARTIES :
                   
-                  if (SEInscription.getNombreEnregistrements() > 0) 
+                  // un seul instantane pour toute la reponse, sans verrou
+                  RegistreDesParties.Instantane instantane = 
+                        SEInscription.getRegistre().getInstantane();
+                  contenu = messageJsonRecu.getJSONObject("donnees")
+                                           .optJSONObject("contenu");
+                  
+                  // ancien client : liste complete, erreur si elle est vide
+                  if (contenu == null || !contenu.has("depuisVersion"))
                   {
-                     jsonString = "{\"status\" : " + OK + ", \"parties\" : [";
-                     for (Enregistrement e : SEInscription.getJeuxEnregistres())
+                     List<Enregistrement> parties = selectionnerParties(instantane, contenu);
+                     
+                     if (parties.size() > 0) 
                      {
-                        jsonString = jsonString.concat("{");
-                        jsonString = jsonString.concat("\"nomPartie\" : \"" + e.getNomPartie() + "\",");
-                        jsonString = jsonString.concat("\"adresseIp\" : \"" + e.getAdresseIp() + "\",");
-                        jsonString = jsonString.concat("\"numeroPort\" : " + e.getPort().getNumeroPort() + ",");
-                        jsonString = jsonString.concat("\"capacite\" : " + e.getCapacite() + ",");
-                        jsonString = jsonString.concat("\"placesRestantes\" : " + e.getPlacesRestantes() + ",");
-                        jsonString = jsonString.concat("\"nomTerrain\" : \"" + e.getNomTerrain() + "\",");
-                        jsonString = jsonString.concat("\"mode\" : \"" + e.getMode() + "\"");
-                        jsonString = jsonString.concat("},");
+                        if (parties == instantane.getParties())
+                           canal.envoyerString(instantane.getReponse());
+                        else
+                           canal.envoyerString(construireReponse(parties));
+                        break;
                      }
-                     
-                     jsonString = jsonString.concat("]}");
-                     
-                     System.out.println("\n\n\n" + jsonString + "\n\n\n");
-                     
-                     canal.envoyerString(jsonString);
+                     canal.envoyerString("{\"status\" : " + ERREUR + "," +
+                                         "\"message\" : \"Aucun enregistrement n'a ete fait!\"}");
                      break;
                   }
-                  canal.envoyerString("{\"status\" : " + ERREUR + "," +
-                                      "\"message\" : \"Aucun enregistrement n'a ete fait!\"}");
+                  
+                  // client versionne : difference depuis sa version si
+                  // elle est encore connue, sinon la liste complete
+                  RegistreDesParties.Instantane ancien = SEInscription.getRegistre()
+                        .getInstantane(contenu.getLong("depuisVersion"));
+                  
+                  if (ancien != null)
+                     envoyerReponse(instantane.getDifference(ancien), null,
+                           contenu.optBoolean("gzip", false));
+                  else
+                     envoyerReponse(instantane.getReponse(), instantane,
+                           contenu.optBoolean("gzip", false));
                   break;
                   
                case MISE_A_JOUR :
                   if (enregisrementCourant != null)
                   {
+                     // la mise a jour renouvelle le bail
+                     if (!SEInscription.renouvelerEnregistrement(enregisrementCourant))
+                     {
+                        canal.envoyerString("{\"status\" : " + ERREUR + "," +
+                                            "\"message\" : \"Cette partie existe deja!\"}");
+                        break;
+                     }
+                     
                      canal.envoyerString("{\"status\" :" + OK + "}");
                      contenu = messageJsonRecu.getJSONObject("donnees")
                                               .getJSONObject("contenu");
-                     enregisrementCourant.setPlacesRestantes(contenu.getInt("placesRestantes"));
+                     SEInscription.getRegistre().setPlacesRestantes(
+                           enregisrementCourant, contenu.getInt("placesRestantes"));
                      break;
                   }
                   canal.envoyerString("{\"status\" : " + ERREUR + "," +
@@ -174,4 +207,76 @@ public class SEConnexion implements Runnable, CodeEnregistrement {
          // canal erroné, on tue le client
       }
    }
+   
+   /**
+    * Encode la reponse a INFOS_PARTIES pour une selection de parties
+    * 
+    * @param parties les parties selectionnees
+    * @return la reponse JSON
+    */
+   private static String construireReponse(List<Enregistrement> parties)
+   {
+      StringBuilder sb = new StringBuilder();
+      
+      sb.append("{\"status\" : ").append(OK).append(", \"parties\" : [");
+      
+      // parties deja encodees (voir Enregistrement.getJson())
+      for (int i = 0; i < parties.size(); i++)
+      {
+         if (i > 0)
+            sb.append(',');
+         
+         sb.append(parties.get(i).getJson());
+      }
+      
+      return sb.append("]}").toString();
+   }
+   
+   /**
+    * Envoie une reponse versionnee, compressee si le client l'accepte et
+    * qu'elle depasse TAILLE_MIN_COMPRESSION : un en-tete JSON donne alors 
+    * la taille des octets compresses qui suivent.
+    * 
+    * @param reponse la reponse JSON
+    * @param instantane l'instantane si c'est sa reponse complete (dont la
+    *        version compressee est en cache), null sinon
+    * @param gzip si le client accepte une reponse compressee
+    */
+   private void envoyerReponse(String reponse, 
+         RegistreDesParties.Instantane instantane, boolean gzip) 
+         throws CanalException
+   {
+      if (!gzip || reponse.length() < TAILLE_MIN_COMPRESSION)
+      {
+         canal.envoyerString(reponse);
+         return;
+      }
+      
+      byte[] compressee = instantane != null ? instantane.getReponseCompressee()
+            : RegistreDesParties.Instantane.compresser(reponse);
+      
+      canal.envoyerString("{\"status\" : " + OK + ", \"compression\" : \"gzip\"," +
+                          "\"taille\" : " + compressee.length + "}");
+      canal.envoyerBytes(compressee);
+   }
+   
+   /**
+    * Permet de selectionner les parties demandees
+    * 
+    * @param instantane l'instantane du registre
+    * @param filtres les filtres de la requete (nomTerrain, mode, 
+    *        placesLibres) ou null pour toutes les parties
+    * @return les parties selectionnees
+    */
+   private static List<Enregistrement> selectionnerParties(
+         RegistreDesParties.Instantane instantane, JSONObject filtres)
+   {
+      if (filtres == null)
+         return instantane.getParties();
+      
+      return instantane.selectionner(
+            filtres.has("nomTerrain") ? filtres.optString("nomTerrain") : null,
+            filtres.has("mode") ? filtres.optString("mode") : null,
+            filtres.optBoolean("placesLibres", false));
+   }
 }
@@ -19,7 +19,8 @@
 package serveur.enregistrement;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.List;
+import outils.Configuration;
 import reseau.*;
 
 /**
@@ -31,10 +32,22 @@ import reseau.*;
 public class SEInscription
 {
    
-   private static ArrayList<Enregistrement> jeuxEnregistres = new ArrayList<Enregistrement>();
+   /**
+    * Duree du bail d'un enregistrement (ms). Un serveur de jeu qui ne le
+    * renouvelle pas (mise a jour) a temps est enleve du registre.
+    */
+   public static final long DUREE_BAIL = 60000;
+   
+   private static final RegistreDesParties registre = new RegistreDesParties();
+   private static final RoueDesBaux roueDesBaux = new RoueDesBaux(registre);
    private Port port;
    private static final boolean debug = true;
-   private CanalTCP canal;
+   
+   // taches de traitement des clients, en nombre limite par la configuration
+   private final ExecuteurDeConnexions executeurDeConnexions = new ExecuteurDeConnexions(
+         "SEConnexion", Configuration.getMaxConnexionsSE(), 
+         Configuration.getTaillePileConnexions() * 1024L);
+   private Canal canal;
    
    /**
     * Constructeur
@@ -60,6 +73,11 @@ public class SEInscription
       {
          port.reserver();
          
+         // expiration des baux non renouveles
+         Thread expiration = new Thread(roueDesBaux);
+         expiration.setDaemon(true);
+         expiration.start();
+         
          System.out.println("Le serveur d'enregistrement a bien ete lance.");
          System.out.println("Attente de connexions...");
          
@@ -71,7 +89,8 @@ public class SEInscription
             if(debug)
                 System.out.println("\n+ Connexion d'un client!");
             
-            (new Thread(new SEConnexion(canal))).start();
+            if (!executeurDeConnexions.executer(new SEConnexion(canal)))
+               refuserCanal();
          }
       } 
       catch (IOException e)
@@ -88,7 +107,10 @@ public class SEInscription
    private void creerCanal()
    {
       try{
-         canal = new CanalTCP(port);
+         if(Configuration.TRANSPORT_TRAMES.equals(Configuration.getTransportSE()))
+            canal = new CanalTrames(port);
+         else
+            canal = new CanalTCP(port);
       } 
       catch (CanalException ce){
         
@@ -96,27 +118,66 @@ public class SEInscription
       }
    }
    
+   /**
+    * Permet de refuser un client quand la limite de connexions est atteinte
+    */
+   private void refuserCanal()
+   {
+      if(debug)
+         System.out.println("- Client refuse, limite de " 
+               + executeurDeConnexions.getNbMax() + " connexions atteinte");
+      
+      try
+      {
+         canal.envoyerString("{\"status\" : " + CodeEnregistrement.ERREUR + "," +
+                             "\"message\" : \"Serveur surcharge!\"}");
+         canal.fermer();
+      }
+      catch (CanalException e)
+      {
+         // le client est deja parti
+      }
+   }
+   
    /**
     * Permet d'ajouter un serveur de jeu.
     * 
     * @param e l'enregistrement (serveur de jeu)
-    * @return
+    * @return false si un serveur de jeu est deja enregistre a la meme 
+    *         adresse (ip, port)
     */
-   public static synchronized boolean ajouterEnregistrement(Enregistrement e)
+   public static boolean ajouterEnregistrement(Enregistrement e)
    {
-      // TODO : surcharger les contains() pour pas que ce soit les réf. qui sont
-      // comparées
-      if (!jeuxEnregistres.contains(e))
-      {
-         jeuxEnregistres.add(e);
-         
-         if(debug)
-             System.out.println("+ Ajout d'un enregistrement, nb enr. : " 
-                     + jeuxEnregistres.size());
-         
+      e.renouvelerBail(DUREE_BAIL);
+      
+      if (!registre.ajouter(e))
+         return false;
+      
+      roueDesBaux.planifier(e);
+      
+      if(debug)
+          System.out.println("+ Ajout d'un enregistrement, nb enr. : " 
+                  + getNombreEnregistrements());
+      
+      return true;
+   }
+   
+   /**
+    * Permet de renouveler le bail d'un enregistrement. Un enregistrement 
+    * expire entre-temps est enregistre a nouveau.
+    * 
+    * @param e l'enregistrement
+    * @return false si l'enregistrement a expire et qu'un autre serveur de
+    *         jeu a pris son adresse
+    */
+   public static boolean renouvelerEnregistrement(Enregistrement e)
+   {
+      e.renouvelerBail(DUREE_BAIL);
+      
+      if (registre.contient(e))
          return true;
-      }
-      return false;
+      
+      return ajouterEnregistrement(e);
    }
    
    /**
@@ -124,12 +185,12 @@ public class SEInscription
     * 
     * @param e l'enregistrement a supprimer
     */
-   public static synchronized void enleverEnregistrement(Enregistrement e)
+   public static void enleverEnregistrement(Enregistrement e)
    {
       if(debug)
           System.out.println("- Suppression d'un enregistrement");
       
-      jeuxEnregistres.remove(e);
+      registre.enlever(e);
    }
    
    /**
@@ -137,18 +198,28 @@ public class SEInscription
     * 
     * @return le nombre d'enregistrements
     */
-   public static synchronized int getNombreEnregistrements()
+   public static int getNombreEnregistrements()
    {
-      return jeuxEnregistres.size();
+      return registre.getInstantane().getNombreParties();
    }
    
    /**
     * Permet de recuperer les jeux enregistres
     * 
-    * @return les jeux enregistres
+    * @return les jeux enregistres (liste immuable)
+    */
+   public static List<Enregistrement> getJeuxEnregistres()
+   {
+      return registre.getInstantane().getParties();
+   }
+   
+   /**
+    * Permet de recuperer le registre des jeux enregistres
+    * 
+    * @return le registre
     */
-   public static synchronized ArrayList<Enregistrement> getJeuxEnregistres()
+   public static RegistreDesParties getRegistre()
    {
-      return jeuxEnregistres;
+      return registre;
    }
 }
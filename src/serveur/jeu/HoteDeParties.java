@@ -0,0 +1,475 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package serveur.jeu;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import models.jeu.Jeu_Serveur;
+import models.terrains.Terrain;
+import outils.Configuration;
+import reseau.*;
+import reseau.jeu.serveur.ConstantesServeurJeu;
+import reseau.jeu.serveur.Protocole;
+import reseau.jeu.serveur.ServeurJeu;
+
+/**
+ * Hote sans interface de plusieurs parties reseau dans le meme processus.
+ * <p>
+ * L'hote ecoute un seul port et transmet chaque connexion a la partie dont
+ * le client envoie l'identificateur (de 1 a nbParties) avant son pseudo.
+ * Les parties partagent un pool qui execute leur simulation et les actions
+ * de leurs joueurs (une action a la fois par partie, hors de la tache du
+ * selecteur commune a toutes les parties). Elles sont toutes enregistrees
+ * sur le serveur d'enregistrement sous l'adresse de l'hote.
+ * <p>
+ * Sans createur pour la lancer, une partie demarre quand elle est complete.
+ * Une partie terminee ou abandonnee est remplacee par une nouvelle.
+ *
+ * @author Aurelien Da Campo
+ * @version 1.0 | decembre 2010
+ * @see ServeurJeu#accueillir(Canal)
+ */
+public class HoteDeParties implements Runnable, EcouteurServeurNIO, ConstantesServeurJeu
+{
+   /**
+    * Periode de surveillance des parties (ms)
+    */
+   private static final long PERIODE_SURVEILLANCE = 1000;
+
+   /**
+    * Fanion pour le mode debug
+    */
+   private static final boolean debug = true;
+
+   private final File fichierTerrain;
+   private final String nomPartie;
+   private final int numeroPort;
+
+   // port d'ecoute des transports tcp et trames
+   private Port port;
+
+   // parties par identificateur - 1 (modifiees sous le verrou de l'hote)
+   private final Jeu_Serveur[] parties;
+
+   // nombre de joueurs annonce au SE pour chaque partie (surveillance)
+   private final int[] nbJoueursAnnonces;
+
+   private final ScheduledThreadPoolExecutor poolDeSimulation = 
+      new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors());
+
+   // partie de chaque connexion NIO (tache du selecteur uniquement)
+   private final HashMap<ConnexionNIO, ServeurJeu> routes = new HashMap<ConnexionNIO, ServeurJeu>();
+
+   // accueil des connexions tcp et trames : un client muet ne bloque que
+   // sa propre tache, pas l'attente des connexions suivantes
+   private final ExecuteurDeConnexions executeurDAccueil = new ExecuteurDeConnexions(
+         "HoteDeParties-accueil", Configuration.getMaxConnexionsSJ(),
+         Configuration.getTaillePileConnexions() * 1024L);
+
+   private ServeurNIO serveurNIO;
+   private volatile boolean enService = true;
+
+   /**
+    * Constructeur
+    *
+    * @param fichierTerrain le terrain des parties
+    * @param nbParties le nombre de parties hebergees
+    * @param nomPartie le nom des parties sur le serveur d'enregistrement
+    * @param numeroPort le port d'ecoute de l'hote
+    */
+   public HoteDeParties(File fichierTerrain, int nbParties, String nomPartie, int numeroPort)
+   {
+      if (nbParties <= 0)
+         throw new IllegalArgumentException("Nombre de parties invalide : " + nbParties);
+
+      this.fichierTerrain = fichierTerrain;
+      this.nomPartie = nomPartie;
+      this.numeroPort = numeroPort;
+
+      parties = new Jeu_Serveur[nbParties];
+      nbJoueursAnnonces = new int[nbParties];
+   }
+
+   /**
+    * Permet de lancer l'hote
+    *
+    * 1) creation et enregistrement des parties
+    * 2) ecoute du port (tache du selecteur ou tache d'attente de connexion)
+    * 3) surveillance des parties
+    *
+    * @throws IOException si le terrain ne peut etre charge ou si le port 
+    *         n'est pas disponible
+    */
+   public void lancer() throws IOException
+   {
+      for (int id = 1; id <= parties.length; id++)
+         creerPartie(id);
+
+      if (Configuration.TRANSPORT_NIO.equals(Configuration.getTransportJeu()))
+      {
+         serveurNIO = new ServeurNIO(numeroPort, this);
+         (new Thread(serveurNIO, "HoteDeParties-NIO")).start();
+      }
+      else
+      {
+         port = new Port(numeroPort);
+         port.reserver();
+
+         (new Thread(this, "HoteDeParties")).start();
+      }
+
+      if (debug)
+         System.out.println("L'hote de " + parties.length + " parties ecoute le port " + numeroPort);
+
+      while (enService)
+      {
+         try
+         {
+            Thread.sleep(PERIODE_SURVEILLANCE);
+         }
+         catch (InterruptedException e)
+         {
+            return;
+         }
+
+         for (int id = 1; id <= parties.length && enService; id++)
+            surveillerPartie(id);
+      }
+   }
+
+   /**
+    * Permet d'arreter l'hote : plus aucune connexion n'est acceptee et 
+    * toutes les parties sont arretees
+    */
+   public void arreter()
+   {
+      enService = false;
+
+      if (serveurNIO != null)
+         serveurNIO.arreter();
+
+      if (port != null)
+         port.liberer();
+
+      executeurDAccueil.arreter();
+
+      for (int id = 1; id <= parties.length; id++)
+      {
+         Jeu_Serveur jeu = getPartie(id);
+
+         if (jeu != null)
+         {
+            jeu.desenregistrerSurSE();
+            jeu.stopperServeurDeJeu();
+            jeu.detruire();
+         }
+      }
+
+      poolDeSimulation.shutdown();
+   }
+
+   /**
+    * Cree une partie, l'etablit sans port propre et l'enregistre sur le 
+    * serveur d'enregistrement
+    */
+   private void creerPartie(int id) throws IOException
+   {
+      Terrain terrain;
+
+      try
+      {
+         terrain = Terrain.charger(fichierTerrain);
+      }
+      catch (ClassNotFoundException e)
+      {
+         throw new IOException("Terrain invalide : " + fichierTerrain, e);
+      }
+
+      // les maillages ne sont pas serialises, ils sont construits avant
+      // l'arrivee des joueurs (comme a la creation d'une partie)
+      terrain.setLargeurMaillage(terrain.getLargeur());
+      terrain.setHauteurMaillage(terrain.getHauteur());
+      terrain.initialiser();
+
+      Jeu_Serveur jeu = new Jeu_Serveur();
+      jeu.setTerrain(terrain);
+      terrain.setJeu(jeu);
+      jeu.setPoolDeSimulation(poolDeSimulation);
+      jeu.etablissementDuServeurHeberge(id, numeroPort, poolDeSimulation);
+
+      synchronized (this)
+      {
+         parties[id - 1] = jeu;
+      }
+
+      nbJoueursAnnonces[id - 1] = 0;
+
+      String description = terrain.getBreveDescription();
+
+      if (description == null)
+         description = fichierTerrain.getName();
+
+      if (!jeu.enregistrerSurSE(nomPartie + " #" + id, terrain.getNbJoueursMax(),
+            description, terrain.getMode()))
+         System.err.println("Partie " + id + " : enregistrement au SE impossible");
+   }
+
+   /**
+    * Demarre une partie complete, remplace une partie terminee ou 
+    * abandonnee par tous ses joueurs
+    */
+   private void surveillerPartie(int id)
+   {
+      Jeu_Serveur jeu = getPartie(id);
+      ServeurJeu serveur = jeu.getServeurDeJeu();
+
+      if (!jeu.estDemarre())
+      {
+         int nbJoueurs = jeu.getJoueurs().size();
+
+         if (nbJoueurs == jeu.getTerrain().getNbJoueursMax())
+         {
+            if (debug)
+               System.out.println("Partie " + id + " : complete, demarrage");
+
+            jeu.desenregistrerSurSE();
+            jeu.initialiser();
+            jeu.demarrer();
+         }
+         else if (nbJoueurs != nbJoueursAnnonces[id - 1])
+         {
+            // places restantes a jour dans la liste des parties
+            nbJoueursAnnonces[id - 1] = nbJoueurs;
+            jeu.miseAJourSE();
+         }
+      }
+      else if (jeu.estTermine() || serveur.getNbClients() == 0)
+      {
+         if (debug)
+            System.out.println("Partie " + id + " : terminee, remplacement");
+
+         jeu.desenregistrerSurSE();
+         jeu.stopperServeurDeJeu();
+         jeu.detruire();
+
+         try
+         {
+            creerPartie(id);
+         }
+         catch (IOException e)
+         {
+            // la partie terminee reste en place, nouvel essai au prochain tour
+            e.printStackTrace();
+         }
+      }
+   }
+
+   /**
+    * Permet de recuperer le serveur d'une partie
+    *
+    * @param message le premier message du client : l'identificateur
+    * @return le serveur ou null si l'identificateur est invalide
+    */
+   private ServeurJeu getServeur(String message)
+   {
+      try
+      {
+         int id = Integer.parseInt(message.trim());
+
+         if (id < 1 || id > parties.length)
+            return null;
+
+         return getPartie(id).getServeurDeJeu();
+      }
+      catch (NumberFormatException e)
+      {
+         return null;
+      }
+   }
+
+   /**
+    * @param id l'identificateur de la partie (de 1 a nbParties)
+    * @return la partie hebergee sous cet identificateur
+    */
+   synchronized Jeu_Serveur getPartie(int id)
+   {
+      return parties[id - 1];
+   }
+
+   /**************** TRANSPORTS TCP ET TRAMES **************/
+
+   /**
+    * Tache d'attente de connexion. L'identificateur de la partie puis le
+    * pseudo sont recus par une tache propre a la connexion.
+    */
+   @Override
+   public void run()
+   {
+      while (enService)
+      {
+         try
+         {
+            final Canal canal;
+
+            if (Configuration.TRANSPORT_TRAMES.equals(Configuration.getTransportJeu()))
+               canal = new CanalTrames(port);
+            else
+               canal = new CanalTCP(port);
+
+            boolean accepte = executeurDAccueil.executer(new Runnable()
+            {
+               @Override
+               public void run()
+               {
+                  accueillir(canal);
+               }
+            });
+
+            if (!accepte)
+               refuser(canal);
+         }
+         catch (CanalException e)
+         {
+            // port libere a l'arret de l'hote
+            if (enService)
+               System.err.println("HoteDeParties : attente de connexion impossible (" + e.getMessage() + ")");
+         }
+      }
+   }
+
+   /**
+    * Accueille un joueur : reception de l'identificateur de la partie puis
+    * transmission de la connexion a son serveur (bloquant)
+    */
+   private void accueillir(Canal canal)
+   {
+      try
+      {
+         ServeurJeu serveur = getServeur(canal.recevoirString());
+
+         if (serveur != null)
+            serveur.accueillir(canal);
+         else
+            refuser(canal);
+      }
+      catch (CanalException e)
+      {
+         // seule cette connexion est perdue
+         System.err.println("HoteDeParties : connexion erronee (" + e.getMessage() + ")");
+      }
+   }
+
+   /**
+    * Refuse une connexion (partie inconnue ou limite de connexions atteinte)
+    */
+   private void refuser(Canal canal)
+   {
+      try
+      {
+         canal.envoyerString(Protocole.construireMsgJoueurInitialisation(PAS_DE_PLACE));
+         canal.fermer();
+      }
+      catch (CanalException e)
+      {
+         // le client est deja parti
+      }
+   }
+
+   /**************** TRANSPORT NIO **************/
+
+   @Override
+   public void connexionOuverte(ConnexionNIO connexion)
+   {
+      // la partie est connue au premier message
+   }
+
+   @Override
+   public void trameRecue(ConnexionNIO connexion, int numeroCanal, byte[] donnees)
+   {
+      ServeurJeu serveur = routes.get(connexion);
+
+      // decodee ici, l'action est executee par la file de sa partie
+      if (serveur != null)
+      {
+         serveur.trameRecue(connexion, numeroCanal, donnees);
+         return;
+      }
+
+      // premier message de la connexion : identificateur de la partie
+      serveur = getServeur(Trames.decoderString(donnees));
+
+      if (serveur != null)
+      {
+         routes.put(connexion, serveur);
+         serveur.connexionOuverte(connexion);
+         return;
+      }
+
+      try
+      {
+         connexion.getCanal(ConnexionMultiplexee.CANAL_REQUETES)
+            .envoyerString(Protocole.construireMsgJoueurInitialisation(PAS_DE_PLACE));
+      }
+      catch (CanalException e)
+      {
+         // la connexion est fermee de toute facon
+      }
+
+      connexion.fermer();
+   }
+
+   @Override
+   public void connexionFermee(ConnexionNIO connexion)
+   {
+      ServeurJeu serveur = routes.remove(connexion);
+
+      if (serveur != null)
+         serveur.connexionFermee(connexion);
+   }
+
+   /**
+    * Programme principal de l'hote de parties.
+    *
+    * @param args le fichier du terrain, le nombre de parties (4 par defaut)
+    *        et le nom des parties ("Hote" par defaut)
+    */
+   public static void main(String[] args)
+   {
+      if (args.length < 1)
+      {
+         System.err.println("Usage : HoteDeParties <terrain> [nbParties] [nom]");
+         return;
+      }
+
+      int nbParties = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+      String nom = args.length > 2 ? args[2] : "Hote";
+
+      try
+      {
+         new HoteDeParties(new File(args[0]), nbParties, nom, Configuration.getPortSJ()).lancer();
+      }
+      catch (IOException e)
+      {
+         System.err.println("Lancement de l'hote impossible : " + e.getMessage());
+      }
+   }
+}
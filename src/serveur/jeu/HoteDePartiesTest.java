@@ -0,0 +1,158 @@
+/*
+  Copyright (C) 2010 Aurelien Da Campo
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+package serveur.jeu;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+import java.io.File;
+
+import models.creatures.Creature;
+import models.jeu.Jeu_Client;
+import models.jeu.Jeu_Serveur;
+import models.joueurs.Equipe;
+import models.joueurs.Joueur;
+import models.tours.Tour;
+import models.tours.TourArcher;
+
+import org.junit.*;
+
+import exceptions.ZoneInaccessibleException;
+
+/**
+ * Test de bout en bout d'une partie hebergee : deux clients rejoignent la
+ * partie, qui demarre quand elle est complete, puis une tour est posee et
+ * une vague est lancee sur le serveur.
+ *
+ * @author Aurelien Da Campo
+ */
+public class HoteDePartiesTest
+{
+   private static final File TERRAIN = new File("maps/multi/BatailleDeChateaux.map");
+   private static final int PORT = 2399;
+   private static final long DELAI = 10000;
+
+   HoteDeParties hote;
+
+   @Before
+   public void lancer() throws Exception
+   {
+      hote = new HoteDeParties(TERRAIN, 2, "Test", PORT);
+
+      Thread t = new Thread(new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            try
+            {
+               hote.lancer();
+            }
+            catch (Exception e)
+            {
+               e.printStackTrace();
+            }
+         }
+      });
+      t.setDaemon(true);
+      t.start();
+
+      // la partie est creee avant l'ecoute du port
+      long fin = System.currentTimeMillis() + DELAI;
+      while (hote.getPartie(2) == null && System.currentTimeMillis() < fin)
+         Thread.sleep(50);
+
+      Thread.sleep(200);
+   }
+
+   @After
+   public void arreter()
+   {
+      hote.arreter();
+   }
+
+   @Test
+   public void testPartieHebergee() throws Exception
+   {
+      Jeu_Serveur jeu = hote.getPartie(2);
+      assertNotNull(jeu);
+
+      // les deux joueurs de la carte rejoignent la partie 2
+      new Jeu_Client(new Joueur("a")).connexionAvecLeServeur("127.0.0.1", PORT, 2);
+      new Jeu_Client(new Joueur("b")).connexionAvecLeServeur("127.0.0.1", PORT, 2);
+
+      long fin = System.currentTimeMillis() + DELAI;
+      while (!jeu.estDemarre() && System.currentTimeMillis() < fin)
+         Thread.sleep(50);
+
+      assertTrue("partie complete non demarree", jeu.estDemarre());
+      assertFalse(hote.getPartie(1).estDemarre());
+
+      // pose d'une tour (transaction sur le maillage terrestre)
+      Joueur joueur = jeu.getJoueurs().get(0);
+      assertTrue("aucune tour posee", poserUneTour(jeu, joueur));
+
+      // une vague vers l'autre equipe (chemins des creatures)
+      Equipe cible = jeu.getEquipeSuivanteNonVide(joueur.getEquipe());
+      jeu.lancerVagueSuivante(joueur, cible);
+
+      fin = System.currentTimeMillis() + DELAI;
+      while (jeu.getCreatures().isEmpty() && System.currentTimeMillis() < fin)
+         Thread.sleep(50);
+
+      assertFalse("aucune creature lancee", jeu.getCreatures().isEmpty());
+
+      Creature creature = jeu.getCreatures().get(0);
+      double x = creature.getX(), y = creature.getY();
+
+      Thread.sleep(1000);
+
+      assertTrue("la creature n'avance pas", creature.getX() != x || creature.getY() != y);
+   }
+
+   /**
+    * Pose une tour au premier emplacement libre de la zone du joueur
+    */
+   private boolean poserUneTour(Jeu_Serveur jeu, Joueur joueur) throws Exception
+   {
+      Rectangle zone = joueur.getEmplacement().getZoneDeConstruction();
+      Tour tour = new TourArcher();
+
+      for (int y = zone.y; y + tour.height <= zone.y + zone.height; y += tour.height)
+         for (int x = zone.x; x + tour.width <= zone.x + zone.width; x += tour.width)
+         {
+            tour = new TourArcher();
+            tour.x = x;
+            tour.y = y;
+            tour.setProprietaire(joueur);
+
+            try
+            {
+               jeu.poserTour(tour);
+               return true;
+            }
+            catch (ZoneInaccessibleException e)
+            {
+               // emplacement suivant
+            }
+         }
+
+      return false;
+   }
+}
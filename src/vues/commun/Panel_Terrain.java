@@ -23,6 +23,7 @@ import java.awt.event.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Line2D;
 import java.util.*;
+import java.util.List;
 import javax.swing.*;
 import outils.Configuration;
 import vues.GestionnaireDesPolices;
@@ -30,6 +31,7 @@ import vues.LookInterface;
 import models.animations.Animation;
 import models.creatures.Creature;
 import models.jeu.Jeu;
+import models.jeu.Jeu_Client;
 import models.joueurs.Equipe;
 import models.joueurs.Joueur;
 import models.maillage.Noeud;
@@ -711,12 +713,9 @@ public class Panel_Terrain extends JPanel implements Runnable,
 		//----------------------------------------
 		//-- affichage des creatures terrestres --
 		//----------------------------------------
-		Creature creature;
-        Enumeration<Creature> eCreatures = jeu.getCreatures().elements();
-        while(eCreatures.hasMoreElements())
+		List<Creature> creatures = jeu.getCreatures();
+        for(Creature creature : creatures)
         {
-            creature = eCreatures.nextElement();
-                
             // affichage des creatures terriennes uniquement
             if(creature.getType() == Creature.TYPE_TERRIENNE)
                 dessinerCreature(creature,g2);
@@ -731,11 +730,8 @@ public class Panel_Terrain extends JPanel implements Runnable,
 	    //--------------------------------------
         //-- affichage des creatures aerienne --
         //--------------------------------------
-		eCreatures = jeu.getCreatures().elements();
-        while(eCreatures.hasMoreElements())
+        for(Creature creature : creatures)
         {
-            creature = eCreatures.nextElement();
-            
             // dessine toutes les barres de sante
             dessinerBarreDeSante(creature, g2);
             
@@ -985,32 +981,26 @@ public class Panel_Terrain extends JPanel implements Runnable,
 	 */
     private void dessinerCheminCreature(final Creature creature, final Graphics2D g2)
     {
-    	// recuperation du chemin
+    	// recuperation du chemin depuis la position de la creature
         ArrayList<Point> chemin = creature.getChemin();
         
         // s'il est valide
         if(chemin != null && chemin.size() > 0)
         {
             // initialisation du point precedent
-            Point PointPrecedent = chemin.get(creature.getIndiceCourantChemin()-1);
+            Point PointPrecedent = new Point((int) creature.getCenterX(), 
+                                             (int) creature.getCenterY());
             
-            // bloque la reference du chemin
-            synchronized(chemin)
+            // pour chaque point du chemin
+            for(Point point : chemin)
             {
-                // pour chaque point du chemin
-                Point point;
-                for(int i=creature.getIndiceCourantChemin();i<chemin.size();i++)
-                {
-                    /* 
-                     * affichage du segment de parcours 
-                     * entre le point precedent et la suivant
-                     */
-                    point = chemin.get(i);
-                    
-                    g2.drawLine(PointPrecedent.x, PointPrecedent.y, 
-                                point.x, point.y);
-                    PointPrecedent = point;
-                }
+                /* 
+                 * affichage du segment de parcours 
+                 * entre le point precedent et la suivant
+                 */
+                g2.drawLine(PointPrecedent.x, PointPrecedent.y, 
+                            point.x, point.y);
+                PointPrecedent = point;
             }
         }
     }
@@ -1128,6 +1118,10 @@ public class Panel_Terrain extends JPanel implements Runnable,
 			// Raffraichissement du panel
 			repaint(); // -> appel paintComponent
 			
+			// le serveur envoie en priorité les créatures visibles
+			if(jeu instanceof Jeu_Client)
+			    ((Jeu_Client) jeu).signalerVue(getVueSurTerrain());
+			
 			//-------------------------------
             //-- compute frames per second --
             //-------------------------------
@@ -1216,7 +1210,7 @@ public class Panel_Terrain extends JPanel implements Runnable,
                 //------------------------------
     
     			Creature creature;
-    			Vector<Creature> creatures = jeu.getCreatures();
+    			List<Creature> creatures = jeu.getCreatures();
     			
     			// parcours a l'envers car il faut traiter les creatures les plus
                 // devant en premier (les derniers affiches)
@@ -1392,6 +1386,21 @@ public class Panel_Terrain extends JPanel implements Runnable,
 	                     (int)(y / coeffTaille - decaleY));
 	}
 	
+	/**
+	 * Permet de recuperer la zone du terrain affichee dans le panel
+	 * 
+	 * @return la zone du terrain (sans zoom et décalage)
+	 */
+	protected Rectangle getVueSurTerrain()
+	{
+	    Point hautGauche = getCoordoneeSurTerrainOriginal(0, 0);
+	    Point basDroite  = getCoordoneeSurTerrainOriginal(getWidth(), getHeight());
+	    
+	    return new Rectangle(hautGauche.x, hautGauche.y, 
+	                         basDroite.x - hautGauche.x, 
+	                         basDroite.y - hautGauche.y);
+	}
+	
 	/**
      * Permet de faire correspondre une coordonnée donnée sur la position normale
      * du terrain (sans zoom et décalage)
@@ -73,7 +73,8 @@ public class Panel_RejoindrePartieMulti extends JPanel implements
 
     private JButton bRetour = new JButton(Langue.getTexte(Langue.ID_TXT_BTN_RETOUR));
 
-    private CanalTCP canalServeurEnregistrement;
+    private Canal canalServeurEnregistrement;
+    private final ListeDesParties listeDesParties = new ListeDesParties();
     
     private Jeu_Client jeu;
     private Joueur joueur;
@@ -87,6 +88,7 @@ public class Panel_RejoindrePartieMulti extends JPanel implements
 
         private String nom, IP, Mode, nomTerrain;
         private int port, nbPlaces = 0, placesLibres = 0;
+        private int idPartie = 0;
 
         /**
          * Constructeur
@@ -217,9 +219,14 @@ public class Panel_RejoindrePartieMulti extends JPanel implements
         // Création du canal avec le serveur d'enregistrement
         try
         {
-            canalServeurEnregistrement = new CanalTCP(
-                    Configuration.getIpSE(),
-                    Configuration.getPortSE());
+            if(Configuration.TRANSPORT_TRAMES.equals(Configuration.getTransportSE()))
+                canalServeurEnregistrement = new CanalTrames(
+                        Configuration.getIpSE(),
+                        Configuration.getPortSE());
+            else
+                canalServeurEnregistrement = new CanalTCP(
+                        Configuration.getIpSE(),
+                        Configuration.getPortSE());
             
             mettreAJourListeDesServeurs();
         } 
@@ -307,15 +314,17 @@ public class Panel_RejoindrePartieMulti extends JPanel implements
             
             try
             {
-                // envoie de la requete d'enregistrement
-                canalServeurEnregistrement.envoyerString(RequeteEnregistrement.INFOS_PARTIES);
-                
-                // attente du résultat
-                String resultat = canalServeurEnregistrement.recevoirString();
+                // seule la difference depuis la derniere liste est recue
+                listeDesParties.mettreAJour(canalServeurEnregistrement);
         
                 // mise à jour de la liste des serveurs
-                mettreAJourListeDepuisJSON(resultat);
+                mettreAJourListe(listeDesParties.getParties());
             } 
+            catch (JSONException e)
+            {
+                lblEtat.setForeground(LookInterface.COULEUR_ERREUR);
+                lblEtat.setText("Format de réponse du serveur incorrect!");
+            }
             catch (CanalException e)
             {
                 lblEtat.setForeground(LookInterface.COULEUR_ERREUR);
@@ -325,30 +334,25 @@ public class Panel_RejoindrePartieMulti extends JPanel implements
     }
 
     /**
-     * Permet de mettre a jour la liste des serveurs avec une réponse JSON
+     * Permet de mettre a jour la liste des serveurs avec les parties du
+     * serveur d'enregistrement
      * 
-     * @param resultatJSON le résultat du serveur d'enregistrement
+     * @param parties les parties connues
      */
-    private void mettreAJourListeDepuisJSON(String resultatJSON)
+    private void mettreAJourListe(java.util.List<JSONObject> parties)
     {
         try
         {
-            // Analyse de la réponse du serveur d'enregistrement
-            JSONObject jsonResultat = new JSONObject(resultatJSON);
-            
             // on vide la liste des serveurs
             serveurs.clear();
             
-            if(jsonResultat.getInt("status") == CodeEnregistrement.OK)
+            if(parties.size() > 0)
             {
-                // sélection des serveurs de jeu
-                JSONArray jsonArray = jsonResultat.getJSONArray("parties");
-                
                 // ajout des serveurs de jeu
                 int i = 0;
-                for(;i < jsonArray.length(); i++)
+                for(;i < parties.size(); i++)
                 {
-                    JSONObject serveur = jsonArray.getJSONObject(i);
+                    JSONObject serveur = parties.get(i);
                     
                     ajouterServeur(serveur.getString("nomPartie"), 
                                    serveur.getString("adresseIp"),
@@ -356,7 +360,8 @@ public class Panel_RejoindrePartieMulti extends JPanel implements
                                    serveur.getString("mode"), 
                                    serveur.getString("nomTerrain"),
                                    serveur.getInt("capacite"), 
-                                   serveur.getInt("placesRestantes"));
+                                   serveur.getInt("placesRestantes"),
+                                   serveur.optInt("idPartie", 0));
   
                 }
                 
@@ -393,9 +398,22 @@ public class Panel_RejoindrePartieMulti extends JPanel implements
     public void ajouterServeur(String nom, String IP, int port, String Mode,
             String nomTerrain, int nbPlaces, int placesLibres)
     {
+        ajouterServeur(nom, IP, port, Mode, nomTerrain, nbPlaces, placesLibres, 0);
+    }
+    
+    /**
+     * Permet d'ajouter une partie hébergée avec d'autres sur le même port
+     * 
+     * @param idPartie l'identificateur de la partie chez l'hôte, 0 si elle
+     *        est seule sur le port
+     */
+    public void ajouterServeur(String nom, String IP, int port, String Mode,
+            String nomTerrain, int nbPlaces, int placesLibres, int idPartie)
+    {
 
         ServeurInfo srvInfo = new ServeurInfo(nom, IP, port, Mode, nomTerrain,
                 nbPlaces, placesLibres);
+        srvInfo.idPartie = idPartie;
 
         // ajout à la liste des serveurs
         serveurs.add(srvInfo);
@@ -458,7 +476,7 @@ public class Panel_RejoindrePartieMulti extends JPanel implements
 
                 Configuration.setPseudoJoueur(tfPseudo.getText());
                 
-                connexion(recupererIP(),recupererPort());
+                connexion(recupererIP(),recupererPort(),recupererIdPartie());
             } 
             catch (Exception exception)
             {
@@ -555,12 +573,42 @@ public class Panel_RejoindrePartieMulti extends JPanel implements
             return Configuration.getPortSJ();
     }
     
+    /**
+     * Permet de recupérer l'identificateur de la partie selectionnée chez son
+     * hôte
+     * 
+     * @return l'identificateur ou 0 (partie seule sur son port ou saisie
+     *         manuelle)
+     */
+    private int recupererIdPartie()
+    {
+        int ligne = tbServeurs.getSelectedRow();
+        
+        if (ligne == -1)
+            return 0;
+        
+        // les lignes de la table sont filtrées, on retrouve la partie
+        for (ServeurInfo srvInfo : serveurs)
+        {
+            String[] infos = srvInfo.toStringArray();
+            
+            if (infos[0].equals(model.getValueAt(ligne, 0))
+                    && infos[1].equals(model.getValueAt(ligne, 1))
+                    && infos[2].equals(model.getValueAt(ligne, 2))
+                    && infos[4].equals(model.getValueAt(ligne, 4)))
+                return srvInfo.idPartie;
+        }
+        
+        return 0;
+    }
+    
     /**
      * Etablisssement d'une connexion avec le serveur
      * 
      * @param IP l'adresse ip du serveur
+     * @param idPartie l'identificateur de la partie chez l'hôte ou 0
      */
-    private void connexion(String IP, int port)
+    private void connexion(String IP, int port, int idPartie)
     {
         bRejoindre.setText(Langue.getTexte(Langue.ID_TXT_CONNEXION)+"...");
         bRejoindre.setEnabled(false);
@@ -576,7 +624,7 @@ public class Panel_RejoindrePartieMulti extends JPanel implements
             
             try
             { 
-                jeu.connexionAvecLeServeur(IP,port);
+                jeu.connexionAvecLeServeur(IP,port,idPartie);
             } 
             catch (AucunEmplacementDisponibleException e)
             {